@@ -0,0 +1,59 @@
+package com.datashare.backend.dto;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * Serialization of {@link FileUploadResponse} with the Jackson 3 mapper Spring
+ * MVC uses: one upload response, and a 100-file listing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonSerializationBenchmark {
+
+    private JsonMapper mapper;
+    private FileUploadResponse response;
+    private List<FileUploadResponse> listing;
+
+    @Setup
+    public void setUp() {
+        mapper = JsonMapper.builder().build();
+        LocalDateTime now = LocalDateTime.of(2026, 3, 1, 12, 0);
+        response = new FileUploadResponse(42L, "Rapport annuel.pdf", "application/pdf", 1_234_567L,
+                "0b6c2bb4-6f0e-4a7e-9f39-3c1a8f7e52d1", now, now.plusDays(7), true, List.of("finance", "2025"));
+        listing = new ArrayList<>(100);
+        for (long i = 0; i < 100; i++) {
+            listing.add(new FileUploadResponse(i, "fichier-" + i + ".pdf", "application/pdf", i * 1024,
+                    "token-" + i, now, now.plusDays(7), i % 2 == 0, List.of("tag")));
+        }
+    }
+
+    @Benchmark
+    public byte[] uploadResponse() {
+        return mapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public byte[] listing100() {
+        return mapper.writeValueAsBytes(listing);
+    }
+}
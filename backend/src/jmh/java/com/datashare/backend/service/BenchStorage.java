@@ -0,0 +1,35 @@
+package com.datashare.backend.service;
+
+import java.nio.file.Path;
+
+import com.datashare.backend.storage.BlobCipher;
+import com.datashare.backend.storage.FsyncPolicy;
+import com.datashare.backend.storage.GroupCommitter;
+import com.datashare.backend.storage.IngestPipeline;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Builds a {@link StorageService} outside of Spring for benchmarks.
+ */
+final class BenchStorage {
+
+    private BenchStorage() {
+    }
+
+    static StorageService create(Path root, IngestPipeline pipeline, FsyncPolicy fsync, GroupCommitter groupCommitter,
+                                 BlobCipher blobCipher) {
+        StorageService storageService = new StorageService(root.toString(), pipeline, fsync, false, groupCommitter,
+                blobCipher, new SimpleMeterRegistry());
+        storageService.init();
+        return storageService;
+    }
+
+    static StorageService create(Path root, IngestPipeline pipeline, FsyncPolicy fsync, GroupCommitter groupCommitter) {
+        return create(root, pipeline, fsync, groupCommitter, new BlobCipher(false, "", 65536));
+    }
+
+    static StorageService create(Path root, IngestPipeline pipeline) {
+        return create(root, pipeline, FsyncPolicy.NONE, new GroupCommitter(256, 30_000));
+    }
+}
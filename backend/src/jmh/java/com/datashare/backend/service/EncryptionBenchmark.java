@@ -0,0 +1,116 @@
+package com.datashare.backend.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.datashare.backend.storage.BlobCipher;
+import com.datashare.backend.storage.BufferPool;
+import com.datashare.backend.storage.ByteCountStage;
+import com.datashare.backend.storage.FsyncPolicy;
+import com.datashare.backend.storage.GroupCommitter;
+import com.datashare.backend.storage.IngestPipeline;
+import com.datashare.backend.storage.Sha256Stage;
+
+/**
+ * Upload and download throughput of plaintext versus encrypted blobs. Divide
+ * {@code fileSize} by the time per operation to get GB/s; {@code rangeRead}
+ * decrypts 1 MiB at a random offset and should not depend on the file size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EncryptionBenchmark {
+
+    private static final int RANGE = 1024 * 1024;
+
+    @Param({"plain", "encrypted"})
+    public String mode;
+
+    @Param({"67108864"})
+    public int fileSize;
+
+    private Path workDir;
+    private PathMultipartFile upload;
+    private StorageService storage;
+    private String storedName;
+    private final byte[] sink = new byte[RANGE];
+
+    @Setup
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("encryption-bench");
+        byte[] data = new byte[fileSize];
+        new Random(42).nextBytes(data);
+        Path source = workDir.resolve("upload.bin");
+        Files.write(source, data);
+        upload = new PathMultipartFile(source, "application/octet-stream");
+
+        byte[] masterKey = new byte[32];
+        new Random(7).nextBytes(masterKey);
+        BlobCipher blobCipher = new BlobCipher(mode.equals("encrypted"),
+                Base64.getEncoder().encodeToString(masterKey), 65536);
+        IngestPipeline pipeline = new IngestPipeline(List.of(new ByteCountStage(), new Sha256Stage()),
+                new BufferPool(1024 * 1024, 16, 30_000));
+        storage = BenchStorage.create(Files.createDirectories(workDir.resolve("store")), pipeline,
+                FsyncPolicy.NONE, new GroupCommitter(256, 30_000), blobCipher);
+        storedName = storage.store(upload).storedName();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(workDir)) {
+            files.sorted((a, b) -> b.getNameCount() - a.getNameCount()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long upload() {
+        String name = storage.store(upload).storedName();
+        storage.delete(name);
+        return name.length();
+    }
+
+    @Benchmark
+    public long download() throws IOException {
+        long total = 0;
+        try (InputStream in = storage.loadAsResource(storedName).getInputStream()) {
+            int n;
+            while ((n = in.read(sink)) != -1) {
+                total += n;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int rangeRead() throws IOException {
+        long offset = ThreadLocalRandom.current().nextLong(fileSize - RANGE);
+        try (InputStream in = storage.loadAsResource(storedName).getInputStream()) {
+            in.skipNBytes(offset);
+            return in.readNBytes(sink, 0, RANGE);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.datashare.backend.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockMultipartFile;
+
+/**
+ * {@link FileValidator#validate} runs on every upload before anything is
+ * stored: emptiness check and forbidden-extension lookup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileValidationBenchmark {
+
+    private FileValidator fileValidator;
+    private MockMultipartFile allowed;
+    private MockMultipartFile noExtension;
+
+    @Setup
+    public void setUp() {
+        fileValidator = new FileValidator("exe,bat,cmd,sh,msi,com,scr,ps1,vbs");
+        allowed = new MockMultipartFile("file", "Rapport Annuel 2025.PDF", "application/pdf", new byte[] {1});
+        noExtension = new MockMultipartFile("file", "README", "text/plain", new byte[] {1});
+    }
+
+    @Benchmark
+    public MockMultipartFile allowedExtension() {
+        fileValidator.validate(allowed);
+        return allowed;
+    }
+
+    @Benchmark
+    public MockMultipartFile withoutExtension() {
+        fileValidator.validate(noExtension);
+        return noExtension;
+    }
+}
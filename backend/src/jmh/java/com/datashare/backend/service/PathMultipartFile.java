@@ -0,0 +1,67 @@
+package com.datashare.backend.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * Disk-backed upload, like a multipart part spooled by Tomcat.
+ */
+class PathMultipartFile implements MultipartFile {
+
+    private final Path path;
+    private final String contentType;
+
+    PathMultipartFile(Path path, String contentType) {
+        this.path = path;
+        this.contentType = contentType;
+    }
+
+    @Override
+    public String getName() {
+        return "file";
+    }
+
+    @Override
+    public String getOriginalFilename() {
+        return path.getFileName().toString();
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return getSize() == 0;
+    }
+
+    @Override
+    public long getSize() {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public byte[] getBytes() throws IOException {
+        return Files.readAllBytes(path);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return Files.newInputStream(path);
+    }
+
+    @Override
+    public void transferTo(File dest) throws IOException {
+        Files.copy(path, dest.toPath());
+    }
+}
@@ -0,0 +1,121 @@
+package com.datashare.backend.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.datashare.backend.storage.BufferPool;
+import com.datashare.backend.storage.ByteCountStage;
+import com.datashare.backend.storage.ContentSniffStage;
+import com.datashare.backend.storage.IngestPipeline;
+import com.datashare.backend.storage.Sha256Stage;
+import com.datashare.backend.storage.StoredFile;
+
+/**
+ * Compares the former {@code Files.copy(InputStream, Path)} path with the pooled
+ * direct-buffer engine, both as a raw copy and with the checksum work the upload
+ * path now needs. Run with {@code -prof gc} to compare {@code gc.alloc.rate.norm}
+ * (bytes allocated per upload) and with {@code -t 4} for concurrent uploads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StorageCopyBenchmark {
+
+    @Param({"1048576", "67108864"})
+    public int fileSize;
+
+    private Path workDir;
+    private Path storageDir;
+    private PathMultipartFile upload;
+    private StorageService copyOnly;
+    private StorageService withStages;
+
+    @Setup
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("storage-bench");
+        storageDir = Files.createDirectories(workDir.resolve("store"));
+        byte[] data = new byte[fileSize];
+        new Random(42).nextBytes(data);
+        Path source = workDir.resolve("upload.bin");
+        Files.write(source, data);
+        upload = new PathMultipartFile(source, "application/octet-stream");
+
+        BufferPool pool = new BufferPool(1024 * 1024, 16, 30_000);
+        copyOnly = BenchStorage.create(storageDir, new IngestPipeline(List.of(), pool));
+        withStages = BenchStorage.create(storageDir,
+                new IngestPipeline(List.of(new ByteCountStage(), new Sha256Stage(), new ContentSniffStage()), pool));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(workDir)) {
+            files.sorted((a, b) -> b.getNameCount() - a.getNameCount()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long filesCopy() throws IOException {
+        Path target = storageDir.resolve(UUID.randomUUID().toString());
+        try (InputStream in = upload.getInputStream()) {
+            long copied = Files.copy(in, target);
+            Files.delete(target);
+            return copied;
+        }
+    }
+
+    @Benchmark
+    public long pooledEngine() {
+        String storedName = copyOnly.store(upload).storedName();
+        copyOnly.delete(storedName);
+        return storedName.length();
+    }
+
+    @Benchmark
+    public byte[] filesCopyThenChecksumPass() throws Exception {
+        Path target = storageDir.resolve(UUID.randomUUID().toString());
+        try (InputStream in = upload.getInputStream()) {
+            Files.copy(in, target);
+        }
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (InputStream in = Files.newInputStream(target)) {
+            byte[] chunk = new byte[8192];
+            int n;
+            while ((n = in.read(chunk)) != -1) {
+                digest.update(chunk, 0, n);
+            }
+        }
+        Files.delete(target);
+        return digest.digest();
+    }
+
+    @Benchmark
+    public String pooledEngineWithStages() {
+        StoredFile stored = withStages.store(upload);
+        withStages.delete(stored.storedName());
+        return stored.sha256();
+    }
+}
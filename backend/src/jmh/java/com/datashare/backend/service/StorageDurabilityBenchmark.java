@@ -0,0 +1,78 @@
+package com.datashare.backend.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockMultipartFile;
+
+import com.datashare.backend.storage.FsyncPolicy;
+import com.datashare.backend.storage.GroupCommitter;
+import com.datashare.backend.storage.IngestPipeline;
+
+/**
+ * Uploads per second for each durability mode with concurrent writers. Blobs are
+ * written under {@code target/} rather than the temp directory, which may be a
+ * tmpfs where fsync is free.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class StorageDurabilityBenchmark {
+
+    @Param({"NONE", "PER_FILE", "GROUP"})
+    public FsyncPolicy fsync;
+
+    @Param({"65536"})
+    public int fileSize;
+
+    private Path storageDir;
+    private GroupCommitter groupCommitter;
+    private StorageService storageService;
+    private MockMultipartFile upload;
+
+    @Setup
+    public void setUp() throws IOException {
+        storageDir = Files.createDirectories(Paths.get("target", "bench-storage", fsync.name()));
+        byte[] data = new byte[fileSize];
+        new Random(42).nextBytes(data);
+        upload = new MockMultipartFile("file", "upload.bin", "application/octet-stream", data);
+
+        groupCommitter = new GroupCommitter(256, 30_000);
+        storageService = BenchStorage.create(storageDir, IngestPipeline.withDefaultStages(), fsync, groupCommitter);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        groupCommitter.shutdown();
+        try (Stream<Path> files = Files.list(storageDir)) {
+            files.forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public String upload() {
+        return storageService.store(upload).storedName();
+    }
+}
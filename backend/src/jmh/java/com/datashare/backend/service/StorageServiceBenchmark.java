@@ -0,0 +1,94 @@
+package com.datashare.backend.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.datashare.backend.storage.BufferPool;
+import com.datashare.backend.storage.ByteCountStage;
+import com.datashare.backend.storage.ContentSniffStage;
+import com.datashare.backend.storage.IngestPipeline;
+import com.datashare.backend.storage.Sha256Stage;
+
+/**
+ * {@link StorageService#store} and a full read through
+ * {@link StorageService#loadAsResource} with the production stage set, from a
+ * small document to a large video.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StorageServiceBenchmark {
+
+    @Param({"1024", "1048576", "67108864"})
+    public int fileSize;
+
+    private Path workDir;
+    private PathMultipartFile upload;
+    private StorageService storage;
+    private String storedName;
+    private final byte[] sink = new byte[64 * 1024];
+
+    @Setup
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("storage-service-bench");
+        byte[] data = new byte[fileSize];
+        new Random(42).nextBytes(data);
+        Path source = workDir.resolve("upload.bin");
+        Files.write(source, data);
+        upload = new PathMultipartFile(source, "application/octet-stream");
+
+        IngestPipeline pipeline = new IngestPipeline(
+                List.of(new ByteCountStage(), new Sha256Stage(), new ContentSniffStage()),
+                new BufferPool(1024 * 1024, 16, 30_000));
+        storage = BenchStorage.create(Files.createDirectories(workDir.resolve("store")), pipeline);
+        storedName = storage.store(upload).storedName();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(workDir)) {
+            files.sorted((a, b) -> b.getNameCount() - a.getNameCount()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public String store() {
+        String name = storage.store(upload).storedName();
+        storage.delete(name);
+        return name;
+    }
+
+    @Benchmark
+    public long load() throws IOException {
+        long total = 0;
+        try (InputStream in = storage.loadAsResource(storedName).getInputStream()) {
+            int n;
+            while ((n = in.read(sink)) != -1) {
+                total += n;
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,116 @@
+package com.datashare.backend.storage;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Ingests a file from disk with an increasing number of stages. The
+ * {@code sourceBytesRead} counter stays equal to {@code ingestedBytes} whatever
+ * the stage set: stages only add CPU time, never another read of the file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IngestPipelineBenchmark {
+
+    @Param({"none", "count", "count,sha256", "count,sha256,sniff"})
+    public String stages;
+
+    @Param({"16777216"})
+    public int fileSize;
+
+    private Path source;
+    private IngestPipeline pipeline;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Reads {
+        public long sourceBytesRead;
+        public long ingestedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            sourceBytesRead = 0;
+            ingestedBytes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] data = new byte[fileSize];
+        new Random(42).nextBytes(data);
+        source = Files.createTempFile("ingest-bench", ".bin");
+        Files.write(source, data);
+
+        List<IngestStage> selected = new ArrayList<>();
+        for (String name : stages.split(",")) {
+            switch (name) {
+                case "count" -> selected.add(new ByteCountStage());
+                case "sha256" -> selected.add(new Sha256Stage());
+                case "sniff" -> selected.add(new ContentSniffStage());
+                default -> { }
+            }
+        }
+        pipeline = new IngestPipeline(selected, new BufferPool(1024 * 1024, 4, 30_000));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(source);
+    }
+
+    @Benchmark
+    public IngestResult ingest(Reads reads) throws IOException {
+        try (InputStream in = new CountingInputStream(Files.newInputStream(source), reads)) {
+            IngestResult result = pipeline.run(in, Channels.newChannel(OutputStream.nullOutputStream()));
+            reads.ingestedBytes += fileSize;
+            return result;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private final Reads reads;
+
+        CountingInputStream(InputStream in, Reads reads) {
+            super(in);
+            this.reads = reads;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                reads.sourceBytesRead += n;
+            }
+            return n;
+        }
+    }
+}
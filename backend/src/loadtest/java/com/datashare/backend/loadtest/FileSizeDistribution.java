@@ -0,0 +1,43 @@
+package com.datashare.backend.loadtest;
+
+import java.util.SplittableRandom;
+
+/**
+ * Upload sizes as seen on a file-sharing service: mostly documents and images,
+ * a tail of archives and videos up to 1 GB. Sizes are log-uniform within each
+ * band and clamped to the configured maximum.
+ */
+class FileSizeDistribution {
+
+    private static final long KB = 1024;
+    private static final long MB = 1024 * KB;
+
+    // {lower bound, upper bound, weight in per mille}
+    private static final long[][] BANDS = {
+            {KB, 100 * KB, 550},
+            {100 * KB, MB, 250},
+            {MB, 10 * MB, 130},
+            {10 * MB, 100 * MB, 60},
+            {100 * MB, 1024 * MB, 10},
+    };
+
+    private final long maxSize;
+
+    FileSizeDistribution(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    long next(SplittableRandom random) {
+        int roll = random.nextInt(1000);
+        for (long[] band : BANDS) {
+            roll -= (int) band[2];
+            if (roll < 0) {
+                double low = Math.log(band[0]);
+                double high = Math.log(band[1]);
+                long size = (long) Math.exp(low + random.nextDouble() * (high - low));
+                return Math.min(size, maxSize);
+            }
+        }
+        return Math.min(KB, maxSize);
+    }
+}
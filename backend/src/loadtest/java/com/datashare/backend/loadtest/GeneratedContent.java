@@ -0,0 +1,46 @@
+package com.datashare.backend.loadtest;
+
+import java.io.InputStream;
+import java.util.SplittableRandom;
+
+/**
+ * Streams {@code size} bytes of pseudo-random content without holding them in
+ * memory, so that 1 GB uploads cost the harness nothing but a shared 1 MiB block.
+ */
+class GeneratedContent extends InputStream {
+
+    private static final byte[] BLOCK = new byte[1024 * 1024];
+
+    static {
+        new SplittableRandom(42).nextBytes(BLOCK);
+    }
+
+    private final long size;
+    private long position;
+    private final int offset;
+
+    GeneratedContent(long size, long seed) {
+        this.size = size;
+        this.offset = (int) Math.floorMod(seed, BLOCK.length);
+    }
+
+    @Override
+    public int read() {
+        if (position >= size) {
+            return -1;
+        }
+        return BLOCK[(int) ((offset + position++) % BLOCK.length)] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (position >= size) {
+            return -1;
+        }
+        int start = (int) ((offset + position) % BLOCK.length);
+        int n = (int) Math.min(Math.min(len, size - position), BLOCK.length - start);
+        System.arraycopy(BLOCK, start, b, off, n);
+        position += n;
+        return n;
+    }
+}
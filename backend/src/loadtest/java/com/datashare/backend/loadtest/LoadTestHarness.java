@@ -0,0 +1,356 @@
+package com.datashare.backend.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import com.datashare.backend.BackendApplication;
+import com.datashare.backend.entity.FileEntity;
+import com.datashare.backend.entity.User;
+import com.datashare.backend.repository.FileRepository;
+import com.datashare.backend.repository.UserRepository;
+
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * Boots DataShare in-process with the {@code loadtest} profile (in-memory H2
+ * unless the datasource is overridden), seeds a user owning a large listing,
+ * then runs a closed workload: each virtual user registers, uploads a few
+ * files, and picks operations from the configured mix until the end of the
+ * run. Everything recorded during warmup is discarded.
+ *
+ * <p>A virtual user only reads and deletes its own files, so that a delete
+ * never turns another user's read into a 404. A listing walks the seeded
+ * user's pages like the dashboard does, following {@code X-Next-Cursor}.
+ *
+ * <p>All settings are Spring properties ({@code loadtest.*}, see
+ * {@code application-loadtest.properties}) and can be overridden on the command
+ * line. The process exits with status 1 when the error rate exceeds
+ * {@code loadtest.max-error-rate}.
+ */
+public class LoadTestHarness {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadTestHarness.class);
+
+    private static final String PASSWORD = "loadtest-password";
+    private static final int PREFILL_UPLOADS = 4;
+    private static final long PREFILL_MAX_SIZE = 1024 * 1024;
+    // The dashboard's page size
+    private static final int LIST_PAGE_SIZE = 50;
+
+    enum Operation { UPLOAD, INFO, DOWNLOAD, LIST, DELETE }
+
+    record SharedFile(long id, String token, String password) {}
+
+    private final ConfigurableApplicationContext context;
+    private final Environment env;
+    private final JsonMapper mapper = JsonMapper.builder().build();
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+    private final AtomicLong uploadSequence = new AtomicLong();
+    private final int[] mix = new int[Operation.values().length];
+    private final URI base;
+    private final long maxFileSize;
+    private final FileSizeDistribution sizes;
+    private final double passwordRatio;
+    private final int listPages;
+    private String listingJwt;
+
+    LoadTestHarness(ConfigurableApplicationContext context) {
+        this.context = context;
+        this.env = context.getEnvironment();
+        this.base = URI.create("http://localhost:" + env.getRequiredProperty("local.server.port"));
+        this.maxFileSize = env.getProperty("loadtest.max-file-size", DataSize.class, DataSize.ofGigabytes(1)).toBytes();
+        this.sizes = new FileSizeDistribution(maxFileSize);
+        this.passwordRatio = env.getProperty("loadtest.password-ratio", Double.class, 0.3);
+        this.listPages = env.getProperty("loadtest.list-pages", Integer.class, 5);
+        for (Operation op : Operation.values()) {
+            stats.put(op, new OperationStats(op.name().toLowerCase()));
+            mix[op.ordinal()] = env.getProperty("loadtest.mix." + op.name().toLowerCase(), Integer.class, 0);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(BackendApplication.class)
+                .profiles("loadtest")
+                .run(args);
+        Path storage = Path.of(context.getEnvironment().getRequiredProperty("storage.local.path"));
+        int status;
+        try {
+            status = new LoadTestHarness(context).run();
+        } finally {
+            context.close();
+            // The schema is dropped with the context, the blobs would be orphans
+            FileSystemUtils.deleteRecursively(storage);
+        }
+        System.exit(status);
+    }
+
+    int run() throws Exception {
+        Duration warmup = env.getProperty("loadtest.warmup", Duration.class, Duration.ofSeconds(10));
+        Duration duration = env.getProperty("loadtest.duration", Duration.class, Duration.ofSeconds(60));
+        int virtualUsers = env.getProperty("loadtest.virtual-users", Integer.class, 16);
+        int listingFiles = env.getProperty("loadtest.listing-files", Integer.class, 10_000);
+
+        seedListingUser(listingFiles);
+
+        Instant startedAt = Instant.now();
+        long deadline = System.nanoTime() + warmup.toNanos() + duration.toNanos();
+        ResourceSampler sampler = new ResourceSampler();
+        long measureStart;
+        try (ExecutorService users = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < virtualUsers; i++) {
+                int index = i;
+                users.submit(() -> virtualUser(index, deadline));
+            }
+            log.info("{} virtual users started, warming up for {}", virtualUsers, warmup);
+            Thread.sleep(warmup.toMillis());
+            stats.values().forEach(OperationStats::reset);
+            sampler.start();
+            measureStart = System.nanoTime();
+            log.info("Measuring for {}", duration);
+        }
+        double seconds = (System.nanoTime() - measureStart) / 1e9;
+
+        List<LoadTestReport.OperationResult> results = new ArrayList<>();
+        for (OperationStats s : stats.values()) {
+            results.add(s.result(seconds));
+        }
+        LoadTestReport report = new LoadTestReport(startedAt, Math.round(seconds), virtualUsers,
+                env.getProperty("spring.datasource.url"), maxFileSize, listingFiles, results, sampler.stop());
+        Path output = Path.of(env.getProperty("loadtest.output-dir", "target/loadtest"));
+        report.write(output);
+        log.info("Report written to {}\n{}", output.toAbsolutePath(), report.summary());
+
+        double maxErrorRate = env.getProperty("loadtest.max-error-rate", Double.class, 0.01);
+        if (report.errorRate() > maxErrorRate) {
+            log.error("Error rate {} is above {}", report.errorRate(), maxErrorRate);
+            return 1;
+        }
+        return 0;
+    }
+
+    private void seedListingUser(int files) throws IOException, InterruptedException {
+        String email = "listing@loadtest.local";
+        listingJwt = register(email);
+        User user = context.getBean(UserRepository.class).findByEmail(email).orElseThrow();
+        FileRepository fileRepository = context.getBean(FileRepository.class);
+        LocalDateTime expiry = LocalDateTime.now().plusDays(7);
+        List<FileEntity> batch = new ArrayList<>(1000);
+        for (int i = 0; i < files; i++) {
+            FileEntity file = new FileEntity();
+            file.setName("archive-" + i + ".pdf");
+            file.setType("application/pdf");
+            file.setSize(1024L * (i % 5000 + 1));
+            file.setFilePath("seed/" + UUID.randomUUID());
+            file.setToken(UUID.randomUUID().toString());
+            file.setExpiredAt(expiry);
+            file.setUser(user);
+            batch.add(file);
+            if (batch.size() == 1000 || i == files - 1) {
+                fileRepository.saveAll(batch);
+                batch.clear();
+            }
+        }
+        log.info("Seeded {} files for {}", files, email);
+    }
+
+    private void virtualUser(int index, long deadline) {
+        SplittableRandom random = new SplittableRandom(index);
+        List<SharedFile> own = new ArrayList<>();
+        String jwt;
+        try {
+            jwt = register("vu" + index + "@loadtest.local");
+            for (int i = 0; i < PREFILL_UPLOADS; i++) {
+                upload(jwt, Math.min(sizes.next(random), PREFILL_MAX_SIZE), random, own);
+            }
+        } catch (IOException | InterruptedException e) {
+            log.error("Virtual user {} could not start", index, e);
+            return;
+        }
+
+        while (System.nanoTime() < deadline) {
+            Operation op = pick(random, own);
+            long start = System.nanoTime();
+            try {
+                switch (op) {
+                    case UPLOAD -> upload(jwt, sizes.next(random), random, own);
+                    case INFO -> info(own.get(random.nextInt(own.size())));
+                    case DOWNLOAD -> download(own.get(random.nextInt(own.size())));
+                    case LIST -> list();
+                    case DELETE -> delete(jwt, own.remove(random.nextInt(own.size())));
+                }
+            } catch (IOException e) {
+                stats.get(op).record(start, false, 0);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private Operation pick(SplittableRandom random, List<SharedFile> own) {
+        int total = 0;
+        for (int weight : mix) {
+            total += weight;
+        }
+        int roll = random.nextInt(total);
+        Operation op = Operation.UPLOAD;
+        for (Operation candidate : Operation.values()) {
+            roll -= mix[candidate.ordinal()];
+            if (roll < 0) {
+                op = candidate;
+                break;
+            }
+        }
+        if ((op == Operation.DELETE || op == Operation.INFO || op == Operation.DOWNLOAD) && own.isEmpty()) {
+            return Operation.UPLOAD;
+        }
+        return op;
+    }
+
+    private String register(String email) throws IOException, InterruptedException {
+        String body = mapper.writeValueAsString(Map.of("email", email, "password", PASSWORD));
+        HttpResponse<String> response = http.send(HttpRequest.newBuilder(base.resolve("/api/auth/register"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 201) {
+            throw new IOException("Registration of " + email + " failed: " + response.statusCode());
+        }
+        return mapper.readTree(response.body()).get("token").asString();
+    }
+
+    private void upload(String jwt, long size, SplittableRandom random, List<SharedFile> own)
+            throws IOException, InterruptedException {
+        String password = random.nextDouble() < passwordRatio ? PASSWORD : null;
+        String boundary = "datashare-" + Long.toHexString(random.nextLong());
+        StringBuilder head = new StringBuilder();
+        head.append("--").append(boundary).append("\r\n")
+                .append("Content-Disposition: form-data; name=\"expirationDays\"\r\n\r\n1\r\n");
+        if (password != null) {
+            head.append("--").append(boundary).append("\r\n")
+                    .append("Content-Disposition: form-data; name=\"password\"\r\n\r\n")
+                    .append(password).append("\r\n");
+        }
+        head.append("--").append(boundary).append("\r\n")
+                .append("Content-Disposition: form-data; name=\"file\"; filename=\"loadtest-")
+                .append(uploadSequence.incrementAndGet()).append(".bin\"\r\n")
+                .append("Content-Type: application/octet-stream\r\n\r\n");
+        byte[] headBytes = head.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] tailBytes = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+        long seed = random.nextLong();
+        HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.fromPublisher(
+                HttpRequest.BodyPublishers.concat(
+                        HttpRequest.BodyPublishers.ofByteArray(headBytes),
+                        HttpRequest.BodyPublishers.ofInputStream(() -> new GeneratedContent(size, seed)),
+                        HttpRequest.BodyPublishers.ofByteArray(tailBytes)),
+                headBytes.length + size + tailBytes.length);
+
+        long start = System.nanoTime();
+        HttpResponse<String> response = http.send(HttpRequest.newBuilder(base.resolve("/api/files"))
+                .header("Authorization", "Bearer " + jwt)
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .timeout(Duration.ofMinutes(10))
+                .POST(body)
+                .build(), HttpResponse.BodyHandlers.ofString());
+        boolean ok = response.statusCode() == 201;
+        stats.get(Operation.UPLOAD).record(start, ok, size);
+        if (ok) {
+            JsonNode json = mapper.readTree(response.body());
+            own.add(new SharedFile(json.get("id").asLong(), json.get("token").asString(), password));
+        }
+    }
+
+    private void info(SharedFile file) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpResponse<String> response = http.send(
+                HttpRequest.newBuilder(base.resolve("/api/files/download/" + file.token())).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        stats.get(Operation.INFO).record(start, response.statusCode() == 200, 0);
+    }
+
+    private void download(SharedFile file) throws IOException, InterruptedException {
+        String query = file.password() == null ? ""
+                : "?password=" + URLEncoder.encode(file.password(), StandardCharsets.UTF_8);
+        long start = System.nanoTime();
+        HttpResponse<InputStream> response = http.send(
+                HttpRequest.newBuilder(base.resolve("/api/files/download/" + file.token() + query))
+                        .timeout(Duration.ofMinutes(10))
+                        .POST(HttpRequest.BodyPublishers.noBody())
+                        .build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        long bytes;
+        try (InputStream in = response.body()) {
+            bytes = in.transferTo(OutputStream.nullOutputStream());
+        }
+        stats.get(Operation.DOWNLOAD).record(start, response.statusCode() == 200, bytes);
+    }
+
+    // One sample per page: the dashboard loads the next one as the user scrolls
+    private void list() throws IOException, InterruptedException {
+        String cursor = null;
+        for (int page = 0; page < listPages; page++) {
+            String query = "?limit=" + LIST_PAGE_SIZE
+                    + (cursor == null ? "" : "&cursor=" + URLEncoder.encode(cursor, StandardCharsets.UTF_8));
+            long start = System.nanoTime();
+            HttpResponse<InputStream> response = http.send(
+                    HttpRequest.newBuilder(base.resolve("/api/files" + query))
+                            .header("Authorization", "Bearer " + listingJwt)
+                            .GET()
+                            .build(),
+                    HttpResponse.BodyHandlers.ofInputStream());
+            long bytes;
+            try (InputStream in = response.body()) {
+                bytes = in.transferTo(OutputStream.nullOutputStream());
+            }
+            boolean ok = response.statusCode() == 200;
+            stats.get(Operation.LIST).record(start, ok, bytes);
+            cursor = response.headers().firstValue("X-Next-Cursor").orElse(null);
+            if (!ok || cursor == null) {
+                return;
+            }
+        }
+    }
+
+    private void delete(String jwt, SharedFile file) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpResponse<Void> response = http.send(HttpRequest.newBuilder(base.resolve("/api/files/" + file.id()))
+                        .header("Authorization", "Bearer " + jwt)
+                        .DELETE()
+                        .build(),
+                HttpResponse.BodyHandlers.discarding());
+        stats.get(Operation.DELETE).record(start, response.statusCode() == 204, 0);
+    }
+}
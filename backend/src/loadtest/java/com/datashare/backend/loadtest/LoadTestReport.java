@@ -0,0 +1,134 @@
+package com.datashare.backend.loadtest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+
+import tools.jackson.databind.SerializationFeature;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * Result of a run, written as {@code report.json} for tooling and
+ * {@code report.html} for humans. Latencies are in milliseconds.
+ */
+record LoadTestReport(
+        Instant startedAt,
+        long durationSeconds,
+        int virtualUsers,
+        String database,
+        long maxFileSize,
+        int listingFiles,
+        List<OperationResult> operations,
+        ResourceUsage resources
+) {
+
+    record OperationResult(
+            String name,
+            long count,
+            long errors,
+            double throughput,
+            double megabytesPerSecond,
+            double mean,
+            double p50,
+            double p90,
+            double p99,
+            double p999,
+            double max
+    ) {}
+
+    record ResourceUsage(
+            int processors,
+            double cpuAveragePercent,
+            double cpuMaxPercent,
+            long heapMaxUsedMb,
+            long heapLimitMb,
+            int threadsMax,
+            long openFilesMax,
+            long gcCount,
+            long gcTimeMs
+    ) {}
+
+    double errorRate() {
+        long count = operations.stream().mapToLong(OperationResult::count).sum();
+        long errors = operations.stream().mapToLong(OperationResult::errors).sum();
+        return count == 0 ? 0 : (double) errors / count;
+    }
+
+    void write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        JsonMapper mapper = JsonMapper.builder()
+                .enable(SerializationFeature.INDENT_OUTPUT)
+                .build();
+        Files.writeString(directory.resolve("report.json"), mapper.writeValueAsString(this));
+        Files.writeString(directory.resolve("report.html"), html());
+    }
+
+    String summary() {
+        StringBuilder out = new StringBuilder(String.format(Locale.ROOT,
+                "%-10s %9s %7s %9s %8s %9s %9s %9s %9s%n",
+                "operation", "count", "errors", "req/s", "MB/s", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        for (OperationResult op : operations) {
+            out.append(String.format(Locale.ROOT, "%-10s %9d %7d %9.1f %8.1f %9.2f %9.2f %9.2f %9.2f%n",
+                    op.name(), op.count(), op.errors(), op.throughput(), op.megabytesPerSecond(),
+                    op.p50(), op.p90(), op.p99(), op.max()));
+        }
+        out.append(String.format(Locale.ROOT, "CPU avg %.0f%% max %.0f%% (%d cores), heap max %d/%d MB, "
+                        + "threads max %d, open files max %d, GC %d (%d ms)",
+                resources.cpuAveragePercent(), resources.cpuMaxPercent(), resources.processors(),
+                resources.heapMaxUsedMb(), resources.heapLimitMb(), resources.threadsMax(),
+                resources.openFilesMax(), resources.gcCount(), resources.gcTimeMs()));
+        return out.toString();
+    }
+
+    private String html() {
+        StringBuilder rows = new StringBuilder();
+        for (OperationResult op : operations) {
+            rows.append(String.format(Locale.ROOT,
+                    "<tr><td>%s</td><td>%d</td><td>%d</td><td>%.1f</td><td>%.1f</td><td>%.2f</td>"
+                            + "<td>%.2f</td><td>%.2f</td><td>%.2f</td><td>%.2f</td><td>%.2f</td></tr>%n",
+                    op.name(), op.count(), op.errors(), op.throughput(), op.megabytesPerSecond(), op.mean(),
+                    op.p50(), op.p90(), op.p99(), op.p999(), op.max()));
+        }
+        return String.format(Locale.ROOT, """
+                <!DOCTYPE html>
+                <html lang="fr">
+                <head>
+                <meta charset="utf-8">
+                <title>DataShare - test de charge %s</title>
+                <style>
+                body { font-family: sans-serif; margin: 2rem; }
+                table { border-collapse: collapse; }
+                th, td { border: 1px solid #ccc; padding: .3rem .6rem; text-align: right; }
+                th:first-child, td:first-child { text-align: left; }
+                </style>
+                </head>
+                <body>
+                <h1>Test de charge DataShare</h1>
+                <p>%s &mdash; %d s mesurées, %d utilisateurs virtuels, base <code>%s</code>,
+                fichiers jusqu'à %d Mo, listing de %d fichiers. Taux d'erreur : %.2f %%.</p>
+                <h2>Opérations</h2>
+                <table>
+                <tr><th>Opération</th><th>Requêtes</th><th>Erreurs</th><th>req/s</th><th>Mo/s</th><th>Moyenne (ms)</th>
+                <th>p50</th><th>p90</th><th>p99</th><th>p99.9</th><th>Max</th></tr>
+                %s</table>
+                <h2>Ressources (processus)</h2>
+                <table>
+                <tr><td>CPU moyen / max</td><td>%.0f %% / %.0f %% (%d cœurs)</td></tr>
+                <tr><td>Heap max utilisé</td><td>%d Mo / %d Mo</td></tr>
+                <tr><td>Threads max</td><td>%d</td></tr>
+                <tr><td>Fichiers ouverts max</td><td>%d</td></tr>
+                <tr><td>GC</td><td>%d collections, %d ms</td></tr>
+                </table>
+                </body>
+                </html>
+                """,
+                startedAt, startedAt, durationSeconds, virtualUsers, database,
+                maxFileSize / (1024 * 1024), listingFiles, errorRate() * 100, rows,
+                resources.cpuAveragePercent(), resources.cpuMaxPercent(), resources.processors(),
+                resources.heapMaxUsedMb(), resources.heapLimitMb(), resources.threadsMax(),
+                resources.openFilesMax(), resources.gcCount(), resources.gcTimeMs());
+    }
+}
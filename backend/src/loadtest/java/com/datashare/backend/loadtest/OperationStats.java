@@ -0,0 +1,58 @@
+package com.datashare.backend.loadtest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latencies, errors and bytes transferred for one kind of operation. Recording
+ * is lock-free; {@link #reset()} drops what was recorded during warmup.
+ */
+class OperationStats {
+
+    private final String name;
+    private final Recorder latencies = new Recorder(TimeUnit.MINUTES.toMicros(30), 3);
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    OperationStats(String name) {
+        this.name = name;
+    }
+
+    String name() {
+        return name;
+    }
+
+    void record(long startNanos, boolean success, long transferred) {
+        latencies.recordValue(Math.max(1, (System.nanoTime() - startNanos) / 1000));
+        bytes.add(transferred);
+        if (!success) {
+            errors.increment();
+        }
+    }
+
+    void reset() {
+        latencies.getIntervalHistogram();
+        errors.reset();
+        bytes.reset();
+    }
+
+    LoadTestReport.OperationResult result(double seconds) {
+        Histogram h = latencies.getIntervalHistogram();
+        long count = h.getTotalCount();
+        return new LoadTestReport.OperationResult(
+                name,
+                count,
+                errors.sum(),
+                count / seconds,
+                bytes.sum() / seconds / (1024 * 1024),
+                h.getMean() / 1000,
+                h.getValueAtPercentile(50) / 1000.0,
+                h.getValueAtPercentile(90) / 1000.0,
+                h.getValueAtPercentile(99) / 1000.0,
+                h.getValueAtPercentile(99.9) / 1000.0,
+                h.getMaxValue() / 1000.0);
+    }
+}
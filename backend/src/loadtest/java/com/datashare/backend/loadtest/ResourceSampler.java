@@ -0,0 +1,92 @@
+package com.datashare.backend.loadtest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.management.OperatingSystemMXBean;
+import com.sun.management.UnixOperatingSystemMXBean;
+
+/**
+ * Samples the process once per second: CPU, heap, live threads, open file
+ * descriptors, and GC activity over the measured window.
+ */
+class ResourceSampler {
+
+    private final OperatingSystemMXBean os =
+            (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "loadtest-sampler");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private double cpuSum;
+    private double cpuMax;
+    private long heapMax;
+    private int threadsMax;
+    private long fdMax;
+    private int samples;
+    private long gcCountStart;
+    private long gcTimeStart;
+
+    synchronized void start() {
+        samples = 0;
+        cpuSum = 0;
+        cpuMax = 0;
+        heapMax = 0;
+        threadsMax = 0;
+        fdMax = 0;
+        gcCountStart = gcCount();
+        gcTimeStart = gcTime();
+        scheduler.scheduleAtFixedRate(this::sample, 1, 1, TimeUnit.SECONDS);
+    }
+
+    private synchronized void sample() {
+        double cpu = Math.max(0, os.getProcessCpuLoad()) * 100 * os.getAvailableProcessors();
+        cpuSum += cpu;
+        cpuMax = Math.max(cpuMax, cpu);
+        heapMax = Math.max(heapMax, memory.getHeapMemoryUsage().getUsed());
+        threadsMax = Math.max(threadsMax, threads.getThreadCount());
+        if (os instanceof UnixOperatingSystemMXBean unix) {
+            fdMax = Math.max(fdMax, unix.getOpenFileDescriptorCount());
+        }
+        samples++;
+    }
+
+    synchronized LoadTestReport.ResourceUsage stop() {
+        scheduler.shutdownNow();
+        return new LoadTestReport.ResourceUsage(
+                os.getAvailableProcessors(),
+                samples == 0 ? 0 : cpuSum / samples,
+                cpuMax,
+                heapMax / (1024 * 1024),
+                memory.getHeapMemoryUsage().getMax() / (1024 * 1024),
+                threadsMax,
+                fdMax,
+                gcCount() - gcCountStart,
+                gcTime() - gcTimeStart);
+    }
+
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    private static long gcTime() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+}
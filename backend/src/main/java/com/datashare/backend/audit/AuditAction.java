@@ -0,0 +1,7 @@
+package com.datashare.backend.audit;
+
+public enum AuditAction {
+    UPLOAD,
+    DOWNLOAD,
+    DELETE
+}
@@ -0,0 +1,14 @@
+package com.datashare.backend.audit;
+
+/**
+ * One audited action, as published by a request thread. The actor is the
+ * authenticated user's email, null for an anonymous download by link.
+ */
+public record AuditEvent(
+        long timestamp,
+        AuditAction action,
+        String actor,
+        Long fileId,
+        String token,
+        String ip
+) {}
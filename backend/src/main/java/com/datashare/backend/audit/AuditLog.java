@@ -0,0 +1,235 @@
+package com.datashare.backend.audit;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * The audit trail of uploads, downloads and deletes. Request threads only put
+ * an event in a lock-free {@link AuditRingBuffer}; a single writer thread drains
+ * it and appends each batch to {@code audit_log} in one JDBC batch. A download
+ * then costs no database round-trip, and a slow database fills the buffer
+ * rather than the request latency, until the {@link AuditOverflow} policy
+ * applies.
+ * <p>
+ * A share token is a bearer secret: the trail keeps only its HMAC-SHA256 under
+ * {@code audit.token-key}, enough to find the rows of a known link but not to
+ * download anything from a copy of the table.
+ */
+@Service
+public class AuditLog {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditLog.class);
+
+    private static final String INSERT_SQL =
+            "insert into audit_log (occurred_at, action, actor, file_id, token_hash, ip) values (?, ?, ?, ?, ?, ?)";
+    private static final long BLOCK_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long RETRY_DELAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final AuditOverflow overflow;
+    private final int sampleEvery;
+    private final int batchSize;
+    private final long pollNanos;
+    // Used by the writer thread only
+    private final Mac tokenMac;
+
+    private final AuditRingBuffer<AuditEvent> buffer;
+    private final int highWater;
+    private final AtomicLong overflowing = new AtomicLong();
+
+    private final Counter published;
+    private final Counter droppedFull;
+    private final Counter droppedSampled;
+    private final Counter written;
+    private final Counter writeFailures;
+    private final Timer writeTime;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public AuditLog(JdbcTemplate jdbcTemplate,
+                    TransactionTemplate transactionTemplate,
+                    MeterRegistry meterRegistry,
+                    @Value("${audit.enabled:true}") boolean enabled,
+                    @Value("${audit.buffer-size:65536}") int bufferSize,
+                    @Value("${audit.overflow:SAMPLE}") AuditOverflow overflow,
+                    @Value("${audit.sample-every:10}") int sampleEvery,
+                    @Value("${audit.batch-size:500}") int batchSize,
+                    @Value("${audit.poll-interval-ms:100}") long pollIntervalMs,
+                    @Value("${audit.token-key:${jwt.secret}}") String tokenKey) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.overflow = overflow;
+        this.sampleEvery = sampleEvery;
+        this.batchSize = batchSize;
+        this.pollNanos = TimeUnit.MILLISECONDS.toNanos(pollIntervalMs);
+        this.tokenMac = tokenMac(tokenKey);
+        this.buffer = new AuditRingBuffer<>(bufferSize);
+        this.highWater = bufferSize / 4 * 3;
+
+        this.published = Counter.builder("audit.events.published")
+                .description("Audit events accepted in the buffer")
+                .register(meterRegistry);
+        this.droppedFull = Counter.builder("audit.events.dropped")
+                .description("Audit events lost because the buffer could not take them")
+                .tag("reason", "full")
+                .register(meterRegistry);
+        this.droppedSampled = Counter.builder("audit.events.dropped")
+                .description("Audit events lost because the buffer could not take them")
+                .tag("reason", "sampled")
+                .register(meterRegistry);
+        this.written = Counter.builder("audit.events.written")
+                .description("Audit events appended to audit_log")
+                .register(meterRegistry);
+        this.writeFailures = Counter.builder("audit.write.failures")
+                .description("Audit batches that could not be written and were retried")
+                .register(meterRegistry);
+        this.writeTime = Timer.builder("audit.write")
+                .description("Time to append one batch of audit events")
+                .register(meterRegistry);
+        Gauge.builder("audit.buffer.size", buffer, AuditRingBuffer::size)
+                .description("Audit events waiting for the writer")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (enabled && writer == null) {
+            running = true;
+            writer = Thread.ofPlatform().name("audit-writer").daemon().start(this::run);
+        }
+    }
+
+    public void record(AuditAction action, String actor, Long fileId, String token, String ip) {
+        if (enabled) {
+            publish(new AuditEvent(System.currentTimeMillis(), action, actor, fileId, token, ip));
+        }
+    }
+
+    void publish(AuditEvent event) {
+        if (overflow == AuditOverflow.SAMPLE && buffer.size() >= highWater
+                && overflowing.getAndIncrement() % sampleEvery != 0) {
+            droppedSampled.increment();
+            return;
+        }
+        if (buffer.offer(event)) {
+            published.increment();
+            return;
+        }
+        if (overflow == AuditOverflow.BLOCK) {
+            while (running) {
+                LockSupport.parkNanos(BLOCK_WAIT_NANOS);
+                if (buffer.offer(event)) {
+                    published.increment();
+                    return;
+                }
+            }
+        }
+        droppedFull.increment();
+    }
+
+    private void run() {
+        List<AuditEvent> batch = new ArrayList<>(batchSize);
+        while (running) {
+            if (buffer.drainTo(batch, batchSize) == 0) {
+                LockSupport.parkNanos(pollNanos);
+                continue;
+            }
+            // A failed batch is kept and retried: the buffer fills meanwhile, and the overflow policy applies
+            while (!write(batch) && running) {
+                LockSupport.parkNanos(RETRY_DELAY_NANOS);
+            }
+            batch.clear();
+        }
+        // One last attempt for what is left at shutdown
+        if (!batch.isEmpty()) {
+            write(batch);
+            batch.clear();
+        }
+        while (buffer.drainTo(batch, batchSize) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private boolean write(List<AuditEvent> batch) {
+        long start = System.nanoTime();
+        try {
+            transactionTemplate.executeWithoutResult(tx ->
+                    jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, event) -> {
+                        ps.setTimestamp(1, new Timestamp(event.timestamp()));
+                        ps.setString(2, event.action().name());
+                        ps.setString(3, event.actor());
+                        if (event.fileId() != null) {
+                            ps.setLong(4, event.fileId());
+                        } else {
+                            ps.setNull(4, Types.BIGINT);
+                        }
+                        ps.setString(5, hashToken(event.token()));
+                        ps.setString(6, event.ip());
+                    }));
+        } catch (RuntimeException e) {
+            writeFailures.increment();
+            log.warn("Could not write {} audit events, retrying", batch.size(), e);
+            return false;
+        }
+        writeTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        written.increment(batch.size());
+        return true;
+    }
+
+    String hashToken(String token) {
+        return token != null ? HexFormat.of().formatHex(tokenMac.doFinal(token.getBytes(StandardCharsets.UTF_8))) : null;
+    }
+
+    private static Mac tokenMac(String key) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        Thread current;
+        synchronized (this) {
+            running = false;
+            current = writer;
+        }
+        if (current != null) {
+            LockSupport.unpark(current);
+            current.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+}
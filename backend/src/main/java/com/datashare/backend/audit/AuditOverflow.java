@@ -0,0 +1,11 @@
+package com.datashare.backend.audit;
+
+/** What a request thread does with an audit event when the buffer cannot take it. */
+public enum AuditOverflow {
+    /** Waits for the writer to make room: nothing is lost, requests slow down with the database. */
+    BLOCK,
+    /** Drops the event. */
+    DROP,
+    /** Keeps one event in {@code audit.sample-every} once the buffer is three quarters full, drops when full. */
+    SAMPLE
+}
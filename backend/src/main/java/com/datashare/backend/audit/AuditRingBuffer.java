@@ -0,0 +1,87 @@
+package com.datashare.backend.audit;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free queue for many producers and a single consumer, on an
+ * array of power-of-two size. Each slot carries a sequence number: a producer
+ * claims a position with one CAS on the tail and publishes its element by
+ * advancing the slot's sequence; the consumer takes elements in position order
+ * and hands the slot back to the next lap the same way. Nothing is allocated
+ * per element, and a full buffer is reported rather than waited on.
+ */
+final class AuditRingBuffer<T> {
+
+    private final Object[] elements;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    // Written by the consumer only; read by producers to size the buffer
+    private final AtomicLong head = new AtomicLong();
+
+    AuditRingBuffer(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.elements = new Object[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /** Adds the element, or returns {@code false} at once if the buffer is full. */
+    boolean offer(T element) {
+        long position = tail.get();
+        while (true) {
+            int slot = (int) (position & mask);
+            long difference = sequences.getAcquire(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements[slot] = element;
+                    sequences.setRelease(slot, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The slot still holds the element of the previous lap
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /** Moves up to {@code max} elements, oldest first, to {@code sink}. Single consumer only. */
+    @SuppressWarnings("unchecked")
+    int drainTo(List<T> sink, int max) {
+        long position = head.get();
+        int drained = 0;
+        while (drained < max) {
+            int slot = (int) (position & mask);
+            // A producer that claimed this position may not have published yet: stop there
+            if (sequences.getAcquire(slot) != position + 1) {
+                break;
+            }
+            sink.add((T) elements[slot]);
+            elements[slot] = null;
+            sequences.setRelease(slot, position + elements.length);
+            position++;
+            drained++;
+        }
+        head.setRelease(position);
+        return drained;
+    }
+
+    /** Elements claimed and not yet drained; approximate while producers run. */
+    int size() {
+        return (int) Math.max(0, tail.get() - head.getAcquire());
+    }
+
+    int capacity() {
+        return elements.length;
+    }
+}
@@ -0,0 +1,76 @@
+package com.datashare.backend.config;
+
+import java.time.Duration;
+import java.util.OptionalLong;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.hibernate.autoconfigure.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+
+/**
+ * Hibernate's second-level cache, in process on Caffeine. Every region is
+ * created here, bounded in entries and with a time to live; Hibernate refuses
+ * to start if an entity asks for a region not listed. The time to live bounds
+ * how long another instance may serve a file this one tombstoned.
+ */
+@Configuration
+public class CacheConfig {
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "cache.l2.enabled", havingValue = "true", matchIfMissing = true)
+    public CacheManager hibernateCacheManager(@Value("${cache.l2.users.max-size:10000}") long usersMaxSize,
+                                              @Value("${cache.l2.users.ttl:PT1H}") Duration usersTtl,
+                                              @Value("${cache.l2.files.max-size:100000}") long filesMaxSize,
+                                              @Value("${cache.l2.files.ttl:PT1M}") Duration filesTtl,
+                                              @Value("${cache.l2.tags.max-size:200000}") long tagsMaxSize) {
+        CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(provider.getDefaultURI(), getClass().getClassLoader());
+        region(cacheManager, "users", usersMaxSize, usersTtl);
+        region(cacheManager, "users-by-email", usersMaxSize, usersTtl);
+        region(cacheManager, "files", filesMaxSize, filesTtl);
+        region(cacheManager, "files-by-token", filesMaxSize, filesTtl);
+        // Tags go with their file: same time to live
+        region(cacheManager, "file-tags", filesMaxSize, filesTtl);
+        region(cacheManager, "tags", tagsMaxSize, filesTtl);
+        return cacheManager;
+    }
+
+    private static void region(CacheManager cacheManager, String name, long maxSize, Duration ttl) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setMaximumSize(OptionalLong.of(maxSize));
+        configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+        if (cacheManager.getCache(name) != null) {
+            cacheManager.destroyCache(name);
+        }
+        cacheManager.createCache(name, configuration);
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheCustomizer(ObjectProvider<CacheManager> hibernateCacheManager) {
+        return properties -> {
+            CacheManager cacheManager = hibernateCacheManager.getIfAvailable();
+            // Hibernate would otherwise pick up the JCache provider on its own, with unbounded regions
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, cacheManager != null);
+            if (cacheManager == null) {
+                return;
+            }
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+            properties.put(ConfigSettings.CACHE_MANAGER, cacheManager);
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+            // Hit and miss counts per region, exported by SecondLevelCacheMetrics
+            properties.put(AvailableSettings.GENERATE_STATISTICS, true);
+        };
+    }
+}
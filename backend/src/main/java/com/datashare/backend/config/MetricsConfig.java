@@ -0,0 +1,29 @@
+package com.datashare.backend.config;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.hibernate.autoconfigure.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.multipart.MultipartResolver;
+import org.springframework.web.servlet.DispatcherServlet;
+
+import com.datashare.backend.metrics.QueryCounter;
+import com.datashare.backend.metrics.TimedMultipartResolver;
+
+@Configuration
+public class MetricsConfig {
+
+    @Bean(name = DispatcherServlet.MULTIPART_RESOLVER_BEAN_NAME)
+    public MultipartResolver multipartResolver(
+            @Value("${spring.servlet.multipart.resolve-lazily:false}") boolean resolveLazily) {
+        TimedMultipartResolver resolver = new TimedMultipartResolver();
+        resolver.setResolveLazily(resolveLazily);
+        return resolver;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer queryCounterCustomizer() {
+        return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, new QueryCounter());
+    }
+}
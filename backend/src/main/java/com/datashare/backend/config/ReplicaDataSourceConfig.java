@@ -0,0 +1,80 @@
+package com.datashare.backend.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.jdbc.autoconfigure.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.datashare.backend.datasource.ReplicaCacheGuard;
+import com.datashare.backend.datasource.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+
+/**
+ * Replaces the auto-configured datasource when {@code datasource.replicas.urls}
+ * is set. Connections are fetched lazily, so a transaction marked
+ * {@code readOnly} gets its connection from {@link ReplicaRoutingDataSource}
+ * and any other from the primary. Replica reads do not fill the second-level
+ * cache ({@link ReplicaCacheGuard}).
+ */
+@Configuration
+@ConditionalOnExpression("!'${datasource.replicas.urls:}'.isBlank()")
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(
+            DataSourceProperties properties,
+            MeterRegistry meterRegistry,
+            @Value("${datasource.replicas.urls}") List<String> urls,
+            @Value("${datasource.replicas.username:}") String username,
+            @Value("${datasource.replicas.password:}") String password,
+            @Value("${datasource.replicas.read-your-writes-window:PT10S}") Duration readYourWritesWindow,
+            @Value("${datasource.replicas.lag-query:}") String lagQuery,
+            @Value("${datasource.replicas.max-lag:PT30S}") Duration maxLag) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primary.setPoolName("primary");
+        primary.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+
+        List<DataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + i);
+            replica.setJdbcUrl(urls.get(i).trim());
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setUsername(username.isBlank() ? properties.determineUsername() : username);
+            replica.setPassword(username.isBlank() ? properties.determinePassword() : password);
+            replica.setReadOnly(true);
+            // Do not fail startup when a replica is down: the health check takes it out of rotation
+            replica.setInitializationFailTimeout(-1);
+            replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            replicas.add(replica);
+        }
+        return new ReplicaRoutingDataSource(primary, replicas, readYourWritesWindow, lagQuery, maxLag);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource routing) {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(routing.primary());
+        proxy.setReadOnlyDataSource(routing);
+        return proxy;
+    }
+
+    // Picked up by the auto-configured transaction manager, as every TransactionExecutionListener bean
+    @Bean
+    public ReplicaCacheGuard replicaCacheGuard(EntityManager entityManager) {
+        return new ReplicaCacheGuard(entityManager);
+    }
+}
@@ -1,11 +1,14 @@
 package com.datashare.backend.controller;
 
-import java.net.MalformedURLException;
-import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HexFormat;
 import java.util.List;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -15,23 +18,54 @@ import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.datashare.backend.audit.AuditAction;
+import com.datashare.backend.audit.AuditLog;
+import com.datashare.backend.dto.BulkDeleteRequest;
+import com.datashare.backend.dto.BulkDeleteResponse;
 import com.datashare.backend.dto.FileInfoResponse;
 import com.datashare.backend.dto.FileUploadResponse;
+import com.datashare.backend.dto.TagFacetResponse;
+import com.datashare.backend.dto.UsageStatsResponse;
+import com.datashare.backend.service.FileDownload;
+import com.datashare.backend.service.FilePage;
 import com.datashare.backend.service.FileService;
+import com.datashare.backend.service.FileStatusFilter;
+import com.datashare.backend.service.ShareInfo;
+import com.datashare.backend.service.TagMatch;
+import com.datashare.backend.storage.DownloadOffload;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
 
 @RestController
 @RequestMapping("/api/files")
 public class FileController {
 
+    public static final String NEXT_CURSOR = "X-Next-Cursor";
+
     private final FileService fileService;
+    private final DownloadOffload downloadOffload;
+    private final AuditLog auditLog;
+    private final Duration infoMaxAge;
+    private final Duration contentMaxAge;
 
-    public FileController(FileService fileService) {
+    public FileController(FileService fileService,
+                          DownloadOffload downloadOffload,
+                          AuditLog auditLog,
+                          @Value("${http-cache.info-max-age:PT1M}") Duration infoMaxAge,
+                          @Value("${http-cache.content-max-age:PT10M}") Duration contentMaxAge) {
         this.fileService = fileService;
+        this.downloadOffload = downloadOffload;
+        this.auditLog = auditLog;
+        this.infoMaxAge = infoMaxAge;
+        this.contentMaxAge = contentMaxAge;
     }
 
     @PostMapping
@@ -40,50 +74,190 @@ public class FileController {
             @RequestParam(value = "expirationDays", required = false) Integer expirationDays,
             @RequestParam(value = "password", required = false) String password,
             @RequestParam(value = "tags", required = false) List<String> tags,
-            Authentication authentication) {
+            Authentication authentication,
+            HttpServletRequest request) {
 
         String userEmail = authentication.getName();
         FileUploadResponse response = fileService.upload(file, userEmail, expirationDays, password, tags);
+        auditLog.record(AuditAction.UPLOAD, userEmail, response.id(), response.token(), request.getRemoteAddr());
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
 
     @GetMapping
-    public ResponseEntity<List<FileUploadResponse>> getUserFiles(Authentication authentication) {
+    public ResponseEntity<List<FileUploadResponse>> getUserFiles(
+            @RequestParam(value = "status", defaultValue = "all") String status,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "50") int limit,
+            Authentication authentication) {
+        String userEmail = authentication.getName();
+        FilePage page = fileService.getUserFiles(userEmail, FileStatusFilter.from(status), cursor, limit);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR, page.nextCursor());
+        }
+        return response.body(page.files());
+    }
+
+    @GetMapping(value = "/search", params = "tags")
+    public ResponseEntity<List<FileUploadResponse>> searchByTags(
+            @RequestParam("tags") List<String> tags,
+            @RequestParam(value = "match", defaultValue = "all") String match,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "50") int limit,
+            Authentication authentication) {
+        String userEmail = authentication.getName();
+        FilePage page = fileService.searchByTags(userEmail, tags, TagMatch.from(match), cursor, limit);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR, page.nextCursor());
+        }
+        return response.body(page.files());
+    }
+
+    @GetMapping(value = "/search", params = "q")
+    public ResponseEntity<List<FileUploadResponse>> searchByName(
+            @RequestParam("q") String query,
+            @RequestParam(value = "limit", defaultValue = "50") int limit,
+            Authentication authentication) {
+        String userEmail = authentication.getName();
+        return ResponseEntity.ok(fileService.searchByName(userEmail, query, limit).files());
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<UsageStatsResponse> getUsageStats(Authentication authentication) {
+        return ResponseEntity.ok(fileService.getUsageStats(authentication.getName()));
+    }
+
+    @GetMapping("/tags")
+    public ResponseEntity<List<TagFacetResponse>> getTagFacets(
+            @RequestParam(value = "prefix", defaultValue = "") String prefix,
+            @RequestParam(value = "limit", defaultValue = "20") int limit,
+            Authentication authentication) {
         String userEmail = authentication.getName();
-        List<FileUploadResponse> files = fileService.getUserFiles(userEmail);
-        return ResponseEntity.ok(files);
+        return ResponseEntity.ok(fileService.getTagFacets(userEmail, prefix, limit));
     }
 
     @GetMapping("/download/{token}")
     public ResponseEntity<FileInfoResponse> getFileInfo(@PathVariable String token) {
-        FileInfoResponse info = fileService.getFileInfo(token);
-        return ResponseEntity.ok(info);
+        ShareInfo shareInfo = fileService.getShareInfo(token);
+        FileInfoResponse info = shareInfo.info();
+
+        CacheControl cacheControl;
+        if (info.expired()) {
+            cacheControl = CacheControl.noCache();
+        } else {
+            cacheControl = cacheUntil(info.expiredAt(), infoMaxAge);
+            cacheControl = info.passwordProtected() ? cacheControl.cachePrivate() : cacheControl.cachePublic();
+        }
+        // A matching If-None-Match or If-Modified-Since turns this into a 304 without a body
+        return ResponseEntity.ok()
+                .eTag(shareInfo.etag())
+                .lastModified(shareInfo.lastModified() != null ? shareInfo.lastModified().toEpochMilli() : -1)
+                .cacheControl(cacheControl)
+                .body(info);
+    }
+
+    /**
+     * Cacheable download of a file without password. The blob behind a token never
+     * changes, but the owner may delete it at any time: shared caches keep it for
+     * {@code http-cache.content-max-age} at most, never past its expiry, and not
+     * as immutable. Revalidation answers 304 before the resource, a lazy handle,
+     * is ever opened.
+     */
+    @GetMapping("/download/{token}/content")
+    public ResponseEntity<Resource> downloadFileContent(@PathVariable String token, HttpServletRequest request) {
+        FileDownload download = fileService.authorizeDownload(token, null);
+        CacheControl cacheControl = cacheUntil(download.expiredAt(), contentMaxAge).cachePublic();
+
+        // Decided here rather than after the handler, so that a 304 never carries an offload header
+        long lastModified = download.lastModified() != null ? download.lastModified().toEpochMilli() : -1;
+        if (new ServletWebRequest(request).checkNotModified(download.etag(), lastModified)) {
+            return validators(ResponseEntity.status(HttpStatus.NOT_MODIFIED), download)
+                    .cacheControl(cacheControl)
+                    .build();
+        }
+        // Only a served body is a download: a revalidation is the cache's copy being reused
+        fileService.recordDownload(download.fileId(), token);
+        auditLog.record(AuditAction.DOWNLOAD, null, download.fileId(), token, request.getRemoteAddr());
+        return serve(download, content(download).cacheControl(cacheControl));
     }
 
     @PostMapping("/download/{token}")
     public ResponseEntity<Resource> downloadFile(
             @PathVariable String token,
-            @RequestParam(value = "password", required = false) String password) {
-
-        Path filePath = fileService.downloadFile(token, password);
-        String fileName = fileService.getFileName(token);
-        String contentType = fileService.getFileContentType(token);
-
-        try {
-            Resource resource = new UrlResource(filePath.toUri());
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(contentType != null ? contentType : "application/octet-stream"))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
-                    .body(resource);
-        } catch (MalformedURLException e) {
-            throw new RuntimeException("Could not read file", e);
+            @RequestParam(value = "password", required = false) String password,
+            HttpServletRequest request) {
+
+        FileDownload download = fileService.downloadFile(token, password);
+        auditLog.record(AuditAction.DOWNLOAD, null, download.fileId(), token, request.getRemoteAddr());
+
+        // A POST is never answered from a cache, and a password-protected body must not be stored either
+        CacheControl cacheControl = download.passwordProtected()
+                ? CacheControl.noStore().cachePrivate()
+                : CacheControl.noCache();
+        return serve(download, content(download).cacheControl(cacheControl));
+    }
+
+    private static ResponseEntity.BodyBuilder content(FileDownload download) {
+        String contentType = download.contentType();
+
+        ResponseEntity.BodyBuilder response = validators(ResponseEntity.ok(), download)
+                .contentType(MediaType.parseMediaType(contentType != null ? contentType : "application/octet-stream"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + download.name() + "\"");
+        if (download.checksum() != null) {
+            response.header("Digest", "sha-256=" + Base64.getEncoder().encodeToString(
+                    HexFormat.of().parseHex(download.checksum())));
         }
+        return response;
+    }
+
+    private static ResponseEntity.BodyBuilder validators(ResponseEntity.BodyBuilder response, FileDownload download) {
+        response.eTag(download.etag());
+        if (download.lastModified() != null) {
+            response.lastModified(download.lastModified());
+        }
+        return response;
+    }
+
+    // The reverse proxy streams the blob when offload is on; the resource is then never opened
+    private ResponseEntity<Resource> serve(FileDownload download, ResponseEntity.BodyBuilder response) {
+        HttpHeaders offload = new HttpHeaders();
+        if (downloadOffload.apply(download.storedName(), offload)) {
+            return response.headers(offload).build();
+        }
+        return response.body(download.resource());
+    }
+
+    // Never let a cache serve a link past its expiry
+    private static CacheControl cacheUntil(LocalDateTime expiredAt, Duration maxAge) {
+        Duration remaining = Duration.between(LocalDateTime.now(), expiredAt);
+        if (remaining.isNegative() || remaining.isZero()) {
+            return CacheControl.noCache();
+        }
+        return CacheControl.maxAge(remaining.compareTo(maxAge) < 0 ? remaining : maxAge);
     }
 
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteFile(@PathVariable Long id, Authentication authentication) {
+    public ResponseEntity<Void> deleteFile(@PathVariable Long id, Authentication authentication,
+                                           HttpServletRequest servletRequest) {
         String userEmail = authentication.getName();
         fileService.deleteFile(id, userEmail);
+        auditLog.record(AuditAction.DELETE, userEmail, id, null, servletRequest.getRemoteAddr());
         return ResponseEntity.noContent().build();
     }
+
+    @DeleteMapping
+    public ResponseEntity<BulkDeleteResponse> deleteFiles(@Valid @RequestBody BulkDeleteRequest request,
+                                                          Authentication authentication,
+                                                          HttpServletRequest servletRequest) {
+        String userEmail = authentication.getName();
+        List<Long> deleted = fileService.deleteFiles(request.ids(), userEmail);
+        // Only the files actually tombstoned: ids of other users or already deleted change nothing
+        for (Long id : deleted) {
+            auditLog.record(AuditAction.DELETE, userEmail, id, null, servletRequest.getRemoteAddr());
+        }
+        return ResponseEntity.ok(new BulkDeleteResponse(deleted.size()));
+    }
 }
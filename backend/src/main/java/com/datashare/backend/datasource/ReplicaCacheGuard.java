@@ -0,0 +1,45 @@
+package com.datashare.backend.datasource;
+
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.transaction.TransactionExecution;
+import org.springframework.transaction.TransactionExecutionListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import jakarta.persistence.EntityManager;
+
+/**
+ * Keeps replica reads out of Hibernate's second-level cache. A read-only
+ * transaction sent to a replica may see a row as it was before the last
+ * commits, such as a file not tombstoned yet; put in the shared cache, that
+ * row would be served to every request until its time to live. Such a
+ * transaction still reads the cache, but only primary reads fill it.
+ */
+public class ReplicaCacheGuard implements TransactionExecutionListener {
+
+    private final EntityManager entityManager;
+
+    public ReplicaCacheGuard(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public void afterBegin(TransactionExecution transaction, Throwable beginFailure) {
+        if (beginFailure != null || !transaction.isNewTransaction() || !transaction.isReadOnly()
+                || !ReplicaRouting.enabled() || ReplicaRouting.primaryRequired()
+                || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        // The session may outlive the transaction (open in view): its mode is restored at completion
+        Session session = entityManager.unwrap(Session.class);
+        CacheMode previous = session.getCacheMode();
+        session.setCacheMode(CacheMode.GET);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                session.setCacheMode(previous);
+            }
+        });
+    }
+}
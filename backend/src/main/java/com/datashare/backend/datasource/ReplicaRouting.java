@@ -0,0 +1,108 @@
+package com.datashare.backend.datasource;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Decides when a read-only transaction must still go to the primary. A user
+ * who committed a write within the read-your-writes window reads from the
+ * primary, so that a fresh upload shows up in their listing whatever the
+ * replica lag; {@link #onPrimary} forces the primary for one lookup.
+ *
+ * <p>Disabled (every method is a no-op) until {@link #enable} is called, which
+ * only happens when replicas are configured.
+ */
+public final class ReplicaRouting {
+
+    private static final int PRUNE_THRESHOLD = 10_000;
+
+    private static final ThreadLocal<Boolean> forcePrimary = new ThreadLocal<>();
+    private static final ConcurrentHashMap<String, Long> recentWrites = new ConcurrentHashMap<>();
+    private static volatile long windowNanos;
+
+    private ReplicaRouting() {
+    }
+
+    static void enable(Duration readYourWritesWindow) {
+        windowNanos = Math.max(1, readYourWritesWindow.toNanos());
+    }
+
+    static void disable() {
+        windowNanos = 0;
+        recentWrites.clear();
+    }
+
+    public static boolean enabled() {
+        return windowNanos > 0;
+    }
+
+    /**
+     * Sends {@code user}'s reads to the primary for the window, starting when
+     * the current transaction commits (immediately outside a transaction).
+     */
+    public static void recordWrite(String user) {
+        if (!enabled() || user == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    markWrite(user);
+                }
+            });
+        } else {
+            markWrite(user);
+        }
+    }
+
+    private static void markWrite(String user) {
+        long now = System.nanoTime();
+        recentWrites.put(user, now + windowNanos);
+        if (recentWrites.size() > PRUNE_THRESHOLD) {
+            recentWrites.values().removeIf(until -> until - now < 0);
+        }
+    }
+
+    /**
+     * Retries a lookup that found nothing on the primary: a row missing from a
+     * replica may just not have been replicated yet.
+     */
+    public static <T> Optional<T> orOnPrimary(Optional<T> result, Supplier<Optional<T>> lookup) {
+        if (result.isPresent() || !enabled()) {
+            return result;
+        }
+        return onPrimary(lookup);
+    }
+
+    public static <T> T onPrimary(Supplier<T> action) {
+        Boolean previous = forcePrimary.get();
+        forcePrimary.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                forcePrimary.remove();
+            }
+        }
+    }
+
+    static boolean primaryRequired() {
+        if (forcePrimary.get() != null) {
+            return true;
+        }
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null) {
+            return false;
+        }
+        Long until = recentWrites.get(authentication.getName());
+        return until != null && until - System.nanoTime() > 0;
+    }
+}
@@ -0,0 +1,172 @@
+package com.datashare.backend.datasource;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Read-only side of the datasource: round-robin over the healthy replicas,
+ * falling back to the primary when none is healthy, when a replica refuses a
+ * connection, or when {@link ReplicaRouting} requires it.
+ *
+ * <p>Replicas are probed periodically; one is taken out of rotation when its
+ * connection is invalid or, if a lag query is configured, when its replication
+ * lag exceeds the maximum.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    static final String PRIMARY = "primary";
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final String lagQuery;
+    private final double maxLagSeconds;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas,
+                                    Duration readYourWritesWindow, String lagQuery, Duration maxLag) {
+        this.primary = primary;
+        this.replicas = replicas.stream().map(Replica::new).toList();
+        this.lagQuery = lagQuery == null || lagQuery.isBlank() ? null : lagQuery;
+        this.maxLagSeconds = maxLag.toMillis() / 1000.0;
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            targets.put(i, replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+        ReplicaRouting.enable(readYourWritesWindow);
+    }
+
+    public DataSource primary() {
+        return primary;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (ReplicaRouting.primaryRequired()) {
+            return PRIMARY;
+        }
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) % size;
+            if (replicas.get(index).healthy) {
+                return index;
+            }
+        }
+        return PRIMARY;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Object key = determineCurrentLookupKey();
+        if (key instanceof Integer index) {
+            try {
+                return replicas.get(index).dataSource.getConnection();
+            } catch (SQLException e) {
+                markDown(index, e.getMessage());
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection();
+    }
+
+    @Scheduled(initialDelayString = "${datasource.replicas.health-check-interval-ms:5000}",
+               fixedDelayString = "${datasource.replicas.health-check-interval-ms:5000}")
+    public void checkHealth() {
+        for (int i = 0; i < replicas.size(); i++) {
+            String problem = probe(replicas.get(i).dataSource);
+            if (problem == null) {
+                markUp(i);
+            } else {
+                markDown(i, problem);
+            }
+        }
+    }
+
+    private String probe(DataSource replica) {
+        try (Connection connection = replica.getConnection()) {
+            if (!connection.isValid(2)) {
+                return "connection is not valid";
+            }
+            if (lagQuery != null) {
+                try (Statement statement = connection.createStatement();
+                     ResultSet rs = statement.executeQuery(lagQuery)) {
+                    double lag = rs.next() ? rs.getDouble(1) : 0;
+                    if (lag > maxLagSeconds) {
+                        return "replication lag is " + lag + " s";
+                    }
+                }
+            }
+            return null;
+        } catch (SQLException e) {
+            return e.getMessage();
+        }
+    }
+
+    private void markDown(int index, String reason) {
+        Replica replica = replicas.get(index);
+        if (replica.healthy) {
+            replica.healthy = false;
+            log.warn("Read replica {} taken out of rotation: {}", index, reason);
+        }
+    }
+
+    private void markUp(int index) {
+        Replica replica = replicas.get(index);
+        if (!replica.healthy) {
+            replica.healthy = true;
+            log.info("Read replica {} back in rotation", index);
+        }
+    }
+
+    boolean isHealthy(int index) {
+        return replicas.get(index).healthy;
+    }
+
+    @Override
+    public void close() throws Exception {
+        ReplicaRouting.disable();
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+        if (primary instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private static final class Replica {
+
+        private final DataSource dataSource;
+        private volatile boolean healthy = true;
+
+        private Replica(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+    }
+}
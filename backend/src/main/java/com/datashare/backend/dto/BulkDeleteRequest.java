@@ -0,0 +1,10 @@
+package com.datashare.backend.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public record BulkDeleteRequest(
+        @NotEmpty @Size(max = 1000) List<Long> ids
+) {}
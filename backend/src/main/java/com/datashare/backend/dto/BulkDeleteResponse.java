@@ -0,0 +1,3 @@
+package com.datashare.backend.dto;
+
+public record BulkDeleteResponse(int deleted) {}
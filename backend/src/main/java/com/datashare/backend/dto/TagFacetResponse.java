@@ -0,0 +1,6 @@
+package com.datashare.backend.dto;
+
+public record TagFacetResponse(
+        String name,
+        long count
+) {}
@@ -0,0 +1,11 @@
+package com.datashare.backend.dto;
+
+import java.util.Map;
+
+public record UsageStatsResponse(
+        long usedBytes,
+        long quotaBytes,
+        long fileCount,
+        Map<String, Long> filesByType,
+        long bytesExpiringWithin24h
+) {}
@@ -0,0 +1,41 @@
+package com.datashare.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A row of the append-only audit trail: written in batches by the audit writer
+ * with JDBC, never updated nor deleted by the application. Mapped only so that
+ * the schema creates the table.
+ */
+@Entity
+@Table(name = "audit_log")
+@Getter
+@NoArgsConstructor
+public class AuditEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "occurred_at", nullable = false)
+    private LocalDateTime occurredAt;
+
+    @Column(nullable = false, length = 16)
+    private String action;
+
+    private String actor;
+
+    @Column(name = "file_id")
+    private Long fileId;
+
+    // HMAC-SHA256 of the share token, in hex: the token itself is never stored
+    @Column(name = "token_hash", length = 64)
+    private String tokenHash;
+
+    @Column(length = 45)
+    private String ip;
+}
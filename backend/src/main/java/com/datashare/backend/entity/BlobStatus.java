@@ -0,0 +1,7 @@
+package com.datashare.backend.entity;
+
+public enum BlobStatus {
+    OK,
+    CORRUPT,
+    MISSING
+}
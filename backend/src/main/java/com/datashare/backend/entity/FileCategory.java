@@ -0,0 +1,40 @@
+package com.datashare.backend.entity;
+
+import java.util.Locale;
+
+/** Coarse kind of a file, derived from its content type, by which usage is broken down. */
+public enum FileCategory {
+    IMAGE,
+    VIDEO,
+    AUDIO,
+    DOCUMENT,
+    ARCHIVE,
+    OTHER;
+
+    public static FileCategory of(String contentType) {
+        if (contentType == null) {
+            return OTHER;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        if (type.startsWith("image/")) {
+            return IMAGE;
+        }
+        if (type.startsWith("video/")) {
+            return VIDEO;
+        }
+        if (type.startsWith("audio/")) {
+            return AUDIO;
+        }
+        if (type.startsWith("text/") || type.equals("application/pdf") || type.equals("application/msword")
+                || type.equals("application/rtf") || type.startsWith("application/vnd.openxmlformats-officedocument")
+                || type.startsWith("application/vnd.oasis.opendocument") || type.startsWith("application/vnd.ms-")) {
+            return DOCUMENT;
+        }
+        if (type.equals("application/zip") || type.equals("application/gzip") || type.equals("application/x-tar")
+                || type.equals("application/x-7z-compressed") || type.equals("application/vnd.rar")
+                || type.equals("application/x-rar-compressed") || type.equals("application/x-bzip2")) {
+            return ARCHIVE;
+        }
+        return OTHER;
+    }
+}
@@ -4,13 +4,30 @@ import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "files")
+@Table(name = "files", indexes = {
+        // Serves the dashboard's keyset pages, newest first
+        @Index(name = "idx_files_user_created", columnList = "user_id, created_at, id"),
+        // Serves the usage stats' bytes expiring soon
+        @Index(name = "idx_files_user_expiry", columnList = "user_id, expired_at"),
+        // Serves the expiry wheel's loads of the files expiring next
+        @Index(name = "idx_files_expiry", columnList = "expired_at")
+})
+// Share-link lookups by token; only the tombstone and blob status change after upload
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "files")
+@NaturalIdCache(region = "files-by-token")
 @Getter
 @Setter
 @NoArgsConstructor
@@ -32,9 +49,17 @@ public class FileEntity {
     @Column(name = "file_path", nullable = false, unique = true)
     private String filePath;
 
+    @NaturalId
     @Column(nullable = false, unique = true)
     private String token;
 
+    @Column(length = 64)
+    private String checksum;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "blob_status", length = 16)
+    private BlobStatus blobStatus = BlobStatus.OK;
+
     private String password;
 
     @Setter(lombok.AccessLevel.NONE)
@@ -44,15 +69,35 @@ public class FileEntity {
     @Column(name = "expired_at", nullable = false)
     private LocalDateTime expiredAt;
 
+    @Column(name = "deleted_at")
+    private LocalDateTime deletedAt;
+
+    // Written only by DownloadCounter's batched updates: an entity update must never put back a stale value
+    @ColumnDefault("0")
+    @Column(name = "download_count", nullable = false, updatable = false)
+    private long downloadCount;
+
+    @Column(name = "last_downloaded_at", updatable = false)
+    private LocalDateTime lastDownloadedAt;
+
+    // Failed blob deletions of a tombstoned file, written only by FilePurgeService's bulk update
+    @ColumnDefault("0")
+    @Column(name = "purge_attempts", nullable = false, updatable = false)
+    private int purgeAttempts;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
     private User user;
 
+    // Loads the tags of a whole page in one query instead of one per file
+    @BatchSize(size = 200)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "file-tags")
     @OneToMany(mappedBy = "file", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<Tag> tags = new ArrayList<>();
 
     @PrePersist
     protected void onCreate() {
-        this.createdAt = LocalDateTime.now();
+        // The database keeps microseconds; a finer value would not match its own row in a listing cursor
+        this.createdAt = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
     }
 }
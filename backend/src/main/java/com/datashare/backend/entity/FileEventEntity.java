@@ -0,0 +1,51 @@
+package com.datashare.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
+
+import java.time.LocalDateTime;
+
+/**
+ * A file lifecycle event in the outbox: written in the transaction of the change
+ * it records, deleted once delivered to every consumer. File and owner are plain
+ * ids, without foreign keys: the event may outlive the file's row. An event
+ * that failed too many times is parked: kept, but no longer delivered.
+ */
+@Entity
+@Table(name = "file_events")
+@Getter
+@Setter
+@NoArgsConstructor
+public class FileEventEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private FileEventType type;
+
+    @Column(name = "file_id", nullable = false)
+    private Long fileId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(nullable = false)
+    private long amount;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // Failed deliveries so far; the outbox inserts through JDBC and leaves it to the default
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "parked_at")
+    private LocalDateTime parkedAt;
+}
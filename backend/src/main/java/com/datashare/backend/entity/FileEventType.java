@@ -0,0 +1,13 @@
+package com.datashare.backend.entity;
+
+/** What happened to a file; {@link FileEventEntity#getAmount()} depends on it. */
+public enum FileEventType {
+    /** Amount: the file size in bytes. */
+    UPLOADED,
+    /** Amount: the downloads counted since the previous event, one event per download flush. */
+    DOWNLOADED,
+    /** Amount: the file size in bytes. */
+    DELETED,
+    /** Amount: the file size in bytes. */
+    EXPIRED
+}
@@ -0,0 +1,24 @@
+package com.datashare.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * Where the blob scrub sweep stands, shared by every instance: a single row,
+ * moved past each batch by the instance that claims it. Mapped only so that the
+ * schema creates the table.
+ */
+@Entity
+@Table(name = "scrub_cursor")
+@Getter
+@NoArgsConstructor
+public class ScrubCursor {
+
+    @Id
+    private Long id;
+
+    // Id of the last file claimed in the current sweep, 0 at the start of a sweep
+    @Column(name = "after_id", nullable = false)
+    private long afterId;
+}
@@ -4,11 +4,17 @@ import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Entity
 @Table(name = "tags", uniqueConstraints = {
     @UniqueConstraint(columnNames = {"file_id", "name"})
+}, indexes = {
+    // Files by tag, for tag search
+    @Index(name = "idx_tags_user_tag_file", columnList = "user_tag_id, file_id")
 })
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "tags")
 @Getter
 @Setter
 @NoArgsConstructor
@@ -25,8 +31,19 @@ public class Tag {
     @JoinColumn(name = "file_id", nullable = false)
     private FileEntity file;
 
+    // Null only for rows written before the tag dictionary, until TagDictionary backfills them
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_tag_id")
+    private UserTag userTag;
+
     public Tag(String name, FileEntity file) {
         this.name = name;
         this.file = file;
     }
+
+    public Tag(String name, FileEntity file, UserTag userTag) {
+        this.name = name;
+        this.file = file;
+        this.userTag = userTag;
+    }
 }
@@ -0,0 +1,40 @@
+package com.datashare.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * One distinct tag of a user, under its normalized name. Files point to it
+ * through {@link Tag}; {@code fileCount} is the number of live files carrying
+ * it, kept up to date on upload and delete so that facets never count rows.
+ */
+@Entity
+@Table(name = "user_tags", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_user_tags_user_name", columnNames = {"user_id", "name"})
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class UserTag {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @Column(nullable = false, length = 30)
+    private String name;
+
+    @Column(name = "file_count", nullable = false)
+    private long fileCount;
+
+    public UserTag(User user, String name) {
+        this.user = user;
+        this.name = name;
+    }
+}
@@ -0,0 +1,42 @@
+package com.datashare.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/** The share of a user's {@link UserUsage} taken by one {@link FileCategory}. */
+@Entity
+@Table(name = "user_type_usage", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_user_type_usage_user_category", columnNames = {"user_id", "category"})
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class UserTypeUsage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private FileCategory category;
+
+    @Column(name = "file_count", nullable = false)
+    private long fileCount;
+
+    @Column(nullable = false)
+    private long bytes;
+
+    public UserTypeUsage(User user, FileCategory category, long fileCount, long bytes) {
+        this.user = user;
+        this.category = category;
+        this.fileCount = fileCount;
+        this.bytes = bytes;
+    }
+}
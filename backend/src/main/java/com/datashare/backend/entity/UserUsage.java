@@ -0,0 +1,48 @@
+package com.datashare.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Bytes and live files a user currently stores, moved by uploads and deletes in
+ * their own transaction so that a quota check reads one row. {@code quotaBytes}
+ * overrides the default quota for this user when set.
+ */
+@Entity
+@Table(name = "user_usage")
+@Getter
+@Setter
+@NoArgsConstructor
+public class UserUsage {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @MapsId
+    @OneToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id")
+    private User user;
+
+    @Column(name = "used_bytes", nullable = false)
+    private long usedBytes;
+
+    @Column(name = "file_count", nullable = false)
+    private long fileCount;
+
+    @Column(name = "quota_bytes")
+    private Long quotaBytes;
+
+    @Column(name = "reconciled_at")
+    private LocalDateTime reconciledAt;
+
+    public UserUsage(User user, long usedBytes, long fileCount) {
+        this.user = user;
+        this.usedBytes = usedBytes;
+        this.fileCount = fileCount;
+    }
+}
@@ -0,0 +1,7 @@
+package com.datashare.backend.exception;
+
+public class BlobUnavailableException extends RuntimeException {
+    public BlobUnavailableException(String message) {
+        super(message);
+    }
+}
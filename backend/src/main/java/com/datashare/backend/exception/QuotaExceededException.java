@@ -0,0 +1,7 @@
+package com.datashare.backend.exception;
+
+public class QuotaExceededException extends RuntimeException {
+    public QuotaExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,35 @@
+package com.datashare.backend.metrics;
+
+import java.util.List;
+
+import org.jspecify.annotations.Nullable;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import com.datashare.backend.service.DownloadCounter;
+import com.datashare.backend.service.HotDownload;
+
+/**
+ * {@code GET /actuator/hotdownloads?limit=20} on the management port: the share
+ * links downloaded the most over {@code downloads.hot.window} (one minute by
+ * default), for operators watching a link go viral.
+ */
+@Component
+@Endpoint(id = "hotdownloads")
+public class HotDownloadsEndpoint {
+
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int MAX_LIMIT = 1000;
+
+    private final DownloadCounter downloadCounter;
+
+    public HotDownloadsEndpoint(DownloadCounter downloadCounter) {
+        this.downloadCounter = downloadCounter;
+    }
+
+    @ReadOperation
+    public List<HotDownload> hotDownloads(@Nullable Integer limit) {
+        return downloadCounter.hottest(limit == null ? DEFAULT_LIMIT : Math.clamp(limit, 1, MAX_LIMIT));
+    }
+}
@@ -0,0 +1,60 @@
+package com.datashare.backend.metrics;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Records how many SQL statements each request ran, tagged with the matched
+ * route like {@code http.server.requests}. Summaries are cached per route so the
+ * hot path only does a map lookup.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class QueryCountFilter extends OncePerRequestFilter {
+
+    private final MeterRegistry registry;
+    private final ConcurrentMap<String, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+    public QueryCountFilter(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        QueryCounter.reset();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            summary(pattern != null ? pattern.toString() : "UNKNOWN").record(QueryCounter.current());
+        }
+    }
+
+    private DistributionSummary summary(String uri) {
+        DistributionSummary summary = summaries.get(uri);
+        if (summary == null) {
+            summary = summaries.computeIfAbsent(uri, key -> DistributionSummary.builder("http.server.requests.queries")
+                    .description("SQL statements executed per request")
+                    .baseUnit("statements")
+                    .tag("uri", key)
+                    .register(registry));
+        }
+        return summary;
+    }
+}
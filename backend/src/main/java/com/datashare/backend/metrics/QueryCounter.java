@@ -0,0 +1,26 @@
+package com.datashare.backend.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts the SQL statements Hibernate prepares on the current thread. The count
+ * lives in a per-thread {@code long[1]}, so counting a statement allocates nothing.
+ */
+public class QueryCounter implements StatementInspector {
+
+    private static final ThreadLocal<long[]> COUNT = ThreadLocal.withInitial(() -> new long[1]);
+
+    @Override
+    public String inspect(String sql) {
+        COUNT.get()[0]++;
+        return sql;
+    }
+
+    public static void reset() {
+        COUNT.get()[0] = 0;
+    }
+
+    public static long current() {
+        return COUNT.get()[0];
+    }
+}
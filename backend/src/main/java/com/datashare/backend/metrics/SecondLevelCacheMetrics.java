@@ -0,0 +1,57 @@
+package com.datashare.backend.metrics;
+
+import java.util.function.ToLongFunction;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Exports Hibernate's second-level cache statistics: hits, misses and puts per
+ * region. Nothing is registered when the cache is disabled.
+ */
+@Component
+public class SecondLevelCacheMetrics implements MeterBinder {
+
+    private final Statistics statistics;
+
+    public SecondLevelCacheMetrics(EntityManagerFactory entityManagerFactory) {
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (!statistics.isStatisticsEnabled()) {
+            return;
+        }
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(region);
+            if (regionStatistics == null) {
+                continue;
+            }
+            requests(registry, region, "hit", regionStatistics, CacheRegionStatistics::getHitCount);
+            requests(registry, region, "miss", regionStatistics, CacheRegionStatistics::getMissCount);
+            FunctionCounter.builder("hibernate.second.level.cache.puts", regionStatistics,
+                            CacheRegionStatistics::getPutCount)
+                    .description("Entries put in the second-level cache region")
+                    .tag("region", region)
+                    .register(registry);
+        }
+    }
+
+    private static void requests(MeterRegistry registry, String region, String result,
+                                 CacheRegionStatistics regionStatistics,
+                                 ToLongFunction<CacheRegionStatistics> count) {
+        FunctionCounter.builder("hibernate.second.level.cache.requests", regionStatistics, s -> count.applyAsLong(s))
+                .description("Lookups in the second-level cache region, by result")
+                .tag("region", region)
+                .tag("result", result)
+                .register(registry);
+    }
+}
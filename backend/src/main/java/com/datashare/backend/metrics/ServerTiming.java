@@ -0,0 +1,116 @@
+package com.datashare.backend.metrics;
+
+import java.util.Locale;
+
+/**
+ * Per-request phase timings, reported in the {@code Server-Timing} header.
+ *
+ * <p>Code on the request path brackets a phase with {@link #start()} and
+ * {@link #stop(String, long)}. Durations are accumulated per phase name in a
+ * fixed-size per-thread recorder, so recording allocates nothing. Only
+ * {@link ServerTimingFilter} opens a recorder, when the feature is enabled; with
+ * none open (feature disabled, scheduled jobs, benchmarks) {@code start()}
+ * returns 0 after a thread-local read and {@code stop} returns immediately.
+ */
+public final class ServerTiming {
+
+    private static final int MAX_PHASES = 16;
+    private static final ThreadLocal<Recorder> CURRENT = ThreadLocal.withInitial(Recorder::new);
+
+    private ServerTiming() {
+    }
+
+    public static long start() {
+        return CURRENT.get().active ? System.nanoTime() : 0L;
+    }
+
+    public static void stop(String phase, long start) {
+        if (start == 0L) {
+            return;
+        }
+        Recorder recorder = CURRENT.get();
+        if (recorder.active) {
+            recorder.add(phase, System.nanoTime() - start);
+        }
+    }
+
+    /** Opens the recorder of this thread; an unexposed request is timed for the log only, without header. */
+    static Recorder begin(boolean exposed) {
+        Recorder recorder = CURRENT.get();
+        recorder.size = 0;
+        recorder.exposed = exposed;
+        recorder.headerWritten = false;
+        recorder.startNanos = System.nanoTime();
+        recorder.active = true;
+        return recorder;
+    }
+
+    static Recorder current() {
+        Recorder recorder = CURRENT.get();
+        return recorder.active ? recorder : null;
+    }
+
+    static final class Recorder {
+
+        private final String[] names = new String[MAX_PHASES];
+        private final long[] nanos = new long[MAX_PHASES];
+        private int size;
+        private long startNanos;
+        private boolean active;
+        private boolean exposed;
+        boolean headerWritten;
+
+        private void add(String phase, long elapsed) {
+            for (int i = 0; i < size; i++) {
+                if (names[i].equals(phase)) {
+                    nanos[i] += elapsed;
+                    return;
+                }
+            }
+            if (size < MAX_PHASES) {
+                names[size] = phase;
+                nanos[size++] = elapsed;
+            }
+        }
+
+        /** Whether the header is still to be added to this response. */
+        boolean headerPending() {
+            return exposed && !headerWritten;
+        }
+
+        long elapsedNanos() {
+            return System.nanoTime() - startNanos;
+        }
+
+        void end() {
+            active = false;
+        }
+
+        String header() {
+            StringBuilder header = new StringBuilder(32 * (size + 1));
+            for (int i = 0; i < size; i++) {
+                appendMetric(header, names[i], nanos[i]).append(", ");
+            }
+            return appendMetric(header, "total", elapsedNanos()).toString();
+        }
+
+        String logFields() {
+            StringBuilder fields = new StringBuilder(24 * size);
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
+                    fields.append(' ');
+                }
+                fields.append(names[i]).append("_ms=").append(millis(nanos[i]));
+            }
+            return fields.toString();
+        }
+
+        private static StringBuilder appendMetric(StringBuilder header, String name, long elapsed) {
+            return header.append(name).append(";dur=").append(millis(elapsed));
+        }
+
+        private static String millis(long elapsed) {
+            return String.format(Locale.ROOT, "%.1f", elapsed / 1_000_000.0);
+        }
+    }
+}
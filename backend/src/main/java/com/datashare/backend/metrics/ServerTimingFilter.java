@@ -0,0 +1,72 @@
+package com.datashare.backend.metrics;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Opens the phase recorder for each API request, adds the {@code Server-Timing}
+ * header when the response has no body (bodies get it from
+ * {@link ServerTimingAdvice} before they are written) and logs requests slower
+ * than {@code server-timing.slow-threshold-ms}.
+ *
+ * <p>Public download routes are timed for the log but get no header: their
+ * {@code file-lookup} and {@code bcrypt} phases would tell an anonymous caller
+ * whether a token exists and how its password check went.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    static final String HEADER = "Server-Timing";
+
+    private static final String PUBLIC_DOWNLOADS = "/api/files/download/";
+
+    private static final Logger log = LoggerFactory.getLogger(ServerTimingFilter.class);
+
+    private final boolean enabled;
+    private final long slowThresholdNanos;
+
+    public ServerTimingFilter(@Value("${server-timing.enabled:true}") boolean enabled,
+                              @Value("${server-timing.slow-threshold-ms:1000}") long slowThresholdMs) {
+        this.enabled = enabled;
+        this.slowThresholdNanos = slowThresholdMs * 1_000_000L;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        ServerTiming.Recorder recorder = ServerTiming.begin(!request.getRequestURI().startsWith(PUBLIC_DOWNLOADS));
+        try {
+            filterChain.doFilter(request, response);
+            if (recorder.headerPending() && !response.isCommitted()) {
+                response.addHeader(HEADER, recorder.header());
+            }
+        } finally {
+            long elapsed = recorder.elapsedNanos();
+            if (elapsed >= slowThresholdNanos) {
+                log.warn("Slow request method={} uri={} status={} total_ms={} {}",
+                        request.getMethod(), request.getRequestURI(), response.getStatus(),
+                        elapsed / 1_000_000, recorder.logFields());
+            }
+            recorder.end();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.datashare.backend.metrics;
+
+import org.springframework.web.multipart.MultipartException;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+import org.springframework.web.multipart.support.StandardServletMultipartResolver;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Reports the time the container spends reading and spooling a multipart body.
+ */
+public class TimedMultipartResolver extends StandardServletMultipartResolver {
+
+    @Override
+    public MultipartHttpServletRequest resolveMultipart(HttpServletRequest request) throws MultipartException {
+        long start = ServerTiming.start();
+        try {
+            return super.resolveMultipart(request);
+        } finally {
+            ServerTiming.stop("multipart", start);
+        }
+    }
+}
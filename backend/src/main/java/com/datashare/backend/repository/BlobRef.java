@@ -0,0 +1,12 @@
+package com.datashare.backend.repository;
+
+import java.time.LocalDateTime;
+
+import com.datashare.backend.entity.BlobStatus;
+
+public record BlobRef(
+        Long id,
+        String filePath,
+        LocalDateTime deletedAt,
+        BlobStatus blobStatus
+) {}
@@ -0,0 +1,10 @@
+package com.datashare.backend.repository;
+
+import java.time.LocalDateTime;
+
+/** A live file and when its share link expires. */
+public record ExpiringFile(
+        Long fileId,
+        Long userId,
+        LocalDateTime expiredAt
+) {}
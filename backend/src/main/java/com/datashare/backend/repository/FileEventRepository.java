@@ -0,0 +1,41 @@
+package com.datashare.backend.repository;
+
+import com.datashare.backend.entity.FileEventEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface FileEventRepository extends JpaRepository<FileEventEntity, Long> {
+
+    // Rows claimed by another dispatcher are skipped rather than waited for; parked rows are never claimed
+    @Query(value = "select * from file_events where parked_at is null order by id limit :limit "
+            + "for update skip locked", nativeQuery = true)
+    List<FileEventEntity> claimBatch(@Param("limit") int limit);
+
+    // Earlier events of these files that the batch did not claim: another dispatcher holds them.
+    // A parked event no longer holds back the file's later ones
+    @Query("select distinct e.fileId from FileEventEntity e "
+            + "where e.fileId in :fileIds and e.id < :lastId and e.id not in :claimedIds and e.parkedAt is null")
+    List<Long> findFilesWithEarlierEvents(@Param("fileIds") Collection<Long> fileIds,
+                                          @Param("lastId") Long lastId,
+                                          @Param("claimedIds") Collection<Long> claimedIds);
+
+    @Modifying
+    @Query("delete from FileEventEntity e where e.id in :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("update FileEventEntity e set e.attempts = e.attempts + 1 where e.id in :ids")
+    int recordFailedAttempt(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("update FileEventEntity e set e.parkedAt = :now where e.id in :ids and e.attempts >= :maxAttempts")
+    int parkExhausted(@Param("ids") Collection<Long> ids,
+                      @Param("maxAttempts") int maxAttempts,
+                      @Param("now") LocalDateTime now);
+}
@@ -1,17 +1,160 @@
 package com.datashare.backend.repository;
 
 import com.datashare.backend.entity.FileEntity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.jpa.SpecHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface FileRepository extends JpaRepository<FileEntity, Long> {
+public interface FileRepository extends JpaRepository<FileEntity, Long>, FileRepositoryCustom {
 
-    Optional<FileEntity> findByToken(String token);
+    // Keyset pages of a user's files, newest first, starting strictly after (createdAt, id)
+    @Query("select f from FileEntity f where f.user.id = :userId and f.deletedAt is null "
+            + "and (f.createdAt < :createdAt or (f.createdAt = :createdAt and f.id < :id)) "
+            + "order by f.createdAt desc, f.id desc")
+    List<FileEntity> findPage(@Param("userId") Long userId,
+                              @Param("createdAt") LocalDateTime createdAt,
+                              @Param("id") Long id,
+                              Limit limit);
 
-    List<FileEntity> findByUserIdOrderByCreatedAtDesc(Long userId);
+    @Query("select f from FileEntity f where f.user.id = :userId and f.deletedAt is null and f.expiredAt > :now "
+            + "and (f.createdAt < :createdAt or (f.createdAt = :createdAt and f.id < :id)) "
+            + "order by f.createdAt desc, f.id desc")
+    List<FileEntity> findActivePage(@Param("userId") Long userId,
+                                    @Param("now") LocalDateTime now,
+                                    @Param("createdAt") LocalDateTime createdAt,
+                                    @Param("id") Long id,
+                                    Limit limit);
+
+    @Query("select f from FileEntity f where f.user.id = :userId and f.deletedAt is null and f.expiredAt <= :now "
+            + "and (f.createdAt < :createdAt or (f.createdAt = :createdAt and f.id < :id)) "
+            + "order by f.createdAt desc, f.id desc")
+    List<FileEntity> findExpiredPage(@Param("userId") Long userId,
+                                     @Param("now") LocalDateTime now,
+                                     @Param("createdAt") LocalDateTime createdAt,
+                                     @Param("id") Long id,
+                                     Limit limit);
+
+    // Candidate files come from the (user_tag_id, file_id) index; "all" asks for every tag, "any" for one
+    @Query("select f from FileEntity f where f.user.id = :userId and f.deletedAt is null "
+            + "and f.id in (select t.file.id from Tag t where t.userTag.id in :tagIds "
+            + "group by t.file.id having count(distinct t.userTag.id) >= :required) "
+            + "and (f.createdAt < :createdAt or (f.createdAt = :createdAt and f.id < :id)) "
+            + "order by f.createdAt desc, f.id desc")
+    List<FileEntity> findPageByTags(@Param("userId") Long userId,
+                                    @Param("tagIds") Collection<Long> tagIds,
+                                    @Param("required") long required,
+                                    @Param("createdAt") LocalDateTime createdAt,
+                                    @Param("id") Long id,
+                                    Limit limit);
+
+    // Cold-user fallback for name search: like FileNameIndex, the words of the name and of the tags together
+    @Query(value = "select * from files f where f.user_id = :userId and f.deleted_at is null "
+            + "and to_tsvector('simple', translate(f.name || coalesce((select ' ' || string_agg(t.name, ' ') "
+            + "from tags t where t.file_id = f.id), ''), '._-', '   ')) @@ to_tsquery('simple', :query) "
+            + "order by f.created_at desc, f.id desc limit :limit", nativeQuery = true)
+    List<FileEntity> searchByNameFullText(@Param("userId") Long userId,
+                                          @Param("query") String query,
+                                          @Param("limit") int limit);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select new com.datashare.backend.repository.NameEntry(f.id, f.name) "
+            + "from FileEntity f where f.user.id = :userId and f.deletedAt is null")
+    Stream<NameEntry> streamNames(@Param("userId") Long userId);
+
+    @Query("select new com.datashare.backend.repository.NameEntry(f.id, f.name) "
+            + "from FileEntity f where f.user.id = :userId and f.createdAt > :since and f.deletedAt is null")
+    Stream<NameEntry> streamNamesCreatedAfter(@Param("userId") Long userId, @Param("since") LocalDateTime since);
+
+    @Query("select new com.datashare.backend.repository.TypeTotal(f.type, count(f), sum(f.size)) "
+            + "from FileEntity f where f.user.id = :userId and f.deletedAt is null group by f.type")
+    List<TypeTotal> sumLiveByType(@Param("userId") Long userId);
+
+    // Files tombstoned together share their deletedAt, which picks exactly the rows one bulk delete marked
+    @Query("select new com.datashare.backend.repository.TypeTotal(f.type, count(f), sum(f.size)) "
+            + "from FileEntity f where f.user.id = :userId and f.id in :ids and f.deletedAt = :deletedAt "
+            + "group by f.type")
+    List<TypeTotal> sumDeletedByType(@Param("userId") Long userId,
+                                     @Param("ids") Collection<Long> ids,
+                                     @Param("deletedAt") LocalDateTime deletedAt);
+
+    @Query("select f.id from FileEntity f where f.user.id = :userId and f.id in :ids and f.deletedAt = :deletedAt")
+    List<Long> findIdsDeletedAt(@Param("userId") Long userId,
+                                @Param("ids") Collection<Long> ids,
+                                @Param("deletedAt") LocalDateTime deletedAt);
+
+    // Bounded by the (user_id, expired_at) index to the files expiring within the window
+    @Query("select coalesce(sum(f.size), 0) from FileEntity f where f.user.id = :userId and f.deletedAt is null "
+            + "and f.expiredAt > :from and f.expiredAt <= :until")
+    long sumExpiringBetween(@Param("userId") Long userId,
+                            @Param("from") LocalDateTime from,
+                            @Param("until") LocalDateTime until);
 
     List<FileEntity> findByExpiredAtBefore(LocalDateTime dateTime);
+
+    // Range scan on idx_files_expiry: only the files expiring within the window are read
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select new com.datashare.backend.repository.ExpiringFile(f.id, f.user.id, f.expiredAt) "
+            + "from FileEntity f where f.deletedAt is null and f.expiredAt > :from and f.expiredAt <= :until")
+    Stream<ExpiringFile> streamExpiringBetween(@Param("from") LocalDateTime from,
+                                               @Param("until") LocalDateTime until);
+
+    @Query("select new com.datashare.backend.repository.ExpiringFile(f.id, f.user.id, f.expiredAt) "
+            + "from FileEntity f where f.deletedAt is null and f.expiredAt <= :now order by f.expiredAt")
+    List<ExpiringFile> findExpired(@Param("now") LocalDateTime now, Limit limit);
+
+    @Query("select new com.datashare.backend.repository.ExpiringFile(f.id, f.user.id, f.expiredAt) "
+            + "from FileEntity f where f.id in :ids and f.deletedAt is null and f.expiredAt <= :now")
+    List<ExpiringFile> findExpiredIn(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    // A blob that keeps failing sends its row behind the others, then out of the purge
+    @Query("select f from FileEntity f where f.deletedAt is not null and f.purgeAttempts < :maxAttempts "
+            + "order by f.purgeAttempts, f.deletedAt")
+    List<FileEntity> findPurgeBatch(@Param("maxAttempts") int maxAttempts, Limit limit);
+
+    // With partitioning, files tombstoned at or after their expiry are dropped with their partition instead
+    @Query("select f from FileEntity f where f.deletedAt is not null and f.deletedAt < f.expiredAt "
+            + "and f.purgeAttempts < :maxAttempts order by f.purgeAttempts, f.deletedAt")
+    List<FileEntity> findDeletedBeforeExpiry(@Param("maxAttempts") int maxAttempts, Limit limit);
+
+    // The scrubber reads every file once per pass: kept out of the second-level cache
+    @QueryHints(@QueryHint(name = SpecHints.HINT_SPEC_CACHE_STORE_MODE, value = "BYPASS"))
+    @Query("select f from FileEntity f where f.id > :afterId and f.deletedAt is null order by f.id")
+    List<FileEntity> findScrubBatch(@Param("afterId") Long afterId, Limit limit);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select new com.datashare.backend.repository.BlobRef(f.id, f.filePath, f.deletedAt, f.blobStatus) "
+            + "from FileEntity f where f.filePath like :prefix order by f.filePath")
+    Stream<BlobRef> streamBlobRefs(@Param("prefix") String prefix);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select new com.datashare.backend.repository.BlobRef(f.id, f.filePath, f.deletedAt, f.blobStatus) "
+            + "from FileEntity f where f.filePath not like '%/%' order by f.filePath")
+    Stream<BlobRef> streamUnshardedBlobRefs();
+
+    boolean existsByFilePath(String filePath);
+
+    long countByDeletedAtIsNull();
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select f.token from FileEntity f where f.deletedAt is null")
+    Stream<String> streamLiveTokens();
+
+    @Query("select coalesce(max(f.id), 0) from FileEntity f")
+    long findMaxId();
+
+    // Files created since a rebuild, possibly by another instance: a primary-key range scan
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select new com.datashare.backend.repository.ShareTokenRef(f.id, f.token) "
+            + "from FileEntity f where f.id > :afterId and f.deletedAt is null order by f.id")
+    Stream<ShareTokenRef> streamTokensAfter(@Param("afterId") long afterId);
 }
@@ -0,0 +1,32 @@
+package com.datashare.backend.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Optional;
+
+import com.datashare.backend.entity.BlobStatus;
+import com.datashare.backend.entity.FileEntity;
+
+/**
+ * Lookups by natural id, and the bulk writes on {@code files}. Those go through
+ * JDBC: after a JPQL update or delete, Hibernate empties the whole second-level
+ * cache region of the entity, while these evict only the files they change.
+ */
+public interface FileRepositoryCustom {
+
+    /** The live file shared under {@code token}. */
+    Optional<FileEntity> findByToken(String token);
+
+    /** Tombstones the user's files among {@code ids} that are still live; returns how many. */
+    int markDeleted(Collection<Long> ids, Long userId, LocalDateTime deletedAt);
+
+    int updateBlobStatus(Long id, BlobStatus status);
+
+    /** Stores the checksum of a file uploaded before checksums existed, unless one was stored since. */
+    int backfillChecksum(Long id, String checksum);
+
+    int recordFailedPurge(Collection<Long> ids);
+
+    /** Deletes the rows of purged files, with their tags. */
+    int deletePurged(Collection<Long> ids);
+}
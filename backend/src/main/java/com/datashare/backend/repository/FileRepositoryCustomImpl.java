@@ -0,0 +1,154 @@
+package com.datashare.backend.repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.hibernate.Cache;
+import org.hibernate.Session;
+import org.hibernate.cache.spi.access.NaturalIdDataAccess;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.datashare.backend.entity.BlobStatus;
+import com.datashare.backend.entity.FileEntity;
+
+import jakarta.persistence.EntityManager;
+
+class FileRepositoryCustomImpl implements FileRepositoryCustom {
+
+    private static final String TAGS_ROLE = FileEntity.class.getName() + ".tags";
+
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+
+    FileRepositoryCustomImpl(EntityManager entityManager, JdbcTemplate jdbcTemplate) {
+        this.entityManager = entityManager;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // By natural id, so that a hot link is answered by the second-level cache. A tombstone evicts the
+    // file it marks: the deletedAt checked here is never stale.
+    // Read-only so that share-link lookups outside a service transaction go to a replica
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<FileEntity> findByToken(String token) {
+        return entityManager.unwrap(Session.class).bySimpleNaturalId(FileEntity.class).loadOptional(token)
+                .filter(file -> file.getDeletedAt() == null);
+    }
+
+    // findByToken loads by natural id, which returns an entity already in the session as is: the
+    // tombstoned files must not stay there
+    @Override
+    @Transactional
+    public int markDeleted(Collection<Long> ids, Long userId, LocalDateTime deletedAt) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        entityManager.flush();
+        List<Object> args = new ArrayList<>(ids.size() + 2);
+        args.add(Timestamp.valueOf(deletedAt));
+        args.add(userId);
+        args.addAll(ids);
+        int marked = jdbcTemplate.update("update files set deleted_at = ? where user_id = ? and deleted_at is null "
+                + "and id in (" + placeholders(ids) + ")", args.toArray());
+        entityManager.clear();
+        evict(ids, tokens(ids), false);
+        return marked;
+    }
+
+    @Override
+    @Transactional
+    public int updateBlobStatus(Long id, BlobStatus status) {
+        entityManager.flush();
+        int updated = jdbcTemplate.update("update files set blob_status = ? where id = ?", status.name(), id);
+        evict(List.of(id), List.of(), false);
+        return updated;
+    }
+
+    @Override
+    @Transactional
+    public int backfillChecksum(Long id, String checksum) {
+        entityManager.flush();
+        int updated = jdbcTemplate.update("update files set checksum = ? where id = ? and checksum is null",
+                checksum, id);
+        evict(List.of(id), List.of(), false);
+        return updated;
+    }
+
+    @Override
+    @Transactional
+    public int recordFailedPurge(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        entityManager.flush();
+        int updated = jdbcTemplate.update("update files set purge_attempts = purge_attempts + 1 where id in ("
+                + placeholders(ids) + ")", ids.toArray());
+        evict(ids, List.of(), false);
+        return updated;
+    }
+
+    @Override
+    @Transactional
+    public int deletePurged(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        entityManager.flush();
+        List<String> tokens = tokens(ids);
+        jdbcTemplate.update("delete from tags where file_id in (" + placeholders(ids) + ")", ids.toArray());
+        int deleted = jdbcTemplate.update("delete from files where id in (" + placeholders(ids) + ")", ids.toArray());
+        evict(ids, tokens, true);
+        return deleted;
+    }
+
+    private List<String> tokens(Collection<Long> ids) {
+        return jdbcTemplate.queryForList("select token from files where id in (" + placeholders(ids) + ")",
+                String.class, ids.toArray());
+    }
+
+    private static String placeholders(Collection<?> values) {
+        return String.join(", ", Collections.nCopies(values.size(), "?"));
+    }
+
+    // Evicted at once for this transaction, and again after commit: a concurrent load may have put the
+    // old row back in between
+    private void evict(Collection<Long> ids, Collection<String> tokens, boolean withTags) {
+        SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        EntityPersister persister = session.getFactory().getMappingMetamodel().getEntityDescriptor(FileEntity.class);
+        NaturalIdDataAccess naturalIds = persister.getNaturalIdMapping().getCacheAccess();
+        List<Object> naturalIdKeys = naturalIds == null ? List.of()
+                : tokens.stream().map(token -> naturalIds.generateCacheKey(token, persister, session)).toList();
+        List<Long> fileIds = List.copyOf(ids);
+        Cache cache = session.getFactory().getCache();
+        Runnable eviction = () -> {
+            for (Long id : fileIds) {
+                cache.evictEntityData(FileEntity.class, id);
+                if (withTags) {
+                    cache.evictCollectionData(TAGS_ROLE, id);
+                }
+            }
+            for (Object key : naturalIdKeys) {
+                naturalIds.evict(key);
+            }
+        };
+        eviction.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eviction.run();
+                }
+            });
+        }
+    }
+}
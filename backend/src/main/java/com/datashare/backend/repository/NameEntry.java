@@ -0,0 +1,7 @@
+package com.datashare.backend.repository;
+
+/** A piece of text a file can be found by: its name or one of its tags. */
+public record NameEntry(
+        Long fileId,
+        String text
+) {}
@@ -0,0 +1,25 @@
+package com.datashare.backend.repository;
+
+import com.datashare.backend.entity.ScrubCursor;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
+
+public interface ScrubCursorRepository extends JpaRepository<ScrubCursor, Long> {
+
+    @Query("select c.afterId from ScrubCursor c where c.id = 1")
+    Optional<Long> findAfterId();
+
+    // A plain insert: save would merge, and could reset a cursor another instance just created and moved
+    @Modifying
+    @Query(value = "insert into scrub_cursor (id, after_id) values (1, 0)", nativeQuery = true)
+    void create();
+
+    // Compare and set: of the instances that read the same position, only one moves it
+    @Modifying
+    @Query("update ScrubCursor c set c.afterId = :to where c.id = 1 and c.afterId = :from")
+    int move(@Param("from") long from, @Param("to") long to);
+}
@@ -0,0 +1,6 @@
+package com.datashare.backend.repository;
+
+public record ShareTokenRef(
+        Long id,
+        String token
+) {}
@@ -0,0 +1,6 @@
+package com.datashare.backend.repository;
+
+public record TagLink(
+        Long fileId,
+        Long userTagId
+) {}
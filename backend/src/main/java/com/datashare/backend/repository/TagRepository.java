@@ -1,7 +1,35 @@
 package com.datashare.backend.repository;
 
 import com.datashare.backend.entity.Tag;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
 
 public interface TagRepository extends JpaRepository<Tag, Long> {
+
+    @Query("select t from Tag t join fetch t.file f join fetch f.user where t.userTag is null order by t.id")
+    List<Tag> findUnlinked(Limit limit);
+
+    @Query("select new com.datashare.backend.repository.TagLink(t.file.id, t.userTag.id) "
+            + "from Tag t where t.file.id in :fileIds and t.userTag is not null")
+    List<TagLink> findLinks(@Param("fileIds") Collection<Long> fileIds);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select new com.datashare.backend.repository.NameEntry(t.file.id, t.name) "
+            + "from Tag t where t.file.user.id = :userId and t.file.deletedAt is null")
+    Stream<NameEntry> streamTagNames(@Param("userId") Long userId);
+
+    @Query("select new com.datashare.backend.repository.NameEntry(t.file.id, t.name) from Tag t "
+            + "where t.file.user.id = :userId and t.file.createdAt > :since and t.file.deletedAt is null")
+    Stream<NameEntry> streamTagNamesCreatedAfter(@Param("userId") Long userId,
+                                                 @Param("since") LocalDateTime since);
 }
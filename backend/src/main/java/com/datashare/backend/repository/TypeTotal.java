@@ -0,0 +1,8 @@
+package com.datashare.backend.repository;
+
+/** Live files and bytes of one content type, or of one category. */
+public record TypeTotal(
+        String type,
+        Long fileCount,
+        Long bytes
+) {}
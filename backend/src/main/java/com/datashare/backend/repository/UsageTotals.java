@@ -0,0 +1,8 @@
+package com.datashare.backend.repository;
+
+/** A user's usage counters, read as values so that a bulk update earlier in the transaction shows. */
+public record UsageTotals(
+        Long usedBytes,
+        Long fileCount,
+        Long quotaBytes
+) {}
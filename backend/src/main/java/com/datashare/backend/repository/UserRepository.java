@@ -3,11 +3,7 @@ package com.datashare.backend.repository;
 import com.datashare.backend.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
 
-import java.util.Optional;
-
-public interface UserRepository extends JpaRepository<User, Long> {
-
-    Optional<User> findByEmail(String email);
+public interface UserRepository extends JpaRepository<User, Long>, UserRepositoryCustom {
 
     boolean existsByEmail(String email);
 }
@@ -0,0 +1,13 @@
+package com.datashare.backend.repository;
+
+import java.util.Optional;
+
+import com.datashare.backend.entity.User;
+
+public interface UserRepositoryCustom {
+
+    Optional<User> findByEmail(String email);
+
+    /** Takes the user's row lock until commit, to serialize the creation of their dictionary tags. */
+    int lockById(Long id);
+}
@@ -0,0 +1,38 @@
+package com.datashare.backend.repository;
+
+import java.util.Optional;
+
+import org.hibernate.Session;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.datashare.backend.entity.User;
+
+import jakarta.persistence.EntityManager;
+
+class UserRepositoryCustomImpl implements UserRepositoryCustom {
+
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+
+    UserRepositoryCustomImpl(EntityManager entityManager, JdbcTemplate jdbcTemplate) {
+        this.entityManager = entityManager;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // By natural id: once the user is in the second-level cache, no query at all.
+    // Not read-only: on its own, as for a login, it must not read a replica that may not have the user yet
+    @Override
+    @Transactional
+    public Optional<User> findByEmail(String email) {
+        return entityManager.unwrap(Session.class).bySimpleNaturalId(User.class).loadOptional(email);
+    }
+
+    // A no-op update rather than SELECT ... FOR UPDATE, whose dialect syntax H2 rejects in tests.
+    // Through JDBC: Hibernate empties a whole cache region after a JPQL update, and this one changes nothing
+    @Override
+    @Transactional
+    public int lockById(Long id) {
+        return jdbcTemplate.update("update users set updated_at = updated_at where id = ?", id);
+    }
+}
@@ -0,0 +1,50 @@
+package com.datashare.backend.repository;
+
+import com.datashare.backend.dto.TagFacetResponse;
+import com.datashare.backend.entity.UserTag;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface UserTagRepository extends JpaRepository<UserTag, Long> {
+
+    @Query("select t from UserTag t where t.user.id = :userId and t.name in :names")
+    List<UserTag> findByUserIdAndNameIn(@Param("userId") Long userId, @Param("names") Collection<String> names);
+
+    // Prefix match on the (user_id, name) unique index; the caller escapes LIKE wildcards
+    @Transactional(readOnly = true)
+    @Query("select new com.datashare.backend.dto.TagFacetResponse(t.name, t.fileCount) from UserTag t "
+            + "where t.user.id = :userId and t.name like :prefix escape '!' and t.fileCount > 0 "
+            + "order by t.fileCount desc, t.name")
+    List<TagFacetResponse> findFacets(@Param("userId") Long userId, @Param("prefix") String prefix, Limit limit);
+
+    @Modifying
+    @Query("update UserTag t set t.fileCount = t.fileCount + 1 where t.id in :ids")
+    int incrementFileCount(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("update UserTag t set t.fileCount = t.fileCount + :count where t.id = :id")
+    int addToFileCount(@Param("id") Long id, @Param("count") long count);
+
+    @Modifying
+    @Query("update UserTag t set t.fileCount = t.fileCount - 1 where t.id in :ids")
+    int decrementFileCount(@Param("ids") Collection<Long> ids);
+
+    // Files tombstoned together share their deletedAt, which picks exactly the rows one bulk delete marked
+    @Modifying
+    @Query("update UserTag ut set ut.fileCount = ut.fileCount - "
+            + "(select count(t) from Tag t where t.userTag = ut and t.file.user.id = :userId "
+            + "and t.file.id in :fileIds and t.file.deletedAt = :deletedAt) "
+            + "where ut.user.id = :userId and ut.id in (select t.userTag.id from Tag t where t.file.user.id = :userId "
+            + "and t.file.id in :fileIds and t.file.deletedAt = :deletedAt)")
+    int decrementForDeletedFiles(@Param("userId") Long userId,
+                                 @Param("fileIds") Collection<Long> fileIds,
+                                 @Param("deletedAt") LocalDateTime deletedAt);
+}
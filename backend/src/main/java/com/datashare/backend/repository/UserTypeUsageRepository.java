@@ -0,0 +1,33 @@
+package com.datashare.backend.repository;
+
+import com.datashare.backend.entity.FileCategory;
+import com.datashare.backend.entity.UserTypeUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface UserTypeUsageRepository extends JpaRepository<UserTypeUsage, Long> {
+
+    @Query("select new com.datashare.backend.repository.TypeTotal(cast(t.category as string), t.fileCount, t.bytes) "
+            + "from UserTypeUsage t where t.user.id = :userId")
+    List<TypeTotal> findTotals(@Param("userId") Long userId);
+
+    @Modifying
+    @Query("update UserTypeUsage t set t.fileCount = t.fileCount + :count, t.bytes = t.bytes + :bytes "
+            + "where t.user.id = :userId and t.category = :category")
+    int add(@Param("userId") Long userId,
+            @Param("category") FileCategory category,
+            @Param("count") long count,
+            @Param("bytes") long bytes);
+
+    @Modifying
+    @Query("update UserTypeUsage t set t.fileCount = :count, t.bytes = :bytes "
+            + "where t.user.id = :userId and t.category = :category")
+    int correct(@Param("userId") Long userId,
+                @Param("category") FileCategory category,
+                @Param("count") long count,
+                @Param("bytes") long bytes);
+}
@@ -0,0 +1,47 @@
+package com.datashare.backend.repository;
+
+import com.datashare.backend.entity.UserUsage;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface UserUsageRepository extends JpaRepository<UserUsage, Long> {
+
+    @Query("select new com.datashare.backend.repository.UsageTotals(u.usedBytes, u.fileCount, u.quotaBytes) "
+            + "from UserUsage u where u.userId = :userId")
+    Optional<UsageTotals> findTotals(@Param("userId") Long userId);
+
+    // Check and increment in one statement: concurrent uploads of a user queue on the row lock,
+    // and each re-evaluates the condition against the bytes the previous one committed
+    @Modifying
+    @Query("update UserUsage u set u.usedBytes = u.usedBytes + :bytes, u.fileCount = u.fileCount + 1 "
+            + "where u.userId = :userId and u.usedBytes + :bytes <= coalesce(u.quotaBytes, :defaultQuota)")
+    int reserve(@Param("userId") Long userId, @Param("bytes") long bytes, @Param("defaultQuota") long defaultQuota);
+
+    @Modifying
+    @Query("update UserUsage u set u.usedBytes = u.usedBytes - :bytes, u.fileCount = u.fileCount - :count "
+            + "where u.userId = :userId")
+    int release(@Param("userId") Long userId, @Param("bytes") long bytes, @Param("count") long count);
+
+    // Same no-op update as UserRepository.lockById: waits for uploads in flight and holds new ones until commit
+    @Modifying
+    @Query("update UserUsage u set u.usedBytes = u.usedBytes where u.userId = :userId")
+    int lock(@Param("userId") Long userId);
+
+    @Modifying
+    @Query("update UserUsage u set u.usedBytes = :bytes, u.fileCount = :count, u.reconciledAt = :at "
+            + "where u.userId = :userId")
+    int correct(@Param("userId") Long userId,
+                @Param("bytes") long bytes,
+                @Param("count") long count,
+                @Param("at") LocalDateTime at);
+
+    @Query("select u.userId from UserUsage u where u.userId > :afterId order by u.userId")
+    List<Long> findUserIdsAfter(@Param("afterId") Long afterId, Limit limit);
+}
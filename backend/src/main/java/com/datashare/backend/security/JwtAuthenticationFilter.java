@@ -1,5 +1,6 @@
 package com.datashare.backend.security;
 
+import com.datashare.backend.metrics.ServerTiming;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -29,6 +30,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         String authHeader = request.getHeader("Authorization");
 
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            long start = ServerTiming.start();
             String token = authHeader.substring(7);
 
             if (jwtUtil.isTokenValid(token)) {
@@ -37,6 +39,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                         new UsernamePasswordAuthenticationToken(email, null, List.of());
                 SecurityContextHolder.getContext().setAuthentication(authentication);
             }
+            ServerTiming.stop("jwt", start);
         }
 
         filterChain.doFilter(request, response);
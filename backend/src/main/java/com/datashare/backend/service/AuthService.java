@@ -1,5 +1,6 @@
 package com.datashare.backend.service;
 
+import com.datashare.backend.datasource.ReplicaRouting;
 import com.datashare.backend.dto.AuthResponse;
 import com.datashare.backend.dto.LoginRequest;
 import com.datashare.backend.dto.RegisterRequest;
@@ -33,6 +34,8 @@ public class AuthService {
 
         User user = new User(request.email(), passwordEncoder.encode(request.password()));
         userRepository.save(user);
+        // The first requests with the new token must find the user, whatever the replica lag
+        ReplicaRouting.recordWrite(user.getEmail());
 
         String token = jwtUtil.generateToken(user.getEmail());
         return new AuthResponse(token);
@@ -0,0 +1,279 @@
+package com.datashare.backend.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.datashare.backend.entity.BlobStatus;
+import com.datashare.backend.entity.FileEntity;
+import com.datashare.backend.repository.FileRepository;
+import com.datashare.backend.repository.ScrubCursorRepository;
+import com.datashare.backend.storage.BlobCipher;
+import com.datashare.backend.storage.BufferPool;
+import com.datashare.backend.storage.CorruptBlobException;
+import com.datashare.backend.storage.Sha256Stage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Re-reads every blob in a continuous sweep and compares it with the checksum
+ * recorded at upload. Each run claims the next batch of rows in id order by
+ * moving the cursor past it, and the first run past the end of the table wraps
+ * it around. The cursor
+ * is a row shared by every instance ({@code scrub_cursor}): each blob is read
+ * once per sweep, by whichever instance claimed its batch. Reads are large and
+ * sequential, and paced to {@code storage.scrub.rate-bytes-per-second} so the
+ * sweep never competes with user traffic. Corrupt or missing blobs are flagged on
+ * their row, which makes downloads fail fast until the blob is restored.
+ *
+ * <p>Only a checksum mismatch, a {@link CorruptBlobException} or a missing file
+ * flags a blob. Any other read error, such as no I/O buffer being free under
+ * load, says nothing about the blob: the batch stops there and the rest of it is
+ * handed back, so that the blob is read again on the next run, then left for the
+ * next sweep if it keeps failing.
+ */
+@Service
+public class BlobScrubber {
+
+    private static final Logger log = LoggerFactory.getLogger(BlobScrubber.class);
+
+    private static final int MAX_READ_ATTEMPTS = 3;
+
+    private final FileRepository fileRepository;
+    private final ScrubCursorRepository scrubCursorRepository;
+    private final StorageService storageService;
+    private final BufferPool bufferPool;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long bytesPerSecond;
+    private final Counter readFailures;
+
+    private long paceStartNanos;
+    private long pacedBytes;
+    private int sweepVerified;
+    private int sweepCorrupt;
+    private int sweepMissing;
+    private long failingId;
+    private int failedAttempts;
+
+    public BlobScrubber(FileRepository fileRepository,
+                        ScrubCursorRepository scrubCursorRepository,
+                        StorageService storageService,
+                        BufferPool bufferPool,
+                        TransactionTemplate transactionTemplate,
+                        MeterRegistry meterRegistry,
+                        @Value("${storage.scrub.enabled:true}") boolean enabled,
+                        @Value("${storage.scrub.batch-size:100}") int batchSize,
+                        @Value("${storage.scrub.rate-bytes-per-second:52428800}") long bytesPerSecond) {
+        this.fileRepository = fileRepository;
+        this.scrubCursorRepository = scrubCursorRepository;
+        this.storageService = storageService;
+        this.bufferPool = bufferPool;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.bytesPerSecond = bytesPerSecond;
+        this.readFailures = Counter.builder("storage.scrub.read.failures")
+                .description("Blob reads that failed for a reason other than corruption, retried later")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(initialDelayString = "${storage.scrub.initial-delay-ms:60000}",
+               fixedDelayString = "${storage.scrub.interval-ms:5000}")
+    public void scrub() {
+        if (enabled) {
+            scrubBatch();
+        }
+    }
+
+    int scrubBatch() {
+        long start = cursorPosition();
+        List<FileEntity> batch = fileRepository.findScrubBatch(start, Limit.of(batchSize));
+        // The sweep ends on the first run that finds nothing past the cursor
+        long end = batch.isEmpty() ? 0 : batch.getLast().getId();
+        // Another instance claimed this batch since the position was read: it scrubs it
+        if (!moveCursor(start, end)) {
+            return 0;
+        }
+        long verifiedUpTo = start;
+        paceStartNanos = System.nanoTime();
+        pacedBytes = 0;
+
+        for (FileEntity file : batch) {
+            BlobStatus status;
+            try {
+                status = verify(file);
+            } catch (InterruptedIOException e) {
+                // Shutting down: the rest of the batch is left for the next sweep
+                Thread.currentThread().interrupt();
+                return 0;
+            } catch (CorruptBlobException e) {
+                log.warn("Blob {} of file {} is unreadable: {}", file.getFilePath(), file.getId(), e.getMessage());
+                status = BlobStatus.CORRUPT;
+            } catch (NoSuchFileException e) {
+                status = BlobStatus.MISSING;
+            } catch (IOException e) {
+                readFailures.increment();
+                if (!giveUp(file)) {
+                    log.warn("Could not read blob {} of file {}, retrying on the next run",
+                            file.getFilePath(), file.getId(), e);
+                    // Handed back unless another instance moved on meanwhile
+                    moveCursor(end, verifiedUpTo);
+                    return 0;
+                }
+                log.warn("Could not read blob {} of file {} after {} attempts, leaving it for the next sweep",
+                        file.getFilePath(), file.getId(), MAX_READ_ATTEMPTS, e);
+                failedAttempts = 0;
+                verifiedUpTo = file.getId();
+                continue;
+            }
+            failedAttempts = 0;
+            record(file, status);
+            verifiedUpTo = file.getId();
+        }
+
+        if (batch.isEmpty()) {
+            log.info("Scrub sweep finished: {} blobs verified by this instance, {} corrupt, {} missing",
+                    sweepVerified, sweepCorrupt, sweepMissing);
+            sweepVerified = 0;
+            sweepCorrupt = 0;
+            sweepMissing = 0;
+        }
+        return batch.size();
+    }
+
+    private long cursorPosition() {
+        Optional<Long> position = scrubCursorRepository.findAfterId();
+        if (position.isPresent()) {
+            return position.get();
+        }
+        try {
+            transactionTemplate.executeWithoutResult(tx -> scrubCursorRepository.create());
+        } catch (DataIntegrityViolationException e) {
+            // Created by another instance at the same time
+        }
+        return 0;
+    }
+
+    private boolean moveCursor(long from, long to) {
+        Integer moved = transactionTemplate.execute(tx -> scrubCursorRepository.move(from, to));
+        return moved != null && moved == 1;
+    }
+
+    private boolean giveUp(FileEntity file) {
+        if (failingId != file.getId()) {
+            failingId = file.getId();
+            failedAttempts = 0;
+        }
+        return ++failedAttempts >= MAX_READ_ATTEMPTS;
+    }
+
+    private BlobStatus verify(FileEntity file) throws IOException {
+        Path path = storageService.load(file.getFilePath());
+        if (!Files.exists(path)) {
+            return BlobStatus.MISSING;
+        }
+
+        MessageDigest digest = Sha256Stage.newDigest();
+        long size = BlobCipher.isEncrypted(file.getFilePath())
+                ? digestDecrypted(file.getFilePath(), digest)
+                : digestPlain(path, digest);
+        if (size != file.getSize()) {
+            return BlobStatus.CORRUPT;
+        }
+
+        String actual = HexFormat.of().formatHex(digest.digest());
+        if (file.getChecksum() == null) {
+            transactionTemplate.executeWithoutResult(tx -> fileRepository.backfillChecksum(file.getId(), actual));
+            return BlobStatus.OK;
+        }
+        return actual.equals(file.getChecksum()) ? BlobStatus.OK : BlobStatus.CORRUPT;
+    }
+
+    private long digestPlain(Path path, MessageDigest digest) throws IOException {
+        ByteBuffer buffer = bufferPool.acquire();
+        long size = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            int n;
+            while ((n = channel.read(buffer.clear())) != -1) {
+                digest.update(buffer.flip());
+                size += n;
+                pace(n);
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+        return size;
+    }
+
+    private long digestDecrypted(String storedName, MessageDigest digest) throws IOException {
+        byte[] staging = bufferPool.acquireStaging();
+        long size = 0;
+        try (InputStream in = storageService.loadAsResource(storedName).getInputStream()) {
+            int n;
+            while ((n = in.read(staging)) != -1) {
+                digest.update(staging, 0, n);
+                size += n;
+                pace(n);
+            }
+        } finally {
+            bufferPool.releaseStaging(staging);
+        }
+        return size;
+    }
+
+    private void pace(int bytes) throws InterruptedIOException {
+        pacedBytes += bytes;
+        long dueNanos = paceStartNanos + (long) (pacedBytes * 1e9 / bytesPerSecond);
+        long aheadNanos = dueNanos - System.nanoTime();
+        if (aheadNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(aheadNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while scrubbing");
+            }
+        }
+    }
+
+    private void record(FileEntity file, BlobStatus status) {
+        sweepVerified++;
+        if (status == BlobStatus.CORRUPT) {
+            sweepCorrupt++;
+            log.error("Blob {} of file {} does not match its checksum", file.getFilePath(), file.getId());
+        } else if (status == BlobStatus.MISSING) {
+            sweepMissing++;
+            log.error("Blob {} of file {} is missing", file.getFilePath(), file.getId());
+        }
+
+        BlobStatus previous = file.getBlobStatus() != null ? file.getBlobStatus() : BlobStatus.OK;
+        if (status != previous) {
+            transactionTemplate.executeWithoutResult(tx -> fileRepository.updateBlobStatus(file.getId(), status));
+            if (status == BlobStatus.OK) {
+                log.info("Blob {} of file {} is readable again", file.getFilePath(), file.getId());
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.datashare.backend.service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Counts downloads per file in memory and adds them to {@code files} in one
+ * batch per flush. A viral link then costs one UPDATE every few seconds rather
+ * than one per download, and concurrent downloads of a file never queue on its
+ * row lock: each one only increments a {@link LongAdder}.
+ *
+ * <p>Each file also keeps its counts over the last few flushes, from which the
+ * hottest links are ranked. Files without a download over that window are
+ * dropped from memory; pending counts are flushed on shutdown.
+ */
+@Service
+public class DownloadCounter {
+
+    private static final Logger log = LoggerFactory.getLogger(DownloadCounter.class);
+
+    // Portable CASE rather than GREATEST: another instance may have flushed a later download
+    private static final String FLUSH_SQL = "update files set download_count = download_count + ?, "
+            + "last_downloaded_at = case when last_downloaded_at is null or last_downloaded_at < ? then ? "
+            + "else last_downloaded_at end where id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final FileEventOutbox fileEvents;
+    private final int batchSize;
+    private final int windowFlushes;
+
+    private final ConcurrentHashMap<Long, FileDownloads> files = new ConcurrentHashMap<>();
+    // Dropped by the previous flush; a download that looked them up just before may still add to them
+    private List<FileDownloads> retired = new ArrayList<>();
+
+    private final Counter recorded;
+    private final Counter flushFailures;
+
+    public DownloadCounter(JdbcTemplate jdbcTemplate,
+                           TransactionTemplate transactionTemplate,
+                           FileEventOutbox fileEvents,
+                           MeterRegistry meterRegistry,
+                           @Value("${downloads.flush.interval-ms:5000}") long flushIntervalMs,
+                           @Value("${downloads.flush.batch-size:500}") int batchSize,
+                           @Value("${downloads.hot.window:PT1M}") Duration hotWindow) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.fileEvents = fileEvents;
+        this.batchSize = batchSize;
+        this.windowFlushes = (int) Math.max(1, hotWindow.toMillis() / flushIntervalMs);
+
+        this.recorded = Counter.builder("file.downloads")
+                .description("Authorized downloads, counted before they are flushed to the database")
+                .register(meterRegistry);
+        this.flushFailures = Counter.builder("file.downloads.flush.failures")
+                .description("Flushes of download counts that failed and were retried on the next one")
+                .register(meterRegistry);
+        Gauge.builder("file.downloads.tracked", files, Map::size)
+                .description("Files with downloads in memory, pending or within the hot window")
+                .register(meterRegistry);
+    }
+
+    public void record(Long fileId, String token) {
+        FileDownloads downloads = files.get(fileId);
+        if (downloads == null) {
+            downloads = files.computeIfAbsent(fileId, id -> new FileDownloads(id, token, windowFlushes));
+        }
+        downloads.pending.increment();
+        // At most one write per millisecond: on a viral link, a write per download would bounce the cache line
+        long now = System.currentTimeMillis();
+        if (downloads.lastDownloadedAt != now) {
+            downloads.lastDownloadedAt = now;
+        }
+        recorded.increment();
+    }
+
+    @Scheduled(initialDelayString = "${downloads.flush.interval-ms:5000}",
+               fixedDelayString = "${downloads.flush.interval-ms:5000}")
+    public synchronized void flush() {
+        List<Delta> deltas = new ArrayList<>();
+        for (FileDownloads downloads : retired) {
+            downloads.drain(deltas);
+        }
+        retired = new ArrayList<>();
+        for (FileDownloads downloads : files.values()) {
+            downloads.slide(downloads.drain(deltas));
+            if (downloads.idle() && files.remove(downloads.fileId, downloads)) {
+                retired.add(downloads);
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+        // Rows always locked in id order, so that two instances flushing at once cannot deadlock
+        deltas.sort(Comparator.comparingLong(Delta::fileId));
+        try {
+            transactionTemplate.executeWithoutResult(tx -> {
+                jdbcTemplate.batchUpdate(FLUSH_SQL, deltas, batchSize, (ps, delta) -> {
+                    Timestamp last = new Timestamp(delta.lastDownloadedAt());
+                    ps.setLong(1, delta.count());
+                    ps.setTimestamp(2, last);
+                    ps.setTimestamp(3, last);
+                    ps.setLong(4, delta.fileId());
+                });
+                // Written with the counts they add up to: one event per file and flush, not per download
+                fileEvents.publishDownloads(deltas, batchSize);
+            });
+        } catch (RuntimeException e) {
+            flushFailures.increment();
+            log.warn("Could not flush the download counts of {} files, keeping them for the next flush",
+                    deltas.size(), e);
+            for (Delta delta : deltas) {
+                FileDownloads downloads = files.computeIfAbsent(delta.fileId(),
+                        id -> new FileDownloads(id, delta.token(), windowFlushes));
+                downloads.pending.add(delta.count());
+                downloads.lastDownloadedAt = Math.max(downloads.lastDownloadedAt, delta.lastDownloadedAt());
+            }
+        }
+    }
+
+    /** The links with the most downloads over the hot window, most downloaded first. */
+    public synchronized List<HotDownload> hottest(int limit) {
+        return files.values().stream()
+                .map(downloads -> new HotDownload(downloads.token, downloads.recent(),
+                        Instant.ofEpochMilli(downloads.lastDownloadedAt)))
+                .filter(hot -> hot.recentDownloads() > 0)
+                .sorted(Comparator.comparingLong(HotDownload::recentDownloads).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    // The second pass writes what a download added to the entries the first one dropped
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        flush();
+    }
+
+    record Delta(Long fileId, String token, long count, long lastDownloadedAt) {}
+
+    /**
+     * One file's downloads: those not flushed yet, added to on the hot path, and
+     * the flushed ones of each flush over the window, only touched under the lock.
+     */
+    static final class FileDownloads {
+
+        final Long fileId;
+        final String token;
+        final LongAdder pending = new LongAdder();
+        volatile long lastDownloadedAt;
+        private final long[] window;
+        private int slot;
+
+        FileDownloads(Long fileId, String token, int windowFlushes) {
+            this.fileId = fileId;
+            this.token = token;
+            this.window = new long[windowFlushes];
+        }
+
+        // sumThenReset takes each cell with getAndSet: an increment lands in this delta or in the next one
+        long drain(List<Delta> deltas) {
+            long count = pending.sumThenReset();
+            if (count > 0) {
+                deltas.add(new Delta(fileId, token, count, lastDownloadedAt));
+            }
+            return count;
+        }
+
+        void slide(long flushed) {
+            slot = (slot + 1) % window.length;
+            window[slot] = flushed;
+        }
+
+        long recent() {
+            long sum = pending.sum();
+            for (long count : window) {
+                sum += count;
+            }
+            return sum;
+        }
+
+        boolean idle() {
+            return recent() == 0;
+        }
+    }
+}
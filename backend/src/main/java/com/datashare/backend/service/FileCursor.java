@@ -0,0 +1,42 @@
+package com.datashare.backend.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+import com.datashare.backend.entity.FileEntity;
+
+/**
+ * Position in a file listing sorted by {@code (created_at, id)} descending. The
+ * next page starts strictly after it, so paging costs one index range scan
+ * whatever the depth, and rows added or deleted meanwhile shift nothing.
+ */
+record FileCursor(LocalDateTime createdAt, long id) {
+
+    // Postgres rejects LocalDateTime.MAX; nothing is created after year 9999
+    static final FileCursor FIRST = new FileCursor(LocalDateTime.of(9999, 12, 31, 23, 59), Long.MAX_VALUE);
+
+    static FileCursor after(FileEntity fileEntity) {
+        return new FileCursor(fileEntity.getCreatedAt(), fileEntity.getId());
+    }
+
+    static FileCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return FIRST;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.lastIndexOf('_');
+            return new FileCursor(LocalDateTime.parse(decoded.substring(0, separator)),
+                    Long.parseLong(decoded.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((createdAt + "_" + id).getBytes(StandardCharsets.UTF_8));
+    }
+}
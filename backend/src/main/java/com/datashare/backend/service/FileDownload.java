@@ -0,0 +1,24 @@
+package com.datashare.backend.service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+
+import org.springframework.core.io.Resource;
+
+/**
+ * A download ready to be served. The resource is only a handle: storage is not
+ * read until its content is, so a conditional request answered with 304 never
+ * touches the blob.
+ */
+public record FileDownload(
+        Long fileId,
+        String name,
+        String contentType,
+        String checksum,
+        String etag,
+        Instant lastModified,
+        LocalDateTime expiredAt,
+        boolean passwordProtected,
+        String storedName,
+        Resource resource
+) {}
@@ -0,0 +1,15 @@
+package com.datashare.backend.service;
+
+import java.time.LocalDateTime;
+
+import com.datashare.backend.entity.FileEventType;
+
+/** A file lifecycle event as delivered to a {@link FileEventConsumer}, identified by its outbox id. */
+public record FileEvent(
+        long id,
+        FileEventType type,
+        Long fileId,
+        Long userId,
+        long amount,
+        LocalDateTime createdAt
+) {}
@@ -0,0 +1,17 @@
+package com.datashare.backend.service;
+
+import java.util.List;
+
+/**
+ * A side effect of file lifecycle events, run by {@link FileEventDispatcher}
+ * once the change is committed, off the request path. Delivery is at least
+ * once: after a failure, a consumer may see events it already handled. Each
+ * call holds all the batch's events of its files, each file's in order.
+ *
+ * <p>An event goes to one instance only: state kept in the memory of every
+ * instance must not be updated from here.
+ */
+public interface FileEventConsumer {
+
+    void accept(List<FileEvent> events);
+}
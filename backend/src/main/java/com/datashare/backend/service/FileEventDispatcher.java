@@ -0,0 +1,250 @@
+package com.datashare.backend.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.datashare.backend.entity.FileEventEntity;
+import com.datashare.backend.repository.FileEventRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Delivers the outbox to the {@link FileEventConsumer}s, in batches. A batch is
+ * claimed with {@code FOR UPDATE SKIP LOCKED}, so that several instances share
+ * the outbox without waiting on each other, and deleted in the same transaction
+ * once delivered: an event is removed only after every consumer accepted it.
+ *
+ * <p>The batch is split into lanes by file, run in parallel on a bounded pool;
+ * a lane delivers its files' events in id order. A file whose earlier events
+ * another instance has claimed is left for a later batch, and a file whose
+ * delivery failed keeps its events for the next run: the order of each file's
+ * events holds across instances and retries.
+ *
+ * <p>Consumers run while the batch's row locks and connection are held, so the
+ * wait for them is bounded. Each failed delivery counts an attempt on the
+ * file's events; after {@code file.events.max-attempts} they are parked, kept
+ * in the table but no longer claimed, and the file's later events go on.
+ */
+@Service
+public class FileEventDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(FileEventDispatcher.class);
+
+    private final FileEventRepository fileEventRepository;
+    private final List<FileEventConsumer> consumers;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int lanes;
+    private final int maxAttempts;
+    private final long deliveryTimeoutNanos;
+    private final ThreadPoolExecutor executor;
+
+    private final Counter dispatched;
+    private final Counter failures;
+    private final Counter parked;
+    private final Timer lag;
+
+    public FileEventDispatcher(FileEventRepository fileEventRepository,
+                               List<FileEventConsumer> consumers,
+                               TransactionTemplate transactionTemplate,
+                               MeterRegistry meterRegistry,
+                               @Value("${file.events.batch-size:500}") int batchSize,
+                               @Value("${file.events.consumer-threads:4}") int consumerThreads,
+                               @Value("${file.events.max-attempts:5}") int maxAttempts,
+                               @Value("${file.events.delivery-timeout-ms:10000}") long deliveryTimeoutMs) {
+        this.fileEventRepository = fileEventRepository;
+        this.consumers = consumers;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.lanes = consumerThreads;
+        this.maxAttempts = maxAttempts;
+        this.deliveryTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(deliveryTimeoutMs);
+        // One task per lane and batch; a lane that finds no room waits for the next run
+        this.executor = new ThreadPoolExecutor(consumerThreads, consumerThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(consumerThreads), runnable -> {
+                    Thread thread = new Thread(runnable, "file-events");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+
+        this.dispatched = Counter.builder("file.events.dispatched")
+                .description("Outbox events delivered to every consumer and removed")
+                .register(meterRegistry);
+        this.failures = Counter.builder("file.events.failures")
+                .description("Outbox events left for a later run after a consumer failed")
+                .register(meterRegistry);
+        this.parked = Counter.builder("file.events.parked")
+                .description("Outbox events no longer delivered after too many failed attempts")
+                .register(meterRegistry);
+        this.lag = Timer.builder("file.events.lag")
+                .description("Delay between an event's change and its delivery")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(initialDelayString = "${file.events.dispatch-interval-ms:1000}",
+               fixedDelayString = "${file.events.dispatch-interval-ms:1000}")
+    public synchronized void dispatch() {
+        try {
+            // A full batch suggests a backlog; one with failed or held back events waits for the next run
+            int delivered;
+            do {
+                delivered = transactionTemplate.execute(tx -> dispatchBatch());
+            } while (delivered == batchSize);
+        } catch (RuntimeException e) {
+            log.warn("Could not dispatch the file events, retrying on the next run", e);
+        }
+    }
+
+    /** Claims, delivers and removes one batch; returns how many events were delivered. */
+    int dispatchBatch() {
+        List<FileEventEntity> batch = fileEventRepository.claimBatch(batchSize);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        Map<Long, List<FileEvent>> byFile = new LinkedHashMap<>();
+        List<Long> claimedIds = new ArrayList<>(batch.size());
+        for (FileEventEntity entity : batch) {
+            claimedIds.add(entity.getId());
+            byFile.computeIfAbsent(entity.getFileId(), id -> new ArrayList<>()).add(toEvent(entity));
+        }
+        for (Long blocked : fileEventRepository.findFilesWithEarlierEvents(byFile.keySet(),
+                claimedIds.getLast(), claimedIds)) {
+            byFile.remove(blocked);
+        }
+
+        List<Map<Long, List<FileEvent>>> laneFiles = new ArrayList<>(lanes);
+        for (int i = 0; i < lanes; i++) {
+            laneFiles.add(new LinkedHashMap<>());
+        }
+        for (Map.Entry<Long, List<FileEvent>> file : byFile.entrySet()) {
+            laneFiles.get(Math.floorMod(file.getKey().hashCode(), lanes)).put(file.getKey(), file.getValue());
+        }
+        Set<Long> deliveredFiles = ConcurrentHashMap.newKeySet();
+        List<Future<?>> running = new ArrayList<>(lanes);
+        List<Map<Long, List<FileEvent>>> started = new ArrayList<>(lanes);
+        for (Map<Long, List<FileEvent>> files : laneFiles) {
+            if (files.isEmpty()) {
+                continue;
+            }
+            try {
+                running.add(executor.submit(() -> deliverLane(files, deliveredFiles)));
+                started.add(files);
+            } catch (RejectedExecutionException e) {
+                // The pool is still busy with lanes of a run that timed out: not an attempt, only a later one
+                log.debug("No consumer thread free, leaving {} files for the next run", files.size());
+            }
+        }
+
+        long deadline = System.nanoTime() + deliveryTimeoutNanos;
+        for (int i = 0; i < running.size(); i++) {
+            Future<?> lane = running.get(i);
+            try {
+                lane.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                log.warn("Could not deliver the file events of {} files", started.get(i).size(), e.getCause());
+            } catch (TimeoutException e) {
+                lane.cancel(true);
+                log.warn("File event delivery did not complete within {} ms, keeping the rest for the next run",
+                        TimeUnit.NANOSECONDS.toMillis(deliveryTimeoutNanos));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while delivering file events", e);
+            }
+        }
+
+        // A lane cut short may still finish a file after this point: it is then delivered again, at least once
+        Set<Long> doneFiles = Set.copyOf(deliveredFiles);
+        List<Long> delivered = new ArrayList<>();
+        List<Long> failed = new ArrayList<>();
+        for (Map<Long, List<FileEvent>> files : started) {
+            for (Map.Entry<Long, List<FileEvent>> file : files.entrySet()) {
+                List<Long> target = doneFiles.contains(file.getKey()) ? delivered : failed;
+                file.getValue().forEach(event -> target.add(event.id()));
+            }
+        }
+        if (!delivered.isEmpty()) {
+            fileEventRepository.deleteByIdIn(delivered);
+            dispatched.increment(delivered.size());
+        }
+        if (!failed.isEmpty()) {
+            failures.increment(failed.size());
+            fileEventRepository.recordFailedAttempt(failed);
+            int exhausted = fileEventRepository.parkExhausted(failed, maxAttempts, LocalDateTime.now());
+            if (exhausted > 0) {
+                parked.increment(exhausted);
+                log.error("Parked {} file events after {} failed deliveries", exhausted, maxAttempts);
+            }
+        }
+        return delivered.size();
+    }
+
+    /**
+     * Delivers a lane in one call per consumer; if that fails, file by file, so
+     * that one failing file does not hold back the others of its lane.
+     */
+    private void deliverLane(Map<Long, List<FileEvent>> files, Set<Long> deliveredFiles) {
+        try {
+            deliver(files.values().stream().flatMap(List::stream).toList());
+            deliveredFiles.addAll(files.keySet());
+            return;
+        } catch (RuntimeException e) {
+            if (files.size() == 1) {
+                throw e;
+            }
+        }
+        for (Map.Entry<Long, List<FileEvent>> file : files.entrySet()) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            try {
+                deliver(file.getValue());
+                deliveredFiles.add(file.getKey());
+            } catch (RuntimeException e) {
+                log.warn("Could not deliver {} file events of file {}", file.getValue().size(), file.getKey(), e);
+            }
+        }
+    }
+
+    private void deliver(List<FileEvent> events) {
+        for (FileEventConsumer consumer : consumers) {
+            consumer.accept(events);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (FileEvent event : events) {
+            lag.record(Duration.between(event.createdAt(), now));
+        }
+    }
+
+    private static FileEvent toEvent(FileEventEntity entity) {
+        return new FileEvent(entity.getId(), entity.getType(), entity.getFileId(), entity.getUserId(),
+                entity.getAmount(), entity.getCreatedAt());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
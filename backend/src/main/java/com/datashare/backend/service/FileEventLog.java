@@ -0,0 +1,26 @@
+package com.datashare.backend.service;
+
+import java.util.List;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/** Logs the lifecycle of files, from the outbox rather than from the request threads. */
+@Component
+public class FileEventLog implements FileEventConsumer {
+
+    private static final Logger log = LoggerFactory.getLogger(FileEventLog.class);
+
+    @Override
+    public void accept(List<FileEvent> events) {
+        if (!log.isInfoEnabled()) {
+            return;
+        }
+        for (FileEvent event : events) {
+            log.info("File {} of user {} {} ({}) at {}", event.fileId(), event.userId(),
+                    event.type().name().toLowerCase(Locale.ROOT), event.amount(), event.createdAt());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.datashare.backend.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.datashare.backend.entity.FileEventType;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Writes file lifecycle events to the {@code file_events} outbox, in the
+ * transaction of the change they record: an event exists if and only if its
+ * change committed. {@link FileEventDispatcher} delivers them afterwards.
+ *
+ * <p>The events published during a transaction are kept until just before its
+ * commit and inserted in one JDBC batch, which Hibernate cannot do for an
+ * identity column. A request then pays one batched insert, however many events
+ * it publishes.
+ */
+@Service
+public class FileEventOutbox {
+
+    private static final String INSERT_SQL =
+            "insert into file_events (type, file_id, user_id, amount, created_at) values (?, ?, ?, ?, ?)";
+    // The owner is read from the file row: the download path does not know it
+    private static final String DOWNLOADED_SQL = "insert into file_events (type, file_id, user_id, amount, created_at) "
+            + "select '" + FileEventType.DOWNLOADED.name() + "', id, user_id, ?, ? from files where id = ?";
+    // The deletedAt that markDeleted stored identifies exactly the files it tombstoned
+    private static final String TOMBSTONED_SQL = "insert into file_events (type, file_id, user_id, amount, created_at) "
+            + "select ?, id, user_id, size, deleted_at from files where user_id = ? and deleted_at = ? and id in (";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Counter published;
+
+    public FileEventOutbox(JdbcTemplate jdbcTemplate,
+                           MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.published = Counter.builder("file.events.published")
+                .description("File lifecycle events written to the outbox")
+                .register(meterRegistry);
+    }
+
+    /** Inserted just before the current transaction commits, at once when there is none. */
+    public void publish(FileEventType type, Long fileId, Long userId, long amount) {
+        PendingEvent event = new PendingEvent(type, fileId, userId, amount, LocalDateTime.now());
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            insert(List.of(event));
+            return;
+        }
+        PendingEvents pending = (PendingEvents) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new PendingEvents();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+        pending.events.add(event);
+    }
+
+    /**
+     * One event per file that {@code markDeleted} tombstoned with this
+     * {@code deletedAt}, in one statement. Files not marked get no event.
+     */
+    public void publishTombstoned(FileEventType type, Long userId, Collection<Long> fileIds,
+                                  LocalDateTime deletedAt) {
+        List<Object> args = new ArrayList<>(fileIds.size() + 3);
+        args.add(type.name());
+        args.add(userId);
+        args.add(Timestamp.valueOf(deletedAt));
+        args.addAll(fileIds);
+        String sql = TOMBSTONED_SQL + String.join(", ", Collections.nCopies(fileIds.size(), "?")) + ")";
+        published.increment(jdbcTemplate.update(sql, args.toArray()));
+    }
+
+    /** One event per flushed download count, in the flush's transaction. */
+    void publishDownloads(List<DownloadCounter.Delta> deltas, int batchSize) {
+        jdbcTemplate.batchUpdate(DOWNLOADED_SQL, deltas, batchSize, (ps, delta) -> {
+            ps.setLong(1, delta.count());
+            ps.setTimestamp(2, new Timestamp(delta.lastDownloadedAt()));
+            ps.setLong(3, delta.fileId());
+        });
+        published.increment(deltas.size());
+    }
+
+    private void insert(List<PendingEvent> events) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, events, events.size(), (ps, event) -> {
+            ps.setString(1, event.type().name());
+            ps.setLong(2, event.fileId());
+            ps.setLong(3, event.userId());
+            ps.setLong(4, event.amount());
+            ps.setTimestamp(5, Timestamp.valueOf(event.createdAt()));
+        });
+        published.increment(events.size());
+    }
+
+    private record PendingEvent(FileEventType type, Long fileId, Long userId, long amount, LocalDateTime createdAt) {}
+
+    private final class PendingEvents implements TransactionSynchronization {
+
+        final List<PendingEvent> events = new ArrayList<>();
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            insert(events);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(FileEventOutbox.this);
+        }
+    }
+}
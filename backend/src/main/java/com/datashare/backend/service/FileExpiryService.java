@@ -0,0 +1,305 @@
+package com.datashare.backend.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.datashare.backend.entity.FileEventType;
+import com.datashare.backend.repository.ExpiringFile;
+import com.datashare.backend.repository.FileRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Tombstones files within a tick of the end of their grace period, without
+ * polling the files table. For {@code file.expiry.grace} after its expiry, a
+ * file stays listed under the dashboard's expired filter and its link answers
+ * 410; it is tombstoned after that. Times below are those tombstone deadlines,
+ * {@code expiredAt + grace}. The files due within the next
+ * {@code file.expiry.horizon} are held in a {@link TimingWheel}; the window is
+ * topped up by a range scan on the expiry index as time passes, and an upload
+ * due inside it is added when it commits. Files due later are not held in
+ * memory.
+ *
+ * <p>An expired file is tombstoned like a bulk delete: its tags, name-index
+ * entries and usage are counted out in the same transaction, and
+ * {@link FilePurgeService} then removes its blob and row. The checks on
+ * {@code expiredAt} in {@link FileService} stay, for the moment between the
+ * expiry and the tick.
+ */
+@Service
+public class FileExpiryService {
+
+    private static final Logger log = LoggerFactory.getLogger(FileExpiryService.class);
+
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(30);
+
+    private final FileRepository fileRepository;
+    private final TagDictionary tagDictionary;
+    private final FileNameIndex fileNameIndex;
+    private final StorageQuota storageQuota;
+    private final ShareTokenIndex shareTokenIndex;
+    private final FileEventOutbox fileEvents;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final long tickMillis;
+    private final long horizonMillis;
+    private final long graceMillis;
+    private final int batchSize;
+
+    private final TimingWheel wheel;
+    private final ScheduledExecutorService ticker;
+    // Every file due up to this instant (epoch millis) is in the wheel or already tombstoned
+    private volatile long loadedUntil = Long.MIN_VALUE;
+
+    private final Counter expired;
+    private final Counter failures;
+    private final Timer lag;
+
+    public FileExpiryService(FileRepository fileRepository,
+                             TagDictionary tagDictionary,
+                             FileNameIndex fileNameIndex,
+                             StorageQuota storageQuota,
+                             ShareTokenIndex shareTokenIndex,
+                             FileEventOutbox fileEvents,
+                             TransactionTemplate transactionTemplate,
+                             MeterRegistry meterRegistry,
+                             @Value("${file.expiry.enabled:true}") boolean enabled,
+                             @Value("${file.expiry.tick-ms:1000}") long tickMillis,
+                             @Value("${file.expiry.horizon:PT6H}") Duration horizon,
+                             @Value("${file.expiry.grace:P1D}") Duration grace,
+                             @Value("${file.expiry.batch-size:200}") int batchSize) {
+        this.fileRepository = fileRepository;
+        this.tagDictionary = tagDictionary;
+        this.fileNameIndex = fileNameIndex;
+        this.storageQuota = storageQuota;
+        this.shareTokenIndex = shareTokenIndex;
+        this.fileEvents = fileEvents;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.tickMillis = tickMillis;
+        this.horizonMillis = horizon.toMillis();
+        this.graceMillis = grace.toMillis();
+        this.batchSize = batchSize;
+        // Twice the horizon: files loaded at the far edge of the window still fit if the ticker falls behind
+        this.wheel = new TimingWheel(2 * horizonMillis / tickMillis,
+                Math.floorDiv(System.currentTimeMillis(), tickMillis));
+        this.ticker = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("file-expiry").daemon().factory());
+
+        this.expired = Counter.builder("file.expiry.expired")
+                .description("Files tombstoned because their share link expired")
+                .register(meterRegistry);
+        this.failures = Counter.builder("file.expiry.failures")
+                .description("Batches of expired files that could not be tombstoned and were rescheduled")
+                .register(meterRegistry);
+        this.lag = Timer.builder("file.expiry.lag")
+                .description("Delay between the end of a file's grace period and its tombstone")
+                .register(meterRegistry);
+        Gauge.builder("file.expiry.scheduled", this, FileExpiryService::scheduled)
+                .description("Files in the expiry wheel, due within the horizon")
+                .register(meterRegistry);
+    }
+
+    // The ticker has its own thread: a long job on the shared scheduler must not delay expiries
+    @PostConstruct
+    void start() {
+        if (enabled) {
+            ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * Schedules a new file once its upload commits, if it is due within the
+     * window already loaded. A later one is picked up by {@link #refill}.
+     */
+    public void fileAdded(Long fileId, LocalDateTime expiredAt) {
+        if (!enabled) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    schedule(fileId, expiredAt);
+                }
+            });
+        } else {
+            schedule(fileId, expiredAt);
+        }
+    }
+
+    // Read after the commit: a refill whose stream may have missed the row has already moved loadedUntil
+    private void schedule(Long fileId, LocalDateTime expiredAt) {
+        long dueAt = epochMillis(expiredAt) + graceMillis;
+        if (dueAt <= loadedUntil) {
+            synchronized (wheel) {
+                wheel.add(fileId, Math.ceilDiv(dueAt, tickMillis));
+            }
+        }
+    }
+
+    /**
+     * Extends the loaded window to {@code now + horizon}. The first run also
+     * tombstones the files that came due while the application was down.
+     */
+    @Scheduled(initialDelayString = "${file.expiry.initial-delay-ms:0}",
+               fixedDelayString = "${file.expiry.refill-interval-ms:60000}")
+    public synchronized void refill() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long from = loadedUntil;
+        if (from == Long.MIN_VALUE) {
+            expireOverdue(now);
+            from = now;
+        }
+        long until = now + horizonMillis;
+        // Published before streaming, so that an upload committing from now on schedules itself.
+        // One the stream also reads is scheduled twice, which the tombstone query tolerates.
+        loadedUntil = until;
+        LocalDateTime start = dateTime(from - graceMillis);
+        LocalDateTime end = dateTime(until - graceMillis);
+        try {
+            // From the primary: a lagging replica would miss files uploaded just before
+            int loaded = transactionTemplate.execute(tx -> {
+                try (Stream<ExpiringFile> files = fileRepository.streamExpiringBetween(start, end)) {
+                    int count = 0;
+                    for (ExpiringFile file : (Iterable<ExpiringFile>) files::iterator) {
+                        long dueAt = epochMillis(file.expiredAt()) + graceMillis;
+                        synchronized (wheel) {
+                            wheel.add(file.fileId(), Math.ceilDiv(dueAt, tickMillis));
+                        }
+                        count++;
+                    }
+                    return count;
+                }
+            });
+            log.debug("Expiry wheel loaded {} files expiring before {}", loaded, end);
+        } catch (RuntimeException e) {
+            loadedUntil = from;
+            throw e;
+        }
+    }
+
+    private void expireOverdue(long now) {
+        LocalDateTime cutoff = dateTime(now - graceMillis);
+        int total = 0;
+        List<ExpiringFile> batch;
+        do {
+            batch = transactionTemplate.execute(tx -> fileRepository.findExpired(cutoff, Limit.of(batchSize)));
+            if (!batch.isEmpty()) {
+                total += expire(batch.stream().map(ExpiringFile::fileId).toList(), now);
+            }
+        } while (batch.size() == batchSize);
+        if (total > 0) {
+            log.info("Tombstoned {} files whose grace period ended while the application was down", total);
+        }
+    }
+
+    void tick() {
+        // An exception would cancel the fixed-rate task for good
+        try {
+            advanceTo(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            log.warn("File expiry tick failed", e);
+        }
+    }
+
+    void advanceTo(long now) {
+        List<Long> due = new ArrayList<>();
+        synchronized (wheel) {
+            wheel.advance(Math.floorDiv(now, tickMillis), (fileId, deadline) -> due.add(fileId));
+        }
+        for (int i = 0; i < due.size(); i += batchSize) {
+            List<Long> batch = due.subList(i, Math.min(i + batchSize, due.size()));
+            try {
+                expire(batch, now);
+            } catch (RuntimeException e) {
+                failures.increment();
+                log.warn("Could not tombstone {} expired files, retrying in {}", batch.size(), RETRY_DELAY, e);
+                long retryTick = Math.ceilDiv(now + RETRY_DELAY.toMillis(), tickMillis);
+                synchronized (wheel) {
+                    batch.forEach(fileId -> wheel.add(fileId, retryTick));
+                }
+            }
+        }
+    }
+
+    /**
+     * Tombstones those of {@code fileIds} that are still live and whose grace
+     * period ended at {@code now}, one user at a time, and returns how many were.
+     */
+    private int expire(List<Long> fileIds, long now) {
+        LocalDateTime cutoff = dateTime(now - graceMillis);
+        // Stored as is, so that the tag and usage counters can find exactly the rows marked here
+        LocalDateTime deletedAt = dateTime(now).truncatedTo(ChronoUnit.MICROS);
+        int marked = transactionTemplate.execute(tx -> {
+            Map<Long, List<ExpiringFile>> byUser = fileRepository.findExpiredIn(fileIds, cutoff).stream()
+                    .collect(Collectors.groupingBy(ExpiringFile::userId));
+            int count = 0;
+            for (Map.Entry<Long, List<ExpiringFile>> user : byUser.entrySet()) {
+                Long userId = user.getKey();
+                List<Long> ids = user.getValue().stream().map(ExpiringFile::fileId).toList();
+                int deleted = fileRepository.markDeleted(ids, userId, deletedAt);
+                tagDictionary.filesDeleted(userId, ids, deletedAt);
+                fileNameIndex.filesRemoved(userId, ids);
+                storageQuota.filesDeleted(userId, ids, deletedAt);
+                fileEvents.publishTombstoned(FileEventType.EXPIRED, userId, ids, deletedAt);
+                shareTokenIndex.recordRemovals(deleted);
+                user.getValue().forEach(file -> lag.record(Duration.between(file.expiredAt(), cutoff)));
+                count += deleted;
+            }
+            return count;
+        });
+        expired.increment(marked);
+        return marked;
+    }
+
+    int scheduled() {
+        synchronized (wheel) {
+            return wheel.size();
+        }
+    }
+
+    // Rounded up: a file must not be tombstoned a fraction of a millisecond before its expiry
+    private static long epochMillis(LocalDateTime dateTime) {
+        Instant instant = dateTime.atZone(ZoneId.systemDefault()).toInstant();
+        return instant.toEpochMilli() + (instant.getNano() % 1_000_000 == 0 ? 0 : 1);
+    }
+
+    private static LocalDateTime dateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,572 @@
+package com.datashare.backend.service;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.datashare.backend.repository.FileRepository;
+import com.datashare.backend.repository.NameEntry;
+import com.datashare.backend.repository.TagRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Answers name searches from memory: for each user who searched recently, an
+ * inverted index maps every word of their file names and tags to the ids of the
+ * files containing it. A query matches files having, for each of its words, a
+ * word starting with it ("rap 2024" finds "Rapport_2024-final.pdf").
+ *
+ * <p>An index is loaded from the database on the user's first search, then kept
+ * current by {@link #fileAdded} and {@link #filesRemoved}. Uploads served by
+ * other instances are read at each search: the user's files created since the
+ * previous read, less {@code search.name-index.catch-up-window} for uploads that
+ * commit late. Deletions made elsewhere stay in the index until its next load;
+ * search results are read from the database, which drops them. Indexes idle for
+ * too long are dropped, and the least recently used ones go first when the total
+ * number of postings exceeds the budget.
+ *
+ * <p>With the full-text fallback enabled, a cold user's search is answered by
+ * PostgreSQL while their index loads in the background; otherwise the search
+ * waits for the load.
+ */
+@Service
+public class FileNameIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(FileNameIndex.class);
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private final FileRepository fileRepository;
+    private final TagRepository tagRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean fullTextFallback;
+    private final long maxPostings;
+    private final long idleTtlNanos;
+    private final Duration catchUpWindow;
+    // A single loader: cold users queue up instead of loading all at once on a restart
+    private final ExecutorService loader = Executors.newSingleThreadExecutor();
+
+    private final ConcurrentHashMap<Long, UserIndex> indexes = new ConcurrentHashMap<>();
+
+    private final Counter memoryQueries;
+    private final Counter fullTextQueries;
+
+    public FileNameIndex(FileRepository fileRepository,
+                         TagRepository tagRepository,
+                         TransactionTemplate transactionTemplate,
+                         MeterRegistry meterRegistry,
+                         @Value("${search.name-index.full-text-fallback:false}") boolean fullTextFallback,
+                         @Value("${search.name-index.max-postings:5000000}") long maxPostings,
+                         @Value("${search.name-index.idle-ttl:PT30M}") Duration idleTtl,
+                         @Value("${search.name-index.catch-up-window:PT1M}") Duration catchUpWindow) {
+        this.fileRepository = fileRepository;
+        this.tagRepository = tagRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.fullTextFallback = fullTextFallback;
+        this.maxPostings = maxPostings;
+        this.idleTtlNanos = idleTtl.toNanos();
+        this.catchUpWindow = catchUpWindow;
+
+        this.memoryQueries = queries(meterRegistry, "memory");
+        this.fullTextQueries = queries(meterRegistry, "full_text");
+        Gauge.builder("search.name-index.users", indexes, Map::size)
+                .description("Users whose name index is in memory")
+                .register(meterRegistry);
+        Gauge.builder("search.name-index.postings", this, FileNameIndex::postings)
+                .description("(word, file) pairs held by the in-memory name indexes")
+                .register(meterRegistry);
+    }
+
+    private static Counter queries(MeterRegistry registry, String source) {
+        return Counter.builder("search.name-index.queries")
+                .description("Name searches by where they were answered")
+                .tag("source", source)
+                .register(registry);
+    }
+
+    /** The searchable words of a name or tag: lower case, without accents, split on anything but letters and digits. */
+    public static List<String> words(String text) {
+        if (text == null) {
+            return List.of();
+        }
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATORS.splitAsStream(folded.toLowerCase(Locale.ROOT))
+                .filter(w -> !w.isEmpty())
+                .distinct()
+                .toList();
+    }
+
+    /**
+     * The query for {@code to_tsquery('simple', ...)}, each word as a prefix. Accents
+     * are kept: the {@code simple} configuration does not remove them either.
+     */
+    public static String toTsQuery(String query) {
+        return SEPARATORS.splitAsStream(query.toLowerCase(Locale.ROOT))
+                .filter(w -> !w.isEmpty())
+                .map(w -> w + ":*")
+                .collect(Collectors.joining(" & "));
+    }
+
+    /**
+     * Ids of the user's files matching the query, newest first, or empty when the
+     * index is not loaded yet and the caller should use the full-text fallback.
+     */
+    public Optional<List<Long>> search(Long userId, String query, int limit) {
+        List<String> words = words(query);
+        UserIndex index = indexes.get(userId);
+        if (index == null || !index.isReady()) {
+            if (fullTextFallback) {
+                if (index == null) {
+                    loader.execute(() -> loadInBackground(userId));
+                }
+                fullTextQueries.increment();
+                return Optional.empty();
+            }
+            index = index == null ? load(userId) : index;
+            index.awaitReady();
+        }
+        catchUp(userId, index);
+        memoryQueries.increment();
+        return Optional.of(index.search(words, limit));
+    }
+
+    /**
+     * Indexes a new file once its upload is committed (immediately outside a
+     * transaction): a rolled-back upload never reaches the index. A load reading
+     * the database meanwhile may see the file too; adding it twice is harmless.
+     */
+    public void fileAdded(Long userId, Long fileId, String name, Collection<String> tags) {
+        Set<String> words = new LinkedHashSet<>(words(name));
+        for (String tag : tags) {
+            words.addAll(words(tag));
+        }
+        Consumer<UserIndex> add = index -> index.add(fileId, words);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(userId, add);
+                }
+            });
+        } else {
+            apply(userId, add);
+        }
+    }
+
+    /** Unindexes files once their deletion is committed (immediately outside a transaction). */
+    public void filesRemoved(Long userId, Collection<Long> fileIds) {
+        List<Long> ids = List.copyOf(fileIds);
+        Consumer<UserIndex> remove = index -> ids.forEach(index::remove);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(userId, remove);
+                }
+            });
+        } else {
+            apply(userId, remove);
+        }
+    }
+
+    // Users without an index in memory have nothing to update: their next load reads the change
+    private void apply(Long userId, Consumer<UserIndex> change) {
+        UserIndex index = indexes.get(userId);
+        if (index != null) {
+            change.accept(index);
+        }
+    }
+
+    private void loadInBackground(Long userId) {
+        if (indexes.containsKey(userId)) {
+            return;
+        }
+        try {
+            load(userId);
+        } catch (RuntimeException e) {
+            log.warn("Could not load the name index of user {}", userId, e);
+        }
+    }
+
+    // Idempotent: a file this instance indexed already, or read by the previous catch-up, is added again as is
+    private void catchUp(Long userId, UserIndex index) {
+        LocalDateTime startedAt = LocalDateTime.now();
+        LocalDateTime since = index.caughtUpAt().minus(catchUpWindow);
+        transactionTemplate.executeWithoutResult(tx -> {
+            try (Stream<NameEntry> names = fileRepository.streamNamesCreatedAfter(userId, since)) {
+                names.forEach(entry -> index.add(entry.fileId(), words(entry.text())));
+            }
+            try (Stream<NameEntry> tags = tagRepository.streamTagNamesCreatedAfter(userId, since)) {
+                tags.forEach(entry -> index.add(entry.fileId(), words(entry.text())));
+            }
+        });
+        index.caughtUp(startedAt);
+    }
+
+    /**
+     * Registers an empty index before reading the database, so that changes
+     * committed during the load reach it too; deletions are remembered and win
+     * over the rows the load reads.
+     */
+    UserIndex load(Long userId) {
+        UserIndex index = new UserIndex();
+        UserIndex existing = indexes.putIfAbsent(userId, index);
+        if (existing != null) {
+            return existing;
+        }
+        long start = System.currentTimeMillis();
+        LocalDateTime startedAt = LocalDateTime.now();
+        try {
+            // Loaded from the primary: a lagging replica would miss files uploaded just before
+            transactionTemplate.executeWithoutResult(tx -> {
+                try (Stream<NameEntry> names = fileRepository.streamNames(userId)) {
+                    names.forEach(index::load);
+                }
+                try (Stream<NameEntry> tags = tagRepository.streamTagNames(userId)) {
+                    tags.forEach(index::load);
+                }
+            });
+        } catch (RuntimeException e) {
+            indexes.remove(userId, index);
+            index.failed(e);
+            throw e;
+        }
+        index.caughtUp(startedAt);
+        index.loaded();
+        log.debug("Name index of user {} loaded with {} files and {} postings in {} ms",
+                userId, index.files(), index.postings(), System.currentTimeMillis() - start);
+        evictOverBudget(userId);
+        return index;
+    }
+
+    @Scheduled(initialDelayString = "${search.name-index.maintenance-interval-ms:60000}",
+               fixedDelayString = "${search.name-index.maintenance-interval-ms:60000}")
+    public void maintain() {
+        long now = System.nanoTime();
+        indexes.entrySet().removeIf(e -> e.getValue().isReady() && now - e.getValue().lastAccess() > idleTtlNanos);
+        evictOverBudget(null);
+    }
+
+    private void evictOverBudget(Long keep) {
+        long total = postings();
+        while (total > maxPostings) {
+            Optional<Map.Entry<Long, UserIndex>> lru = indexes.entrySet().stream()
+                    .filter(e -> !e.getKey().equals(keep) && e.getValue().isReady())
+                    .min(Comparator.comparingLong(e -> e.getValue().lastAccess()));
+            if (lru.isEmpty()) {
+                return;
+            }
+            if (indexes.remove(lru.get().getKey(), lru.get().getValue())) {
+                total -= lru.get().getValue().postings();
+            }
+        }
+    }
+
+    long postings() {
+        return indexes.values().stream().mapToLong(UserIndex::postings).sum();
+    }
+
+    boolean isLoaded(Long userId) {
+        UserIndex index = indexes.get(userId);
+        return index != null && index.isReady();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loader.shutdownNow();
+    }
+
+    /** One user's words, each with the sorted ids of the files containing it. */
+    static final class UserIndex {
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final TreeMap<String, Postings> byWord = new TreeMap<>();
+        // The words of each file, to unindex it and to check the other words of a query
+        private final HashMap<Long, String[]> files = new HashMap<>();
+        private final CompletableFuture<Void> ready = new CompletableFuture<>();
+        private Set<Long> removedWhileLoading = new HashSet<>();
+        private long postings;
+        private volatile long lastAccess = System.nanoTime();
+        // Files created before this were read from the database, bar late commits
+        private LocalDateTime caughtUpAt = LocalDateTime.MIN;
+
+        boolean isReady() {
+            return ready.isDone() && !ready.isCompletedExceptionally();
+        }
+
+        void awaitReady() {
+            ready.join();
+        }
+
+        void loaded() {
+            lock.writeLock().lock();
+            try {
+                removedWhileLoading = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            ready.complete(null);
+        }
+
+        void failed(Throwable cause) {
+            ready.completeExceptionally(cause);
+        }
+
+        long lastAccess() {
+            return lastAccess;
+        }
+
+        synchronized LocalDateTime caughtUpAt() {
+            return caughtUpAt;
+        }
+
+        synchronized void caughtUp(LocalDateTime at) {
+            if (at.isAfter(caughtUpAt)) {
+                caughtUpAt = at;
+            }
+        }
+
+        long postings() {
+            lock.readLock().lock();
+            try {
+                return postings;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        int files() {
+            lock.readLock().lock();
+            try {
+                return files.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void load(NameEntry entry) {
+            List<String> entryWords = words(entry.text());
+            lock.writeLock().lock();
+            try {
+                if (!removedWhileLoading.contains(entry.fileId())) {
+                    addLocked(entry.fileId(), entryWords);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void add(long fileId, Collection<String> fileWords) {
+            lock.writeLock().lock();
+            try {
+                addLocked(fileId, fileWords);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void addLocked(long fileId, Collection<String> fileWords) {
+            String[] known = files.getOrDefault(fileId, new String[0]);
+            List<String> merged = new ArrayList<>(Arrays.asList(known));
+            for (String word : fileWords) {
+                Postings postingList = byWord.get(word);
+                if (postingList == null) {
+                    postingList = new Postings();
+                    byWord.put(word, postingList);
+                } else {
+                    // Share the key instance rather than keep one copy of the word per file
+                    word = byWord.ceilingKey(word);
+                }
+                if (postingList.add(fileId)) {
+                    postings++;
+                    merged.add(word);
+                }
+            }
+            if (merged.size() > known.length) {
+                files.put(fileId, merged.toArray(String[]::new));
+            }
+        }
+
+        void remove(long fileId) {
+            lock.writeLock().lock();
+            try {
+                if (removedWhileLoading != null) {
+                    removedWhileLoading.add(fileId);
+                }
+                String[] fileWords = files.remove(fileId);
+                if (fileWords == null) {
+                    return;
+                }
+                for (String word : fileWords) {
+                    Postings postingList = byWord.get(word);
+                    if (postingList != null && postingList.remove(fileId)) {
+                        postings--;
+                        if (postingList.isEmpty()) {
+                            byWord.remove(word);
+                        }
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Candidates come from the query word with the fewest postings; the other
+         * words are checked against each candidate's own words, newest first, until
+         * the limit is reached.
+         */
+        List<Long> search(List<String> query, int limit) {
+            lastAccess = System.nanoTime();
+            lock.readLock().lock();
+            try {
+                String rarest = null;
+                long fewest = Long.MAX_VALUE;
+                for (String word : query) {
+                    long count = prefixed(word).values().stream().mapToLong(Postings::size).sum();
+                    if (count < fewest) {
+                        rarest = word;
+                        fewest = count;
+                    }
+                }
+                if (rarest == null || fewest == 0) {
+                    return List.of();
+                }
+                long[] candidates = union(prefixed(rarest).values());
+                List<Long> matches = new ArrayList<>(Math.min(limit, candidates.length));
+                for (int i = candidates.length - 1; i >= 0 && matches.size() < limit; i--) {
+                    if (i < candidates.length - 1 && candidates[i] == candidates[i + 1]) {
+                        continue;
+                    }
+                    if (matchesAll(files.get(candidates[i]), query, rarest)) {
+                        matches.add(candidates[i]);
+                    }
+                }
+                return matches;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private SortedMap<String, Postings> prefixed(String prefix) {
+            return byWord.subMap(prefix, prefix + Character.MAX_VALUE);
+        }
+
+        // Sorted, possibly with duplicates when a file has several words sharing the prefix
+        private static long[] union(Collection<Postings> lists) {
+            if (lists.size() == 1) {
+                Postings only = lists.iterator().next();
+                return Arrays.copyOf(only.ids, only.size);
+            }
+            long[] all = new long[lists.stream().mapToInt(Postings::size).sum()];
+            int offset = 0;
+            for (Postings list : lists) {
+                System.arraycopy(list.ids, 0, all, offset, list.size);
+                offset += list.size;
+            }
+            Arrays.sort(all);
+            return all;
+        }
+
+        private static boolean matchesAll(String[] fileWords, List<String> query, String skip) {
+            if (fileWords == null) {
+                return false;
+            }
+            for (String word : query) {
+                if (word.equals(skip)) {
+                    continue;
+                }
+                boolean found = false;
+                for (String fileWord : fileWords) {
+                    if (fileWord.startsWith(word)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /** File ids in ascending order; new files usually have the highest id and are appended. */
+    static final class Postings {
+
+        private long[] ids = new long[2];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        boolean add(long id) {
+            int at = size;
+            if (size > 0 && id <= ids[size - 1]) {
+                int found = Arrays.binarySearch(ids, 0, size, id);
+                if (found >= 0) {
+                    return false;
+                }
+                at = -found - 1;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            }
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+            return true;
+        }
+
+        boolean remove(long id) {
+            int found = Arrays.binarySearch(ids, 0, size, id);
+            if (found < 0) {
+                return false;
+            }
+            System.arraycopy(ids, found + 1, ids, found, size - found - 1);
+            size--;
+            return true;
+        }
+    }
+}
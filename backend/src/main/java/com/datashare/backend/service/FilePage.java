@@ -0,0 +1,11 @@
+package com.datashare.backend.service;
+
+import java.util.List;
+
+import com.datashare.backend.dto.FileUploadResponse;
+
+/** A page of a user's files; {@code nextCursor} is {@code null} on the last page. */
+public record FilePage(
+        List<FileUploadResponse> files,
+        String nextCursor
+) {}
@@ -0,0 +1,148 @@
+package com.datashare.backend.service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Keeps the daily {@code expired_at} partitions of {@code files} on PostgreSQL:
+ * creates them ahead of the longest expiry, and lets {@link FilePurgeService}
+ * drop a whole day of expired files at once instead of deleting its rows. The
+ * table is converted once by {@code db/partition-files.sql}; until then, or on
+ * another database, nothing here is active and files are purged row by row.
+ */
+@Service
+public class FilePartitions {
+
+    private static final Logger log = LoggerFactory.getLogger(FilePartitions.class);
+
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+    // Names are only ever built from this pattern, so they are safe to splice into DDL
+    private static final Pattern PARTITION = Pattern.compile("files_p(\\d{8})");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int daysAhead;
+    private final Duration dropAfter;
+
+    private volatile boolean active;
+
+    public FilePartitions(JdbcTemplate jdbcTemplate,
+                          TransactionTemplate transactionTemplate,
+                          @Value("${files.partitioning.enabled:false}") boolean enabled,
+                          @Value("${files.partitioning.days-ahead:10}") int daysAhead,
+                          @Value("${files.partitioning.drop-after:P1D}") Duration dropAfter) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.daysAhead = daysAhead;
+        this.dropAfter = dropAfter;
+    }
+
+    /** {@code true} once {@code files} is known to be partitioned. */
+    public boolean active() {
+        return active;
+    }
+
+    @Scheduled(initialDelayString = "${files.partitioning.initial-delay-ms:0}",
+               fixedDelayString = "${files.partitioning.check-interval-ms:3600000}")
+    public void maintain() {
+        if (!enabled) {
+            return;
+        }
+        boolean partitioned = Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "select exists (select 1 from pg_partitioned_table where partrelid = 'files'::regclass)",
+                Boolean.class));
+        if (!partitioned) {
+            log.warn("files.partitioning.enabled is set but files is not partitioned; "
+                    + "run db/partition-files.sql to convert it");
+            active = false;
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        // Uploads expire within seven days: with a margin, an insert never finds its partition missing
+        for (int day = 0; day <= daysAhead; day++) {
+            create(today.plusDays(day));
+        }
+        active = true;
+    }
+
+    private void create(LocalDate day) {
+        jdbcTemplate.execute("create table if not exists " + name(day) + " partition of files "
+                + "for values from ('" + day + "') to ('" + day.plusDays(1) + "')");
+    }
+
+    /**
+     * The partitions whose files all expired more than {@code drop-after} ago,
+     * oldest first.
+     */
+    public List<String> expired() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(dropAfter);
+        List<String> expired = new ArrayList<>();
+        for (String partition : jdbcTemplate.queryForList("select c.relname from pg_inherits i "
+                + "join pg_class c on c.oid = i.inhrelid where i.inhparent = 'files'::regclass "
+                + "order by c.relname", String.class)) {
+            Matcher matcher = PARTITION.matcher(partition);
+            if (matcher.matches()
+                    && !LocalDate.parse(matcher.group(1), SUFFIX).plusDays(1).atStartOfDay().isAfter(cutoff)) {
+                expired.add(partition);
+            }
+        }
+        return expired;
+    }
+
+    /** Files not yet tombstoned by {@link FileExpiryService}, whose counters still include them. */
+    public boolean hasLiveFiles(String partition) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "select exists (select 1 from " + checked(partition) + " where deleted_at is null)", Boolean.class));
+    }
+
+    /** One page of the partition's stored names, after {@code afterPath} (from the start when null). */
+    public List<String> blobs(String partition, String afterPath, int limit) {
+        return jdbcTemplate.queryForList("select file_path from " + checked(partition)
+                + " where file_path > ? order by file_path limit ?", String.class,
+                afterPath == null ? "" : afterPath, limit);
+    }
+
+    /**
+     * Removes the partition's tags with one statement, then the partition
+     * itself. The detach runs concurrently, so that queries on the other
+     * partitions are not blocked; one interrupted half-way is finished first.
+     */
+    public void drop(String partition) {
+        String table = checked(partition);
+        transactionTemplate.executeWithoutResult(tx ->
+                jdbcTemplate.update("delete from tags where file_id in (select id from " + table + ")"));
+        Boolean pending = jdbcTemplate.queryForObject("select i.inhdetachpending from pg_inherits i "
+                + "join pg_class c on c.oid = i.inhrelid where c.relname = ?", Boolean.class, table);
+        jdbcTemplate.execute("alter table files detach partition " + table
+                + (Boolean.TRUE.equals(pending) ? " finalize" : " concurrently"));
+        jdbcTemplate.execute("drop table " + table);
+        log.info("Dropped expired partition {}", table);
+    }
+
+    private static String name(LocalDate day) {
+        return "files_p" + day.format(SUFFIX);
+    }
+
+    private static String checked(String partition) {
+        if (!PARTITION.matcher(partition).matches()) {
+            throw new IllegalArgumentException("Not a files partition: " + partition);
+        }
+        return partition;
+    }
+}
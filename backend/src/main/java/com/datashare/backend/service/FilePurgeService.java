@@ -0,0 +1,157 @@
+package com.datashare.backend.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.datashare.backend.entity.FileEntity;
+import com.datashare.backend.repository.FileRepository;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Removes tombstoned files in batches: blobs are unlinked first, outside of any
+ * transaction, then the rows are deleted. Blob deletion is idempotent, so a crash
+ * between the two steps is recovered on the next run. A row whose blob could
+ * not be deleted counts an attempt and goes behind the others, so that it never
+ * holds back the head of a batch; after {@code file.purge.max-attempts} it is
+ * left for an operator.
+ *
+ * <p>Once {@code files} is partitioned by expiry, expired files are left to
+ * their partition: when a whole day has expired, its blobs are unlinked and the
+ * partition is dropped, without a row delete. Only files deleted before their
+ * expiry are still purged row by row.
+ */
+@Service
+public class FilePurgeService {
+
+    private static final Logger log = LoggerFactory.getLogger(FilePurgeService.class);
+
+    private final FileRepository fileRepository;
+    private final StorageService storageService;
+    private final FilePartitions filePartitions;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService executor;
+    private final int batchSize;
+    private final int maxAttempts;
+
+    public FilePurgeService(FileRepository fileRepository,
+                            StorageService storageService,
+                            FilePartitions filePartitions,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${file.purge.batch-size:200}") int batchSize,
+                            @Value("${file.purge.max-attempts:10}") int maxAttempts,
+                            @Value("${file.purge.parallelism:4}") int parallelism) {
+        this.fileRepository = fileRepository;
+        this.storageService = storageService;
+        this.filePartitions = filePartitions;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.executor = Executors.newFixedThreadPool(parallelism);
+    }
+
+    @Scheduled(initialDelayString = "${file.purge.initial-delay-ms:10000}",
+               fixedDelayString = "${file.purge.interval-ms:30000}")
+    public void purgeTombstoned() {
+        int purged;
+        do {
+            purged = purgeBatch();
+        } while (purged == batchSize);
+        if (filePartitions.active()) {
+            dropExpiredPartitions();
+        }
+    }
+
+    int purgeBatch() {
+        Limit limit = Limit.of(batchSize);
+        List<FileEntity> batch = filePartitions.active()
+                ? fileRepository.findDeletedBeforeExpiry(maxAttempts, limit)
+                : fileRepository.findPurgeBatch(maxAttempts, limit);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        boolean[] unlinked = unlink(batch.stream().map(FileEntity::getFilePath).toList());
+        List<Long> removed = new ArrayList<>(batch.size());
+        List<Long> failed = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            (unlinked[i] ? removed : failed).add(batch.get(i).getId());
+        }
+
+        if (!removed.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> fileRepository.deletePurged(removed));
+            log.info("Purged {} deleted files", removed.size());
+        }
+        if (!failed.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> fileRepository.recordFailedPurge(failed));
+        }
+        return removed.size();
+    }
+
+    void dropExpiredPartitions() {
+        for (String partition : filePartitions.expired()) {
+            // Its files are still counted in tags and usage until FileExpiryService tombstones them
+            if (filePartitions.hasLiveFiles(partition)) {
+                log.info("Partition {} still has files not tombstoned, keeping it", partition);
+                continue;
+            }
+            if (unlinkPartition(partition)) {
+                filePartitions.drop(partition);
+            }
+        }
+    }
+
+    private boolean unlinkPartition(String partition) {
+        String after = null;
+        List<String> blobs;
+        do {
+            blobs = filePartitions.blobs(partition, after, batchSize);
+            for (boolean unlinked : unlink(blobs)) {
+                if (!unlinked) {
+                    return false;
+                }
+            }
+            after = blobs.isEmpty() ? after : blobs.getLast();
+        } while (blobs.size() == batchSize);
+        return true;
+    }
+
+    // Deletes the blobs in parallel and tells which ones are gone
+    private boolean[] unlink(List<String> storedNames) {
+        List<Future<?>> deletions = new ArrayList<>(storedNames.size());
+        for (String storedName : storedNames) {
+            deletions.add(executor.submit(() -> storageService.delete(storedName)));
+        }
+
+        boolean[] unlinked = new boolean[storedNames.size()];
+        for (int i = 0; i < storedNames.size(); i++) {
+            try {
+                deletions.get(i).get();
+                unlinked[i] = true;
+            } catch (ExecutionException e) {
+                log.warn("Could not delete blob {}, will retry", storedNames.get(i), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return unlinked;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -1,53 +1,94 @@
 package com.datashare.backend.service;
 
-import java.nio.file.Path;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.Arrays;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.datashare.backend.datasource.ReplicaRouting;
 import com.datashare.backend.dto.FileInfoResponse;
 import com.datashare.backend.dto.FileUploadResponse;
+import com.datashare.backend.dto.TagFacetResponse;
+import com.datashare.backend.dto.UsageStatsResponse;
+import com.datashare.backend.entity.BlobStatus;
 import com.datashare.backend.entity.FileEntity;
+import com.datashare.backend.entity.FileEventType;
 import com.datashare.backend.entity.Tag;
 import com.datashare.backend.entity.User;
+import com.datashare.backend.entity.UserTag;
+import com.datashare.backend.exception.BlobUnavailableException;
 import com.datashare.backend.exception.ForbiddenException;
 import com.datashare.backend.exception.GoneException;
 import com.datashare.backend.exception.NotFoundException;
+import com.datashare.backend.exception.QuotaExceededException;
 import com.datashare.backend.exception.UnauthorizedException;
+import com.datashare.backend.metrics.ServerTiming;
 import com.datashare.backend.repository.FileRepository;
 import com.datashare.backend.repository.UserRepository;
+import com.datashare.backend.storage.StoredFile;
 
 @Service
 public class FileService {
 
+    private static final int MAX_PAGE_SIZE = 200;
+
+    private static final Set<String> ISO_MEDIA_TYPES = Set.of(
+            "audio/mp4", "audio/x-m4a", "video/quicktime", "video/3gpp", "video/3gpp2", "video/x-m4v",
+            "image/heic", "image/heic-sequence", "image/heif", "image/heif-sequence", "image/avif");
+
     private final FileRepository fileRepository;
     private final UserRepository userRepository;
     private final StorageService storageService;
     private final PasswordEncoder passwordEncoder;
-    private final Set<String> forbiddenExtensions;
+    private final ShareTokenIndex shareTokenIndex;
+    private final TagDictionary tagDictionary;
+    private final FileNameIndex fileNameIndex;
+    private final StorageQuota storageQuota;
+    private final DownloadCounter downloadCounter;
+    private final FileExpiryService fileExpiryService;
+    private final FileEventOutbox fileEvents;
+    private final FileValidator fileValidator;
 
     public FileService(FileRepository fileRepository,
                        UserRepository userRepository,
                        StorageService storageService,
                        PasswordEncoder passwordEncoder,
-                       @Value("${file.forbidden-extensions}") String forbiddenExts) {
+                       ShareTokenIndex shareTokenIndex,
+                       TagDictionary tagDictionary,
+                       FileNameIndex fileNameIndex,
+                       StorageQuota storageQuota,
+                       DownloadCounter downloadCounter,
+                       FileExpiryService fileExpiryService,
+                       FileEventOutbox fileEvents,
+                       FileValidator fileValidator) {
         this.fileRepository = fileRepository;
         this.userRepository = userRepository;
         this.storageService = storageService;
         this.passwordEncoder = passwordEncoder;
-        this.forbiddenExtensions = Arrays.stream(forbiddenExts.split(","))
-                .map(String::trim)
-                .map(String::toLowerCase)
-                .collect(Collectors.toSet());
+        this.shareTokenIndex = shareTokenIndex;
+        this.tagDictionary = tagDictionary;
+        this.fileNameIndex = fileNameIndex;
+        this.storageQuota = storageQuota;
+        this.downloadCounter = downloadCounter;
+        this.fileExpiryService = fileExpiryService;
+        this.fileEvents = fileEvents;
+        this.fileValidator = fileValidator;
     }
 
     @Transactional
@@ -57,22 +98,26 @@ public class FileService {
                                      String password,
                                      List<String> tags) {
 
-        validateFile(file);
+        fileValidator.validate(file);
 
         int days = (expirationDays != null && expirationDays >= 1 && expirationDays <= 7)
                 ? expirationDays : 7;
 
+        long lookupStart = ServerTiming.start();
         User user = userRepository.findByEmail(userEmail)
                 .orElseThrow(() -> new NotFoundException("User not found"));
+        ServerTiming.stop("user-lookup", lookupStart);
+        storageQuota.checkRoom(user, file.getSize());
 
-        String storedName = storageService.store(file);
+        StoredFile stored = storageService.store(file);
         String token = UUID.randomUUID().toString();
 
         FileEntity fileEntity = new FileEntity();
         fileEntity.setName(file.getOriginalFilename());
-        fileEntity.setType(file.getContentType());
-        fileEntity.setSize(file.getSize());
-        fileEntity.setFilePath(storedName);
+        fileEntity.setType(resolveContentType(file.getContentType(), stored.detectedType()));
+        fileEntity.setSize(stored.size());
+        fileEntity.setChecksum(stored.sha256());
+        fileEntity.setFilePath(stored.storedName());
         fileEntity.setToken(token);
         fileEntity.setExpiredAt(LocalDateTime.now().plusDays(days));
         fileEntity.setUser(user);
@@ -84,21 +129,41 @@ public class FileService {
             fileEntity.setPassword(passwordEncoder.encode(password));
         }
 
-        if (tags != null && !tags.isEmpty()) {
+        // Tags differing only by case or surrounding spaces are the same tag; the first spelling is kept
+        Map<String, String> tagNames = new LinkedHashMap<>();
+        if (tags != null) {
             for (String tagName : tags) {
                 String trimmed = tagName.trim();
                 if (trimmed.length() > 30) {
                     throw new IllegalArgumentException("Tag must be 30 characters or less");
                 }
-                fileEntity.getTags().add(new Tag(trimmed, fileEntity));
+                tagNames.putIfAbsent(TagDictionary.normalize(trimmed), trimmed);
             }
         }
 
+        long saveStart = ServerTiming.start();
+        try {
+            storageQuota.reserve(user, fileEntity.getType(), stored.size());
+        } catch (QuotaExceededException e) {
+            storageService.delete(stored.storedName());
+            throw e;
+        }
+        Collection<UserTag> userTags = List.of();
+        if (!tagNames.isEmpty()) {
+            Map<String, UserTag> entries = tagDictionary.resolve(user, tagNames.keySet());
+            for (Map.Entry<String, String> tag : tagNames.entrySet()) {
+                fileEntity.getTags().add(new Tag(tag.getValue(), fileEntity, entries.get(tag.getKey())));
+            }
+            userTags = entries.values();
+        }
         fileEntity = fileRepository.save(fileEntity);
-
-        List<String> tagNames = fileEntity.getTags().stream()
-                .map(Tag::getName)
-                .toList();
+        tagDictionary.fileAdded(userTags);
+        ServerTiming.stop("db-save", saveStart);
+        fileNameIndex.fileAdded(user.getId(), fileEntity.getId(), fileEntity.getName(), tagNames.values());
+        fileExpiryService.fileAdded(fileEntity.getId(), fileEntity.getExpiredAt());
+        fileEvents.publish(FileEventType.UPLOADED, fileEntity.getId(), user.getId(), fileEntity.getSize());
+        ReplicaRouting.recordWrite(userEmail);
+        shareTokenIndex.add(token);
 
         return new FileUploadResponse(
                 fileEntity.getId(),
@@ -109,15 +174,120 @@ public class FileService {
                 fileEntity.getCreatedAt(),
                 fileEntity.getExpiredAt(),
                 fileEntity.getPassword() != null,
-                tagNames
+                List.copyOf(tagNames.values())
         );
     }
 
-    public List<FileUploadResponse> getUserFiles(String userEmail) {
+    /**
+     * One page of the user's files, newest first, after {@code cursor} (the first
+     * page when blank). The status filter and the page bound are both applied in
+     * the query, so the cost of a page does not depend on how many files the user
+     * has.
+     */
+    @Transactional(readOnly = true)
+    public FilePage getUserFiles(String userEmail, FileStatusFilter status, String cursor, int limit) {
+        User user = userRepository.findByEmail(userEmail)
+                .orElseThrow(() -> new NotFoundException("User not found"));
+
+        FileCursor after = FileCursor.decode(cursor);
+        int pageSize = Math.clamp(limit, 1, MAX_PAGE_SIZE);
+        // One extra row tells whether there is a next page
+        Limit fetch = Limit.of(pageSize + 1);
+        LocalDateTime now = LocalDateTime.now();
+        List<FileEntity> rows = switch (status) {
+            case ALL -> fileRepository.findPage(user.getId(), after.createdAt(), after.id(), fetch);
+            case ACTIVE -> fileRepository.findActivePage(user.getId(), now, after.createdAt(), after.id(), fetch);
+            case EXPIRED -> fileRepository.findExpiredPage(user.getId(), now, after.createdAt(), after.id(), fetch);
+        };
+
+        return page(rows, pageSize);
+    }
+
+    /**
+     * One page of the user's files carrying all, or any, of the given tags, in the
+     * same order and with the same cursor as {@link #getUserFiles}.
+     */
+    @Transactional(readOnly = true)
+    public FilePage searchByTags(String userEmail, List<String> tags, TagMatch match, String cursor, int limit) {
+        User user = userRepository.findByEmail(userEmail)
+                .orElseThrow(() -> new NotFoundException("User not found"));
+
+        Set<String> names = tags.stream()
+                .filter(t -> !t.isBlank())
+                .map(TagDictionary::normalize)
+                .collect(Collectors.toSet());
+        if (names.isEmpty()) {
+            throw new IllegalArgumentException("At least one tag is required");
+        }
+        List<Long> tagIds = tagDictionary.findIds(user.getId(), names);
+        // A tag the user never used matches no file
+        if (tagIds.isEmpty() || (match == TagMatch.ALL && tagIds.size() < names.size())) {
+            return new FilePage(List.of(), null);
+        }
+
+        FileCursor after = FileCursor.decode(cursor);
+        int pageSize = Math.clamp(limit, 1, MAX_PAGE_SIZE);
+        List<FileEntity> rows = fileRepository.findPageByTags(user.getId(), tagIds,
+                match == TagMatch.ALL ? tagIds.size() : 1, after.createdAt(), after.id(), Limit.of(pageSize + 1));
+        return page(rows, pageSize);
+    }
+
+    /**
+     * The user's files whose name or tags contain a word starting with each word
+     * of the query, newest first. Answered from {@link FileNameIndex}, or by the
+     * full-text index while the user's index loads. Not read-only: a first search
+     * loads the index, which must come from the primary.
+     */
+    @Transactional
+    public FilePage searchByName(String userEmail, String query, int limit) {
+        User user = userRepository.findByEmail(userEmail)
+                .orElseThrow(() -> new NotFoundException("User not found"));
+        if (query == null || FileNameIndex.words(query).isEmpty()) {
+            throw new IllegalArgumentException("Search query is required");
+        }
+
+        int pageSize = Math.clamp(limit, 1, MAX_PAGE_SIZE);
+        // Ids of files deleted meanwhile are dropped by loadInOrder: ask the index for more until the page is full
+        for (int fetch = pageSize; ; fetch *= 2) {
+            Optional<List<Long>> ids = fileNameIndex.search(user.getId(), query, fetch);
+            if (ids.isEmpty()) {
+                return page(fileRepository.searchByNameFullText(
+                        user.getId(), FileNameIndex.toTsQuery(query), pageSize), pageSize);
+            }
+            List<FileEntity> rows = loadInOrder(ids.get());
+            if (rows.size() >= pageSize || ids.get().size() < fetch) {
+                return page(rows.subList(0, Math.min(rows.size(), pageSize)), pageSize);
+            }
+        }
+    }
+
+    // The index may still hold files deleted or rolled back a moment ago: the database has the last word
+    private List<FileEntity> loadInOrder(List<Long> ids) {
+        Map<Long, FileEntity> byId = fileRepository.findAllById(ids).stream()
+                .filter(f -> f.getDeletedAt() == null)
+                .collect(Collectors.toMap(FileEntity::getId, f -> f));
+        return ids.stream().map(byId::get).filter(Objects::nonNull).toList();
+    }
+
+    // Not read-only: a user's first stats create their usage counters
+    @Transactional
+    public UsageStatsResponse getUsageStats(String userEmail) {
         User user = userRepository.findByEmail(userEmail)
                 .orElseThrow(() -> new NotFoundException("User not found"));
+        return storageQuota.stats(user);
+    }
 
-        return fileRepository.findByUserIdOrderByCreatedAtDesc(user.getId()).stream()
+    @Transactional(readOnly = true)
+    public List<TagFacetResponse> getTagFacets(String userEmail, String prefix, int limit) {
+        User user = userRepository.findByEmail(userEmail)
+                .orElseThrow(() -> new NotFoundException("User not found"));
+        return tagDictionary.facets(user.getId(), prefix, Math.clamp(limit, 1, MAX_PAGE_SIZE));
+    }
+
+    private static FilePage page(List<FileEntity> rows, int pageSize) {
+        boolean hasNext = rows.size() > pageSize;
+        List<FileEntity> page = hasNext ? rows.subList(0, pageSize) : rows;
+        List<FileUploadResponse> files = page.stream()
                 .map(f -> new FileUploadResponse(
                         f.getId(),
                         f.getName(),
@@ -130,15 +300,19 @@ public class FileService {
                         f.getTags().stream().map(Tag::getName).toList()
                 ))
                 .toList();
+        return new FilePage(files, hasNext ? FileCursor.after(page.getLast()).encode() : null);
     }
 
     public FileInfoResponse getFileInfo(String token) {
-        FileEntity fileEntity = fileRepository.findByToken(token)
-                .orElseThrow(() -> new NotFoundException("File not found"));
+        return getShareInfo(token).info();
+    }
+
+    public ShareInfo getShareInfo(String token) {
+        FileEntity fileEntity = findByToken(token);
 
         boolean expired = fileEntity.getExpiredAt().isBefore(LocalDateTime.now());
 
-        return new FileInfoResponse(
+        FileInfoResponse info = new FileInfoResponse(
                 fileEntity.getName(),
                 fileEntity.getType(),
                 fileEntity.getSize(),
@@ -146,11 +320,32 @@ public class FileService {
                 fileEntity.getPassword() != null,
                 expired
         );
+        // The expired flag is the only part of the info that changes over time, when the link expires
+        Instant lastModified = lastModified(fileEntity);
+        if (expired) {
+            Instant expiredAt = fileEntity.getExpiredAt().atZone(ZoneId.systemDefault()).toInstant();
+            if (lastModified == null || expiredAt.isAfter(lastModified)) {
+                lastModified = expiredAt;
+            }
+        }
+        return new ShareInfo(info, etag(fileEntity) + (expired ? "-expired" : "-info"), lastModified);
     }
 
-    public Path downloadFile(String token, String password) {
-        FileEntity fileEntity = fileRepository.findByToken(token)
-                .orElseThrow(() -> new NotFoundException("File not found"));
+    /** Checks the link and counts the download: for requests whose body is always served. */
+    public FileDownload downloadFile(String token, String password) {
+        FileDownload download = authorizeDownload(token, password);
+        recordDownload(download.fileId(), token);
+        return download;
+    }
+
+    /**
+     * Checks the link, its expiry and password without counting a download, for
+     * conditional requests that may still be answered 304 without a body.
+     */
+    public FileDownload authorizeDownload(String token, String password) {
+        long lookupStart = ServerTiming.start();
+        FileEntity fileEntity = findByToken(token);
+        ServerTiming.stop("file-lookup", lookupStart);
 
         if (fileEntity.getExpiredAt().isBefore(LocalDateTime.now())) {
             throw new GoneException("File has expired");
@@ -165,33 +360,70 @@ public class FileService {
             }
         }
 
-        return storageService.load(fileEntity.getFilePath());
+        if (fileEntity.getBlobStatus() != null && fileEntity.getBlobStatus() != BlobStatus.OK) {
+            throw new BlobUnavailableException("File content is unavailable");
+        }
+
+        return new FileDownload(fileEntity.getId(), fileEntity.getName(), fileEntity.getType(),
+                fileEntity.getChecksum(), etag(fileEntity), lastModified(fileEntity), fileEntity.getExpiredAt(),
+                fileEntity.getPassword() != null, fileEntity.getFilePath(),
+                storageService.loadAsResource(fileEntity.getFilePath()));
+    }
+
+    public void recordDownload(Long fileId, String token) {
+        downloadCounter.record(fileId, token);
+    }
+
+    // A blob never changes once stored: its checksum, or for legacy rows its stored name, identifies the content
+    private static String etag(FileEntity fileEntity) {
+        if (fileEntity.getChecksum() != null) {
+            return fileEntity.getChecksum();
+        }
+        String storedName = fileEntity.getFilePath();
+        return storedName.substring(storedName.lastIndexOf('/') + 1).replace(".", "-");
+    }
+
+    private static Instant lastModified(FileEntity fileEntity) {
+        return fileEntity.getCreatedAt() != null
+                ? fileEntity.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant()
+                : null;
     }
 
     public String getFileName(String token) {
-        return fileRepository.findByToken(token)
-                .map(FileEntity::getName)
-                .orElseThrow(() -> new NotFoundException("File not found"));
+        return findByToken(token).getName();
     }
 
     public String getFileContentType(String token) {
-        return fileRepository.findByToken(token)
-                .map(FileEntity::getType)
-                .orElseThrow(() -> new NotFoundException("File not found"));
+        return findByToken(token).getType();
     }
 
-    private void validateFile(MultipartFile file) {
-        if (file.isEmpty()) {
-            throw new IllegalArgumentException("File is empty");
+    // The lookup runs in its own read-only transaction (on a replica when configured),
+    // so that the BCrypt check of downloadFile does not hold a connection
+    private FileEntity findByToken(String token) {
+        if (!shareTokenIndex.mightExist(token)) {
+            throw new NotFoundException("File not found");
         }
+        Optional<FileEntity> file = ReplicaRouting.orOnPrimary(
+                fileRepository.findByToken(token), () -> fileRepository.findByToken(token));
+        shareTokenIndex.recordLookup(token, file.isPresent());
+        return file.orElseThrow(() -> new NotFoundException("File not found"));
+    }
 
-        String originalName = file.getOriginalFilename();
-        if (originalName != null && originalName.contains(".")) {
-            String extension = originalName.substring(originalName.lastIndexOf(".") + 1).toLowerCase();
-            if (forbiddenExtensions.contains(extension)) {
-                throw new IllegalArgumentException("File type not allowed: ." + extension);
-            }
+    private String resolveContentType(String declared, String detected) {
+        if (detected == null) {
+            return declared != null ? declared : "application/octet-stream";
+        }
+        // Office documents, EPUB and JAR archives are ZIP containers: keep the more precise declared type
+        if ("application/zip".equals(detected) && declared != null
+                && (declared.startsWith("application/vnd.") || declared.endsWith("+zip")
+                    || declared.equals("application/java-archive"))) {
+            return declared;
+        }
+        // A generic ISO media brand (isom, mp42...) also starts M4A audio or HEIF images
+        if ("video/mp4".equals(detected) && declared != null && ISO_MEDIA_TYPES.contains(declared)) {
+            return declared;
         }
+        return detected;
     }
 
     @Transactional
@@ -207,6 +439,43 @@ public class FileService {
         }
 
         storageService.delete(fileEntity.getFilePath());
+        if (fileEntity.getDeletedAt() == null) {
+            tagDictionary.fileRemoved(fileEntity);
+            storageQuota.fileRemoved(fileEntity);
+        }
         fileRepository.delete(fileEntity);
+        fileNameIndex.filesRemoved(user.getId(), List.of(fileEntity.getId()));
+        fileEvents.publish(FileEventType.DELETED, fileEntity.getId(), user.getId(), fileEntity.getSize());
+        ReplicaRouting.recordWrite(userEmail);
+        shareTokenIndex.recordRemovals(1);
+    }
+
+    /**
+     * Tombstones the user's files among {@code fileIds} and returns the ids it
+     * marked; ids of other users, unknown or already deleted are left out.
+     */
+    @Transactional
+    public List<Long> deleteFiles(List<Long> fileIds, String userEmail) {
+        User user = userRepository.findByEmail(userEmail)
+                .orElseThrow(() -> new NotFoundException("User not found"));
+
+        // Stored as is, so that the tag and usage counters can find exactly the rows marked here
+        LocalDateTime deletedAt = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        int marked = fileRepository.markDeleted(fileIds, user.getId(), deletedAt);
+        List<Long> deleted = List.of();
+        if (marked > 0) {
+            // Every id was the user's and live: no need to ask which ones were marked
+            Set<Long> requested = new LinkedHashSet<>(fileIds);
+            deleted = marked == requested.size()
+                    ? List.copyOf(requested)
+                    : fileRepository.findIdsDeletedAt(user.getId(), fileIds, deletedAt);
+            tagDictionary.filesDeleted(user.getId(), fileIds, deletedAt);
+            fileNameIndex.filesRemoved(user.getId(), fileIds);
+            storageQuota.filesDeleted(user.getId(), fileIds, deletedAt);
+            fileEvents.publishTombstoned(FileEventType.DELETED, user.getId(), fileIds, deletedAt);
+        }
+        ReplicaRouting.recordWrite(userEmail);
+        shareTokenIndex.recordRemovals(marked);
+        return deleted;
     }
 }
@@ -0,0 +1,18 @@
+package com.datashare.backend.service;
+
+import java.util.Locale;
+
+/** Which of a user's files to list, decided on {@code expired_at} in the query. */
+public enum FileStatusFilter {
+    ALL,
+    ACTIVE,
+    EXPIRED;
+
+    public static FileStatusFilter from(String value) {
+        try {
+            return valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown file status: " + value);
+        }
+    }
+}
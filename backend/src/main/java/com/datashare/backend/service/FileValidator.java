@@ -0,0 +1,37 @@
+package com.datashare.backend.service;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+/** Rejects an upload before anything is stored: empty file or forbidden extension. */
+@Component
+public class FileValidator {
+
+    private final Set<String> forbiddenExtensions;
+
+    public FileValidator(@Value("${file.forbidden-extensions}") String forbiddenExts) {
+        this.forbiddenExtensions = Arrays.stream(forbiddenExts.split(","))
+                .map(String::trim)
+                .map(String::toLowerCase)
+                .collect(Collectors.toSet());
+    }
+
+    public void validate(MultipartFile file) {
+        if (file.isEmpty()) {
+            throw new IllegalArgumentException("File is empty");
+        }
+
+        String originalName = file.getOriginalFilename();
+        if (originalName != null && originalName.contains(".")) {
+            String extension = originalName.substring(originalName.lastIndexOf(".") + 1).toLowerCase();
+            if (forbiddenExtensions.contains(extension)) {
+                throw new IllegalArgumentException("File type not allowed: ." + extension);
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.datashare.backend.service;
+
+import java.time.Instant;
+
+/** A share link ranked by its downloads over the recent window of {@link DownloadCounter}. */
+public record HotDownload(
+        String token,
+        long recentDownloads,
+        Instant lastDownloadedAt
+) {}
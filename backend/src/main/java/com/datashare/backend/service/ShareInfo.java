@@ -0,0 +1,12 @@
+package com.datashare.backend.service;
+
+import java.time.Instant;
+
+import com.datashare.backend.dto.FileInfoResponse;
+
+/** Public metadata of a share link, with its cache validators. */
+public record ShareInfo(
+        FileInfoResponse info,
+        String etag,
+        Instant lastModified
+) {}
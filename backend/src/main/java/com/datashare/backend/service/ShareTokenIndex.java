@@ -0,0 +1,318 @@
+package com.datashare.backend.service;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.datashare.backend.repository.FileRepository;
+import com.datashare.backend.repository.ShareTokenRef;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Answers "can this share token exist?" without the database, so that bots
+ * guessing tokens on the public download endpoints cost a few hash lookups.
+ *
+ * <p>A Bloom filter holds every live token. It is built by streaming the tokens
+ * from the primary, then kept current: new tokens are added on upload, while
+ * deletions only count as stale entries (a Bloom filter cannot remove) and
+ * trigger a rebuild once they exceed a share of the filter. Tokens that pass
+ * the filter but are not in the database (false positives, deleted files) go to
+ * a short-lived negative cache.
+ *
+ * <p>Uploads served by other instances are picked up on each check, by reading
+ * the files whose id is past the last one seen; each id range is read on two
+ * checks in a row, to catch uploads that commit out of id order. A full
+ * rebuild every {@code share-token.filter.max-age} covers the rest. A token the
+ * filter misses may still be such an upload, committed since the last read: it
+ * is only rejected after a read of the newest files that started after the miss.
+ * Concurrent misses share that read, and when none can run within
+ * {@code share-token.filter.miss-wait} (during a rebuild), the database decides.
+ *
+ * <p>Until the first build completes, every token is let through.
+ */
+@Service
+public class ShareTokenIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(ShareTokenIndex.class);
+
+    private final FileRepository fileRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final long expectedTokens;
+    private final double falsePositiveRate;
+    private final double staleRatio;
+    private final long maxAgeNanos;
+    private final long negativeTtlNanos;
+    private final int negativeMaxSize;
+    private final long missWaitNanos;
+
+    private final ConcurrentHashMap<String, Long> negativeCache = new ConcurrentHashMap<>();
+    private final AtomicLong stale = new AtomicLong();
+    private volatile TokenBloomFilter filter;
+    private volatile TokenBloomFilter building;
+    // Guards the reads of the database and the fields below
+    private final ReentrantLock lock = new ReentrantLock();
+    private long builtAt;
+    // Ids up to scannedUpTo were read on two checks; up to seenUpTo, on the last one
+    private long scannedUpTo;
+    private long seenUpTo;
+    private long lastReadStartedAt;
+
+    private final Counter rejected;
+    private final Counter negativeHits;
+    private final Counter notFound;
+    private final Counter found;
+    private final Counter missReads;
+
+    public ShareTokenIndex(FileRepository fileRepository,
+                           TransactionTemplate transactionTemplate,
+                           MeterRegistry meterRegistry,
+                           @Value("${share-token.filter.enabled:true}") boolean enabled,
+                           @Value("${share-token.filter.expected-tokens:1000000}") long expectedTokens,
+                           @Value("${share-token.filter.false-positive-rate:0.001}") double falsePositiveRate,
+                           @Value("${share-token.filter.stale-ratio:0.2}") double staleRatio,
+                           @Value("${share-token.filter.max-age:PT1H}") Duration maxAge,
+                           @Value("${share-token.negative-cache.ttl:PT1M}") Duration negativeTtl,
+                           @Value("${share-token.negative-cache.max-size:100000}") int negativeMaxSize,
+                           @Value("${share-token.filter.miss-wait:PT0.1S}") Duration missWait) {
+        this.fileRepository = fileRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.expectedTokens = expectedTokens;
+        this.falsePositiveRate = falsePositiveRate;
+        this.staleRatio = staleRatio;
+        this.maxAgeNanos = maxAge.toNanos();
+        this.negativeTtlNanos = negativeTtl.toNanos();
+        this.negativeMaxSize = negativeMaxSize;
+        this.missWaitNanos = missWait.toNanos();
+
+        this.rejected = lookups(meterRegistry, "filter_rejected");
+        this.negativeHits = lookups(meterRegistry, "negative_cache_hit");
+        this.notFound = lookups(meterRegistry, "not_found");
+        this.found = lookups(meterRegistry, "found");
+        this.missReads = Counter.builder("share.token.filter.miss.reads")
+                .description("Reads of the newest files made before rejecting a token the filter missed")
+                .register(meterRegistry);
+        Gauge.builder("share.token.filter.entries", this, index -> index.current(TokenBloomFilter::entries))
+                .register(meterRegistry);
+        Gauge.builder("share.token.filter.expected.fpp", this,
+                        index -> index.current(TokenBloomFilter::expectedFalsePositiveRate))
+                .description("Theoretical false-positive rate of the share-token Bloom filter")
+                .register(meterRegistry);
+    }
+
+    private static Counter lookups(MeterRegistry registry, String result) {
+        return Counter.builder("share.token.lookups")
+                .description("Public share-token lookups by outcome; filter_rejected and negative_cache_hit "
+                        + "did not reach the database")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private double current(ToDoubleFunction<TokenBloomFilter> metric) {
+        TokenBloomFilter f = filter;
+        return f == null ? 0 : metric.applyAsDouble(f);
+    }
+
+    /**
+     * {@code false} when the token certainly does not exist, either because the
+     * filter rules it out or because the database recently said so.
+     */
+    public boolean mightExist(String token) {
+        TokenBloomFilter f = filter;
+        if (f == null) {
+            return true;
+        }
+        if (!f.mightContain(token) && !foundInNewestFiles(token)) {
+            rejected.increment();
+            return false;
+        }
+        Long until = negativeCache.get(token);
+        if (until != null) {
+            if (until - System.nanoTime() > 0) {
+                negativeHits.increment();
+                return false;
+            }
+            negativeCache.remove(token, until);
+        }
+        return true;
+    }
+
+    // The token may come from an upload committed on another instance since the last read
+    private boolean foundInNewestFiles(String token) {
+        long missedAt = System.nanoTime();
+        try {
+            if (!lock.tryLock(missWaitNanos, TimeUnit.NANOSECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        }
+        try {
+            // A read that started after the miss, for another token, has already seen this upload
+            if (lastReadStartedAt - missedAt < 0) {
+                missReads.increment();
+                // The watermarks stay put: only the scheduled checks move them, two checks apart
+                readTokensAfter(scannedUpTo);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return filter.mightContain(token);
+    }
+
+    /** Records the outcome of a database lookup let through by {@link #mightExist}. */
+    public void recordLookup(String token, boolean exists) {
+        if (filter == null) {
+            return;
+        }
+        if (exists) {
+            found.increment();
+            return;
+        }
+        notFound.increment();
+        long now = System.nanoTime();
+        if (negativeCache.size() >= negativeMaxSize) {
+            negativeCache.values().removeIf(until -> until - now <= 0);
+            if (negativeCache.size() >= negativeMaxSize) {
+                negativeCache.clear();
+            }
+        }
+        negativeCache.put(token, now + negativeTtlNanos);
+    }
+
+    /**
+     * Adds a new token right away, so that it can be looked up within its own
+     * transaction, and again after commit in case a rebuild started streaming in
+     * between. A rollback only leaves a false positive behind.
+     */
+    public void add(String token) {
+        if (!enabled) {
+            return;
+        }
+        addNow(token);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    addNow(token);
+                }
+            });
+        }
+    }
+
+    private void addNow(String token) {
+        negativeCache.remove(token);
+        // A rebuild in progress may have started streaming before this commit. Reading
+        // building before filter guarantees that the filter in place afterwards has the token.
+        TokenBloomFilter b = building;
+        if (b != null) {
+            b.add(token);
+        }
+        TokenBloomFilter f = filter;
+        if (f != null && f != b) {
+            f.add(token);
+        }
+    }
+
+    public void recordRemovals(int count) {
+        stale.addAndGet(count);
+    }
+
+    @Scheduled(initialDelayString = "${share-token.filter.initial-delay-ms:0}",
+               fixedDelayString = "${share-token.filter.check-interval-ms:10000}")
+    public void maintain() {
+        if (!enabled) {
+            return;
+        }
+        TokenBloomFilter f = filter;
+        if (f == null || stale.get() > f.entries() * staleRatio
+                || f.expectedFalsePositiveRate() > falsePositiveRate * 2
+                || System.nanoTime() - builtAt > maxAgeNanos) {
+            rebuild();
+        } else {
+            catchUp();
+        }
+    }
+
+    /** Adds the tokens of files created since the last check, on this instance or another. */
+    void catchUp() {
+        lock.lock();
+        try {
+            long last = Math.max(seenUpTo, readTokensAfter(scannedUpTo));
+            scannedUpTo = seenUpTo;
+            seenUpTo = last;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Returns the highest id read
+    private long readTokensAfter(long from) {
+        lastReadStartedAt = System.nanoTime();
+        long[] last = {from};
+        transactionTemplate.executeWithoutResult(tx -> {
+            try (Stream<ShareTokenRef> tokens = fileRepository.streamTokensAfter(from)) {
+                tokens.forEach(ref -> {
+                    addNow(ref.token());
+                    last[0] = Math.max(last[0], ref.id());
+                });
+            }
+        });
+        return last[0];
+    }
+
+    void rebuild() {
+        lock.lock();
+        try {
+            rebuildLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void rebuildLocked() {
+        long start = System.currentTimeMillis();
+        lastReadStartedAt = System.nanoTime();
+        // Built from the primary: a lagging replica would miss recent tokens and the filter would reject them
+        long count = transactionTemplate.execute(tx -> fileRepository.countByDeletedAtIsNull());
+        long maxId = transactionTemplate.execute(tx -> fileRepository.findMaxId());
+        TokenBloomFilter next = new TokenBloomFilter(Math.max(expectedTokens, count * 2), falsePositiveRate);
+        building = next;
+        stale.set(0);
+        try {
+            transactionTemplate.executeWithoutResult(tx -> {
+                try (Stream<String> tokens = fileRepository.streamLiveTokens()) {
+                    tokens.forEach(next::add);
+                }
+            });
+            filter = next;
+            negativeCache.clear();
+            builtAt = System.nanoTime();
+            scannedUpTo = maxId;
+            seenUpTo = maxId;
+        } finally {
+            building = null;
+        }
+        log.info("Share-token filter rebuilt with {} tokens in {} ms ({} KB, expected false positives {})",
+                next.entries(), System.currentTimeMillis() - start, next.sizeInBytes() / 1024,
+                String.format("%.5f", next.expectedFalsePositiveRate()));
+    }
+}
@@ -0,0 +1,243 @@
+package com.datashare.backend.service;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.datashare.backend.dto.UsageStatsResponse;
+import com.datashare.backend.entity.FileCategory;
+import com.datashare.backend.entity.FileEntity;
+import com.datashare.backend.entity.User;
+import com.datashare.backend.entity.UserTypeUsage;
+import com.datashare.backend.entity.UserUsage;
+import com.datashare.backend.exception.QuotaExceededException;
+import com.datashare.backend.repository.FileRepository;
+import com.datashare.backend.repository.TypeTotal;
+import com.datashare.backend.repository.UsageTotals;
+import com.datashare.backend.repository.UserRepository;
+import com.datashare.backend.repository.UserTypeUsageRepository;
+import com.datashare.backend.repository.UserUsageRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Per-user storage usage, kept as counters rather than summed over {@code files}:
+ * uploads and deletes move them in their own transaction, so the quota check on
+ * upload and the dashboard stats read one row per user.
+ *
+ * <p>A user's counters are created from their files on first use, under their
+ * row lock. A periodic reconciliation recomputes them and corrects any drift,
+ * for instance after rows were changed by hand.
+ */
+@Service
+public class StorageQuota {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageQuota.class);
+
+    private final UserUsageRepository usageRepository;
+    private final UserTypeUsageRepository typeUsageRepository;
+    private final UserRepository userRepository;
+    private final FileRepository fileRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final long defaultQuota;
+    private final boolean reconcileEnabled;
+    private final int reconcileBatchSize;
+    private final Counter driftCorrected;
+
+    public StorageQuota(UserUsageRepository usageRepository,
+                        UserTypeUsageRepository typeUsageRepository,
+                        UserRepository userRepository,
+                        FileRepository fileRepository,
+                        TransactionTemplate transactionTemplate,
+                        MeterRegistry meterRegistry,
+                        @Value("${storage.quota.default-bytes:10737418240}") long defaultQuota,
+                        @Value("${storage.quota.reconcile.enabled:true}") boolean reconcileEnabled,
+                        @Value("${storage.quota.reconcile.batch-size:100}") int reconcileBatchSize) {
+        this.usageRepository = usageRepository;
+        this.typeUsageRepository = typeUsageRepository;
+        this.userRepository = userRepository;
+        this.fileRepository = fileRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.defaultQuota = defaultQuota;
+        this.reconcileEnabled = reconcileEnabled;
+        this.reconcileBatchSize = reconcileBatchSize;
+        this.driftCorrected = Counter.builder("storage.usage.drift.corrected")
+                .description("Users whose usage counters did not match their files and were corrected")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Rejects an upload that cannot fit before its blob is written. Advisory only:
+     * concurrent uploads are settled by {@link #reserve}.
+     */
+    public void checkRoom(User user, long size) {
+        usageRepository.findTotals(user.getId()).ifPresent(usage -> {
+            if (usage.usedBytes() + size > quotaOf(usage)) {
+                throw new QuotaExceededException("Storage quota exceeded");
+            }
+        });
+    }
+
+    /**
+     * Counts a new file in the user's usage, or throws if it would exceed their
+     * quota. Runs in the caller's transaction.
+     */
+    public void reserve(User user, String contentType, long size) {
+        if (usageRepository.reserve(user.getId(), size, defaultQuota) == 0) {
+            // Whoever created the counters, this upload or a concurrent first one, they exist now
+            initialize(user);
+            if (usageRepository.reserve(user.getId(), size, defaultQuota) == 0) {
+                throw new QuotaExceededException("Storage quota exceeded");
+            }
+        }
+        typeUsageRepository.add(user.getId(), FileCategory.of(contentType), 1, size);
+    }
+
+    public void fileRemoved(FileEntity file) {
+        Long userId = file.getUser().getId();
+        usageRepository.release(userId, file.getSize(), 1);
+        typeUsageRepository.add(userId, FileCategory.of(file.getType()), -1, -file.getSize());
+    }
+
+    /** Discounts the files one bulk delete tombstoned at {@code deletedAt}. */
+    public void filesDeleted(Long userId, Collection<Long> fileIds, LocalDateTime deletedAt) {
+        Map<FileCategory, long[]> deleted = byCategory(fileRepository.sumDeletedByType(userId, fileIds, deletedAt));
+        long count = 0;
+        long bytes = 0;
+        for (Map.Entry<FileCategory, long[]> category : deleted.entrySet()) {
+            count += category.getValue()[0];
+            bytes += category.getValue()[1];
+            typeUsageRepository.add(userId, category.getKey(), -category.getValue()[0], -category.getValue()[1]);
+        }
+        usageRepository.release(userId, bytes, count);
+    }
+
+    public UsageStatsResponse stats(User user) {
+        initialize(user);
+        UsageTotals usage = usageRepository.findTotals(user.getId()).orElseThrow();
+        Map<FileCategory, Long> counts = new EnumMap<>(FileCategory.class);
+        for (TypeTotal category : typeUsageRepository.findTotals(user.getId())) {
+            counts.put(FileCategory.valueOf(category.type()), category.fileCount());
+        }
+        Map<String, Long> filesByType = new LinkedHashMap<>();
+        for (FileCategory category : FileCategory.values()) {
+            filesByType.put(category.name().toLowerCase(Locale.ROOT), counts.getOrDefault(category, 0L));
+        }
+        LocalDateTime now = LocalDateTime.now();
+        return new UsageStatsResponse(usage.usedBytes(), quotaOf(usage), usage.fileCount(), filesByType,
+                fileRepository.sumExpiringBetween(user.getId(), now, now.plusHours(24)));
+    }
+
+    private long quotaOf(UsageTotals usage) {
+        return usage.quotaBytes() != null ? usage.quotaBytes() : defaultQuota;
+    }
+
+    /**
+     * Creates the user's counters from their live files, once. Two first uploads
+     * would both insert them: the user row lock makes the second one wait and see
+     * the first one's.
+     */
+    void initialize(User user) {
+        if (usageRepository.existsById(user.getId())) {
+            return;
+        }
+        userRepository.lockById(user.getId());
+        if (usageRepository.existsById(user.getId())) {
+            return;
+        }
+        Map<FileCategory, long[]> live = byCategory(fileRepository.sumLiveByType(user.getId()));
+        long count = live.values().stream().mapToLong(totals -> totals[0]).sum();
+        long bytes = live.values().stream().mapToLong(totals -> totals[1]).sum();
+        usageRepository.save(new UserUsage(user, bytes, count));
+        for (FileCategory category : FileCategory.values()) {
+            long[] totals = live.getOrDefault(category, new long[2]);
+            typeUsageRepository.save(new UserTypeUsage(user, category, totals[0], totals[1]));
+        }
+    }
+
+    @Scheduled(initialDelayString = "${storage.quota.reconcile.initial-delay-ms:600000}",
+               fixedDelayString = "${storage.quota.reconcile.interval-ms:86400000}")
+    public void reconcile() {
+        if (!reconcileEnabled) {
+            return;
+        }
+        long afterId = 0;
+        int checked = 0;
+        int corrected = 0;
+        List<Long> batch;
+        do {
+            batch = usageRepository.findUserIdsAfter(afterId, Limit.of(reconcileBatchSize));
+            for (Long userId : batch) {
+                checked++;
+                if (Boolean.TRUE.equals(transactionTemplate.execute(tx -> reconcileUser(userId)))) {
+                    corrected++;
+                }
+            }
+            if (!batch.isEmpty()) {
+                afterId = batch.getLast();
+            }
+        } while (batch.size() == reconcileBatchSize);
+        log.info("Storage usage reconciled for {} users, {} corrected", checked, corrected);
+    }
+
+    /**
+     * Recomputes one user's counters in a short transaction. Locking the usage row
+     * first waits for the uploads in flight and holds back new ones, so that the
+     * sums and the counters describe the same files.
+     */
+    boolean reconcileUser(Long userId) {
+        usageRepository.lock(userId);
+        Map<FileCategory, long[]> actual = byCategory(fileRepository.sumLiveByType(userId));
+        Map<FileCategory, long[]> recorded = new EnumMap<>(FileCategory.class);
+        for (TypeTotal category : typeUsageRepository.findTotals(userId)) {
+            recorded.put(FileCategory.valueOf(category.type()), new long[] {category.fileCount(), category.bytes()});
+        }
+        UsageTotals usage = usageRepository.findTotals(userId).orElseThrow();
+
+        long count = actual.values().stream().mapToLong(totals -> totals[0]).sum();
+        long bytes = actual.values().stream().mapToLong(totals -> totals[1]).sum();
+        boolean drift = usage.fileCount() != count || usage.usedBytes() != bytes;
+        for (FileCategory category : FileCategory.values()) {
+            long[] expected = actual.getOrDefault(category, new long[2]);
+            long[] found = recorded.get(category);
+            if (found == null) {
+                typeUsageRepository.save(new UserTypeUsage(userRepository.getReferenceById(userId), category,
+                        expected[0], expected[1]));
+            } else if (found[0] != expected[0] || found[1] != expected[1]) {
+                typeUsageRepository.correct(userId, category, expected[0], expected[1]);
+                drift = true;
+            }
+        }
+        usageRepository.correct(userId, bytes, count, LocalDateTime.now());
+        if (drift) {
+            driftCorrected.increment();
+            log.warn("Storage usage of user {} drifted: {} files / {} bytes recorded, {} / {} actual",
+                    userId, usage.fileCount(), usage.usedBytes(), count, bytes);
+        }
+        return drift;
+    }
+
+    // Files and bytes per category, summed over the content types that fold into it
+    private static Map<FileCategory, long[]> byCategory(List<TypeTotal> types) {
+        Map<FileCategory, long[]> result = new EnumMap<>(FileCategory.class);
+        for (TypeTotal type : types) {
+            long[] sums = result.computeIfAbsent(FileCategory.of(type.type()), c -> new long[2]);
+            sums[0] += type.fileCount();
+            sums[1] += type.bytes();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,172 @@
+package com.datashare.backend.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.datashare.backend.entity.BlobStatus;
+import com.datashare.backend.repository.BlobRef;
+import com.datashare.backend.repository.FileRepository;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Finds blobs without a row and rows without a blob. Each storage bucket is
+ * reconciled on its own, in parallel: the bucket's file names are listed and
+ * sorted, the matching {@code file_path} values are read from the database in
+ * the same order, and both sides are merge-joined. Memory is bounded by one
+ * bucket per worker, whatever the total number of files. The rows are read in
+ * one short transaction and the fixes applied in another: the filesystem checks
+ * in between never hold a connection.
+ *
+ * <p>Orphan blobs older than the grace period (uploads write the blob before the
+ * row commits) are moved to quarantine; rows whose blob is gone are flagged
+ * {@link BlobStatus#MISSING}. Both are re-checked before acting, so a difference
+ * between the database collation and Java string order can only cost a pass, not
+ * a wrong decision.
+ */
+@Service
+public class StorageReconciler {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageReconciler.class);
+
+    private final FileRepository fileRepository;
+    private final StorageService storageService;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService executor;
+    private final boolean enabled;
+    private final Duration orphanGracePeriod;
+
+    public StorageReconciler(FileRepository fileRepository,
+                             StorageService storageService,
+                             TransactionTemplate transactionTemplate,
+                             @Value("${storage.reconcile.enabled:true}") boolean enabled,
+                             @Value("${storage.reconcile.parallelism:4}") int parallelism,
+                             @Value("${storage.reconcile.orphan-grace-period:PT1H}") Duration orphanGracePeriod) {
+        this.fileRepository = fileRepository;
+        this.storageService = storageService;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.orphanGracePeriod = orphanGracePeriod;
+        this.executor = Executors.newFixedThreadPool(parallelism);
+    }
+
+    @Scheduled(initialDelayString = "${storage.reconcile.initial-delay-ms:300000}",
+               fixedDelayString = "${storage.reconcile.interval-ms:21600000}")
+    public void reconcile() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        List<String> buckets = new ArrayList<>(StorageService.buckets());
+        buckets.add("");
+
+        List<Future<BucketReport>> reports = new ArrayList<>(buckets.size());
+        for (String bucket : buckets) {
+            reports.add(executor.submit(() -> reconcileBucket(bucket)));
+        }
+
+        int blobs = 0;
+        int orphans = 0;
+        int dangling = 0;
+        for (int i = 0; i < reports.size(); i++) {
+            try {
+                BucketReport report = reports.get(i).get();
+                blobs += report.blobs();
+                orphans += report.orphans();
+                dangling += report.dangling();
+            } catch (ExecutionException e) {
+                log.warn("Could not reconcile storage bucket '{}'", buckets.get(i), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        log.info("Reconciled {} blobs in {} ms: {} orphans quarantined, {} dangling rows flagged",
+                blobs, System.currentTimeMillis() - start, orphans, dangling);
+    }
+
+    BucketReport reconcileBucket(String bucket) {
+        List<String> blobs = storageService.listBucket(bucket);
+        Instant orphanCutoff = Instant.now().minus(orphanGracePeriod);
+
+        // Rows are read in one short transaction; the filesystem is checked with none open
+        List<BlobRef> rows = transactionTemplate.execute(tx -> {
+            try (Stream<BlobRef> stream = bucket.isEmpty()
+                    ? fileRepository.streamUnshardedBlobRefs()
+                    : fileRepository.streamBlobRefs(bucket + "/%")) {
+                return stream.toList();
+            }
+        });
+
+        List<String> orphanCandidates = new ArrayList<>();
+        List<BlobRef> dangling = new ArrayList<>();
+        int i = 0;
+        int r = 0;
+        while (i < blobs.size() || r < rows.size()) {
+            int cmp = r == rows.size() ? -1
+                    : i == blobs.size() ? 1
+                    : blobs.get(i).compareTo(rows.get(r).filePath());
+            if (cmp == 0) {
+                i++;
+                r++;
+            } else if (cmp < 0) {
+                String storedName = blobs.get(i++);
+                if (storageService.lastModified(storedName).isBefore(orphanCutoff)) {
+                    orphanCandidates.add(storedName);
+                }
+            } else {
+                BlobRef row = rows.get(r++);
+                if (isDangling(row)) {
+                    dangling.add(row);
+                }
+            }
+        }
+        if (orphanCandidates.isEmpty() && dangling.isEmpty()) {
+            return new BucketReport(blobs.size(), 0, 0);
+        }
+
+        // A second short transaction re-checks the orphans and flags the dangling rows
+        List<String> orphans = transactionTemplate.execute(tx -> {
+            for (BlobRef row : dangling) {
+                fileRepository.updateBlobStatus(row.id(), BlobStatus.MISSING);
+                log.warn("File {} has no blob at {}", row.id(), row.filePath());
+            }
+            return orphanCandidates.stream()
+                    .filter(storedName -> !fileRepository.existsByFilePath(storedName))
+                    .toList();
+        });
+        for (String storedName : orphans) {
+            storageService.quarantine(storedName);
+            log.warn("Quarantined orphan blob {}", storedName);
+        }
+        return new BucketReport(blobs.size(), orphans.size(), dangling.size());
+    }
+
+    private boolean isDangling(BlobRef row) {
+        // Tombstoned rows are about to be purged, and their blob may already be gone
+        return row.deletedAt() == null && row.blobStatus() != BlobStatus.MISSING
+                && !storageService.exists(row.filePath());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    record BucketReport(int blobs, int orphans, int dangling) {
+    }
+}
@@ -1,53 +1,243 @@
 package com.datashare.backend.service;
 
+import com.datashare.backend.metrics.ServerTiming;
+import com.datashare.backend.storage.BlobCipher;
+import com.datashare.backend.storage.FsyncPolicy;
+import com.datashare.backend.storage.GroupCommitter;
+import com.datashare.backend.storage.IngestPipeline;
+import com.datashare.backend.storage.IngestResult;
+import com.datashare.backend.storage.StoredFile;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class StorageService {
 
+    public static final String QUARANTINE_DIR = ".quarantine";
+    private static final int BUCKET_COUNT = 256;
+
     private final Path rootLocation;
+    private final IngestPipeline ingestPipeline;
+    private final FsyncPolicy fsyncPolicy;
+    private final boolean preallocate;
+    private final GroupCommitter groupCommitter;
+    private final BlobCipher blobCipher;
+    private final Timer writeTimer;
+    private final Timer fsyncTimer;
+    private final Timer readTimer;
+    private final DistributionSummary uploadBytes;
+    private final DistributionSummary downloadBytes;
 
-    public StorageService(@Value("${storage.local.path}") String storagePath) {
+    public StorageService(@Value("${storage.local.path}") String storagePath,
+                          IngestPipeline ingestPipeline,
+                          @Value("${storage.io.fsync:none}") FsyncPolicy fsyncPolicy,
+                          @Value("${storage.io.preallocate:false}") boolean preallocate,
+                          GroupCommitter groupCommitter,
+                          BlobCipher blobCipher,
+                          MeterRegistry meterRegistry) {
         this.rootLocation = Paths.get(storagePath).toAbsolutePath().normalize();
+        this.ingestPipeline = ingestPipeline;
+        this.fsyncPolicy = fsyncPolicy;
+        this.preallocate = preallocate;
+        this.groupCommitter = groupCommitter;
+        this.blobCipher = blobCipher;
+        this.writeTimer = Timer.builder("storage.write")
+                .description("Time to receive and store an upload, fsync included")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.fsyncTimer = Timer.builder("storage.fsync")
+                .description("Time spent making an upload durable")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.readTimer = Timer.builder("storage.read")
+                .description("Time from opening a blob for download to closing it")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.uploadBytes = DistributionSummary.builder("datashare.upload.bytes")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.downloadBytes = DistributionSummary.builder("datashare.download.bytes")
+                .baseUnit("bytes")
+                .register(meterRegistry);
     }
 
     @PostConstruct
     public void init() {
         try {
             Files.createDirectories(rootLocation);
+            for (String bucket : buckets()) {
+                Files.createDirectories(rootLocation.resolve(bucket));
+            }
+            syncDirectory(rootLocation);
         } catch (IOException e) {
             throw new RuntimeException("Could not initialize storage directory", e);
         }
     }
 
-    public String store(MultipartFile file) {
-        String storedName = UUID.randomUUID().toString();
+    /**
+     * Blobs are spread over 256 sub-directories named after the first two hex
+     * digits of their UUID, which keeps directories small and gives the
+     * reconciler independent buckets to walk in parallel. The empty bucket is
+     * the storage root, where blobs stored before sharding still live.
+     */
+    public static List<String> buckets() {
+        List<String> buckets = new ArrayList<>(BUCKET_COUNT);
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.add(String.format("%02x", i));
+        }
+        return buckets;
+    }
+
+    public StoredFile store(MultipartFile file) {
+        long start = System.nanoTime();
+        boolean encrypt = blobCipher.isEnabled();
+        String uuid = UUID.randomUUID().toString();
+        String storedName = uuid.substring(0, 2) + "/" + uuid + (encrypt ? BlobCipher.SUFFIX : "");
+        Path target = rootLocation.resolve(storedName);
 
-        try (InputStream inputStream = file.getInputStream()) {
-            Path target = rootLocation.resolve(storedName);
-            Files.copy(inputStream, target, StandardCopyOption.REPLACE_EXISTING);
+        IngestResult result;
+        try (InputStream inputStream = file.getInputStream();
+             FileChannel channel = FileChannel.open(target,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long declaredSize = file.getSize();
+            if (preallocate && declaredSize > 0) {
+                channel.write(ByteBuffer.wrap(new byte[1]), declaredSize - 1);
+            }
+            if (encrypt) {
+                BlobCipher.EncryptingChannel sealed = blobCipher.encrypt(channel);
+                result = ingestPipeline.run(inputStream, sealed);
+                sealed.finish();
+            } else {
+                result = ingestPipeline.run(inputStream, channel);
+            }
+            if (channel.size() != channel.position()) {
+                channel.truncate(channel.position());
+            }
+            long fsyncStart = System.nanoTime();
+            switch (fsyncPolicy) {
+                case PER_FILE -> {
+                    channel.force(false);
+                    syncDirectory(target.getParent());
+                }
+                case GROUP -> groupCommitter.awaitDurable(channel, target.getParent());
+                case NONE -> { }
+            }
+            if (fsyncPolicy != FsyncPolicy.NONE) {
+                long fsyncNanos = System.nanoTime() - fsyncStart;
+                fsyncTimer.record(fsyncNanos, TimeUnit.NANOSECONDS);
+                ServerTiming.stop("fsync", fsyncStart);
+            }
         } catch (IOException e) {
+            try {
+                Files.deleteIfExists(target);
+            } catch (IOException cleanup) {
+                e.addSuppressed(cleanup);
+            }
             throw new RuntimeException("Failed to store file", e);
         }
 
-        return storedName;
+        writeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        ServerTiming.stop("store", start);
+        uploadBytes.record(result.getSize());
+        return new StoredFile(storedName, result.getSize(), result.getSha256(), result.getDetectedType());
+    }
+
+    private static void syncDirectory(Path path) throws IOException {
+        try (FileChannel directory = FileChannel.open(path, StandardOpenOption.READ)) {
+            directory.force(true);
+        }
     }
 
     public Path load(String storedName) {
         return rootLocation.resolve(storedName);
     }
 
+    /**
+     * Returns the plaintext content of a blob, decrypting on the fly when it was
+     * stored encrypted. Byte ranges are served without reading from the start.
+     */
+    public Resource loadAsResource(String storedName) {
+        Path path = load(storedName);
+        Resource resource = BlobCipher.isEncrypted(storedName)
+                ? blobCipher.decryptingResource(path)
+                : new FileSystemResource(path);
+        return new MeteredResource(resource);
+    }
+
+    /**
+     * Lists the blobs of one bucket as stored names, sorted. Only the bucket is
+     * held in memory, never the whole store.
+     */
+    public List<String> listBucket(String bucket) {
+        Path directory = bucket.isEmpty() ? rootLocation : rootLocation.resolve(bucket);
+        String prefix = bucket.isEmpty() ? "" : bucket + "/";
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, Files::isRegularFile)) {
+            for (Path entry : entries) {
+                names.add(prefix + entry.getFileName());
+            }
+        } catch (NoSuchFileException e) {
+            return names;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to list storage bucket " + bucket, e);
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    public Instant lastModified(String storedName) {
+        try {
+            return Files.getLastModifiedTime(load(storedName)).toInstant();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read file attributes", e);
+        }
+    }
+
+    public boolean exists(String storedName) {
+        return Files.exists(load(storedName));
+    }
+
+    /**
+     * Moves a blob under {@code .quarantine}, keeping its relative name, so that
+     * an orphan can still be recovered by hand before it is removed for good.
+     */
+    public void quarantine(String storedName) {
+        Path target = rootLocation.resolve(QUARANTINE_DIR).resolve(storedName);
+        try {
+            Files.createDirectories(target.getParent());
+            Files.move(load(storedName), target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to quarantine file", e);
+        }
+    }
+
     public void delete(String storedName) {
         try {
             Files.deleteIfExists(rootLocation.resolve(storedName));
@@ -55,4 +245,85 @@ public class StorageService {
             throw new RuntimeException("Failed to delete file", e);
         }
     }
+
+    /**
+     * Records read time and bytes served when the download stream is closed.
+     */
+    private final class MeteredResource extends AbstractResource {
+
+        private final Resource delegate;
+
+        MeteredResource(Resource delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String getDescription() {
+            return delegate.getDescription();
+        }
+
+        @Override
+        public boolean exists() {
+            return delegate.exists();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public long lastModified() throws IOException {
+            return delegate.lastModified();
+        }
+
+        @Override
+        public String getFilename() {
+            return delegate.getFilename();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new MeteredInputStream(delegate.getInputStream());
+        }
+    }
+
+    private final class MeteredInputStream extends FilterInputStream {
+
+        private final long start = System.nanoTime();
+        private long bytes;
+        private boolean closed;
+
+        MeteredInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                bytes += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                readTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                downloadBytes.record(bytes);
+            }
+            super.close();
+        }
+    }
 }
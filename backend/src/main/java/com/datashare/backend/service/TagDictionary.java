@@ -0,0 +1,174 @@
+package com.datashare.backend.service;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.datashare.backend.dto.TagFacetResponse;
+import com.datashare.backend.entity.FileEntity;
+import com.datashare.backend.entity.Tag;
+import com.datashare.backend.entity.User;
+import com.datashare.backend.entity.UserTag;
+import com.datashare.backend.repository.TagLink;
+import com.datashare.backend.repository.TagRepository;
+import com.datashare.backend.repository.UserRepository;
+import com.datashare.backend.repository.UserTagRepository;
+
+/**
+ * Each user's distinct tags, stored once under their normalized name, with the
+ * number of live files carrying them. Counters move with uploads and deletes in
+ * the same transaction, so facets are read, never counted.
+ *
+ * <p>Tag rows written before the dictionary existed are linked to it by a
+ * background backfill.
+ */
+@Service
+public class TagDictionary {
+
+    private static final Logger log = LoggerFactory.getLogger(TagDictionary.class);
+
+    private final UserTagRepository userTagRepository;
+    private final UserRepository userRepository;
+    private final TagRepository tagRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean backfillEnabled;
+    private final int backfillBatchSize;
+
+    public TagDictionary(UserTagRepository userTagRepository,
+                         UserRepository userRepository,
+                         TagRepository tagRepository,
+                         TransactionTemplate transactionTemplate,
+                         @Value("${tags.backfill.enabled:true}") boolean backfillEnabled,
+                         @Value("${tags.backfill.batch-size:500}") int backfillBatchSize) {
+        this.userTagRepository = userTagRepository;
+        this.userRepository = userRepository;
+        this.tagRepository = tagRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.backfillEnabled = backfillEnabled;
+        this.backfillBatchSize = backfillBatchSize;
+    }
+
+    public static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The user's dictionary entries for these normalized names, created when
+     * missing. Runs in the caller's transaction.
+     */
+    public Map<String, UserTag> resolve(User user, Collection<String> names) {
+        Map<String, UserTag> entries = byName(userTagRepository.findByUserIdAndNameIn(user.getId(), names));
+        if (entries.size() == names.size()) {
+            return entries;
+        }
+        // Two uploads adding the same new tag would both insert it: the user row lock makes the
+        // second one wait, and its fresh read then sees the tag the first one committed
+        userRepository.lockById(user.getId());
+        entries = byName(userTagRepository.findByUserIdAndNameIn(user.getId(), names));
+        for (String name : names) {
+            if (!entries.containsKey(name)) {
+                entries.put(name, userTagRepository.save(new UserTag(user, name)));
+            }
+        }
+        return entries;
+    }
+
+    private static Map<String, UserTag> byName(List<UserTag> tags) {
+        return tags.stream().collect(Collectors.toMap(UserTag::getName, t -> t, (a, b) -> a, HashMap::new));
+    }
+
+    public List<Long> findIds(Long userId, Collection<String> names) {
+        return userTagRepository.findByUserIdAndNameIn(userId, names).stream().map(UserTag::getId).toList();
+    }
+
+    public void fileAdded(Collection<UserTag> tags) {
+        if (!tags.isEmpty()) {
+            userTagRepository.incrementFileCount(tags.stream().map(UserTag::getId).toList());
+        }
+    }
+
+    public void fileRemoved(FileEntity file) {
+        List<Long> ids = file.getTags().stream()
+                .map(Tag::getUserTag)
+                .filter(t -> t != null)
+                .map(UserTag::getId)
+                .distinct()
+                .toList();
+        if (!ids.isEmpty()) {
+            userTagRepository.decrementFileCount(ids);
+        }
+    }
+
+    /** Counts out the files one bulk delete tombstoned with {@code deletedAt}. */
+    public void filesDeleted(Long userId, Collection<Long> fileIds, LocalDateTime deletedAt) {
+        userTagRepository.decrementForDeletedFiles(userId, fileIds, deletedAt);
+    }
+
+    /** The user's tags starting with {@code prefix}, most used first. */
+    public List<TagFacetResponse> facets(Long userId, String prefix, int limit) {
+        String escaped = normalize(prefix).replace("!", "!!").replace("%", "!%").replace("_", "!_");
+        return userTagRepository.findFacets(userId, escaped + "%", Limit.of(limit));
+    }
+
+    @Scheduled(initialDelayString = "${tags.backfill.initial-delay-ms:60000}",
+               fixedDelayString = "${tags.backfill.interval-ms:3600000}")
+    public void backfill() {
+        if (!backfillEnabled) {
+            return;
+        }
+        long linked = 0;
+        int batch;
+        do {
+            batch = transactionTemplate.execute(tx -> backfillBatch());
+            linked += batch;
+        } while (batch == backfillBatchSize);
+        if (linked > 0) {
+            log.info("Linked {} existing tags to the tag dictionary", linked);
+        }
+    }
+
+    int backfillBatch() {
+        List<Tag> tags = tagRepository.findUnlinked(Limit.of(backfillBatchSize));
+        Map<User, List<Tag>> byUser = tags.stream()
+                .collect(Collectors.groupingBy(t -> t.getFile().getUser(), LinkedHashMap::new, Collectors.toList()));
+
+        // Legacy rows may carry the same tag twice on a file with different case, possibly in
+        // different batches: a file counts once per entry, including the links earlier batches made
+        Set<Long> liveFiles = tags.stream()
+                .map(Tag::getFile)
+                .filter(f -> f.getDeletedAt() == null)
+                .map(FileEntity::getId)
+                .collect(Collectors.toSet());
+        Set<TagLink> counted = new HashSet<>(liveFiles.isEmpty() ? List.of() : tagRepository.findLinks(liveFiles));
+
+        Map<Long, Long> increments = new HashMap<>();
+        byUser.forEach((user, userTags) -> {
+            Set<String> names = userTags.stream().map(t -> normalize(t.getName())).collect(Collectors.toSet());
+            Map<String, UserTag> entries = resolve(user, names);
+            for (Tag tag : userTags) {
+                UserTag entry = entries.get(normalize(tag.getName()));
+                tag.setUserTag(entry);
+                if (tag.getFile().getDeletedAt() == null && counted.add(new TagLink(tag.getFile().getId(), entry.getId()))) {
+                    increments.merge(entry.getId(), 1L, Long::sum);
+                }
+            }
+        });
+        increments.forEach(userTagRepository::addToFileCount);
+        return tags.size();
+    }
+}
@@ -0,0 +1,17 @@
+package com.datashare.backend.service;
+
+import java.util.Locale;
+
+/** Whether a tag search wants files carrying all of the tags or any of them. */
+public enum TagMatch {
+    ALL,
+    ANY;
+
+    public static TagMatch from(String value) {
+        try {
+            return valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown tag match: " + value);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.datashare.backend.service;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical timing wheel of {@code long} ids, in the style of the Linux
+ * kernel timers. Level {@code l} has 64 slots of {@code 64^l} ticks each: a
+ * deadline goes to the lowest level whose span covers it, and every time a
+ * higher-level slot comes due its entries are redistributed one level down.
+ * Scheduling and firing cost O(1) per entry whatever the number of entries,
+ * and nothing is scanned between deadlines.
+ *
+ * <p>Not thread-safe: callers hold their own lock.
+ */
+class TimingWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    private final Slot[][] levels;
+    private final long span;
+    private long currentTick;
+    private int size;
+
+    /** A wheel able to hold deadlines up to {@code maxTicks} ahead of its current tick. */
+    TimingWheel(long maxTicks, long startTick) {
+        int levelCount = 1;
+        while (levelCount < 10 && 1L << (SLOT_BITS * levelCount) <= maxTicks) {
+            levelCount++;
+        }
+        this.levels = new Slot[levelCount][SLOTS];
+        for (Slot[] level : levels) {
+            for (int i = 0; i < SLOTS; i++) {
+                level[i] = new Slot();
+            }
+        }
+        this.span = 1L << (SLOT_BITS * levelCount);
+        this.currentTick = startTick;
+    }
+
+    /**
+     * Schedules {@code id} for {@code deadlineTick}; a deadline already past
+     * fires on the next tick. Returns {@code false}, without scheduling, when the
+     * deadline is beyond what the wheel can hold.
+     */
+    boolean add(long id, long deadlineTick) {
+        long deadline = Math.max(deadlineTick, currentTick + 1);
+        if (deadline - currentTick >= span) {
+            return false;
+        }
+        place(id, deadline);
+        size++;
+        return true;
+    }
+
+    // A deadline equal to the current tick lands in the level-0 slot about to fire
+    private void place(long id, long deadline) {
+        long delta = deadline - currentTick;
+        int level = 0;
+        while (delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        levels[level][(int) (deadline >>> (SLOT_BITS * level)) & SLOT_MASK].add(id, deadline);
+    }
+
+    /**
+     * Moves the wheel forward to {@code tick}, handing every entry that comes due
+     * on the way to {@code expired}, in deadline order.
+     */
+    void advance(long tick, Expired expired) {
+        if (size == 0) {
+            currentTick = Math.max(currentTick, tick);
+            return;
+        }
+        while (currentTick < tick) {
+            currentTick++;
+            // Higher levels first, so that cascaded entries due right now fire on this tick
+            for (int level = levels.length - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(levels[level][(int) (currentTick >>> (SLOT_BITS * level)) & SLOT_MASK]);
+                }
+            }
+            Slot due = levels[0][(int) currentTick & SLOT_MASK];
+            for (int i = 0; i < due.size; i++) {
+                expired.accept(due.ids[i], due.deadlines[i]);
+            }
+            size -= due.size;
+            due.clear();
+            if (size == 0) {
+                currentTick = tick;
+            }
+        }
+    }
+
+    private void cascade(Slot slot) {
+        int count = slot.size;
+        long[] ids = slot.ids;
+        long[] deadlines = slot.deadlines;
+        slot.clear();
+        for (int i = 0; i < count; i++) {
+            place(ids[i], deadlines[i]);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    long currentTick() {
+        return currentTick;
+    }
+
+    @FunctionalInterface
+    interface Expired {
+        void accept(long id, long deadlineTick);
+    }
+
+    private static final class Slot {
+
+        private static final long[] EMPTY = new long[0];
+
+        long[] ids = EMPTY;
+        long[] deadlines = EMPTY;
+        int size;
+
+        void add(long id, long deadline) {
+            if (size == ids.length) {
+                int capacity = Math.max(4, size * 2);
+                ids = Arrays.copyOf(ids, capacity);
+                deadlines = Arrays.copyOf(deadlines, capacity);
+            }
+            ids[size] = id;
+            deadlines[size] = deadline;
+            size++;
+        }
+
+        // Drops the arrays too: a slot that held a burst of expirations does not keep that memory
+        void clear() {
+            ids = EMPTY;
+            deadlines = EMPTY;
+            size = 0;
+        }
+    }
+}
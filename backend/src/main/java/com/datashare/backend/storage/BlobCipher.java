@@ -0,0 +1,370 @@
+package com.datashare.backend.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Encryption at rest with AES-256-GCM over fixed-size chunks.
+ *
+ * <p>Blob layout: a fixed header ({@code magic, chunk size, nonce prefix, wrapped
+ * data key}) followed by chunks of {@code chunkSize} plaintext bytes, each sealed
+ * with its own 16-byte tag. Every file gets a random data key, wrapped with the
+ * master key. Chunk {@code i} uses the nonce {@code prefix || i}, and its AAD
+ * carries the index and a last-chunk flag, so chunks cannot be reordered or the
+ * blob truncated unnoticed. Any byte range can be decrypted by seeking straight
+ * to the chunks that cover it.
+ */
+@Component
+public class BlobCipher {
+
+    public static final String SUFFIX = ".enc";
+
+    private static final byte[] MAGIC = {'D', 'S', 'E', '1'};
+    private static final int TAG_LENGTH = 16;
+    private static final int NONCE_PREFIX_LENGTH = 8;
+    private static final int WRAP_IV_LENGTH = 12;
+    private static final int DATA_KEY_LENGTH = 32;
+    static final int HEADER_LENGTH = MAGIC.length + 4 + NONCE_PREFIX_LENGTH + WRAP_IV_LENGTH
+            + DATA_KEY_LENGTH + TAG_LENGTH;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private final boolean enabled;
+    private final SecretKey masterKey;
+    private final int chunkSize;
+    private final SecureRandom random = new SecureRandom();
+
+    public BlobCipher(@Value("${storage.encryption.enabled:false}") boolean enabled,
+                      @Value("${storage.encryption.master-key:}") String masterKey,
+                      @Value("${storage.encryption.chunk-size:65536}") int chunkSize) {
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+        if (enabled) {
+            if (masterKey == null || masterKey.isBlank()) {
+                throw new IllegalStateException("storage.encryption.master-key is required when encryption is enabled");
+            }
+            byte[] key = Base64.getDecoder().decode(masterKey);
+            if (key.length != 32) {
+                throw new IllegalStateException("storage.encryption.master-key must be 32 bytes (base64)");
+            }
+            this.masterKey = new SecretKeySpec(key, "AES");
+        } else {
+            this.masterKey = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public static boolean isEncrypted(String storedName) {
+        return storedName.endsWith(SUFFIX);
+    }
+
+    public EncryptingChannel encrypt(FileChannel target) throws IOException {
+        try {
+            byte[] dataKey = new byte[DATA_KEY_LENGTH];
+            byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+            byte[] wrapIv = new byte[WRAP_IV_LENGTH];
+            random.nextBytes(dataKey);
+            random.nextBytes(noncePrefix);
+            random.nextBytes(wrapIv);
+
+            Cipher wrap = Cipher.getInstance(TRANSFORMATION);
+            wrap.init(Cipher.ENCRYPT_MODE, masterKey, new GCMParameterSpec(TAG_LENGTH * 8, wrapIv));
+            byte[] wrappedKey = wrap.doFinal(dataKey);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH)
+                    .put(MAGIC).putInt(chunkSize).put(noncePrefix).put(wrapIv).put(wrappedKey)
+                    .flip();
+            while (header.hasRemaining()) {
+                target.write(header);
+            }
+            return new EncryptingChannel(target, new SecretKeySpec(dataKey, "AES"), noncePrefix, chunkSize);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not initialise blob encryption", e);
+        }
+    }
+
+    public Resource decryptingResource(Path path) {
+        return new AbstractResource() {
+            @Override
+            public String getDescription() {
+                return "encrypted blob [" + path + "]";
+            }
+
+            @Override
+            public boolean exists() {
+                return path.toFile().exists();
+            }
+
+            @Override
+            public long contentLength() throws IOException {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    return readHeader(channel).plaintextLength(channel.size());
+                }
+            }
+
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return openDecrypting(path);
+            }
+        };
+    }
+
+    public InputStream openDecrypting(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new DecryptingInputStream(channel, readHeader(channel));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private Header readHeader(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) == -1) {
+                throw new CorruptBlobException("Encrypted blob is truncated");
+            }
+        }
+        buffer.flip();
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new CorruptBlobException("Not an encrypted blob");
+        }
+        int blobChunkSize = buffer.getInt();
+        byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+        byte[] wrapIv = new byte[WRAP_IV_LENGTH];
+        byte[] wrappedKey = new byte[DATA_KEY_LENGTH + TAG_LENGTH];
+        buffer.get(noncePrefix).get(wrapIv).get(wrappedKey);
+
+        try {
+            Cipher unwrap = Cipher.getInstance(TRANSFORMATION);
+            unwrap.init(Cipher.DECRYPT_MODE, masterKey, new GCMParameterSpec(TAG_LENGTH * 8, wrapIv));
+            SecretKey dataKey = new SecretKeySpec(unwrap.doFinal(wrappedKey), "AES");
+            return new Header(blobChunkSize, noncePrefix, dataKey);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not unwrap the data key of the blob", e);
+        }
+    }
+
+    private static GCMParameterSpec chunkNonce(byte[] noncePrefix, long index) {
+        byte[] nonce = new byte[NONCE_PREFIX_LENGTH + 4];
+        System.arraycopy(noncePrefix, 0, nonce, 0, NONCE_PREFIX_LENGTH);
+        ByteBuffer.wrap(nonce, NONCE_PREFIX_LENGTH, 4).putInt((int) index);
+        return new GCMParameterSpec(TAG_LENGTH * 8, nonce);
+    }
+
+    private static byte[] chunkAad(long index, boolean last) {
+        return ByteBuffer.allocate(9).putLong(index).put((byte) (last ? 1 : 0)).array();
+    }
+
+    private record Header(int chunkSize, byte[] noncePrefix, SecretKey dataKey) {
+
+        long sealedChunkSize() {
+            return (long) chunkSize + TAG_LENGTH;
+        }
+
+        long chunkCount(long blobLength) {
+            long body = blobLength - HEADER_LENGTH;
+            return Math.max(1, (body + sealedChunkSize() - 1) / sealedChunkSize());
+        }
+
+        long plaintextLength(long blobLength) {
+            return blobLength - HEADER_LENGTH - chunkCount(blobLength) * TAG_LENGTH;
+        }
+    }
+
+    /**
+     * Buffers plaintext into chunks and seals each one as it fills up. The final,
+     * possibly short, chunk is written by {@link #finish()}.
+     */
+    public static final class EncryptingChannel implements WritableByteChannel {
+
+        private final FileChannel target;
+        private final SecretKey dataKey;
+        private final byte[] noncePrefix;
+        private final Cipher cipher;
+        private final byte[] plain;
+        private final byte[] sealed;
+        private int filled;
+        private long index;
+        private boolean finished;
+
+        private EncryptingChannel(FileChannel target, SecretKey dataKey, byte[] noncePrefix, int chunkSize)
+                throws GeneralSecurityException {
+            this.target = target;
+            this.dataKey = dataKey;
+            this.noncePrefix = noncePrefix;
+            this.cipher = Cipher.getInstance(TRANSFORMATION);
+            this.plain = new byte[chunkSize];
+            this.sealed = new byte[chunkSize + TAG_LENGTH];
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int written = 0;
+            while (src.hasRemaining()) {
+                if (filled == plain.length) {
+                    seal(false);
+                }
+                int n = Math.min(plain.length - filled, src.remaining());
+                src.get(plain, filled, n);
+                filled += n;
+                written += n;
+            }
+            return written;
+        }
+
+        public void finish() throws IOException {
+            if (!finished) {
+                seal(true);
+                finished = true;
+            }
+        }
+
+        private void seal(boolean last) throws IOException {
+            try {
+                cipher.init(Cipher.ENCRYPT_MODE, dataKey, chunkNonce(noncePrefix, index));
+                cipher.updateAAD(chunkAad(index, last));
+                int length = cipher.doFinal(plain, 0, filled, sealed, 0);
+                ByteBuffer out = ByteBuffer.wrap(sealed, 0, length);
+                while (out.hasRemaining()) {
+                    target.write(out);
+                }
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Could not encrypt chunk " + index, e);
+            }
+            index++;
+            filled = 0;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return target.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+        }
+    }
+
+    /**
+     * Decrypts chunk by chunk with positional reads. {@link #skip(long)} jumps
+     * straight to the chunk holding the new position, which is how byte ranges are
+     * served without decrypting the preceding data.
+     */
+    private static final class DecryptingInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final Header header;
+        private final long chunkCount;
+        private final long length;
+        private final Cipher cipher;
+        private final byte[] sealed;
+        private final byte[] plain;
+        private long loadedIndex = -1;
+        private int plainLength;
+        private long position;
+
+        DecryptingInputStream(FileChannel channel, Header header) throws IOException {
+            this.channel = channel;
+            this.header = header;
+            long blobLength = channel.size();
+            this.chunkCount = header.chunkCount(blobLength);
+            this.length = header.plaintextLength(blobLength);
+            try {
+                this.cipher = Cipher.getInstance(TRANSFORMATION);
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+            this.sealed = new byte[header.chunkSize() + TAG_LENGTH];
+            this.plain = new byte[header.chunkSize() + TAG_LENGTH];
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= length) {
+                return -1;
+            }
+            long index = position / header.chunkSize();
+            load(index);
+            int offset = (int) (position - index * header.chunkSize());
+            int n = Math.min(len, plainLength - offset);
+            System.arraycopy(plain, offset, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, length - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, length - position);
+        }
+
+        private void load(long index) throws IOException {
+            if (index == loadedIndex) {
+                return;
+            }
+            boolean last = index == chunkCount - 1;
+            long offset = HEADER_LENGTH + index * header.sealedChunkSize();
+            int sealedLength = (int) Math.min(header.sealedChunkSize(), channel.size() - offset);
+            ByteBuffer buffer = ByteBuffer.wrap(sealed, 0, sealedLength);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) == -1) {
+                    throw new CorruptBlobException("Encrypted blob is truncated");
+                }
+            }
+            try {
+                cipher.init(Cipher.DECRYPT_MODE, header.dataKey(), chunkNonce(header.noncePrefix(), index));
+                cipher.updateAAD(chunkAad(index, last));
+                plainLength = cipher.doFinal(sealed, 0, sealedLength, plain, 0);
+            } catch (GeneralSecurityException e) {
+                throw new CorruptBlobException("Chunk " + index + " of the encrypted blob failed authentication", e);
+            }
+            loadedIndex = index;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.datashare.backend.storage;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded pool of large direct buffers shared by all storage I/O, plus the small
+ * heap arrays used to stage reads from plain input streams. Entries are allocated
+ * lazily up to {@code maxBuffers}; once they are all in use, callers wait for one
+ * to be released instead of allocating more memory.
+ */
+@Component
+public class BufferPool {
+
+    static final int STAGING_SIZE = 128 * 1024;
+
+    private final int bufferSize;
+    private final long acquireTimeoutMs;
+    private final Slots<ByteBuffer> buffers;
+    private final Slots<byte[]> stagingArrays;
+
+    public BufferPool(@Value("${storage.io.buffer-size:1048576}") int bufferSize,
+                      @Value("${storage.io.buffer-count:16}") int maxBuffers,
+                      @Value("${storage.io.acquire-timeout-ms:30000}") long acquireTimeoutMs) {
+        this.bufferSize = bufferSize;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.buffers = new Slots<>(maxBuffers, () -> ByteBuffer.allocateDirect(bufferSize));
+        this.stagingArrays = new Slots<>(maxBuffers, () -> new byte[Math.min(STAGING_SIZE, bufferSize)]);
+    }
+
+    public ByteBuffer acquire() throws IOException {
+        return buffers.take(acquireTimeoutMs).clear();
+    }
+
+    public void release(ByteBuffer buffer) {
+        buffers.give(buffer);
+    }
+
+    public byte[] acquireStaging() throws IOException {
+        return stagingArrays.take(acquireTimeoutMs);
+    }
+
+    public void releaseStaging(byte[] staging) {
+        stagingArrays.give(staging);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    private static final class Slots<T> {
+
+        private final BlockingQueue<T> available;
+        private final AtomicInteger allocated = new AtomicInteger();
+        private final int max;
+        private final Supplier<T> factory;
+
+        Slots(int max, Supplier<T> factory) {
+            this.available = new ArrayBlockingQueue<>(max);
+            this.max = max;
+            this.factory = factory;
+        }
+
+        T take(long timeoutMs) throws IOException {
+            T item = available.poll();
+            if (item != null) {
+                return item;
+            }
+            if (allocated.incrementAndGet() <= max) {
+                return factory.get();
+            }
+            allocated.decrementAndGet();
+
+            try {
+                item = available.poll(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for an I/O buffer");
+            }
+            if (item == null) {
+                throw new IOException("No I/O buffer available after " + timeoutMs + " ms");
+            }
+            return item;
+        }
+
+        void give(T item) {
+            available.offer(item);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.datashare.backend.storage;
+
+import java.nio.ByteBuffer;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+@Component
+@Order(0)
+public class ByteCountStage implements IngestStage {
+
+    @Override
+    public Tap open() {
+        return new Tap() {
+            private long count;
+
+            @Override
+            public void update(ByteBuffer chunk) {
+                count += chunk.remaining();
+            }
+
+            @Override
+            public void complete(IngestResult result) {
+                result.setSize(count);
+            }
+        };
+    }
+}
@@ -0,0 +1,114 @@
+package com.datashare.backend.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Detects the media type from the leading magic bytes. Returns {@code null} when
+ * the signature is unknown so the declared type is kept.
+ */
+@Component
+@Order(2)
+public class ContentSniffStage implements IngestStage {
+
+    static final int HEADER_SIZE = 16;
+
+    @Override
+    public Tap open() {
+        return new Tap() {
+            private final byte[] header = new byte[HEADER_SIZE];
+            private int length;
+
+            @Override
+            public void update(ByteBuffer chunk) {
+                int n = Math.min(HEADER_SIZE - length, chunk.remaining());
+                if (n > 0) {
+                    chunk.get(header, length, n);
+                    length += n;
+                }
+            }
+
+            @Override
+            public void complete(IngestResult result) {
+                result.setDetectedType(detect(header, length));
+            }
+        };
+    }
+
+    static String detect(byte[] h, int length) {
+        if (startsWith(h, length, "%PDF-")) {
+            return "application/pdf";
+        }
+        if (startsWith(h, length, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "image/png";
+        }
+        if (startsWith(h, length, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(h, length, "GIF87a") || startsWith(h, length, "GIF89a")) {
+            return "image/gif";
+        }
+        if (startsWith(h, length, "RIFF") && length >= 12
+                && new String(h, 8, 4, StandardCharsets.US_ASCII).equals("WEBP")) {
+            return "image/webp";
+        }
+        if (length >= 12 && new String(h, 4, 4, StandardCharsets.US_ASCII).equals("ftyp")) {
+            return isoMediaType(new String(h, 8, 4, StandardCharsets.US_ASCII));
+        }
+        if (startsWith(h, length, "ID3")) {
+            return "audio/mpeg";
+        }
+        if (startsWith(h, length, "OggS")) {
+            return "application/ogg";
+        }
+        if (startsWith(h, length, 'P', 'K', 0x03, 0x04)) {
+            return "application/zip";
+        }
+        if (startsWith(h, length, 0x1F, 0x8B)) {
+            return "application/gzip";
+        }
+        if (startsWith(h, length, 'M', 'Z')) {
+            return "application/vnd.microsoft.portable-executable";
+        }
+        if (startsWith(h, length, 0x7F, 'E', 'L', 'F')) {
+            return "application/x-executable";
+        }
+        return null;
+    }
+
+    // Images, audio and video share the ISO base media ftyp box: its major brand tells them apart
+    private static String isoMediaType(String majorBrand) {
+        return switch (majorBrand) {
+            case "heic", "heix", "heim", "heis" -> "image/heic";
+            case "hevc", "hevx" -> "image/heic-sequence";
+            case "mif1" -> "image/heif";
+            case "msf1" -> "image/heif-sequence";
+            case "avif", "avis" -> "image/avif";
+            case "M4A ", "M4B ", "M4P " -> "audio/mp4";
+            case "qt  " -> "video/quicktime";
+            case "3gp4", "3gp5", "3gp6", "3gp7", "3gg6" -> "video/3gpp";
+            case "3g2a" -> "video/3gpp2";
+            case "isom", "iso2", "iso4", "iso5", "iso6", "mp41", "mp42", "avc1", "dash", "M4V ", "mmp4" -> "video/mp4";
+            default -> null;
+        };
+    }
+
+    private static boolean startsWith(byte[] h, int length, String ascii) {
+        return startsWith(h, length, ascii.chars().toArray());
+    }
+
+    private static boolean startsWith(byte[] h, int length, int... signature) {
+        if (length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((h[i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,19 @@
+package com.datashare.backend.storage;
+
+import java.io.IOException;
+
+/**
+ * The blob was read, but its content cannot be what was stored: a truncated or
+ * foreign header, or a chunk that fails authentication. Unlike other
+ * {@link IOException}s, reading it again will not help.
+ */
+public class CorruptBlobException extends IOException {
+
+    public CorruptBlobException(String message) {
+        super(message);
+    }
+
+    public CorruptBlobException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
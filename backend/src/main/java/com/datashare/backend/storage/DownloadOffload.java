@@ -0,0 +1,78 @@
+package com.datashare.backend.storage;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Hands the transfer of a download over to the reverse proxy. Authorization
+ * stays in the application; once a download is allowed, the response only
+ * carries a header telling the proxy which file to send, and the proxy streams
+ * it from disk without a JVM thread or buffer.
+ *
+ * <p>Encrypted blobs cannot be served as-is and always fall back to the in-JVM
+ * path, as does everything when the mode is {@link Mode#NONE}.
+ */
+@Component
+public class DownloadOffload {
+
+    public enum Mode {
+        NONE,
+        /** nginx: a URI of an {@code internal} location that aliases the storage directory. */
+        X_ACCEL_REDIRECT,
+        /** Apache mod_xsendfile, lighttpd: the absolute path of the blob. */
+        X_SENDFILE
+    }
+
+    public static final String X_ACCEL_REDIRECT = "X-Accel-Redirect";
+    public static final String X_SENDFILE = "X-Sendfile";
+
+    private final Mode mode;
+    private final String internalLocation;
+    private final Path rootLocation;
+    private final Counter offloaded;
+    private final Counter fallback;
+
+    public DownloadOffload(@Value("${storage.offload.mode:none}") Mode mode,
+                           @Value("${storage.offload.internal-location:/protected-files/}") String internalLocation,
+                           @Value("${storage.local.path}") String storagePath,
+                           MeterRegistry meterRegistry) {
+        this.mode = mode;
+        this.internalLocation = internalLocation.endsWith("/") ? internalLocation : internalLocation + "/";
+        this.rootLocation = Paths.get(storagePath).toAbsolutePath().normalize();
+        this.offloaded = downloads(meterRegistry, "offloaded");
+        this.fallback = downloads(meterRegistry, "jvm");
+    }
+
+    private static Counter downloads(MeterRegistry registry, String servedBy) {
+        return Counter.builder("storage.download.served")
+                .description("Downloads by who streams the bytes: the reverse proxy or the JVM")
+                .tag("by", servedBy)
+                .register(registry);
+    }
+
+    /**
+     * Adds the offload header for the blob and returns {@code true}, in which case
+     * the response must have no body. Returns {@code false} when the JVM has to
+     * stream the blob itself.
+     */
+    public boolean apply(String storedName, HttpHeaders headers) {
+        if (mode == Mode.NONE || BlobCipher.isEncrypted(storedName)) {
+            fallback.increment();
+            return false;
+        }
+        switch (mode) {
+            case X_ACCEL_REDIRECT -> headers.set(X_ACCEL_REDIRECT, internalLocation + storedName);
+            case X_SENDFILE -> headers.set(X_SENDFILE, rootLocation.resolve(storedName).toString());
+            case NONE -> { }
+        }
+        offloaded.increment();
+        return true;
+    }
+}
@@ -0,0 +1,7 @@
+package com.datashare.backend.storage;
+
+public enum FsyncPolicy {
+    NONE,
+    PER_FILE,
+    GROUP
+}
@@ -0,0 +1,159 @@
+package com.datashare.backend.storage;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Group commit for uploads: writers enqueue their open channel and wait, while a
+ * single flusher thread fsyncs every queued file, then each distinct parent
+ * directory once, and releases the whole batch. Writes that arrive during a flush
+ * form the next batch, so concurrent uploads share the fsync latency.
+ *
+ * <p>A writer waits at most {@code storage.io.group-commit.timeout-ms}. A failure
+ * of the flusher itself fails its batch rather than the thread, and once
+ * {@link #shutdown()} has run, new writes are refused instead of queued.
+ */
+@Component
+public class GroupCommitter {
+
+    private static final Logger log = LoggerFactory.getLogger(GroupCommitter.class);
+
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final int maxBatchSize;
+    private final long timeoutMs;
+    private volatile boolean closed;
+    private Thread flusher;
+
+    private record Request(FileChannel channel, Path directory, CompletableFuture<Void> durable) {}
+
+    public GroupCommitter(@Value("${storage.io.group-commit.max-batch:256}") int maxBatchSize,
+                          @Value("${storage.io.group-commit.timeout-ms:30000}") long timeoutMs) {
+        this.maxBatchSize = maxBatchSize;
+        this.timeoutMs = timeoutMs;
+    }
+
+    public void awaitDurable(FileChannel channel, Path directory) throws IOException {
+        ensureStarted();
+        Request request = new Request(channel, directory, new CompletableFuture<>());
+        queue.add(request);
+        // A shutdown that drained the queue before this request went in would never complete it
+        if (closed && queue.remove(request)) {
+            throw new IOException("Storage is shutting down");
+        }
+        try {
+            request.durable().get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            queue.remove(request);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for group commit");
+        } catch (ExecutionException e) {
+            throw new IOException("Group commit failed", e.getCause());
+        } catch (TimeoutException e) {
+            queue.remove(request);
+            throw new IOException("Group commit did not complete within " + timeoutMs + " ms");
+        }
+    }
+
+    private synchronized void ensureStarted() throws IOException {
+        if (closed) {
+            throw new IOException("Storage is shutting down");
+        }
+        if (flusher == null || !flusher.isAlive()) {
+            flusher = Thread.ofPlatform().name("storage-group-commit").daemon().start(this::run);
+        }
+    }
+
+    private void run() {
+        List<Request> batch = new ArrayList<>(maxBatchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, maxBatchSize - 1);
+            try {
+                flush(batch);
+            } catch (Throwable e) {
+                log.error("Group commit of {} files failed", batch.size(), e);
+                IOException failure = new IOException("Group commit failed", e);
+                for (Request request : batch) {
+                    request.durable().completeExceptionally(failure);
+                }
+            }
+            batch.clear();
+        }
+        failPending();
+    }
+
+    private void flush(List<Request> batch) {
+        Set<Path> directories = new LinkedHashSet<>();
+        List<Request> synced = new ArrayList<>(batch.size());
+        for (Request request : batch) {
+            try {
+                request.channel().force(false);
+                directories.add(request.directory());
+                synced.add(request);
+            } catch (IOException e) {
+                request.durable().completeExceptionally(e);
+            }
+        }
+
+        IOException directoryFailure = null;
+        for (Path directory : directories) {
+            try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+                dir.force(true);
+            } catch (IOException e) {
+                directoryFailure = e;
+            }
+        }
+
+        for (Request request : synced) {
+            if (directoryFailure != null) {
+                request.durable().completeExceptionally(directoryFailure);
+            } else {
+                request.durable().complete(null);
+            }
+        }
+        log.debug("Group commit of {} files", batch.size());
+    }
+
+    private void failPending() {
+        List<Request> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        IOException closed = new IOException("Storage is shutting down");
+        for (Request request : pending) {
+            request.durable().completeExceptionally(closed);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        closed = true;
+        if (flusher != null && flusher.isAlive()) {
+            flusher.interrupt();
+        } else {
+            failPending();
+        }
+    }
+}
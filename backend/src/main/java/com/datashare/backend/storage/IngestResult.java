@@ -0,0 +1,13 @@
+package com.datashare.backend.storage;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class IngestResult {
+
+    private long size;
+    private String sha256;
+    private String detectedType;
+}
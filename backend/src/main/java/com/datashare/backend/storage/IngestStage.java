@@ -0,0 +1,19 @@
+package com.datashare.backend.storage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A step of the upload ingest pipeline. Stages are stateless beans; each upload
+ * gets its own {@link Tap}, which sees every chunk of the stream exactly once.
+ */
+public interface IngestStage {
+
+    Tap open();
+
+    interface Tap {
+
+        void update(ByteBuffer chunk);
+
+        void complete(IngestResult result);
+    }
+}
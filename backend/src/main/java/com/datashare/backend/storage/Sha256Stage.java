@@ -0,0 +1,38 @@
+package com.datashare.backend.storage;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+@Component
+@Order(1)
+public class Sha256Stage implements IngestStage {
+
+    @Override
+    public Tap open() {
+        MessageDigest digest = newDigest();
+        return new Tap() {
+            @Override
+            public void update(ByteBuffer chunk) {
+                digest.update(chunk);
+            }
+
+            @Override
+            public void complete(IngestResult result) {
+                result.setSha256(HexFormat.of().formatHex(digest.digest()));
+            }
+        };
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.datashare.backend.storage;
+
+public record StoredFile(
+        String storedName,
+        long size,
+        String sha256,
+        String detectedType
+) {}
@@ -0,0 +1,65 @@
+-- Converts files into a table partitioned by day of expired_at (PostgreSQL 17).
+--
+-- Run once, with the application stopped:
+--   psql -U datashare -d datashare -f partition-files.sql
+-- then start it with files.partitioning.enabled=true. From then on, FilePartitions
+-- creates the coming days' partitions and FilePurgeService drops the expired ones.
+
+BEGIN;
+
+LOCK TABLE files IN ACCESS EXCLUSIVE MODE;
+
+-- A foreign key to a partitioned table must include the partition key, which tags.file_id
+-- cannot: the purge deletes a partition's tags itself before dropping it.
+DO $$
+DECLARE
+    fk record;
+BEGIN
+    FOR fk IN SELECT conname, conrelid::regclass AS tbl FROM pg_constraint
+              WHERE contype = 'f' AND confrelid = 'files'::regclass LOOP
+        EXECUTE format('ALTER TABLE %s DROP CONSTRAINT %I', fk.tbl, fk.conname);
+    END LOOP;
+END $$;
+
+ALTER TABLE files RENAME TO files_unpartitioned;
+
+CREATE TABLE files (LIKE files_unpartitioned INCLUDING DEFAULTS INCLUDING IDENTITY INCLUDING GENERATED)
+    PARTITION BY RANGE (expired_at);
+
+-- One partition per day, from the oldest expiry still stored to ten days ahead
+DO $$
+DECLARE
+    day date;
+BEGIN
+    FOR day IN SELECT generate_series(
+                   least(coalesce((SELECT min(expired_at)::date FROM files_unpartitioned), current_date),
+                         current_date),
+                   current_date + 10, interval '1 day')::date LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF files FOR VALUES FROM (%L) TO (%L)',
+                       'files_p' || to_char(day, 'YYYYMMDD'), day, day + 1);
+    END LOOP;
+END $$;
+
+INSERT INTO files OVERRIDING SYSTEM VALUE SELECT * FROM files_unpartitioned;
+
+SELECT setval(pg_get_serial_sequence('files', 'id'),
+              coalesce((SELECT max(id) FROM files_unpartitioned), 0) + 1, false);
+
+DROP TABLE files_unpartitioned;
+
+-- Every unique constraint includes the partition key. Ids come from the identity, tokens
+-- and stored names are random UUIDs: they stay unique on their own.
+ALTER TABLE files ADD PRIMARY KEY (id, expired_at);
+ALTER TABLE files ADD UNIQUE (token, expired_at);
+ALTER TABLE files ADD UNIQUE (file_path, expired_at);
+ALTER TABLE files ADD FOREIGN KEY (user_id) REFERENCES users (id);
+
+-- Declared on the parent, created on every partition.
+-- Share-link lookups by token probe the (token, expired_at) index of each partition.
+-- Dashboard pages merge the partitions' (user_id, created_at, id) indexes in order;
+-- the active and expired filters prune partitions on expired_at.
+CREATE INDEX idx_files_user_created ON files (user_id, created_at, id);
+CREATE INDEX idx_files_user_expiry ON files (user_id, expired_at);
+CREATE INDEX idx_files_expiry ON files (expired_at);
+
+COMMIT;
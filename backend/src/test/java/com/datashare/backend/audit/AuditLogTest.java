@@ -0,0 +1,151 @@
+package com.datashare.backend.audit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class AuditLogTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private final List<AuditEvent> written = Collections.synchronizedList(new ArrayList<>());
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    private AuditLog auditLog(AuditOverflow overflow) {
+        return new AuditLog(jdbcTemplate, new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                meterRegistry, true, 8, overflow, 2, 500, 10, "audit-test-key");
+    }
+
+    @SuppressWarnings("unchecked")
+    private void databaseUp() {
+        when(jdbcTemplate.batchUpdate(anyString(), any(Collection.class), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class))).thenAnswer(invocation -> {
+                    written.addAll(invocation.getArgument(1));
+                    return new int[0][];
+                });
+    }
+
+    @Test
+    void writer_appendsEventsInBatches() throws Exception {
+        databaseUp();
+        AuditLog auditLog = auditLog(AuditOverflow.BLOCK);
+        auditLog.start();
+
+        for (long id = 0; id < 100; id++) {
+            auditLog.record(AuditAction.DOWNLOAD, null, id, "token-" + id, "10.0.0.1");
+        }
+        auditLog.shutdown();
+
+        assertThat(written).extracting(AuditEvent::fileId).hasSize(100).isSorted();
+        assertThat(meterRegistry.counter("audit.events.written").count()).isEqualTo(100);
+        assertThat(meterRegistry.counter("audit.events.dropped", "reason", "full").count()).isZero();
+    }
+
+    @Test
+    void drop_losesWhatDoesNotFit() {
+        AuditLog auditLog = auditLog(AuditOverflow.DROP);
+
+        for (long id = 0; id < 10; id++) {
+            auditLog.record(AuditAction.UPLOAD, "user@test.com", id, null, "10.0.0.1");
+        }
+
+        assertThat(meterRegistry.counter("audit.events.published").count()).isEqualTo(8);
+        assertThat(meterRegistry.counter("audit.events.dropped", "reason", "full").count()).isEqualTo(2);
+    }
+
+    @Test
+    void sample_keepsOneInNOnceThreeQuartersFull() {
+        AuditLog auditLog = auditLog(AuditOverflow.SAMPLE);
+
+        for (long id = 0; id < 10; id++) {
+            auditLog.record(AuditAction.DOWNLOAD, null, id, null, "10.0.0.1");
+        }
+
+        // Six fill the buffer to its high-water mark, then one in two of the next four is kept
+        assertThat(meterRegistry.counter("audit.events.published").count()).isEqualTo(8);
+        assertThat(meterRegistry.counter("audit.events.dropped", "reason", "sampled").count()).isEqualTo(2);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void writer_storesAKeyedHashOfTheToken() throws Exception {
+        List<ParameterizedPreparedStatementSetter<AuditEvent>> setters = Collections.synchronizedList(new ArrayList<>());
+        when(jdbcTemplate.batchUpdate(anyString(), any(Collection.class), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class))).thenAnswer(invocation -> {
+                    written.addAll(invocation.getArgument(1));
+                    setters.add(invocation.getArgument(3));
+                    return new int[0][];
+                });
+        AuditLog auditLog = auditLog(AuditOverflow.BLOCK);
+        auditLog.start();
+        auditLog.record(AuditAction.DOWNLOAD, null, 1L, "0b8f6c1e-7a3d-4f2b-9c5e-2d4a6b8c0e1f", "10.0.0.1");
+        auditLog.shutdown();
+
+        PreparedStatement ps = mock(PreparedStatement.class);
+        setters.get(0).setValues(ps, written.get(0));
+
+        // HMAC-SHA256 of the token under "audit-test-key"
+        String hash = auditLog.hashToken("0b8f6c1e-7a3d-4f2b-9c5e-2d4a6b8c0e1f");
+        verify(ps).setString(5, hash);
+        assertThat(hash).hasSize(64).isNotEqualTo(auditLog.hashToken("0b8f6c1e-7a3d-4f2b-9c5e-2d4a6b8c0e1e"));
+        assertThat(new AuditLog(jdbcTemplate, new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                meterRegistry, true, 8, AuditOverflow.DROP, 2, 500, 10, "another-key")
+                .hashToken("0b8f6c1e-7a3d-4f2b-9c5e-2d4a6b8c0e1f")).isNotEqualTo(hash);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void failedBatch_isRetried() throws Exception {
+        when(jdbcTemplate.batchUpdate(anyString(), any(Collection.class), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(new DataAccessResourceFailureException("database down"))
+                .thenAnswer(invocation -> {
+                    written.addAll(invocation.getArgument(1));
+                    return new int[0][];
+                });
+        AuditLog auditLog = auditLog(AuditOverflow.DROP);
+        auditLog.start();
+        auditLog.record(AuditAction.DELETE, "user@test.com", 1L, null, "10.0.0.1");
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (written.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        auditLog.shutdown();
+
+        assertThat(meterRegistry.counter("audit.write.failures").count()).isEqualTo(1);
+        assertThat(written).extracting(AuditEvent::action).containsExactly(AuditAction.DELETE);
+    }
+}
@@ -0,0 +1,91 @@
+package com.datashare.backend.audit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class AuditRingBufferTest {
+
+    @Test
+    void fullBuffer_refusesUntilDrained() {
+        AuditRingBuffer<Integer> buffer = new AuditRingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertThat(buffer.offer(i)).isTrue();
+        }
+        assertThat(buffer.offer(4)).isFalse();
+        assertThat(buffer.size()).isEqualTo(4);
+
+        List<Integer> drained = new ArrayList<>();
+        assertThat(buffer.drainTo(drained, 3)).isEqualTo(3);
+        assertThat(buffer.offer(4)).isTrue();
+        buffer.drainTo(drained, 10);
+
+        assertThat(drained).containsExactly(0, 1, 2, 3, 4);
+        assertThat(buffer.size()).isZero();
+    }
+
+    @Test
+    void capacity_mustBeAPowerOfTwo() {
+        assertThatThrownBy(() -> new AuditRingBuffer<>(100)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void concurrentProducers_eachElementIsDrainedOnceInProducerOrder() throws Exception {
+        AuditRingBuffer<long[]> buffer = new AuditRingBuffer<>(1024);
+        int producers = 8;
+        int perProducer = 20_000;
+        ExecutorService pool = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int p = 0; p < producers; p++) {
+            long producer = p;
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (long i = 0; i < perProducer; i++) {
+                    long[] element = {producer, i};
+                    while (!buffer.offer(element)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+        }
+        start.countDown();
+
+        long[] lastSeen = new long[producers];
+        Arrays.fill(lastSeen, -1);
+        Set<String> seen = new HashSet<>();
+        int outOfOrder = 0;
+        List<long[]> batch = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (seen.size() < producers * perProducer && System.nanoTime() < deadline) {
+            buffer.drainTo(batch, 256);
+            for (long[] element : batch) {
+                seen.add(element[0] + ":" + element[1]);
+                if (element[1] <= lastSeen[(int) element[0]]) {
+                    outOfOrder++;
+                }
+                lastSeen[(int) element[0]] = element[1];
+            }
+            batch.clear();
+        }
+        pool.shutdown();
+
+        assertThat(seen).hasSize(producers * perProducer);
+        assertThat(outOfOrder).isZero();
+        assertThat(buffer.size()).isZero();
+    }
+}
@@ -0,0 +1,146 @@
+package com.datashare.backend.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.datashare.backend.entity.User;
+import com.datashare.backend.repository.FileRepository;
+import com.datashare.backend.repository.UserRepository;
+import com.datashare.backend.security.JwtUtil;
+import com.datashare.backend.storage.DownloadOffload;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, properties = {
+        "storage.offload.mode=x-accel-redirect",
+        "storage.offload.internal-location=/protected-files/",
+        "spring.datasource.url=jdbc:h2:mem:offloaddb;DB_CLOSE_DELAY=-1"
+})
+@ActiveProfiles("test")
+@Transactional
+class DownloadOffloadIntegrationTest {
+
+    private MockMvc mockMvc;
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Value("${storage.local.path}")
+    private String storagePath;
+
+    private String jwtToken;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context)
+                .apply(springSecurity())
+                .build();
+
+        fileRepository.deleteAll();
+        userRepository.deleteAll();
+        userRepository.save(new User("test@test.com", passwordEncoder.encode("password123")));
+        jwtToken = jwtUtil.generateToken("test@test.com");
+    }
+
+    @Test
+    void download_isServedByTheProxyAfterAuthorization() throws Exception {
+        String token = upload("secret.pdf", "contenu protégé", "bonmotdepasse");
+
+        MvcResult refused = mockMvc.perform(post("/api/files/download/" + token)
+                        .param("password", "mauvais"))
+                .andExpect(status().isUnauthorized())
+                .andReturn();
+        assertThat(refused.getResponse().getHeader(DownloadOffload.X_ACCEL_REDIRECT)).isNull();
+
+        MockHttpServletResponse response = proxy(post("/api/files/download/" + token)
+                .param("password", "bonmotdepasse"));
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsString(StandardCharsets.UTF_8)).isEqualTo("contenu protégé");
+        assertThat(response.getHeader("Content-Disposition")).isEqualTo("attachment; filename=\"secret.pdf\"");
+        assertThat(response.getHeader("Cache-Control")).isEqualTo("no-store, private");
+    }
+
+    @Test
+    void notModified_carriesNoOffloadHeader() throws Exception {
+        String token = upload("photo.png", "image", null);
+
+        MvcResult first = mockMvc.perform(get("/api/files/download/" + token + "/content"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(DownloadOffload.X_ACCEL_REDIRECT))
+                .andReturn();
+        assertThat(first.getResponse().getContentLength()).isZero();
+
+        MvcResult revalidated = mockMvc.perform(get("/api/files/download/" + token + "/content")
+                        .header("If-None-Match", first.getResponse().getHeader("ETag")))
+                .andExpect(status().isNotModified())
+                .andReturn();
+        assertThat(revalidated.getResponse().getHeader(DownloadOffload.X_ACCEL_REDIRECT)).isNull();
+        assertThat(revalidated.getResponse().getHeaders("ETag")).hasSize(1);
+    }
+
+    private String upload(String name, String content, String password) throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", name, "application/octet-stream",
+                content.getBytes());
+        var request = multipart("/api/files").file(file).header("Authorization", "Bearer " + jwtToken);
+        if (password != null) {
+            request.param("password", password);
+        }
+        MvcResult result = mockMvc.perform(request).andExpect(status().isCreated()).andReturn();
+        return new ObjectMapper().readTree(result.getResponse().getContentAsString()).get("token").asText();
+    }
+
+    /**
+     * Stands in for nginx: forwards the request to the application and, when the
+     * response names an internal location, replaces the empty body with the file
+     * that location aliases.
+     */
+    private MockHttpServletResponse proxy(RequestBuilder request) throws Exception {
+        MockHttpServletResponse response = mockMvc.perform(request).andReturn().getResponse();
+        String internal = response.getHeader(DownloadOffload.X_ACCEL_REDIRECT);
+        assertThat(internal).startsWith("/protected-files/");
+        assertThat(response.getContentLength()).isZero();
+
+        Path blob = Paths.get(storagePath).resolve(internal.substring("/protected-files/".length()));
+        response.setHeader(DownloadOffload.X_ACCEL_REDIRECT, null);
+        response.getOutputStream().write(Files.readAllBytes(blob));
+        return response;
+    }
+}
@@ -1,18 +1,28 @@
 package com.datashare.backend.controller;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.context.ActiveProfiles;
@@ -22,13 +32,18 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.context.WebApplicationContext;
 
+import com.datashare.backend.entity.FileEntity;
 import com.datashare.backend.entity.User;
+import com.datashare.backend.metrics.HotDownloadsEndpoint;
 import com.datashare.backend.repository.FileRepository;
 import com.datashare.backend.repository.UserRepository;
 import com.datashare.backend.security.JwtUtil;
+import com.datashare.backend.service.DownloadCounter;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import jakarta.persistence.EntityManager;
+
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
 @ActiveProfiles("test")
 @Transactional
@@ -53,6 +68,18 @@ class FileControllerIntegrationTest {
     @Autowired
     private JwtUtil jwtUtil;
 
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private DownloadCounter downloadCounter;
+
+    @Autowired
+    private HotDownloadsEndpoint hotDownloadsEndpoint;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     private String jwtToken;
 
     @BeforeEach
@@ -138,6 +165,250 @@ class FileControllerIntegrationTest {
                 .andExpect(jsonPath("$[0].name").value("doc.pdf"));
     }
 
+    @Test
+    void getUserFiles_statusFilterAndCursorPaging() throws Exception {
+        User user = userRepository.findByEmail("test@test.com").orElseThrow();
+        for (int i = 0; i < 3; i++) {
+            saveFile(user, "actif-" + i, LocalDateTime.now().plusDays(1));
+        }
+        for (int i = 0; i < 2; i++) {
+            saveFile(user, "expire-" + i, LocalDateTime.now().minusDays(1));
+        }
+
+        MvcResult first = mockMvc.perform(get("/api/files")
+                        .param("status", "active")
+                        .param("limit", "2")
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(header().exists("X-Next-Cursor"))
+                .andReturn();
+
+        mockMvc.perform(get("/api/files")
+                        .param("status", "active")
+                        .param("limit", "2")
+                        .param("cursor", first.getResponse().getHeader("X-Next-Cursor"))
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].name").value("actif-0"))
+                .andExpect(header().doesNotExist("X-Next-Cursor"));
+
+        mockMvc.perform(get("/api/files")
+                        .param("status", "expired")
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2));
+
+        mockMvc.perform(get("/api/files")
+                        .param("status", "archive")
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void tagSearchAndFacets_followUploadsAndDeletes() throws Exception {
+        Long invoiceId = uploadTagged("facture-2024.pdf", "Facture", "2024");
+        uploadTagged("facture-2025.pdf", "facture", "2025");
+        uploadTagged("photo.png", "vacances");
+
+        mockMvc.perform(get("/api/files/search")
+                        .param("tags", "FACTURE", "2024")
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].name").value("facture-2024.pdf"));
+
+        mockMvc.perform(get("/api/files/search")
+                        .param("tags", "2024", "vacances")
+                        .param("match", "any")
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(jsonPath("$.length()").value(2));
+
+        mockMvc.perform(get("/api/files/tags")
+                        .param("prefix", "fac")
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].name").value("facture"))
+                .andExpect(jsonPath("$[0].count").value(2));
+
+        mockMvc.perform(delete("/api/files")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"ids\": [" + invoiceId + "]}")
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/api/files/tags")
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(jsonPath("$[?(@.name == 'facture')].count").value(1))
+                .andExpect(jsonPath("$[?(@.name == '2024')]").isEmpty());
+    }
+
+    @Test
+    void nameSearch_matchesNamesAndTagsAndFollowsUploadsAndDeletes() throws Exception {
+        Long reportId = uploadTagged("Rapport_2024-final.pdf", "urgent");
+        uploadTagged("rapport-2023.pdf");
+
+        mockMvc.perform(get("/api/files/search")
+                        .param("q", "rap 2024")
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].name").value("Rapport_2024-final.pdf"));
+
+        // Not indexed by the upload, which this test transaction never commits, but read back by the
+        // next search as an upload served by another instance would be
+        uploadTagged("Réunion équipe.txt", "Rapport");
+
+        mockMvc.perform(get("/api/files/search")
+                        .param("q", "RAPPORT")
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].name").value("Réunion équipe.txt"));
+
+        mockMvc.perform(delete("/api/files/" + reportId)
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().is2xxSuccessful());
+
+        mockMvc.perform(get("/api/files/search")
+                        .param("q", "urg")
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(jsonPath("$.length()").value(0));
+
+        mockMvc.perform(get("/api/files/search")
+                        .param("q", "  ")
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void usageStats_followUploadsAndDeletes_andQuotaRejectsUploads() throws Exception {
+        Long reportId = uploadTagged("rapport.pdf");
+        mockMvc.perform(multipart("/api/files")
+                        .file(new MockMultipartFile("file", "photo.png", "image/png", "image".getBytes()))
+                        .param("expirationDays", "1")
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isCreated());
+
+        mockMvc.perform(get("/api/files/stats")
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.usedBytes").value(12))
+                .andExpect(jsonPath("$.fileCount").value(2))
+                .andExpect(jsonPath("$.filesByType.document").value(1))
+                .andExpect(jsonPath("$.filesByType.image").value(1))
+                .andExpect(jsonPath("$.bytesExpiringWithin24h").value(5));
+
+        entityManager.createQuery("update UserUsage u set u.quotaBytes = 20")
+                .executeUpdate();
+        mockMvc.perform(multipart("/api/files")
+                        .file(new MockMultipartFile("file", "gros.txt", "text/plain", "0123456789".getBytes()))
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isContentTooLarge())
+                .andExpect(jsonPath("$.error").value("Storage quota exceeded"));
+
+        mockMvc.perform(delete("/api/files/" + reportId)
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().is2xxSuccessful());
+
+        mockMvc.perform(get("/api/files/stats")
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(jsonPath("$.usedBytes").value(5))
+                .andExpect(jsonPath("$.quotaBytes").value(20))
+                .andExpect(jsonPath("$.filesByType.document").value(0));
+    }
+
+    @Test
+    void downloads_areRankedInMemoryAndFlushedInBatches() throws Exception {
+        Long id = uploadTagged("viral.pdf");
+        String token = fileRepository.findById(id).orElseThrow().getToken();
+
+        for (int i = 0; i < 3; i++) {
+            mockMvc.perform(get("/api/files/download/" + token + "/content"))
+                    .andExpect(status().isOk());
+        }
+
+        assertThat(hotDownloadsEndpoint.hotDownloads(null))
+                .filteredOn(hot -> hot.token().equals(token))
+                .singleElement()
+                .satisfies(hot -> assertThat(hot.recentDownloads()).isEqualTo(3));
+        assertThat(jdbcTemplate.queryForObject("select download_count from files where id = ?", Long.class, id))
+                .isZero();
+
+        downloadCounter.flush();
+
+        assertThat(jdbcTemplate.queryForObject("select download_count from files where id = ?", Long.class, id))
+                .isEqualTo(3);
+        assertThat(jdbcTemplate.queryForObject("select last_downloaded_at from files where id = ?",
+                LocalDateTime.class, id)).isNotNull();
+    }
+
+    @Test
+    void audit_recordsServedDownloadsAndActualDeletionsOnly() throws Exception {
+        Long id = uploadTagged("audite.pdf");
+        String token = fileRepository.findById(id).orElseThrow().getToken();
+
+        MvcResult served = mockMvc.perform(get("/api/files/download/" + token + "/content")
+                        .with(request -> {
+                            request.setRemoteAddr("203.0.113.7");
+                            return request;
+                        }))
+                .andExpect(status().isOk())
+                .andReturn();
+        mockMvc.perform(get("/api/files/download/" + token + "/content")
+                        .header("If-None-Match", served.getResponse().getHeader("ETag"))
+                        .with(request -> {
+                            request.setRemoteAddr("203.0.113.8");
+                            return request;
+                        }))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(delete("/api/files")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"ids\": [" + id + ", 999999]}")
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(jsonPath("$.deleted").value(1));
+
+        // Appended by the audit writer, on its own connection and in order, shortly after the responses
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (auditedDeletes(id).isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(auditedDeletes(id)).containsExactly(id);
+        assertThat(jdbcTemplate.queryForList("select ip from audit_log where action = 'DOWNLOAD' and file_id = ?",
+                String.class, id)).containsExactly("203.0.113.7");
+        assertThat(jdbcTemplate.queryForList("select token_hash from audit_log where action = 'DOWNLOAD' and file_id = ?",
+                String.class, id)).singleElement().asString().hasSize(64).doesNotContain(token);
+    }
+
+    private List<Long> auditedDeletes(Long id) {
+        return jdbcTemplate.queryForList("select file_id from audit_log where action = 'DELETE' and file_id in (?, ?)",
+                Long.class, id, 999999L);
+    }
+
+    private Long uploadTagged(String name, String... tags) throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", name, "application/pdf", "contenu".getBytes());
+        MvcResult result = mockMvc.perform(multipart("/api/files")
+                        .file(file)
+                        .param("tags", tags)
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isCreated())
+                .andReturn();
+        return objectMapper.readTree(result.getResponse().getContentAsString()).get("id").asLong();
+    }
+
+    private void saveFile(User user, String name, LocalDateTime expiredAt) {
+        FileEntity entity = new FileEntity();
+        entity.setName(name);
+        entity.setType("application/pdf");
+        entity.setSize(1L);
+        entity.setFilePath(name);
+        entity.setToken(name + "-token");
+        entity.setExpiredAt(expiredAt);
+        entity.setUser(user);
+        fileRepository.saveAndFlush(entity);
+    }
+
     @Test
     void getUserFiles_noAuth_returns403() throws Exception {
         mockMvc.perform(get("/api/files"))
@@ -178,7 +449,30 @@ class FileControllerIntegrationTest {
 
         mockMvc.perform(post("/api/files/download/" + token))
                 .andExpect(status().isOk())
-                .andExpect(header().string("Content-Disposition", "attachment; filename=\"doc.pdf\""));
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"doc.pdf\""))
+                .andExpect(header().string("ETag", "\"" + sha256Hex("contenu pdf") + "\""))
+                .andExpect(header().string("Digest", "sha-256=" + Base64.getEncoder().encodeToString(
+                        HexFormat.of().parseHex(sha256Hex("contenu pdf")))));
+    }
+
+    @Test
+    void downloadFile_range_returns206() throws Exception {
+        MockMultipartFile file = new MockMultipartFile(
+                "file", "doc.txt", "text/plain", "0123456789".getBytes());
+
+        MvcResult uploadResult = mockMvc.perform(multipart("/api/files")
+                        .file(file)
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andReturn();
+
+        JsonNode json = objectMapper.readTree(uploadResult.getResponse().getContentAsString());
+        String token = json.get("token").asText();
+
+        mockMvc.perform(post("/api/files/download/" + token)
+                        .header("Range", "bytes=3-6"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Range", "bytes 3-6/10"))
+                .andExpect(content().string("3456"));
     }
 
     @Test
@@ -201,6 +495,78 @@ class FileControllerIntegrationTest {
                 .andExpect(jsonPath("$.error").value("Invalid password"));
     }
 
+    @Test
+    void downloadFileContent_revalidation_returns304() throws Exception {
+        MockMultipartFile file = new MockMultipartFile(
+                "file", "photo.png", "image/png", "image".getBytes());
+
+        MvcResult uploadResult = mockMvc.perform(multipart("/api/files")
+                        .file(file)
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andReturn();
+
+        JsonNode json = objectMapper.readTree(uploadResult.getResponse().getContentAsString());
+        String token = json.get("token").asText();
+
+        MvcResult first = mockMvc.perform(get("/api/files/download/" + token + "/content"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"" + sha256Hex("image") + "\""))
+                .andExpect(header().string("Cache-Control", "max-age=600, public"))
+                .andExpect(content().string("image"))
+                .andReturn();
+
+        mockMvc.perform(get("/api/files/download/" + token + "/content")
+                        .header("If-None-Match", first.getResponse().getHeader("ETag")))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        mockMvc.perform(get("/api/files/download/" + token + "/content")
+                        .header("If-Modified-Since", first.getResponse().getHeader("Last-Modified")))
+                .andExpect(status().isNotModified());
+
+        // Revalidations are not downloads
+        assertThat(hotDownloadsEndpoint.hotDownloads(null))
+                .filteredOn(hot -> hot.token().equals(token))
+                .singleElement()
+                .satisfies(hot -> assertThat(hot.recentDownloads()).isEqualTo(1));
+
+        MvcResult info = mockMvc.perform(get("/api/files/download/" + token))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "max-age=60, public"))
+                .andReturn();
+
+        mockMvc.perform(get("/api/files/download/" + token)
+                        .header("If-None-Match", info.getResponse().getHeader("ETag")))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void passwordProtectedFile_isNeverStoredBySharedCaches() throws Exception {
+        MockMultipartFile file = new MockMultipartFile(
+                "file", "secret.pdf", "application/pdf", "contenu".getBytes());
+
+        MvcResult uploadResult = mockMvc.perform(multipart("/api/files")
+                        .file(file)
+                        .param("password", "bonmotdepasse")
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andReturn();
+
+        JsonNode json = objectMapper.readTree(uploadResult.getResponse().getContentAsString());
+        String token = json.get("token").asText();
+
+        mockMvc.perform(get("/api/files/download/" + token))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "max-age=60, private"));
+
+        mockMvc.perform(get("/api/files/download/" + token + "/content"))
+                .andExpect(status().isUnauthorized());
+
+        mockMvc.perform(post("/api/files/download/" + token)
+                        .param("password", "bonmotdepasse"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "no-store, private"));
+    }
+
     @Test
     void deleteFile_success_returns204() throws Exception {
         MockMultipartFile file = new MockMultipartFile(
@@ -218,4 +584,37 @@ class FileControllerIntegrationTest {
                         .header("Authorization", "Bearer " + jwtToken))
                 .andExpect(status().isNoContent());
     }
+
+    @Test
+    void deleteFiles_bulk_hidesFilesImmediately() throws Exception {
+        MockMultipartFile file = new MockMultipartFile(
+                "file", "lot.pdf", "application/pdf", "contenu".getBytes());
+
+        MvcResult uploadResult = mockMvc.perform(multipart("/api/files")
+                        .file(file)
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andReturn();
+
+        JsonNode json = objectMapper.readTree(uploadResult.getResponse().getContentAsString());
+        Long fileId = json.get("id").asLong();
+        String token = json.get("token").asText();
+
+        mockMvc.perform(delete("/api/files")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"ids\": [" + fileId + ", 999999]}")
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deleted").value(1));
+
+        mockMvc.perform(get("/api/files/download/" + token))
+                .andExpect(status().isNotFound());
+
+        mockMvc.perform(get("/api/files")
+                        .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(jsonPath("$.length()").value(0));
+    }
+
+    private static String sha256Hex(String content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content.getBytes()));
+    }
 }
@@ -0,0 +1,76 @@
+package com.datashare.backend.datasource;
+
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.persistence.EntityManager;
+
+@ExtendWith(MockitoExtension.class)
+class ReplicaCacheGuardTest {
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private Session session;
+
+    private TransactionTemplate readOnly;
+
+    @BeforeEach
+    void setUp() {
+        ReplicaRouting.enable(Duration.ofSeconds(5));
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(
+                new DriverManagerDataSource("jdbc:h2:mem:cache-guard;DB_CLOSE_DELAY=-1", "sa", ""));
+        transactionManager.addListener(new ReplicaCacheGuard(entityManager));
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        ReplicaRouting.disable();
+    }
+
+    @Test
+    void replicaRead_onlyReadsTheCache_untilTheTransactionEnds() {
+        when(entityManager.unwrap(Session.class)).thenReturn(session);
+        when(session.getCacheMode()).thenReturn(CacheMode.NORMAL);
+
+        readOnly.executeWithoutResult(tx -> verify(session).setCacheMode(CacheMode.GET));
+
+        InOrder order = inOrder(session);
+        order.verify(session).setCacheMode(CacheMode.GET);
+        order.verify(session).setCacheMode(CacheMode.NORMAL);
+    }
+
+    @Test
+    void primaryRead_fillsTheCache() {
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("alice@test.com", null));
+        ReplicaRouting.recordWrite("alice@test.com");
+
+        readOnly.executeWithoutResult(tx -> { });
+        ReplicaRouting.onPrimary(() -> readOnly.execute(tx -> null));
+
+        verify(entityManager, never()).unwrap(Session.class);
+    }
+}
@@ -0,0 +1,126 @@
+package com.datashare.backend.datasource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+class ReplicaRoutingDataSourceTest {
+
+    private ReplicaRoutingDataSource routing;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        SecurityContextHolder.clearContext();
+        if (routing != null) {
+            routing.close();
+        }
+    }
+
+    @Test
+    void readOnlyTransactions_goToReplica_othersToPrimary() {
+        Fixture db = fixture(database("replica-a"));
+
+        assertThat(db.readOnly()).isEqualTo("replica-a");
+        assertThat(db.readWrite()).isEqualTo("primary");
+    }
+
+    @Test
+    void readsAreSpreadOverReplicas() {
+        Fixture db = fixture(database("replica-a"), database("replica-b"));
+
+        assertThat(List.of(db.readOnly(), db.readOnly())).containsExactlyInAnyOrder("replica-a", "replica-b");
+    }
+
+    @Test
+    void userWhoJustWrote_readsFromPrimary() {
+        Fixture db = fixture(database("replica-a"));
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("alice@test.com", null));
+
+        assertThat(db.readOnly()).isEqualTo("replica-a");
+        ReplicaRouting.recordWrite("alice@test.com");
+        assertThat(db.readOnly()).isEqualTo("primary");
+
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("bob@test.com", null));
+        assertThat(db.readOnly()).isEqualTo("replica-a");
+    }
+
+    @Test
+    void onPrimary_forcesPrimaryForReadOnlyTransaction() {
+        Fixture db = fixture(database("replica-a"));
+
+        assertThat(ReplicaRouting.onPrimary(db::readOnly)).isEqualTo("primary");
+        assertThat(db.readOnly()).isEqualTo("replica-a");
+    }
+
+    @Test
+    void unreachableReplica_fallsBackToPrimaryAndLeavesRotation() {
+        DriverManagerDataSource down = new DriverManagerDataSource("jdbc:h2:mem:missing;IFEXISTS=TRUE", "sa", "");
+        Fixture db = fixture(down);
+
+        assertThat(db.readOnly()).isEqualTo("primary");
+        assertThat(routing.isHealthy(0)).isFalse();
+
+        routing.checkHealth();
+        assertThat(routing.isHealthy(0)).isFalse();
+    }
+
+    @Test
+    void laggingReplica_isTakenOutOfRotationByHealthCheck() {
+        DataSource replica = database("replica-a");
+        routing = new ReplicaRoutingDataSource(database("primary"), List.of(replica), Duration.ofSeconds(5),
+                "select 120", Duration.ofSeconds(30));
+
+        routing.checkHealth();
+
+        assertThat(routing.isHealthy(0)).isFalse();
+    }
+
+    private Fixture fixture(DataSource... replicas) {
+        routing = new ReplicaRoutingDataSource(database("primary"), List.of(replicas), Duration.ofSeconds(5),
+                null, Duration.ofSeconds(30));
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(routing.primary());
+        proxy.setReadOnlyDataSource(routing);
+        return new Fixture(proxy);
+    }
+
+    private static DataSource database(String name) {
+        DriverManagerDataSource dataSource =
+                new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("create table if not exists marker (name varchar(20))");
+        jdbc.update("delete from marker");
+        jdbc.update("insert into marker values (?)", name);
+        return dataSource;
+    }
+
+    private record Fixture(DataSource dataSource) {
+
+        String readOnly() {
+            return query(true);
+        }
+
+        String readWrite() {
+            return query(false);
+        }
+
+        private String query(boolean readOnly) {
+            TransactionTemplate tx = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+            tx.setReadOnly(readOnly);
+            return tx.execute(status ->
+                    new JdbcTemplate(dataSource).queryForObject("select name from marker", String.class));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.datashare.backend.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalManagementPort;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.datashare.backend.service.StorageService;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "management.server.port=0",
+        "spring.datasource.url=jdbc:h2:mem:metricsdb;DB_CLOSE_DELAY=-1"
+})
+@ActiveProfiles("test")
+class MetricsIntegrationTest {
+
+    @LocalServerPort
+    private int port;
+
+    @LocalManagementPort
+    private int managementPort;
+
+    @Autowired
+    private StorageService storageService;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void prometheusEndpoint_exposesHotPathMetrics() throws Exception {
+        HttpResponse<String> register = client.send(HttpRequest.newBuilder(
+                        URI.create("http://localhost:" + port + "/api/auth/register"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"email\":\"metrics@test.com\",\"password\":\"password123\"}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertThat(register.statusCode()).isEqualTo(201);
+        assertThat(register.headers().firstValue("Server-Timing")).hasValueSatisfying(header ->
+                assertThat(header).contains("bcrypt;dur=").contains("total;dur="));
+        String stored = storageService.store(
+                new MockMultipartFile("file", "doc.txt", "text/plain", "contenu".getBytes())).storedName();
+        storageService.delete(stored);
+
+        HttpResponse<String> scrape = client.send(HttpRequest.newBuilder(
+                        URI.create("http://localhost:" + managementPort + "/actuator/prometheus")).build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertThat(scrape.statusCode()).isEqualTo(200);
+        assertThat(scrape.body())
+                .contains("http_server_requests_seconds_bucket{")
+                .contains("http_server_requests_queries_statements_count{uri=\"/api/auth/register\"}")
+                .contains("auth_password_hash_seconds_count{operation=\"encode\"} 1")
+                .contains("storage_write_seconds_count 1")
+                .contains("datashare_upload_bytes_sum 7")
+                .contains("hikaricp_connections_active")
+                .contains("disk_free_bytes");
+    }
+}
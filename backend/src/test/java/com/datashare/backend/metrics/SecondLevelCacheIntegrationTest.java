@@ -0,0 +1,115 @@
+package com.datashare.backend.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.datashare.backend.dto.FileUploadResponse;
+import com.datashare.backend.entity.User;
+import com.datashare.backend.exception.NotFoundException;
+import com.datashare.backend.repository.UserRepository;
+import com.datashare.backend.service.FileService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Round-trips to the database on the hot paths, cold and then warm. Not
+ * transactional: each call commits, as in production, so that the cache is
+ * filled and invalidated as it would be.
+ */
+@SpringBootTest(properties = {
+        "cache.l2.enabled=true",
+        "spring.datasource.url=jdbc:h2:mem:l2cachedb;DB_CLOSE_DELAY=-1"
+})
+@ActiveProfiles("test")
+class SecondLevelCacheIntegrationTest {
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private String email;
+
+    @BeforeEach
+    void setUp() {
+        email = "l2-" + System.nanoTime() + "@test.com";
+        User user = new User();
+        user.setEmail(email);
+        user.setPassword(passwordEncoder.encode("password123"));
+        userRepository.save(user);
+    }
+
+    @Test
+    void warmLookups_skipTheDatabase() {
+        String token = upload("rapport.pdf").token();
+
+        QueryCounter.reset();
+        fileService.getShareInfo(token);
+        long coldShareInfo = QueryCounter.current();
+        QueryCounter.reset();
+        fileService.getShareInfo(token);
+        long warmShareInfo = QueryCounter.current();
+
+        QueryCounter.reset();
+        fileService.downloadFile(token, null);
+        long warmDownload = QueryCounter.current();
+
+        QueryCounter.reset();
+        userRepository.findByEmail(email).orElseThrow();
+        long warmUser = QueryCounter.current();
+
+        assertThat(coldShareInfo).isEqualTo(1);
+        assertThat(warmShareInfo).isZero();
+        assertThat(warmDownload).isZero();
+        assertThat(warmUser).isZero();
+        assertThat(meterRegistry.get("hibernate.second.level.cache.requests")
+                .tags("region", "files-by-token", "result", "hit").functionCounter().count()).isPositive();
+    }
+
+    @Test
+    void deletedFile_isNoLongerServedFromTheCache() {
+        FileUploadResponse uploaded = upload("brouillon.txt");
+        fileService.getShareInfo(uploaded.token());
+
+        fileService.deleteFiles(List.of(uploaded.id()), email);
+
+        assertThatThrownBy(() -> fileService.getShareInfo(uploaded.token())).isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void bulkDelete_leavesTheOtherFilesCached() {
+        FileUploadResponse deleted = upload("brouillon.txt");
+        FileUploadResponse kept = upload("rapport.pdf");
+        fileService.getShareInfo(deleted.token());
+        fileService.getShareInfo(kept.token());
+
+        fileService.deleteFiles(List.of(deleted.id()), email);
+
+        QueryCounter.reset();
+        fileService.getShareInfo(kept.token());
+        assertThat(QueryCounter.current()).isZero();
+        assertThatThrownBy(() -> fileService.getShareInfo(deleted.token())).isInstanceOf(NotFoundException.class);
+    }
+
+    private FileUploadResponse upload(String name) {
+        return fileService.upload(new MockMultipartFile("file", name, "text/plain", "contenu".getBytes()),
+                email, 1, null, List.of("l2"));
+    }
+}
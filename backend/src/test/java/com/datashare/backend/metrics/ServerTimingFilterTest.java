@@ -0,0 +1,69 @@
+package com.datashare.backend.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+class ServerTimingFilterTest {
+
+    @Test
+    void doFilter_reportsPhasesAndTotal() throws Exception {
+        ServerTimingFilter filter = new ServerTimingFilter(true, 1000);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("POST", "/api/files"), response, chainRecording("store", "db-save", "store"));
+
+        String header = response.getHeader("Server-Timing");
+        assertThat(header).matches("store;dur=\\d+\\.\\d, db-save;dur=\\d+\\.\\d, total;dur=\\d+\\.\\d");
+    }
+
+    @Test
+    void doFilter_disabled_addsNothingAndIgnoresPhases() throws Exception {
+        ServerTimingFilter filter = new ServerTimingFilter(false, 1000);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("POST", "/api/files"), response, chainRecording("store"));
+
+        assertThat(response.getHeader("Server-Timing")).isNull();
+        assertThat(ServerTiming.start()).isZero();
+    }
+
+    @Test
+    void doFilter_publicDownload_addsNoHeader() throws Exception {
+        ServerTimingFilter filter = new ServerTimingFilter(true, 1000);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/files/download/abc/content"), response,
+                chainRecording("file-lookup", "bcrypt"));
+
+        assertThat(response.getHeader("Server-Timing")).isNull();
+    }
+
+    @Test
+    void stop_outsideOfRequest_isIgnored() {
+        new ServerTimingFilter(true, 1000);
+
+        ServerTiming.stop("store", ServerTiming.start());
+
+        assertThat(ServerTiming.start()).isZero();
+        assertThat(ServerTiming.current()).isNull();
+    }
+
+    private static MockFilterChain chainRecording(String... phases) {
+        return new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) {
+                for (String phase : phases) {
+                    ServerTiming.stop(phase, ServerTiming.start());
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,198 @@
+package com.datashare.backend.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.datashare.backend.entity.BlobStatus;
+import com.datashare.backend.entity.FileEntity;
+import com.datashare.backend.repository.FileRepository;
+import com.datashare.backend.repository.ScrubCursorRepository;
+import com.datashare.backend.storage.BlobCipher;
+import com.datashare.backend.storage.BufferPool;
+import com.datashare.backend.storage.FsyncPolicy;
+import com.datashare.backend.storage.GroupCommitter;
+import com.datashare.backend.storage.IngestPipeline;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class BlobScrubberTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private ScrubCursorRepository scrubCursorRepository;
+
+    // The scrub_cursor row
+    private final AtomicLong cursor = new AtomicLong();
+
+    private final BufferPool bufferPool = new BufferPool(64 * 1024, 1, 50);
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private BlobScrubber scrubber;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        StorageService storageService = new StorageService(
+                tempDir.toString(), IngestPipeline.withDefaultStages(), FsyncPolicy.NONE, false,
+                new GroupCommitter(16, 30_000), new BlobCipher(false, "", 65536),
+                meterRegistry);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        scrubber = new BlobScrubber(fileRepository, scrubCursorRepository, storageService, bufferPool,
+                transactionTemplate, meterRegistry, true, 10, Long.MAX_VALUE);
+        when(scrubCursorRepository.findAfterId()).thenAnswer(invocation -> Optional.of(cursor.get()));
+        when(scrubCursorRepository.move(anyLong(), anyLong())).thenAnswer(invocation ->
+                cursor.compareAndSet(invocation.getArgument(0), invocation.getArgument(1)) ? 1 : 0);
+    }
+
+    @Test
+    void scrubBatch_flagsCorruptAndMissingBlobs() throws Exception {
+        FileEntity intact = blob(1L, "intact", "contenu");
+        FileEntity rotten = blob(2L, "rotten", "contenu");
+        Files.writeString(tempDir.resolve("rotten"), "contenX");
+        FileEntity missing = blob(3L, "missing", "contenu");
+        Files.delete(tempDir.resolve("missing"));
+        when(fileRepository.findScrubBatch(eq(0L), any(Limit.class))).thenReturn(List.of(intact, rotten, missing));
+
+        assertThat(scrubber.scrubBatch()).isEqualTo(3);
+
+        verify(fileRepository, never()).updateBlobStatus(eq(1L), any());
+        verify(fileRepository).updateBlobStatus(2L, BlobStatus.CORRUPT);
+        verify(fileRepository).updateBlobStatus(3L, BlobStatus.MISSING);
+    }
+
+    @Test
+    void scrubBatch_truncatedBlob_isCorrupt() throws Exception {
+        FileEntity truncated = blob(1L, "truncated", "contenu");
+        Files.writeString(tempDir.resolve("truncated"), "cont");
+        when(fileRepository.findScrubBatch(eq(0L), any(Limit.class))).thenReturn(List.of(truncated));
+
+        scrubber.scrubBatch();
+
+        verify(fileRepository).updateBlobStatus(1L, BlobStatus.CORRUPT);
+    }
+
+    @Test
+    void scrubBatch_restoredBlob_isClearedAndMissingChecksumBackfilled() throws Exception {
+        FileEntity restored = blob(1L, "restored", "contenu");
+        restored.setBlobStatus(BlobStatus.MISSING);
+        FileEntity legacy = blob(2L, "legacy", "ancien");
+        legacy.setChecksum(null);
+        when(fileRepository.findScrubBatch(eq(0L), any(Limit.class))).thenReturn(List.of(restored, legacy));
+
+        scrubber.scrubBatch();
+
+        verify(fileRepository).updateBlobStatus(1L, BlobStatus.OK);
+        verify(fileRepository).backfillChecksum(2L, sha256("ancien"));
+    }
+
+    @Test
+    void scrubBatch_bufferPoolRunsDry_leavesStatusAloneAndRetries() throws Exception {
+        FileEntity healthy = blob(1L, "healthy", "contenu");
+        when(fileRepository.findScrubBatch(eq(0L), any(Limit.class))).thenReturn(List.of(healthy));
+
+        ByteBuffer held = bufferPool.acquire();
+        scrubber.scrubBatch();
+        bufferPool.release(held);
+        scrubber.scrubBatch();
+
+        verify(fileRepository, never()).updateBlobStatus(anyLong(), any());
+        verify(fileRepository, times(2)).findScrubBatch(eq(0L), any(Limit.class));
+        assertThat(meterRegistry.counter("storage.scrub.read.failures").count()).isEqualTo(1);
+        assertThat(cursor.get()).isEqualTo(1);
+    }
+
+    @Test
+    void scrubBatch_batchClaimedByAnotherInstance_isLeftToIt() throws Exception {
+        FileEntity rotten = blob(1L, "rotten", "contenu");
+        Files.writeString(tempDir.resolve("rotten"), "contenX");
+        // The other instance moves the cursor past the batch while this one looks it up
+        when(fileRepository.findScrubBatch(eq(0L), any(Limit.class))).thenAnswer(invocation -> {
+            cursor.set(1L);
+            return List.of(rotten);
+        });
+        when(fileRepository.findScrubBatch(eq(1L), any(Limit.class))).thenReturn(List.of());
+
+        assertThat(scrubber.scrubBatch()).isZero();
+        scrubber.scrubBatch();
+
+        verify(fileRepository, never()).updateBlobStatus(anyLong(), any());
+        verify(fileRepository).findScrubBatch(eq(1L), any(Limit.class));
+        assertThat(cursor.get()).isZero();
+    }
+
+    @Test
+    void scrubBatch_noCursorYet_createsIt() throws Exception {
+        when(scrubCursorRepository.findAfterId()).thenReturn(Optional.empty());
+        when(fileRepository.findScrubBatch(eq(0L), any(Limit.class))).thenReturn(List.of());
+
+        scrubber.scrubBatch();
+
+        verify(scrubCursorRepository).create();
+    }
+
+    @Test
+    void scrubBatch_continuesFromCursorThenWrapsAround() throws Exception {
+        List<FileEntity> firstBatch = new ArrayList<>();
+        for (long id = 1; id <= 10; id++) {
+            firstBatch.add(blob(id, "blob-" + id, "contenu"));
+        }
+        when(fileRepository.findScrubBatch(eq(0L), any(Limit.class))).thenReturn(firstBatch);
+        when(fileRepository.findScrubBatch(eq(10L), any(Limit.class))).thenReturn(List.of());
+
+        scrubber.scrubBatch();
+        scrubber.scrubBatch();
+        scrubber.scrubBatch();
+
+        verify(fileRepository, times(2)).findScrubBatch(eq(0L), any(Limit.class));
+        verify(fileRepository).findScrubBatch(eq(10L), any(Limit.class));
+        verify(fileRepository, never()).updateBlobStatus(anyLong(), any());
+    }
+
+    private FileEntity blob(Long id, String storedName, String content) throws Exception {
+        Files.writeString(tempDir.resolve(storedName), content);
+        FileEntity entity = new FileEntity();
+        entity.setId(id);
+        entity.setFilePath(storedName);
+        entity.setSize((long) content.length());
+        entity.setChecksum(sha256(content));
+        return entity;
+    }
+
+    private static String sha256(String content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content.getBytes()));
+    }
+}
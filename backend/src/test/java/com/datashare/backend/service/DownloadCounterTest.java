@@ -0,0 +1,134 @@
+package com.datashare.backend.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class DownloadCounterTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private FileEventOutbox fileEvents;
+
+    private final List<DownloadCounter.Delta> written = new ArrayList<>();
+
+    private DownloadCounter counter;
+
+    @BeforeEach
+    void setUp() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        // Three flushes of one second make the hot window
+        counter = new DownloadCounter(jdbcTemplate, transactionTemplate, fileEvents, new SimpleMeterRegistry(),
+                1000, 500, Duration.ofSeconds(3));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void databaseUp() {
+        when(jdbcTemplate.batchUpdate(anyString(), any(Collection.class), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class))).thenAnswer(invocation -> {
+                    written.addAll(invocation.getArgument(1));
+                    return new int[0][];
+                });
+    }
+
+    @Test
+    void concurrentDownloads_areAllFlushedOnce() throws Exception {
+        databaseUp();
+        int threads = 8;
+        int perThread = 20_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int i = 0; i < perThread; i++) {
+                    counter.record((long) (i % 3), "token-" + (i % 3));
+                }
+            });
+        }
+        start.countDown();
+        // Flushes race with the downloads
+        while (!pool.awaitTermination(1, TimeUnit.MILLISECONDS)) {
+            pool.shutdown();
+            counter.flush();
+        }
+        counter.shutdown();
+
+        long flushed = written.stream().mapToLong(DownloadCounter.Delta::count).sum();
+        assertThat(flushed).isEqualTo((long) threads * perThread);
+        assertThat(written).allSatisfy(delta -> assertThat(delta.lastDownloadedAt()).isPositive());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedFlush_keepsCountsForTheNextOne() {
+        when(jdbcTemplate.batchUpdate(anyString(), any(Collection.class), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(new DataAccessResourceFailureException("database down"));
+        counter.record(1L, "viral");
+        counter.record(1L, "viral");
+        counter.flush();
+
+        written.clear();
+        reset(jdbcTemplate);
+        databaseUp();
+        counter.record(1L, "viral");
+        counter.flush();
+
+        assertThat(written).singleElement().satisfies(delta -> assertThat(delta.count()).isEqualTo(3));
+    }
+
+    @Test
+    void hottest_ranksByDownloadsOverTheWindowAndForgetsIdleFiles() {
+        databaseUp();
+        for (int i = 0; i < 5; i++) {
+            counter.record(1L, "viral");
+        }
+        counter.record(2L, "calme");
+        counter.flush();
+        counter.record(2L, "calme");
+        counter.record(2L, "calme");
+
+        assertThat(counter.hottest(10)).extracting(HotDownload::token).containsExactly("viral", "calme");
+        assertThat(counter.hottest(1)).singleElement().satisfies(hot -> assertThat(hot.recentDownloads()).isEqualTo(5));
+
+        // Three flushes later the window no longer holds any download
+        for (int i = 0; i < 4; i++) {
+            counter.flush();
+        }
+        assertThat(counter.hottest(10)).isEmpty();
+    }
+}
@@ -0,0 +1,187 @@
+package com.datashare.backend.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.datashare.backend.entity.FileEventEntity;
+import com.datashare.backend.entity.FileEventType;
+import com.datashare.backend.repository.FileEventRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class FileEventDispatcherTest {
+
+    @Mock
+    private FileEventRepository fileEventRepository;
+
+    private final List<FileEvent> received = Collections.synchronizedList(new ArrayList<>());
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private FileEventDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        FileEventConsumer failsOnFile9 = events -> {
+            if (events.stream().anyMatch(event -> event.fileId() == 9L)) {
+                throw new IllegalStateException("consumer down");
+            }
+            received.addAll(events);
+        };
+        dispatcher = new FileEventDispatcher(fileEventRepository, List.of(failsOnFile9),
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), meterRegistry, 100, 4, 3, 5_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void dispatch_deliversEachFileInOrderThenRemovesTheEvents() {
+        List<FileEventEntity> batch = List.of(event(1, 10L, FileEventType.UPLOADED),
+                event(2, 11L, FileEventType.UPLOADED), event(3, 10L, FileEventType.DOWNLOADED),
+                event(4, 12L, FileEventType.UPLOADED), event(5, 10L, FileEventType.DELETED));
+        when(fileEventRepository.claimBatch(100)).thenReturn(batch);
+        when(fileEventRepository.findFilesWithEarlierEvents(anyCollection(), anyLong(), anyCollection()))
+                .thenReturn(List.of());
+
+        dispatcher.dispatch();
+
+        assertThat(received).extracting(FileEvent::id).containsExactlyInAnyOrder(1L, 2L, 3L, 4L, 5L);
+        assertThat(received.stream().filter(event -> event.fileId() == 10L).map(FileEvent::type))
+                .containsExactly(FileEventType.UPLOADED, FileEventType.DOWNLOADED, FileEventType.DELETED);
+        verify(fileEventRepository).deleteByIdIn(argThat(ids -> Set.copyOf(ids).equals(Set.of(1L, 2L, 3L, 4L, 5L))));
+        assertThat(meterRegistry.counter("file.events.dispatched").count()).isEqualTo(5);
+    }
+
+    @Test
+    void fileWithEarlierEventsClaimedElsewhere_waitsForALaterBatch() {
+        when(fileEventRepository.claimBatch(100)).thenReturn(List.of(event(7, 10L, FileEventType.DELETED),
+                event(8, 11L, FileEventType.UPLOADED)));
+        when(fileEventRepository.findFilesWithEarlierEvents(anyCollection(), anyLong(), anyCollection()))
+                .thenReturn(List.of(10L));
+
+        dispatcher.dispatch();
+
+        assertThat(received).extracting(FileEvent::fileId).containsExactly(11L);
+        verify(fileEventRepository).deleteByIdIn(List.of(8L));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void failedFile_keepsItsEventsAndTheOthersOfItsLaneAreRemoved() {
+        // Files 9 and 13 share a lane, 10 has its own
+        when(fileEventRepository.claimBatch(100)).thenReturn(List.of(event(1, 9L, FileEventType.UPLOADED),
+                event(2, 10L, FileEventType.UPLOADED), event(3, 13L, FileEventType.UPLOADED),
+                event(4, 9L, FileEventType.DOWNLOADED)));
+        when(fileEventRepository.findFilesWithEarlierEvents(anyCollection(), anyLong(), anyCollection()))
+                .thenReturn(List.of());
+
+        dispatcher.dispatch();
+
+        ArgumentCaptor<Collection<Long>> deleted = ArgumentCaptor.forClass(Collection.class);
+        verify(fileEventRepository).deleteByIdIn(deleted.capture());
+        assertThat(deleted.getValue()).containsExactlyInAnyOrder(2L, 3L);
+        verify(fileEventRepository).recordFailedAttempt(List.of(1L, 4L));
+        verify(fileEventRepository).parkExhausted(eq(List.of(1L, 4L)), eq(3), any());
+        assertThat(meterRegistry.counter("file.events.failures").count()).isEqualTo(2);
+        assertThat(meterRegistry.counter("file.events.parked").count()).isZero();
+    }
+
+    @Test
+    void poisonEvent_isParkedOnceItsAttemptsRunOut() {
+        when(fileEventRepository.claimBatch(100)).thenReturn(List.of(event(1, 9L, FileEventType.UPLOADED)));
+        when(fileEventRepository.findFilesWithEarlierEvents(anyCollection(), anyLong(), anyCollection()))
+                .thenReturn(List.of());
+        when(fileEventRepository.parkExhausted(eq(List.of(1L)), eq(3), any())).thenReturn(1);
+
+        dispatcher.dispatch();
+
+        verify(fileEventRepository, never()).deleteByIdIn(any());
+        assertThat(meterRegistry.counter("file.events.parked").count()).isEqualTo(1);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void hangingConsumer_isCutShortAndItsFileRetried() {
+        CountDownLatch release = new CountDownLatch(1);
+        FileEventConsumer hangsOnFile20 = events -> {
+            if (events.stream().anyMatch(event -> event.fileId() == 20L)) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted");
+                }
+            }
+            received.addAll(events);
+        };
+        FileEventDispatcher hanging = new FileEventDispatcher(fileEventRepository, List.of(hangsOnFile20),
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), meterRegistry, 100, 4, 3, 200);
+        when(fileEventRepository.claimBatch(100)).thenReturn(List.of(event(1, 20L, FileEventType.UPLOADED),
+                event(2, 21L, FileEventType.UPLOADED)));
+        when(fileEventRepository.findFilesWithEarlierEvents(anyCollection(), anyLong(), anyCollection()))
+                .thenReturn(List.of());
+
+        try {
+            hanging.dispatch();
+        } finally {
+            release.countDown();
+            hanging.shutdown();
+        }
+
+        ArgumentCaptor<Collection<Long>> deleted = ArgumentCaptor.forClass(Collection.class);
+        verify(fileEventRepository).deleteByIdIn(deleted.capture());
+        assertThat(deleted.getValue()).containsExactly(2L);
+        verify(fileEventRepository).recordFailedAttempt(List.of(1L));
+    }
+
+    @Test
+    void emptyOutbox_touchesNothing() {
+        when(fileEventRepository.claimBatch(100)).thenReturn(List.of());
+
+        dispatcher.dispatch();
+
+        verify(fileEventRepository, never()).deleteByIdIn(any());
+    }
+
+    private static FileEventEntity event(long id, Long fileId, FileEventType type) {
+        FileEventEntity entity = new FileEventEntity();
+        entity.setId(id);
+        entity.setFileId(fileId);
+        entity.setUserId(1L);
+        entity.setType(type);
+        entity.setAmount(7);
+        entity.setCreatedAt(LocalDateTime.now());
+        return entity;
+    }
+}
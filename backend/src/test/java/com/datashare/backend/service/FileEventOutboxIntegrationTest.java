@@ -0,0 +1,94 @@
+package com.datashare.backend.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.datashare.backend.dto.FileUploadResponse;
+import com.datashare.backend.entity.FileEventType;
+import com.datashare.backend.entity.User;
+import com.datashare.backend.repository.FileEventRepository;
+import com.datashare.backend.repository.UserRepository;
+
+/**
+ * The outbox on a real database: not transactional, so that each service call
+ * commits and its events are written, then claimed and delivered.
+ */
+@SpringBootTest(properties = {
+        "file.events.dispatch-interval-ms=3600000",
+        "spring.datasource.url=jdbc:h2:mem:outboxdb;DB_CLOSE_DELAY=-1"
+})
+@ActiveProfiles("test")
+class FileEventOutboxIntegrationTest {
+
+    static final List<FileEvent> received = Collections.synchronizedList(new ArrayList<>());
+
+    @TestConfiguration
+    static class RecordingConsumer {
+
+        @Bean
+        FileEventConsumer recordingConsumer() {
+            return received::addAll;
+        }
+    }
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private FileEventDispatcher dispatcher;
+
+    @Autowired
+    private FileEventRepository fileEventRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    private String email;
+
+    @BeforeEach
+    void setUp() {
+        email = "outbox-" + System.nanoTime() + "@test.com";
+        userRepository.save(new User(email, passwordEncoder.encode("password123")));
+        received.clear();
+    }
+
+    @Test
+    void committedChanges_areDeliveredOnceInOrder() {
+        FileUploadResponse kept = upload("garde.txt");
+        FileUploadResponse removed = upload("supprime.txt");
+        fileService.deleteFiles(List.of(removed.id(), kept.id() + 1000), email);
+
+        assertThat(fileEventRepository.count()).isEqualTo(3);
+        dispatcher.dispatch();
+
+        assertThat(received).extracting(FileEvent::fileId, FileEvent::type).containsExactlyInAnyOrder(
+                tuple(kept.id(), FileEventType.UPLOADED),
+                tuple(removed.id(), FileEventType.UPLOADED),
+                tuple(removed.id(), FileEventType.DELETED));
+        assertThat(received.stream().filter(event -> event.fileId().equals(removed.id())).map(FileEvent::type))
+                .containsExactly(FileEventType.UPLOADED, FileEventType.DELETED);
+        assertThat(fileEventRepository.count()).isZero();
+    }
+
+    private FileUploadResponse upload(String name) {
+        return fileService.upload(new MockMultipartFile("file", name, "text/plain", "contenu".getBytes()),
+                email, 1, null, null);
+    }
+}
@@ -0,0 +1,180 @@
+package com.datashare.backend.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.datashare.backend.repository.ExpiringFile;
+import com.datashare.backend.repository.FileRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class FileExpiryServiceTest {
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private TagDictionary tagDictionary;
+
+    @Mock
+    private FileNameIndex fileNameIndex;
+
+    @Mock
+    private StorageQuota storageQuota;
+
+    @Mock
+    private FileEventOutbox fileEvents;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private FileExpiryService expiry;
+
+    private long now;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        ShareTokenIndex shareTokenIndex = new ShareTokenIndex(fileRepository, null, meterRegistry,
+                false, 1000, 0.001, 0.2, Duration.ofHours(1), Duration.ofMinutes(1), 1000, Duration.ofMillis(100));
+        expiry = new FileExpiryService(fileRepository, tagDictionary, fileNameIndex, storageQuota, shareTokenIndex,
+                fileEvents, new TransactionTemplate(mock(PlatformTransactionManager.class)), meterRegistry,
+                true, 1000, Duration.ofHours(6), Duration.ZERO, 200);
+        now = System.currentTimeMillis();
+    }
+
+    @AfterEach
+    void tearDown() {
+        expiry.shutdown();
+    }
+
+    @Test
+    void firstRefill_tombstonesOverdueFilesThenLoadsTheHorizon() {
+        ExpiringFile overdue = new ExpiringFile(1L, 10L, at(now - 60_000));
+        when(fileRepository.findExpired(any(), eq(Limit.of(200)))).thenReturn(List.of(overdue));
+        when(fileRepository.findExpiredIn(eq(List.of(1L)), any())).thenReturn(List.of(overdue));
+        when(fileRepository.markDeleted(eq(List.of(1L)), eq(10L), any())).thenReturn(1);
+        when(fileRepository.streamExpiringBetween(any(), any())).thenReturn(Stream.of(
+                new ExpiringFile(2L, 10L, at(now + 3_600_000)), new ExpiringFile(3L, 11L, at(now + 7_200_000))));
+
+        expiry.refill();
+
+        verify(tagDictionary).filesDeleted(eq(10L), eq(List.of(1L)), any());
+        verify(fileNameIndex).filesRemoved(10L, List.of(1L));
+        verify(storageQuota).filesDeleted(eq(10L), eq(List.of(1L)), any());
+        assertThat(meterRegistry.counter("file.expiry.expired").count()).isEqualTo(1);
+        assertThat(expiry.scheduled()).isEqualTo(2);
+    }
+
+    @Test
+    void advance_firesEachFileOnTheTickOfItsExpiry() {
+        long[] offsets = {4_500, 65_000, 70 * 60_000 + 250, 5 * 3_600_000 + 999};
+        List<ExpiringFile> files = new ArrayList<>();
+        for (int i = 0; i < offsets.length; i++) {
+            files.add(new ExpiringFile((long) i, 10L, at(now + offsets[i])));
+        }
+        when(fileRepository.streamExpiringBetween(any(), any())).thenReturn(files.stream());
+        List<Long> fired = new ArrayList<>();
+        when(fileRepository.findExpiredIn(anyCollection(), any())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            fired.addAll(ids);
+            return List.of();
+        });
+        expiry.refill();
+
+        for (int i = 0; i < offsets.length; i++) {
+            // The tick before the expiry leaves the file in the wheel, the next one fires it
+            expiry.advanceTo(now + offsets[i] - 1_000);
+            assertThat(fired).hasSize(i);
+            expiry.advanceTo(now + offsets[i] + 1_000);
+            assertThat(fired).containsExactly(files.subList(0, i + 1).stream().map(ExpiringFile::fileId)
+                    .toArray(Long[]::new));
+        }
+        assertThat(expiry.scheduled()).isZero();
+    }
+
+    @Test
+    void fileAdded_isScheduledOnlyWithinTheLoadedWindow() {
+        when(fileRepository.streamExpiringBetween(any(), any())).thenReturn(Stream.empty());
+        expiry.refill();
+
+        expiry.fileAdded(1L, at(now + 3_600_000));
+        expiry.fileAdded(2L, at(now + 86_400_000));
+
+        assertThat(expiry.scheduled()).isEqualTo(1);
+    }
+
+    @Test
+    void failedTombstone_isRetriedLater() {
+        ExpiringFile file = new ExpiringFile(1L, 10L, at(now + 2_000));
+        when(fileRepository.streamExpiringBetween(any(), any())).thenReturn(Stream.of(file));
+        when(fileRepository.findExpiredIn(eq(List.of(1L)), any()))
+                .thenThrow(new QueryTimeoutException("timeout"))
+                .thenReturn(List.of(file));
+        when(fileRepository.markDeleted(eq(List.of(1L)), eq(10L), any())).thenReturn(1);
+        expiry.refill();
+
+        expiry.advanceTo(now + 3_000);
+        assertThat(meterRegistry.counter("file.expiry.failures").count()).isEqualTo(1);
+        verify(fileRepository, never()).markDeleted(any(), anyLong(), any());
+        assertThat(expiry.scheduled()).isEqualTo(1);
+
+        expiry.advanceTo(now + 40_000);
+        verify(fileRepository).markDeleted(eq(List.of(1L)), eq(10L), any());
+        assertThat(expiry.scheduled()).isZero();
+    }
+
+    @Test
+    void expiredFile_staysLiveUntilItsGracePeriodEnds() {
+        FileExpiryService withGrace = new FileExpiryService(fileRepository, tagDictionary, fileNameIndex,
+                storageQuota, null, fileEvents, new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                meterRegistry, true, 1000, Duration.ofHours(6), Duration.ofHours(1), 200);
+        // Expired half an hour ago: still in its grace period, so neither overdue nor due before half an hour
+        ExpiringFile file = new ExpiringFile(1L, 10L, at(now - 1_800_000));
+        when(fileRepository.findExpired(any(), eq(Limit.of(200)))).thenReturn(List.of());
+        when(fileRepository.streamExpiringBetween(any(), any())).thenReturn(Stream.of(file));
+        List<LocalDateTime> cutoffs = new ArrayList<>();
+        when(fileRepository.findExpiredIn(eq(List.of(1L)), any())).thenAnswer(invocation -> {
+            cutoffs.add(invocation.getArgument(1));
+            return List.of();
+        });
+        withGrace.refill();
+
+        withGrace.advanceTo(now + 1_700_000);
+        assertThat(cutoffs).isEmpty();
+        withGrace.advanceTo(now + 1_900_000);
+        assertThat(cutoffs).containsExactly(at(now + 1_900_000 - 3_600_000));
+        withGrace.shutdown();
+    }
+
+    private static LocalDateTime at(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+}
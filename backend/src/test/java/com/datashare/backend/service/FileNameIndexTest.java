@@ -0,0 +1,189 @@
+package com.datashare.backend.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.datashare.backend.repository.FileRepository;
+import com.datashare.backend.repository.NameEntry;
+import com.datashare.backend.repository.TagRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class FileNameIndexTest {
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private TagRepository tagRepository;
+
+    private FileNameIndex index;
+
+    @AfterEach
+    void tearDown() {
+        if (index != null) {
+            index.shutdown();
+        }
+    }
+
+    @Test
+    void search_loadsOnFirstUseAndMatchesAPrefixOfEveryWord() {
+        index = index(false, 1000);
+        names(1L, new NameEntry(1L, "Rapport_2024-final.pdf"), new NameEntry(2L, "rapport-2023.pdf"),
+                new NameEntry(3L, "Été à Paris.jpg"));
+        tags(1L, new NameEntry(2L, "Facture"));
+
+        assertThat(index.search(1L, "rap 2024", 50)).contains(List.of(1L));
+        assertThat(index.search(1L, "RAPPORT", 50)).contains(List.of(2L, 1L));
+        assertThat(index.search(1L, "rapport", 1)).contains(List.of(2L));
+        assertThat(index.search(1L, "ete", 50)).contains(List.of(3L));
+        assertThat(index.search(1L, "facture rapp", 50)).contains(List.of(2L));
+        assertThat(index.search(1L, "inconnu", 50)).contains(List.of());
+    }
+
+    @Test
+    void fileAddedAndRemoved_keepTheLoadedIndexCurrent() {
+        index = index(false, 1000);
+        names(1L, new NameEntry(1L, "rapport.pdf"));
+        tags(1L);
+        index.search(1L, "rapport", 50);
+
+        index.fileAdded(1L, 4L, "rapport final.pdf", List.of("Urgent"));
+        assertThat(index.search(1L, "rapport", 50)).contains(List.of(4L, 1L));
+        assertThat(index.search(1L, "urg", 50)).contains(List.of(4L));
+
+        index.filesRemoved(1L, List.of(1L, 4L));
+        assertThat(index.search(1L, "rapport", 50)).contains(List.of());
+        assertThat(index.postings()).isZero();
+    }
+
+    @Test
+    void fileAdded_withinATransaction_isIndexedOnlyOnceCommitted() {
+        index = index(false, 1000);
+        names(1L);
+        tags(1L);
+        index.search(1L, "rapport", 50);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            index.fileAdded(1L, 4L, "rapport.pdf", List.of());
+            index.fileAdded(1L, 5L, "rapport annulé.pdf", List.of());
+            assertThat(index.search(1L, "rapport", 50)).contains(List.of());
+
+            // Only the first upload commits
+            TransactionSynchronization committed = TransactionSynchronizationManager.getSynchronizations().getFirst();
+            committed.afterCommit();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertThat(index.search(1L, "rapport", 50)).contains(List.of(4L));
+    }
+
+    @Test
+    void uploadOnAnotherInstance_isFoundByTheNextSearch() {
+        index = index(false, 1000);
+        names(1L, new NameEntry(1L, "rapport.pdf"));
+        tags(1L);
+        assertThat(index.search(1L, "rapport", 50)).contains(List.of(1L));
+
+        // Committed by another instance, which indexed it in its own memory only
+        when(fileRepository.streamNamesCreatedAfter(eq(1L), any()))
+                .thenAnswer(invocation -> Stream.of(new NameEntry(2L, "rapport final.pdf")));
+        when(tagRepository.streamTagNamesCreatedAfter(eq(1L), any()))
+                .thenAnswer(invocation -> Stream.of(new NameEntry(2L, "Urgent")));
+
+        assertThat(index.search(1L, "rapport", 50)).contains(List.of(2L, 1L));
+        assertThat(index.search(1L, "urg", 50)).contains(List.of(2L));
+
+        // Each read starts where the previous one did, less the window for late commits
+        ArgumentCaptor<LocalDateTime> since = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(fileRepository, times(3)).streamNamesCreatedAfter(eq(1L), since.capture());
+        assertThat(since.getAllValues()).isSorted();
+        assertThat(since.getAllValues().getFirst()).isBefore(LocalDateTime.now().minusSeconds(59));
+    }
+
+    @Test
+    void deletionDuringLoad_winsOverTheRowsRead() {
+        index = index(false, 1000);
+        when(fileRepository.streamNames(1L)).thenAnswer(invocation -> {
+            index.filesRemoved(1L, List.of(1L));
+            return Stream.of(new NameEntry(1L, "rapport.pdf"), new NameEntry(2L, "rapport-bis.pdf"));
+        });
+        tags(1L);
+
+        assertThat(index.search(1L, "rapport", 50)).contains(List.of(2L));
+    }
+
+    @Test
+    void coldUser_withFallback_isAnsweredByTheDatabaseWhileLoading() throws Exception {
+        index = index(true, 1000);
+        names(1L, new NameEntry(1L, "rapport.pdf"));
+        tags(1L);
+
+        assertThat(index.search(1L, "rapport", 50)).isEmpty();
+
+        for (int i = 0; i < 100 && !index.isLoaded(1L); i++) {
+            Thread.sleep(20);
+        }
+        assertThat(index.search(1L, "rapport", 50)).contains(List.of(1L));
+    }
+
+    @Test
+    void overBudget_evictsTheLeastRecentlyUsedIndex() {
+        index = index(false, 3);
+        names(1L, new NameEntry(1L, "rapport final.pdf"));
+        tags(1L);
+        names(2L, new NameEntry(2L, "facture mars.pdf"));
+        tags(2L);
+
+        index.search(1L, "rapport", 50);
+        index.search(2L, "facture", 50);
+
+        assertThat(index.isLoaded(1L)).isFalse();
+        assertThat(index.isLoaded(2L)).isTrue();
+    }
+
+    @Test
+    void words_foldCaseAndAccentsAndSplitOnPunctuation() {
+        assertThat(FileNameIndex.words("Réunion_Équipe-2024.v2.PDF"))
+                .containsExactly("reunion", "equipe", "2024", "v2", "pdf");
+        assertThat(FileNameIndex.toTsQuery("Rapport 2024")).isEqualTo("rapport:* & 2024:*");
+        assertThat(FileNameIndex.words(" -_ ")).isEmpty();
+    }
+
+    private FileNameIndex index(boolean fullTextFallback, long maxPostings) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        return new FileNameIndex(fileRepository, tagRepository, transactionTemplate, new SimpleMeterRegistry(),
+                fullTextFallback, maxPostings, Duration.ofMinutes(30), Duration.ofMinutes(1));
+    }
+
+    private void names(Long userId, NameEntry... entries) {
+        when(fileRepository.streamNames(userId)).thenAnswer(invocation -> Stream.of(entries));
+    }
+
+    private void tags(Long userId, NameEntry... entries) {
+        when(tagRepository.streamTagNames(userId)).thenAnswer(invocation -> Stream.of(entries));
+    }
+}
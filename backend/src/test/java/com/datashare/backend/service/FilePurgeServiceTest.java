@@ -0,0 +1,134 @@
+package com.datashare.backend.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.datashare.backend.entity.FileEntity;
+import com.datashare.backend.repository.FileRepository;
+
+@ExtendWith(MockitoExtension.class)
+class FilePurgeServiceTest {
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private StorageService storageService;
+
+    @Mock
+    private FilePartitions filePartitions;
+
+    private FilePurgeService purgeService;
+
+    @BeforeEach
+    void setUp() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        purgeService = new FilePurgeService(
+                fileRepository, storageService, filePartitions, transactionTemplate, 2, 3, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        purgeService.shutdown();
+    }
+
+    @Test
+    void purgeBatch_deletesBlobsThenRows() {
+        when(fileRepository.findPurgeBatch(eq(3), any(Limit.class)))
+                .thenReturn(List.of(tombstoned(1L, "blob-1"), tombstoned(2L, "blob-2")));
+
+        int purged = purgeService.purgeBatch();
+
+        assertThat(purged).isEqualTo(2);
+        verify(storageService).delete("blob-1");
+        verify(storageService).delete("blob-2");
+        verify(fileRepository).deletePurged(List.of(1L, 2L));
+    }
+
+    @Test
+    void purgeBatch_keepsRowWhenBlobDeletionFails() {
+        when(fileRepository.findPurgeBatch(eq(3), any(Limit.class)))
+                .thenReturn(List.of(tombstoned(1L, "blob-1"), tombstoned(2L, "blob-2")));
+        doAnswer(invocation -> {
+            if ("blob-1".equals(invocation.getArgument(0))) {
+                throw new RuntimeException("Failed to delete file");
+            }
+            return null;
+        }).when(storageService).delete(any());
+
+        int purged = purgeService.purgeBatch();
+
+        assertThat(purged).isEqualTo(1);
+        verify(fileRepository).deletePurged(List.of(2L));
+        // Counted, so that the next batches start with the other rows
+        verify(fileRepository).recordFailedPurge(List.of(1L));
+    }
+
+    @Test
+    void purgeBatch_nothingToPurge() {
+        when(fileRepository.findPurgeBatch(eq(3), any(Limit.class))).thenReturn(List.of());
+
+        assertThat(purgeService.purgeBatch()).isZero();
+        verify(fileRepository, never()).deletePurged(any());
+    }
+
+    @Test
+    void partitioned_purgesEarlyDeletionsAndDropsExpiredDays() {
+        when(filePartitions.active()).thenReturn(true);
+        when(fileRepository.findDeletedBeforeExpiry(eq(3), any(Limit.class))).thenReturn(List.of(tombstoned(1L, "blob-1")));
+        when(filePartitions.expired()).thenReturn(List.of("files_p20260101", "files_p20260102"));
+        when(filePartitions.hasLiveFiles("files_p20260101")).thenReturn(true);
+        when(filePartitions.hasLiveFiles("files_p20260102")).thenReturn(false);
+        when(filePartitions.blobs("files_p20260102", null, 2)).thenReturn(List.of("blob-2", "blob-3"));
+        when(filePartitions.blobs("files_p20260102", "blob-3", 2)).thenReturn(List.of("blob-4"));
+
+        purgeService.purgeTombstoned();
+
+        verify(fileRepository).deletePurged(List.of(1L));
+        verify(fileRepository, never()).findPurgeBatch(anyInt(), any());
+        verify(storageService).delete("blob-4");
+        verify(filePartitions).drop("files_p20260102");
+        verify(filePartitions, never()).drop("files_p20260101");
+    }
+
+    @Test
+    void partitioned_keepsThePartitionWhenABlobCannotBeDeleted() {
+        when(filePartitions.active()).thenReturn(true);
+        when(filePartitions.expired()).thenReturn(List.of("files_p20260102"));
+        when(filePartitions.blobs("files_p20260102", null, 2)).thenReturn(List.of("blob-2"));
+        doThrow(new RuntimeException("Failed to delete file")).when(storageService).delete("blob-2");
+
+        purgeService.purgeTombstoned();
+
+        verify(filePartitions, never()).drop(any());
+    }
+
+    private FileEntity tombstoned(Long id, String filePath) {
+        FileEntity entity = new FileEntity();
+        entity.setId(id);
+        entity.setFilePath(filePath);
+        entity.setDeletedAt(LocalDateTime.now());
+        return entity;
+    }
+}
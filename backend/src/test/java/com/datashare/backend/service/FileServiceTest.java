@@ -3,32 +3,54 @@ package com.datashare.backend.service;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.data.domain.Limit;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import com.datashare.backend.dto.FileInfoResponse;
 import com.datashare.backend.dto.FileUploadResponse;
+import com.datashare.backend.entity.BlobStatus;
 import com.datashare.backend.entity.FileEntity;
+import com.datashare.backend.entity.FileEventType;
+import com.datashare.backend.entity.Tag;
 import com.datashare.backend.entity.User;
+import com.datashare.backend.entity.UserTag;
+import com.datashare.backend.exception.BlobUnavailableException;
 import com.datashare.backend.exception.ForbiddenException;
 import com.datashare.backend.exception.GoneException;
 import com.datashare.backend.exception.NotFoundException;
+import com.datashare.backend.exception.QuotaExceededException;
 import com.datashare.backend.exception.UnauthorizedException;
 import com.datashare.backend.repository.FileRepository;
 import com.datashare.backend.repository.UserRepository;
+import com.datashare.backend.storage.StoredFile;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 @ExtendWith(MockitoExtension.class)
 class FileServiceTest {
@@ -45,15 +67,38 @@ class FileServiceTest {
     @Mock
     private PasswordEncoder passwordEncoder;
 
+    @Mock
+    private TagDictionary tagDictionary;
+
+    @Mock
+    private FileNameIndex fileNameIndex;
+
+    @Mock
+    private StorageQuota storageQuota;
+
+    @Mock
+    private DownloadCounter downloadCounter;
+
+    @Mock
+    private FileExpiryService fileExpiryService;
+
+    @Mock
+    private FileEventOutbox fileEvents;
+
+    private ShareTokenIndex shareTokenIndex;
+
     private FileService fileService;
 
     private User testUser;
 
     @BeforeEach
     void setUp() {
+        shareTokenIndex = new ShareTokenIndex(fileRepository, null, new SimpleMeterRegistry(),
+                false, 1000, 0.001, 0.2, Duration.ofHours(1), Duration.ofMinutes(1), 1000, Duration.ofMillis(100));
         fileService = new FileService(
-                fileRepository, userRepository, storageService, passwordEncoder,
-                "exe,bat,cmd,sh,msi,com,scr,ps1,vbs");
+                fileRepository, userRepository, storageService, passwordEncoder, shareTokenIndex, tagDictionary,
+                fileNameIndex, storageQuota, downloadCounter, fileExpiryService, fileEvents,
+                new FileValidator("exe,bat,cmd,sh,msi,com,scr,ps1,vbs"));
 
         testUser = new User("test@test.com", "encodedPw");
         testUser.setId(1L);
@@ -65,7 +110,7 @@ class FileServiceTest {
                 "file", "document.pdf", "application/pdf", "contenu".getBytes());
 
         when(userRepository.findByEmail("test@test.com")).thenReturn(Optional.of(testUser));
-        when(storageService.store(file)).thenReturn("stored-uuid");
+        when(storageService.store(file)).thenReturn(stored());
         when(fileRepository.save(any(FileEntity.class))).thenAnswer(invocation -> {
             FileEntity entity = invocation.getArgument(0);
             entity.setId(1L);
@@ -78,6 +123,26 @@ class FileServiceTest {
         assertThat(response.type()).isEqualTo("application/pdf");
         assertThat(response.passwordProtected()).isFalse();
         verify(storageService).store(file);
+        verify(fileExpiryService).fileAdded(1L, response.expiredAt());
+        verify(fileEvents).publish(FileEventType.UPLOADED, 1L, 1L, 7L);
+    }
+
+    @Test
+    void upload_overQuota_removesStoredBlob() {
+        MockMultipartFile file = new MockMultipartFile(
+                "file", "document.pdf", "application/pdf", "contenu".getBytes());
+
+        when(userRepository.findByEmail("test@test.com")).thenReturn(Optional.of(testUser));
+        when(storageService.store(file)).thenReturn(stored());
+        doThrow(new QuotaExceededException("Storage quota exceeded"))
+                .when(storageQuota).reserve(testUser, "application/pdf", 7L);
+
+        assertThatThrownBy(() -> fileService.upload(file, "test@test.com", 7, null, null))
+                .isInstanceOf(QuotaExceededException.class);
+
+        verify(storageQuota).checkRoom(testUser, 7L);
+        verify(storageService).delete("stored-uuid");
+        verify(fileRepository, never()).save(any());
     }
 
     @Test
@@ -86,7 +151,7 @@ class FileServiceTest {
                 "file", "doc.pdf", "application/pdf", "contenu".getBytes());
 
         when(userRepository.findByEmail("test@test.com")).thenReturn(Optional.of(testUser));
-        when(storageService.store(file)).thenReturn("stored-uuid");
+        when(storageService.store(file)).thenReturn(stored());
         when(passwordEncoder.encode("motdepasse")).thenReturn("encodedMdp");
         when(fileRepository.save(any(FileEntity.class))).thenAnswer(invocation -> {
             FileEntity entity = invocation.getArgument(0);
@@ -106,17 +171,51 @@ class FileServiceTest {
                 "file", "doc.pdf", "application/pdf", "contenu".getBytes());
 
         when(userRepository.findByEmail("test@test.com")).thenReturn(Optional.of(testUser));
-        when(storageService.store(file)).thenReturn("stored-uuid");
+        when(storageService.store(file)).thenReturn(stored());
         when(fileRepository.save(any(FileEntity.class))).thenAnswer(invocation -> {
             FileEntity entity = invocation.getArgument(0);
             entity.setId(1L);
             return entity;
         });
 
+        UserTag urgent = userTag(10L, "urgent");
+        UserTag facture = userTag(11L, "facture");
+        when(tagDictionary.resolve(testUser, Set.of("urgent", "facture")))
+                .thenReturn(Map.of("urgent", urgent, "facture", facture));
+
         FileUploadResponse response = fileService.upload(
-                file, "test@test.com", 7, null, List.of("urgent", "facture"));
+                file, "test@test.com", 7, null, List.of("Urgent", "facture", " urgent "));
+
+        assertThat(response.tags()).containsExactly("Urgent", "facture");
+        ArgumentCaptor<FileEntity> saved = ArgumentCaptor.forClass(FileEntity.class);
+        verify(fileRepository).save(saved.capture());
+        assertThat(saved.getValue().getTags()).extracting(Tag::getUserTag).containsExactly(urgent, facture);
+        verify(tagDictionary).fileAdded(argThat(tags -> tags.containsAll(List.of(urgent, facture))));
+    }
+
+    @Test
+    void searchByTags_unknownTagWithMatchAll_returnsEmptyPageWithoutQuery() {
+        when(userRepository.findByEmail("test@test.com")).thenReturn(Optional.of(testUser));
+        when(tagDictionary.findIds(1L, Set.of("facture", "inconnu"))).thenReturn(List.of(11L));
+
+        FilePage page = fileService.searchByTags("test@test.com", List.of("Facture", "inconnu"),
+                TagMatch.ALL, null, 50);
 
-        assertThat(response.tags()).containsExactly("urgent", "facture");
+        assertThat(page.files()).isEmpty();
+        verify(fileRepository, never()).findPageByTags(any(), any(), anyLong(), any(), any(), any());
+    }
+
+    @Test
+    void searchByTags_matchAny_requiresOneTag() {
+        when(userRepository.findByEmail("test@test.com")).thenReturn(Optional.of(testUser));
+        when(tagDictionary.findIds(1L, Set.of("facture", "urgent"))).thenReturn(List.of(10L, 11L));
+        when(fileRepository.findPageByTags(eq(1L), eq(List.of(10L, 11L)), eq(1L), any(), eq(Long.MAX_VALUE),
+                eq(Limit.of(51)))).thenReturn(List.of(createFileEntity(1L, "doc.pdf", "application/pdf", false)));
+
+        FilePage page = fileService.searchByTags("test@test.com", List.of("facture", "urgent"),
+                TagMatch.ANY, null, 50);
+
+        assertThat(page.files()).extracting(FileUploadResponse::name).containsExactly("doc.pdf");
     }
 
     @Test
@@ -144,7 +243,7 @@ class FileServiceTest {
                 "file", "doc.pdf", "application/pdf", "contenu".getBytes());
 
         when(userRepository.findByEmail("test@test.com")).thenReturn(Optional.of(testUser));
-        when(storageService.store(file)).thenReturn("stored-uuid");
+        when(storageService.store(file)).thenReturn(stored());
 
         assertThatThrownBy(() -> fileService.upload(file, "test@test.com", 7, "abc", null))
                 .isInstanceOf(IllegalArgumentException.class)
@@ -157,7 +256,7 @@ class FileServiceTest {
                 "file", "doc.pdf", "application/pdf", "contenu".getBytes());
 
         when(userRepository.findByEmail("test@test.com")).thenReturn(Optional.of(testUser));
-        when(storageService.store(file)).thenReturn("stored-uuid");
+        when(storageService.store(file)).thenReturn(stored());
 
         String longTag = "a".repeat(31);
         assertThatThrownBy(() -> fileService.upload(file, "test@test.com", 7, null, List.of(longTag)))
@@ -183,7 +282,7 @@ class FileServiceTest {
                 "file", "doc.pdf", "application/pdf", "contenu".getBytes());
 
         when(userRepository.findByEmail("test@test.com")).thenReturn(Optional.of(testUser));
-        when(storageService.store(file)).thenReturn("stored-uuid");
+        when(storageService.store(file)).thenReturn(stored());
         when(fileRepository.save(any(FileEntity.class))).thenAnswer(invocation -> {
             FileEntity entity = invocation.getArgument(0);
             entity.setId(1L);
@@ -200,19 +299,48 @@ class FileServiceTest {
         FileEntity fileEntity = createFileEntity(1L, "doc.pdf", "application/pdf", false);
 
         when(userRepository.findByEmail("test@test.com")).thenReturn(Optional.of(testUser));
-        when(fileRepository.findByUserIdOrderByCreatedAtDesc(1L)).thenReturn(List.of(fileEntity));
+        when(fileRepository.findPage(eq(1L), any(), eq(Long.MAX_VALUE), eq(Limit.of(51))))
+                .thenReturn(List.of(fileEntity));
+
+        FilePage page = fileService.getUserFiles("test@test.com", FileStatusFilter.ALL, null, 50);
+
+        assertThat(page.files()).hasSize(1);
+        assertThat(page.files().get(0).name()).isEqualTo("doc.pdf");
+        assertThat(page.nextCursor()).isNull();
+    }
+
+    @Test
+    void getUserFiles_fullPage_returnsCursorAfterLastRow() {
+        FileEntity newest = createFileEntity(3L, "c.pdf", "application/pdf", false);
+        FileEntity middle = createFileEntity(2L, "b.pdf", "application/pdf", false);
+        FileEntity oldest = createFileEntity(1L, "a.pdf", "application/pdf", false);
+        LocalDateTime createdAt = LocalDateTime.of(2026, 1, 15, 10, 30);
+        ReflectionTestUtils.setField(middle, "createdAt", createdAt);
+
+        when(userRepository.findByEmail("test@test.com")).thenReturn(Optional.of(testUser));
+        when(fileRepository.findActivePage(eq(1L), any(), any(), eq(Long.MAX_VALUE), eq(Limit.of(3))))
+                .thenReturn(List.of(newest, middle, oldest));
 
-        List<FileUploadResponse> files = fileService.getUserFiles("test@test.com");
+        FilePage page = fileService.getUserFiles("test@test.com", FileStatusFilter.ACTIVE, "", 2);
 
-        assertThat(files).hasSize(1);
-        assertThat(files.get(0).name()).isEqualTo("doc.pdf");
+        assertThat(page.files()).extracting(FileUploadResponse::name).containsExactly("c.pdf", "b.pdf");
+        assertThat(FileCursor.decode(page.nextCursor())).isEqualTo(new FileCursor(createdAt, 2L));
+    }
+
+    @Test
+    void getUserFiles_invalidCursor_throwsException() {
+        when(userRepository.findByEmail("test@test.com")).thenReturn(Optional.of(testUser));
+
+        assertThatThrownBy(() -> fileService.getUserFiles("test@test.com", FileStatusFilter.ALL, "pas-un-curseur", 50))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid cursor");
     }
 
     @Test
     void getUserFiles_userNotFound_throwsException() {
         when(userRepository.findByEmail("unknown@test.com")).thenReturn(Optional.empty());
 
-        assertThatThrownBy(() -> fileService.getUserFiles("unknown@test.com"))
+        assertThatThrownBy(() -> fileService.getUserFiles("unknown@test.com", FileStatusFilter.ALL, null, 50))
                 .isInstanceOf(NotFoundException.class)
                 .hasMessage("User not found");
     }
@@ -242,6 +370,21 @@ class FileServiceTest {
         assertThat(info.expired()).isTrue();
     }
 
+    @Test
+    void getShareInfo_expired_isModifiedWhenItExpired() {
+        FileEntity fileEntity = createFileEntity(1L, "doc.pdf", "application/pdf", false);
+        ReflectionTestUtils.setField(fileEntity, "createdAt", LocalDateTime.now().minusDays(8));
+        LocalDateTime expiredAt = LocalDateTime.now().minusDays(1);
+        fileEntity.setExpiredAt(expiredAt);
+
+        when(fileRepository.findByToken("token-123")).thenReturn(Optional.of(fileEntity));
+
+        // An If-Modified-Since from before the expiry must not get a 304 with the live info
+        ShareInfo shareInfo = fileService.getShareInfo("token-123");
+
+        assertThat(shareInfo.lastModified()).isEqualTo(expiredAt.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
     @Test
     void getFileInfo_notFound_throwsException() {
         when(fileRepository.findByToken("fake")).thenReturn(Optional.empty());
@@ -258,11 +401,14 @@ class FileServiceTest {
         fileEntity.setFilePath("stored-uuid");
 
         when(fileRepository.findByToken("token-123")).thenReturn(Optional.of(fileEntity));
-        when(storageService.load("stored-uuid")).thenReturn(Path.of("/tmp/stored-uuid"));
+        when(storageService.loadAsResource("stored-uuid")).thenReturn(new FileSystemResource("/tmp/stored-uuid"));
 
-        Path result = fileService.downloadFile("token-123", null);
+        FileDownload result = fileService.downloadFile("token-123", null);
 
-        assertThat(result).isEqualTo(Path.of("/tmp/stored-uuid"));
+        assertThat(result.name()).isEqualTo("doc.pdf");
+        assertThat(result.contentType()).isEqualTo("application/pdf");
+        assertThat(result.resource()).isEqualTo(new FileSystemResource("/tmp/stored-uuid"));
+        verify(downloadCounter).record(1L, "token-123");
     }
 
     @Test
@@ -273,11 +419,25 @@ class FileServiceTest {
 
         when(fileRepository.findByToken("token-123")).thenReturn(Optional.of(fileEntity));
         when(passwordEncoder.matches("bonmdp", "encodedPw")).thenReturn(true);
-        when(storageService.load("stored-uuid")).thenReturn(Path.of("/tmp/stored-uuid"));
+        when(storageService.loadAsResource("stored-uuid")).thenReturn(new FileSystemResource("/tmp/stored-uuid"));
 
-        Path result = fileService.downloadFile("token-123", "bonmdp");
+        FileDownload result = fileService.downloadFile("token-123", "bonmdp");
 
-        assertThat(result).isEqualTo(Path.of("/tmp/stored-uuid"));
+        assertThat(result.resource()).isEqualTo(new FileSystemResource("/tmp/stored-uuid"));
+    }
+
+    @Test
+    void downloadFile_corruptBlob_throwsException() {
+        FileEntity fileEntity = createFileEntity(1L, "doc.pdf", "application/pdf", false);
+        fileEntity.setExpiredAt(LocalDateTime.now().plusDays(3));
+        fileEntity.setBlobStatus(BlobStatus.CORRUPT);
+
+        when(fileRepository.findByToken("token-123")).thenReturn(Optional.of(fileEntity));
+
+        assertThatThrownBy(() -> fileService.downloadFile("token-123", null))
+                .isInstanceOf(BlobUnavailableException.class)
+                .hasMessage("File content is unavailable");
+        verify(storageService, never()).loadAsResource(any());
     }
 
     @Test
@@ -315,6 +475,7 @@ class FileServiceTest {
         assertThatThrownBy(() -> fileService.downloadFile("token-123", "mauvais"))
                 .isInstanceOf(UnauthorizedException.class)
                 .hasMessage("Invalid password");
+        verify(downloadCounter, never()).record(any(), any());
     }
 
     @Test
@@ -326,6 +487,62 @@ class FileServiceTest {
                 .hasMessage("File not found");
     }
 
+    @Test
+    void searchByName_readsIndexedIdsInOrderAndSkipsDeletedFiles() {
+        FileEntity recent = createFileEntity(3L, "rapport-2024.pdf", "application/pdf", false);
+        FileEntity deleted = createFileEntity(2L, "rapport-2023.pdf", "application/pdf", false);
+        deleted.setDeletedAt(LocalDateTime.now());
+        FileEntity old = createFileEntity(1L, "rapport.pdf", "application/pdf", false);
+
+        when(userRepository.findByEmail("test@test.com")).thenReturn(Optional.of(testUser));
+        when(fileNameIndex.search(1L, "rapp", 50)).thenReturn(Optional.of(List.of(3L, 2L, 1L)));
+        when(fileRepository.findAllById(List.of(3L, 2L, 1L))).thenReturn(List.of(old, deleted, recent));
+
+        FilePage page = fileService.searchByName("test@test.com", "rapp", 50);
+
+        assertThat(page.files()).extracting(FileUploadResponse::id).containsExactly(3L, 1L);
+        verify(fileRepository, never()).searchByNameFullText(any(), any(), anyInt());
+    }
+
+    @Test
+    void searchByName_deletedFilesLeaveAHole_asksTheIndexForMore() {
+        FileEntity recent = createFileEntity(3L, "rapport-2024.pdf", "application/pdf", false);
+        FileEntity deleted = createFileEntity(2L, "rapport-2023.pdf", "application/pdf", false);
+        deleted.setDeletedAt(LocalDateTime.now());
+        FileEntity old = createFileEntity(1L, "rapport.pdf", "application/pdf", false);
+
+        when(userRepository.findByEmail("test@test.com")).thenReturn(Optional.of(testUser));
+        when(fileNameIndex.search(1L, "rapp", 2)).thenReturn(Optional.of(List.of(3L, 2L)));
+        when(fileRepository.findAllById(List.of(3L, 2L))).thenReturn(List.of(deleted, recent));
+        when(fileNameIndex.search(1L, "rapp", 4)).thenReturn(Optional.of(List.of(3L, 2L, 1L)));
+        when(fileRepository.findAllById(List.of(3L, 2L, 1L))).thenReturn(List.of(old, deleted, recent));
+
+        FilePage page = fileService.searchByName("test@test.com", "rapp", 2);
+
+        assertThat(page.files()).extracting(FileUploadResponse::id).containsExactly(3L, 1L);
+    }
+
+    @Test
+    void searchByName_coldIndex_usesFullTextQuery() {
+        when(userRepository.findByEmail("test@test.com")).thenReturn(Optional.of(testUser));
+        when(fileNameIndex.search(1L, "Rapport 2024", 20)).thenReturn(Optional.empty());
+        when(fileRepository.searchByNameFullText(1L, "rapport:* & 2024:*", 20))
+                .thenReturn(List.of(createFileEntity(1L, "rapport_2024.pdf", "application/pdf", false)));
+
+        FilePage page = fileService.searchByName("test@test.com", "Rapport 2024", 20);
+
+        assertThat(page.files()).extracting(FileUploadResponse::name).containsExactly("rapport_2024.pdf");
+    }
+
+    @Test
+    void searchByName_blankQuery_throwsException() {
+        when(userRepository.findByEmail("test@test.com")).thenReturn(Optional.of(testUser));
+
+        assertThatThrownBy(() -> fileService.searchByName("test@test.com", " -_ ", 50))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Search query is required");
+    }
+
     @Test
     void deleteFile_success() {
         FileEntity fileEntity = createFileEntity(1L, "doc.pdf", "application/pdf", false);
@@ -339,6 +556,8 @@ class FileServiceTest {
 
         verify(storageService).delete("stored-uuid");
         verify(fileRepository).delete(fileEntity);
+        verify(storageQuota).fileRemoved(fileEntity);
+        verify(fileEvents).publish(eq(FileEventType.DELETED), eq(1L), eq(1L), anyLong());
     }
 
     @Test
@@ -376,6 +595,40 @@ class FileServiceTest {
                 .hasMessage("User not found");
     }
 
+    @Test
+    void deleteFiles_marksOwnedFilesAsDeleted() {
+        when(userRepository.findByEmail("test@test.com")).thenReturn(Optional.of(testUser));
+        when(fileRepository.markDeleted(eq(List.of(1L, 2L)), eq(1L), any(LocalDateTime.class))).thenReturn(2);
+
+        List<Long> deleted = fileService.deleteFiles(List.of(1L, 2L), "test@test.com");
+
+        assertThat(deleted).containsExactly(1L, 2L);
+        verify(fileRepository, never()).findIdsDeletedAt(any(), any(), any());
+        verify(storageService, never()).delete(any());
+        verify(storageQuota).filesDeleted(eq(1L), eq(List.of(1L, 2L)), any(LocalDateTime.class));
+        verify(fileEvents).publishTombstoned(eq(FileEventType.DELETED), eq(1L), eq(List.of(1L, 2L)),
+                any(LocalDateTime.class));
+    }
+
+    @Test
+    void deleteFiles_returnsOnlyTheIdsItMarked() {
+        when(userRepository.findByEmail("test@test.com")).thenReturn(Optional.of(testUser));
+        when(fileRepository.markDeleted(eq(List.of(1L, 2L, 3L)), eq(1L), any(LocalDateTime.class))).thenReturn(1);
+        when(fileRepository.findIdsDeletedAt(eq(1L), eq(List.of(1L, 2L, 3L)), any(LocalDateTime.class)))
+                .thenReturn(List.of(2L));
+
+        assertThat(fileService.deleteFiles(List.of(1L, 2L, 3L), "test@test.com")).containsExactly(2L);
+    }
+
+    @Test
+    void deleteFiles_userNotFound_throwsException() {
+        when(userRepository.findByEmail("unknown@test.com")).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> fileService.deleteFiles(List.of(1L), "unknown@test.com"))
+                .isInstanceOf(NotFoundException.class)
+                .hasMessage("User not found");
+    }
+
     @Test
     void getFileName_success() {
         FileEntity fileEntity = createFileEntity(1L, "doc.pdf", "application/pdf", false);
@@ -394,6 +647,57 @@ class FileServiceTest {
         assertThat(fileService.getFileContentType("token-123")).isEqualTo("application/pdf");
     }
 
+    @Test
+    void upload_usesSniffedContentType() {
+        MockMultipartFile file = new MockMultipartFile(
+                "file", "photo.png", "application/octet-stream", "contenu".getBytes());
+
+        when(userRepository.findByEmail("test@test.com")).thenReturn(Optional.of(testUser));
+        when(storageService.store(file)).thenReturn(new StoredFile("stored-uuid", 7L, "abc123", "image/png"));
+        when(fileRepository.save(any(FileEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        FileUploadResponse response = fileService.upload(file, "test@test.com", 7, null, null);
+
+        assertThat(response.type()).isEqualTo("image/png");
+    }
+
+    @Test
+    void upload_keepsDeclaredOfficeTypeForZipContainer() {
+        String docx = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+        MockMultipartFile file = new MockMultipartFile("file", "rapport.docx", docx, "contenu".getBytes());
+
+        when(userRepository.findByEmail("test@test.com")).thenReturn(Optional.of(testUser));
+        when(storageService.store(file)).thenReturn(new StoredFile("stored-uuid", 7L, "abc123", "application/zip"));
+        when(fileRepository.save(any(FileEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        FileUploadResponse response = fileService.upload(file, "test@test.com", 7, null, null);
+
+        assertThat(response.type()).isEqualTo(docx);
+    }
+
+    @Test
+    void upload_keepsDeclaredIsoMediaTypeForGenericMp4Brand() {
+        MockMultipartFile file = new MockMultipartFile("file", "voix.m4a", "audio/mp4", "contenu".getBytes());
+
+        when(userRepository.findByEmail("test@test.com")).thenReturn(Optional.of(testUser));
+        when(storageService.store(file)).thenReturn(new StoredFile("stored-uuid", 7L, "abc123", "video/mp4"));
+        when(fileRepository.save(any(FileEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        FileUploadResponse response = fileService.upload(file, "test@test.com", 7, null, null);
+
+        assertThat(response.type()).isEqualTo("audio/mp4");
+    }
+
+    private StoredFile stored() {
+        return new StoredFile("stored-uuid", 7L, "abc123", null);
+    }
+
+    private UserTag userTag(Long id, String name) {
+        UserTag tag = new UserTag(testUser, name);
+        tag.setId(id);
+        return tag;
+    }
+
     private FileEntity createFileEntity(Long id, String name, String type, boolean hasPassword) {
         FileEntity entity = new FileEntity();
         entity.setId(id);
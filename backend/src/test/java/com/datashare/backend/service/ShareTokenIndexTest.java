@@ -0,0 +1,170 @@
+package com.datashare.backend.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.datashare.backend.repository.FileRepository;
+import com.datashare.backend.repository.ShareTokenRef;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class ShareTokenIndexTest {
+
+    @Mock
+    private FileRepository fileRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ShareTokenIndex index;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        index = new ShareTokenIndex(fileRepository, transactionTemplate, meterRegistry,
+                true, 1000, 0.001, 0.2, Duration.ofHours(1), Duration.ofMinutes(1), 1000, Duration.ofMillis(100));
+    }
+
+    @Test
+    void beforeFirstBuild_everyTokenIsLetThrough() {
+        assertThat(index.mightExist("anything")).isTrue();
+    }
+
+    @Test
+    void unknownToken_isRejectedWithoutLookingItUp() {
+        when(fileRepository.findMaxId()).thenReturn(2L);
+        build("token-a", "token-b");
+
+        assertThat(index.mightExist("token-a")).isTrue();
+        assertThat(index.mightExist("token-b")).isTrue();
+        assertThat(index.mightExist(UUID.randomUUID().toString())).isFalse();
+        assertThat(lookups("filter_rejected")).isEqualTo(1);
+        verify(fileRepository, never()).findByToken(any());
+    }
+
+    @Test
+    void tokenUploadedOnAnotherInstanceSinceTheLastCheck_isFoundBeforeBeingRejected() {
+        when(fileRepository.findMaxId()).thenReturn(10L);
+        build("token-a");
+
+        // Committed by another instance, behind this index's back
+        when(fileRepository.streamTokensAfter(10L)).thenReturn(Stream.of(new ShareTokenRef(11L, "token-b")));
+
+        assertThat(index.mightExist("token-b")).isTrue();
+        assertThat(lookups("filter_rejected")).isZero();
+        assertThat(meterRegistry.counter("share.token.filter.miss.reads").count()).isEqualTo(1);
+
+        // The miss read leaves the watermarks to the scheduled checks
+        when(fileRepository.streamTokensAfter(10L)).thenReturn(Stream.of(new ShareTokenRef(11L, "token-b")));
+        index.maintain();
+        verify(fileRepository, times(2)).streamTokensAfter(10L);
+    }
+
+    @Test
+    void missedLookup_isNegativelyCachedUntilTheTokenIsAdded() {
+        build();
+        index.add("token-a");
+        assertThat(index.mightExist("token-a")).isTrue();
+
+        // The file was deleted: the filter still says maybe, the database says no
+        index.recordLookup("token-a", false);
+        assertThat(index.mightExist("token-a")).isFalse();
+        assertThat(lookups("negative_cache_hit")).isEqualTo(1);
+
+        index.add("token-a");
+        assertThat(index.mightExist("token-a")).isTrue();
+    }
+
+    @Test
+    void maintain_rebuildsOnceDeletionsExceedStaleRatio() {
+        build("token-a", "token-b", "token-c", "token-d", "token-e");
+
+        index.recordRemovals(1);
+        index.maintain();
+        verify(fileRepository, times(1)).streamLiveTokens();
+
+        when(fileRepository.streamLiveTokens()).thenReturn(Stream.of("token-a"));
+        index.recordRemovals(1);
+        index.maintain();
+        verify(fileRepository, times(2)).streamLiveTokens();
+    }
+
+    @Test
+    void maintain_picksUpTokensUploadedOnAnotherInstance() {
+        when(fileRepository.findMaxId()).thenReturn(10L);
+        build("token-a");
+        assertThat(index.mightExist("token-b")).isFalse();
+
+        when(fileRepository.streamTokensAfter(10L)).thenReturn(Stream.of(new ShareTokenRef(12L, "token-b")));
+        index.maintain();
+        assertThat(index.mightExist("token-b")).isTrue();
+
+        // Ids past 10 are read once more, for uploads that committed out of id order, then only past 12
+        when(fileRepository.streamTokensAfter(10L)).thenReturn(Stream.of(new ShareTokenRef(11L, "token-c"),
+                new ShareTokenRef(12L, "token-b")));
+        index.maintain();
+        assertThat(index.mightExist("token-c")).isTrue();
+
+        index.maintain();
+        verify(fileRepository).streamTokensAfter(12L);
+        verify(fileRepository, times(1)).streamLiveTokens();
+    }
+
+    @Test
+    void maintain_rebuildsOnceTheFilterIsOlderThanMaxAge() {
+        index = new ShareTokenIndex(fileRepository, new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                meterRegistry, true, 1000, 0.001, 0.2, Duration.ZERO, Duration.ofMinutes(1), 1000, Duration.ofMillis(100));
+        build("token-a");
+
+        when(fileRepository.streamLiveTokens()).thenReturn(Stream.of("token-a"));
+        index.maintain();
+
+        verify(fileRepository, times(2)).streamLiveTokens();
+        verify(fileRepository, never()).streamTokensAfter(0L);
+    }
+
+    @Test
+    void bloomFilter_falsePositiveRateMatchesConfiguration() {
+        TokenBloomFilter filter = new TokenBloomFilter(100_000, 0.01);
+        for (int i = 0; i < 100_000; i++) {
+            filter.add(UUID.randomUUID().toString());
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain(UUID.randomUUID().toString())) {
+                falsePositives++;
+            }
+        }
+
+        assertThat(filter.expectedFalsePositiveRate()).isBetween(0.008, 0.012);
+        assertThat(falsePositives / 100_000.0).isLessThan(0.015);
+    }
+
+    private void build(String... tokens) {
+        when(fileRepository.countByDeletedAtIsNull()).thenReturn((long) tokens.length);
+        when(fileRepository.streamLiveTokens()).thenReturn(Stream.of(tokens));
+        index.maintain();
+    }
+
+    private double lookups(String result) {
+        return meterRegistry.get("share.token.lookups").tag("result", result).counter().count();
+    }
+}
@@ -0,0 +1,94 @@
+package com.datashare.backend.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.datashare.backend.entity.User;
+import com.datashare.backend.repository.UsageTotals;
+import com.datashare.backend.repository.UserRepository;
+import com.datashare.backend.repository.UserUsageRepository;
+
+/**
+ * Two first uploads of a user on a real database: not transactional, so that
+ * each reservation runs and commits in its own transaction and thread.
+ */
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:quotadb;DB_CLOSE_DELAY=-1")
+@ActiveProfiles("test")
+class StorageQuotaIntegrationTest {
+
+    @Autowired
+    private StorageQuota quota;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserUsageRepository usageRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void reserve_twoFirstUploads_bothFitUnderTheQuota() throws Exception {
+        Long userId = userRepository.save(new User("quota-" + System.nanoTime() + "@test.com", "pw")).getId();
+        CountDownLatch firstReserved = new CountDownLatch(1);
+        CountDownLatch commitFirst = new CountDownLatch(1);
+        AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+        AtomicReference<Throwable> secondFailure = new AtomicReference<>();
+
+        // The first upload creates the counters and holds the user row lock until it commits
+        Thread first = Thread.ofPlatform().start(() -> {
+            try {
+                transactionTemplate.executeWithoutResult(tx -> {
+                    quota.reserve(userRepository.findById(userId).orElseThrow(), "text/plain", 100);
+                    firstReserved.countDown();
+                    awaitQuietly(commitFirst);
+                });
+            } catch (Throwable e) {
+                firstFailure.set(e);
+                firstReserved.countDown();
+            }
+        });
+        assertThat(firstReserved.await(10, TimeUnit.SECONDS)).isTrue();
+
+        // The second one finds no counters yet and waits for that lock in initialize
+        Thread second = Thread.ofPlatform().start(() -> {
+            try {
+                transactionTemplate.executeWithoutResult(tx ->
+                        quota.reserve(userRepository.findById(userId).orElseThrow(), "text/plain", 200));
+            } catch (Throwable e) {
+                secondFailure.set(e);
+            }
+        });
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (second.getState() == Thread.State.RUNNABLE && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        commitFirst.countDown();
+        first.join(10_000);
+        second.join(10_000);
+
+        assertThat(firstFailure.get()).isNull();
+        assertThat(secondFailure.get()).isNull();
+        UsageTotals usage = usageRepository.findTotals(userId).orElseThrow();
+        assertThat(usage.usedBytes()).isEqualTo(300);
+        assertThat(usage.fileCount()).isEqualTo(2);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
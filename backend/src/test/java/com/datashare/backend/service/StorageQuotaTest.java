@@ -0,0 +1,142 @@
+package com.datashare.backend.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.datashare.backend.entity.FileCategory;
+import com.datashare.backend.entity.User;
+import com.datashare.backend.entity.UserTypeUsage;
+import com.datashare.backend.entity.UserUsage;
+import com.datashare.backend.exception.QuotaExceededException;
+import com.datashare.backend.repository.FileRepository;
+import com.datashare.backend.repository.TypeTotal;
+import com.datashare.backend.repository.UsageTotals;
+import com.datashare.backend.repository.UserRepository;
+import com.datashare.backend.repository.UserTypeUsageRepository;
+import com.datashare.backend.repository.UserUsageRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class StorageQuotaTest {
+
+    private static final long QUOTA = 1000;
+
+    @Mock
+    private UserUsageRepository usageRepository;
+
+    @Mock
+    private UserTypeUsageRepository typeUsageRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private FileRepository fileRepository;
+
+    private StorageQuota quota;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        quota = new StorageQuota(usageRepository, typeUsageRepository, userRepository, fileRepository,
+                transactionTemplate, new SimpleMeterRegistry(), QUOTA, true, 100);
+        user = new User("test@test.com", "pw");
+        user.setId(1L);
+    }
+
+    @Test
+    void reserve_firstUpload_createsCountersFromExistingFilesUnderUserLock() {
+        when(usageRepository.reserve(1L, 100, QUOTA)).thenReturn(0, 1);
+        when(usageRepository.existsById(1L)).thenReturn(false);
+        when(fileRepository.sumLiveByType(1L)).thenReturn(List.of(
+                new TypeTotal("image/png", 2L, 300L), new TypeTotal("image/jpeg", 1L, 50L)));
+
+        quota.reserve(user, "application/pdf", 100);
+
+        verify(userRepository).lockById(1L);
+        ArgumentCaptor<UserUsage> usage = ArgumentCaptor.forClass(UserUsage.class);
+        verify(usageRepository).save(usage.capture());
+        assertThat(usage.getValue().getUsedBytes()).isEqualTo(350);
+        assertThat(usage.getValue().getFileCount()).isEqualTo(3);
+        ArgumentCaptor<UserTypeUsage> types = ArgumentCaptor.forClass(UserTypeUsage.class);
+        verify(typeUsageRepository, times(FileCategory.values().length)).save(types.capture());
+        assertThat(types.getAllValues()).filteredOn(t -> t.getCategory() == FileCategory.IMAGE)
+                .singleElement().satisfies(t -> assertThat(t.getBytes()).isEqualTo(350));
+        verify(typeUsageRepository).add(1L, FileCategory.DOCUMENT, 1, 100);
+    }
+
+    @Test
+    void reserve_overQuota_throwsWithoutCountingTheFile() {
+        when(usageRepository.reserve(1L, 100, QUOTA)).thenReturn(0);
+        when(usageRepository.existsById(1L)).thenReturn(true);
+
+        assertThatThrownBy(() -> quota.reserve(user, "application/pdf", 100))
+                .isInstanceOf(QuotaExceededException.class)
+                .hasMessage("Storage quota exceeded");
+
+        verify(userRepository, never()).lockById(any());
+        verify(typeUsageRepository, never()).add(any(), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void checkRoom_usesThePerUserQuotaWhenSet() {
+        when(usageRepository.findTotals(1L)).thenReturn(Optional.of(new UsageTotals(900L, 3L, 5000L)));
+
+        quota.checkRoom(user, 200);
+
+        when(usageRepository.findTotals(1L)).thenReturn(Optional.of(new UsageTotals(900L, 3L, null)));
+        assertThatThrownBy(() -> quota.checkRoom(user, 200)).isInstanceOf(QuotaExceededException.class);
+    }
+
+    @Test
+    void reconcileUser_correctsDriftedCounters() {
+        when(fileRepository.sumLiveByType(1L)).thenReturn(List.of(new TypeTotal("video/mp4", 1L, 400L)));
+        when(typeUsageRepository.findTotals(1L)).thenReturn(List.of(
+                new TypeTotal("VIDEO", 2L, 900L), new TypeTotal("IMAGE", 0L, 0L)));
+        when(usageRepository.findTotals(1L)).thenReturn(Optional.of(new UsageTotals(900L, 2L, null)));
+
+        assertThat(quota.reconcileUser(1L)).isTrue();
+
+        verify(usageRepository).lock(1L);
+        verify(usageRepository).correct(eq(1L), eq(400L), eq(1L), any(LocalDateTime.class));
+        verify(typeUsageRepository).correct(1L, FileCategory.VIDEO, 1, 400);
+        verify(typeUsageRepository, never()).correct(eq(1L), eq(FileCategory.IMAGE), anyLong(), anyLong());
+        // Category rows missing for this user are created
+        verify(typeUsageRepository, times(FileCategory.values().length - 2)).save(any(UserTypeUsage.class));
+    }
+
+    @Test
+    void fileCategory_followsContentType() {
+        assertThat(FileCategory.of("image/png")).isEqualTo(FileCategory.IMAGE);
+        assertThat(FileCategory.of("application/pdf")).isEqualTo(FileCategory.DOCUMENT);
+        assertThat(FileCategory.of("application/vnd.openxmlformats-officedocument.wordprocessingml.document"))
+                .isEqualTo(FileCategory.DOCUMENT);
+        assertThat(FileCategory.of("application/zip")).isEqualTo(FileCategory.ARCHIVE);
+        assertThat(FileCategory.of("application/octet-stream")).isEqualTo(FileCategory.OTHER);
+        assertThat(FileCategory.of(null)).isEqualTo(FileCategory.OTHER);
+    }
+}
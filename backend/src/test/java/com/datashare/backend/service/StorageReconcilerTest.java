@@ -0,0 +1,164 @@
+package com.datashare.backend.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.datashare.backend.entity.BlobStatus;
+import com.datashare.backend.repository.BlobRef;
+import com.datashare.backend.repository.FileRepository;
+import com.datashare.backend.storage.BlobCipher;
+import com.datashare.backend.storage.FsyncPolicy;
+import com.datashare.backend.storage.GroupCommitter;
+import com.datashare.backend.storage.IngestPipeline;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class StorageReconcilerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Mock
+    private FileRepository fileRepository;
+
+    private StorageReconciler reconciler;
+
+    private final AtomicBoolean inTransaction = new AtomicBoolean();
+
+    private final List<String> filesystemCallsInTransaction = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        StorageService storageService = new StorageService(
+                tempDir.toString(), IngestPipeline.withDefaultStages(), FsyncPolicy.NONE, false,
+                new GroupCommitter(16, 30_000), new BlobCipher(false, "", 65536),
+                new SimpleMeterRegistry()) {
+            @Override
+            public Instant lastModified(String storedName) {
+                checkOutsideTransaction("lastModified " + storedName);
+                return super.lastModified(storedName);
+            }
+
+            @Override
+            public boolean exists(String storedName) {
+                checkOutsideTransaction("exists " + storedName);
+                return super.exists(storedName);
+            }
+
+            @Override
+            public void quarantine(String storedName) {
+                checkOutsideTransaction("quarantine " + storedName);
+                super.quarantine(storedName);
+            }
+        };
+        storageService.init();
+        reconciler = new StorageReconciler(fileRepository, storageService,
+                new TransactionTemplate(trackingTransactionManager()), true, 2, Duration.ofHours(1));
+    }
+
+    private void checkOutsideTransaction(String call) {
+        if (inTransaction.get()) {
+            filesystemCallsInTransaction.add(call);
+        }
+    }
+
+    private PlatformTransactionManager trackingTransactionManager() {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenAnswer(invocation -> {
+            inTransaction.set(true);
+            return mock(TransactionStatus.class);
+        });
+        doAnswer(invocation -> {
+            inTransaction.set(false);
+            return null;
+        }).when(transactionManager).commit(any());
+        return transactionManager;
+    }
+
+    @AfterEach
+    void tearDown() {
+        reconciler.shutdown();
+    }
+
+    @Test
+    void reconcileBucket_quarantinesOldOrphansAndFlagsDanglingRows() throws Exception {
+        blob("ab/ab01", Duration.ofDays(1));
+        blob("ab/ab02", Duration.ofDays(1));
+        blob("ab/ab04", Duration.ofMinutes(5));
+        when(fileRepository.streamBlobRefs("ab/%")).thenReturn(Stream.of(
+                row(1L, "ab/ab01"), row(3L, "ab/ab03")));
+
+        StorageReconciler.BucketReport report = reconciler.reconcileBucket("ab");
+
+        assertThat(report).isEqualTo(new StorageReconciler.BucketReport(3, 1, 1));
+        assertThat(tempDir.resolve("ab/ab01")).exists();
+        assertThat(tempDir.resolve("ab/ab02")).doesNotExist();
+        assertThat(tempDir.resolve(StorageService.QUARANTINE_DIR).resolve("ab/ab02")).exists();
+        assertThat(tempDir.resolve("ab/ab04")).exists();
+        verify(fileRepository).updateBlobStatus(3L, BlobStatus.MISSING);
+        assertThat(filesystemCallsInTransaction).isEmpty();
+    }
+
+    @Test
+    void reconcileBucket_skipsTombstonedAndAlreadyFlaggedRows() {
+        when(fileRepository.streamBlobRefs("cd/%")).thenReturn(Stream.of(
+                new BlobRef(1L, "cd/cd01", LocalDateTime.now(), BlobStatus.OK),
+                new BlobRef(2L, "cd/cd02", null, BlobStatus.MISSING)));
+
+        StorageReconciler.BucketReport report = reconciler.reconcileBucket("cd");
+
+        assertThat(report.dangling()).isZero();
+        verify(fileRepository, never()).updateBlobStatus(anyLong(), any());
+    }
+
+    @Test
+    void reconcileBucket_rowCommittedAfterListing_isNotQuarantined() throws Exception {
+        blob("ef01", Duration.ofDays(1));
+        when(fileRepository.streamUnshardedBlobRefs()).thenReturn(Stream.empty());
+        when(fileRepository.existsByFilePath("ef01")).thenReturn(true);
+
+        StorageReconciler.BucketReport report = reconciler.reconcileBucket("");
+
+        assertThat(report.orphans()).isZero();
+        assertThat(tempDir.resolve("ef01")).exists();
+    }
+
+    private void blob(String storedName, Duration age) throws Exception {
+        Path path = tempDir.resolve(storedName);
+        Files.writeString(path, "contenu");
+        Files.setLastModifiedTime(path, FileTime.from(Instant.now().minus(age)));
+    }
+
+    private static BlobRef row(Long id, String filePath) {
+        return new BlobRef(id, filePath, null, BlobStatus.OK);
+    }
+}
@@ -2,7 +2,10 @@ package com.datashare.backend.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.io.InputStream;
 import java.nio.file.Files;
+import java.util.Base64;
+import java.util.Random;
 import java.nio.file.Path;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -10,6 +13,14 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.springframework.mock.web.MockMultipartFile;
 
+import com.datashare.backend.storage.BlobCipher;
+import com.datashare.backend.storage.FsyncPolicy;
+import com.datashare.backend.storage.GroupCommitter;
+import com.datashare.backend.storage.IngestPipeline;
+import com.datashare.backend.storage.StoredFile;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 class StorageServiceTest {
 
     @TempDir
@@ -19,19 +30,88 @@ class StorageServiceTest {
 
     @BeforeEach
     void setUp() {
-        storageService = new StorageService(tempDir.toString());
+        storageService = new StorageService(
+                tempDir.toString(), IngestPipeline.withDefaultStages(), FsyncPolicy.NONE, false,
+                new GroupCommitter(16, 30_000), new BlobCipher(false, "", 65536),
+                new SimpleMeterRegistry());
         storageService.init();
     }
 
     @Test
-    void store_success() {
+    void store_success() throws Exception {
         MockMultipartFile file = new MockMultipartFile(
                 "file", "document.pdf", "application/pdf", "contenu du fichier".getBytes());
 
-        String storedName = storageService.store(file);
+        StoredFile stored = storageService.store(file);
+
+        assertThat(stored.storedName()).isNotBlank();
+        assertThat(stored.size()).isEqualTo(18);
+        assertThat(stored.sha256()).hasSize(64);
+        assertThat(Files.readString(tempDir.resolve(stored.storedName()))).isEqualTo("contenu du fichier");
+    }
+
+    @Test
+    void store_withPreallocationAndFsync_keepsExactContent() throws Exception {
+        StorageService syncing = new StorageService(
+                tempDir.toString(), IngestPipeline.withDefaultStages(), FsyncPolicy.PER_FILE, true,
+                new GroupCommitter(16, 30_000), new BlobCipher(false, "", 65536),
+                new SimpleMeterRegistry());
+        byte[] content = "contenu".getBytes();
+        MockMultipartFile file = new MockMultipartFile("file", "doc.txt", "text/plain", content) {
+            @Override
+            public long getSize() {
+                return 4096;
+            }
+        };
+
+        StoredFile stored = syncing.store(file);
+
+        assertThat(stored.size()).isEqualTo(content.length);
+        assertThat(Files.readAllBytes(tempDir.resolve(stored.storedName()))).isEqualTo(content);
+    }
+
+    @Test
+    void store_groupCommit_returnsOnceDurable() throws Exception {
+        GroupCommitter groupCommitter = new GroupCommitter(16, 30_000);
+        StorageService grouped = new StorageService(
+                tempDir.toString(), IngestPipeline.withDefaultStages(), FsyncPolicy.GROUP, false, groupCommitter,
+                new BlobCipher(false, "", 65536),
+                new SimpleMeterRegistry());
+
+        StoredFile stored = grouped.store(new MockMultipartFile("file", "doc.txt", "text/plain", "contenu".getBytes()));
+
+        assertThat(Files.readString(tempDir.resolve(stored.storedName()))).isEqualTo("contenu");
+        groupCommitter.shutdown();
+    }
+
+    @Test
+    void store_encrypted_writesCiphertextAndLoadsPlaintext() throws Exception {
+        String masterKey = Base64.getEncoder().encodeToString(new byte[32]);
+        StorageService encrypting = new StorageService(
+                tempDir.toString(), IngestPipeline.withDefaultStages(), FsyncPolicy.NONE, true,
+                new GroupCommitter(16, 30_000), new BlobCipher(true, masterKey, 4096),
+                new SimpleMeterRegistry());
+        byte[] content = new byte[3 * 4096 + 100];
+        new Random(7).nextBytes(content);
+
+        StoredFile stored = encrypting.store(new MockMultipartFile("file", "doc.bin", "application/octet-stream", content));
+
+        assertThat(stored.storedName()).endsWith(BlobCipher.SUFFIX);
+        assertThat(stored.size()).isEqualTo(content.length);
+        assertThat(Files.readAllBytes(tempDir.resolve(stored.storedName()))).isNotEqualTo(content);
+        assertThat(encrypting.loadAsResource(stored.storedName()).contentLength()).isEqualTo(content.length);
+        try (InputStream in = encrypting.loadAsResource(stored.storedName()).getInputStream()) {
+            assertThat(in.readAllBytes()).isEqualTo(content);
+        }
+    }
+
+    @Test
+    void store_shardsBlobsByUuidPrefix() {
+        StoredFile stored = storageService.store(new MockMultipartFile("file", "a.txt", "text/plain", "a".getBytes()));
 
-        assertThat(storedName).isNotBlank();
-        assertThat(Files.exists(tempDir.resolve(storedName))).isTrue();
+        String bucket = stored.storedName().substring(0, 2);
+        assertThat(stored.storedName()).matches("[0-9a-f]{2}/" + bucket + "[0-9a-f-]+");
+        assertThat(storageService.listBucket(bucket)).containsExactly(stored.storedName());
     }
 
     @Test
@@ -45,7 +125,7 @@ class StorageServiceTest {
     void delete_success() throws Exception {
         MockMultipartFile file = new MockMultipartFile(
                 "file", "test.txt", "text/plain", "contenu".getBytes());
-        String storedName = storageService.store(file);
+        String storedName = storageService.store(file).storedName();
 
         storageService.delete(storedName);
 
@@ -0,0 +1,134 @@
+package com.datashare.backend.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+
+import com.datashare.backend.entity.FileEntity;
+import com.datashare.backend.entity.Tag;
+import com.datashare.backend.entity.User;
+import com.datashare.backend.entity.UserTag;
+import com.datashare.backend.repository.TagLink;
+import com.datashare.backend.repository.TagRepository;
+import com.datashare.backend.repository.UserRepository;
+import com.datashare.backend.repository.UserTagRepository;
+
+@ExtendWith(MockitoExtension.class)
+class TagDictionaryTest {
+
+    @Mock
+    private UserTagRepository userTagRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private TagRepository tagRepository;
+
+    private TagDictionary tagDictionary;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        tagDictionary = new TagDictionary(userTagRepository, userRepository, tagRepository, null, true, 500);
+        user = new User("test@test.com", "encodedPw");
+        user.setId(1L);
+    }
+
+    @Test
+    void resolve_existingTags_takeNoLock() {
+        UserTag facture = userTag(10L, "facture");
+        when(userTagRepository.findByUserIdAndNameIn(1L, Set.of("facture"))).thenReturn(List.of(facture));
+
+        assertThat(tagDictionary.resolve(user, Set.of("facture"))).isEqualTo(Map.of("facture", facture));
+
+        verify(userRepository, never()).lockById(anyLong());
+        verify(userTagRepository, never()).save(any());
+    }
+
+    @Test
+    void resolve_newTag_isCreatedUnderTheUserLock() {
+        UserTag facture = userTag(10L, "facture");
+        when(userTagRepository.findByUserIdAndNameIn(1L, Set.of("facture", "urgent")))
+                .thenReturn(List.of(facture));
+        when(userTagRepository.save(any(UserTag.class))).thenAnswer(invocation -> {
+            UserTag created = invocation.getArgument(0);
+            created.setId(11L);
+            return created;
+        });
+
+        Map<String, UserTag> entries = tagDictionary.resolve(user, Set.of("facture", "urgent"));
+
+        verify(userRepository).lockById(1L);
+        assertThat(entries.get("urgent").getId()).isEqualTo(11L);
+        assertThat(entries.get("facture")).isSameAs(facture);
+    }
+
+    @Test
+    void backfillBatch_linksLegacyTagsAndCountsLiveFilesOnce() {
+        FileEntity live = file(1L, null);
+        FileEntity deleted = file(2L, LocalDateTime.now());
+        Tag upper = new Tag("Facture", live);
+        Tag lower = new Tag("facture", live);
+        Tag onDeleted = new Tag("facture", deleted);
+        UserTag facture = userTag(10L, "facture");
+        when(tagRepository.findUnlinked(Limit.of(500))).thenReturn(List.of(upper, lower, onDeleted));
+        when(userTagRepository.findByUserIdAndNameIn(1L, Set.of("facture"))).thenReturn(List.of(facture));
+
+        assertThat(tagDictionary.backfillBatch()).isEqualTo(3);
+
+        assertThat(List.of(upper, lower, onDeleted)).extracting(Tag::getUserTag).containsOnly(facture);
+        verify(userTagRepository).addToFileCount(10L, 1L);
+        verify(userTagRepository, never()).addToFileCount(eq(10L), eq(2L));
+    }
+
+    @Test
+    void backfillBatch_fileAlreadyCountedByAnEarlierBatch_isNotCountedAgain() {
+        FileEntity live = file(1L, null);
+        Tag upper = new Tag("FACTURE", live);
+        Tag devis = new Tag("devis", live);
+        UserTag facture = userTag(10L, "facture");
+        UserTag devisEntry = userTag(11L, "devis");
+        when(tagRepository.findUnlinked(Limit.of(500))).thenReturn(List.of(upper, devis));
+        when(tagRepository.findLinks(Set.of(1L))).thenReturn(List.of(new TagLink(1L, 10L)));
+        when(userTagRepository.findByUserIdAndNameIn(1L, Set.of("facture", "devis")))
+                .thenReturn(List.of(facture, devisEntry));
+
+        assertThat(tagDictionary.backfillBatch()).isEqualTo(2);
+
+        assertThat(upper.getUserTag()).isEqualTo(facture);
+        verify(userTagRepository).addToFileCount(11L, 1L);
+        verify(userTagRepository, never()).addToFileCount(eq(10L), anyLong());
+    }
+
+    private UserTag userTag(Long id, String name) {
+        UserTag tag = new UserTag(user, name);
+        tag.setId(id);
+        return tag;
+    }
+
+    private FileEntity file(Long id, LocalDateTime deletedAt) {
+        FileEntity file = new FileEntity();
+        file.setId(id);
+        file.setUser(user);
+        file.setDeletedAt(deletedAt);
+        return file;
+    }
+}
@@ -0,0 +1,124 @@
+package com.datashare.backend.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BlobCipherTest {
+
+    private static final int CHUNK = 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private final BlobCipher cipher = new BlobCipher(true, key(1), CHUNK);
+
+    @Test
+    void roundTrip_acrossChunkBoundaries() throws Exception {
+        for (int size : new int[] {0, 1, CHUNK - 1, CHUNK, CHUNK + 1, 5 * CHUNK + 17}) {
+            byte[] data = random(size);
+            Path blob = encrypt(data);
+
+            assertThat(cipher.decryptingResource(blob).contentLength()).isEqualTo(size);
+            try (InputStream in = cipher.openDecrypting(blob)) {
+                assertThat(in.readAllBytes()).isEqualTo(data);
+            }
+        }
+    }
+
+    @Test
+    void skip_decryptsArbitraryRanges() throws Exception {
+        byte[] data = random(7 * CHUNK + 300);
+        Path blob = encrypt(data);
+        Random random = new Random(3);
+
+        for (int i = 0; i < 50; i++) {
+            int start = random.nextInt(data.length);
+            int length = random.nextInt(data.length - start) + 1;
+            try (InputStream in = cipher.openDecrypting(blob)) {
+                assertThat(in.skip(start)).isEqualTo(start);
+                assertThat(in.readNBytes(length)).isEqualTo(Arrays.copyOfRange(data, start, start + length));
+            }
+        }
+    }
+
+    @Test
+    void tamperedChunk_failsAuthentication() throws Exception {
+        Path blob = encrypt(random(3 * CHUNK));
+        long position = BlobCipher.HEADER_LENGTH + CHUNK + 20;
+        try (FileChannel channel = FileChannel.open(blob, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, position);
+            b.put(0, (byte) (b.get(0) ^ 0x42)).rewind();
+            channel.write(b, position);
+        }
+
+        try (InputStream in = cipher.openDecrypting(blob)) {
+            assertThatThrownBy(in::readAllBytes)
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("Chunk 1");
+        }
+    }
+
+    @Test
+    void truncatedAtChunkBoundary_isDetected() throws Exception {
+        Path blob = encrypt(random(3 * CHUNK));
+        try (FileChannel channel = FileChannel.open(blob, StandardOpenOption.WRITE)) {
+            channel.truncate(BlobCipher.HEADER_LENGTH + 2L * (CHUNK + 16));
+        }
+
+        try (InputStream in = cipher.openDecrypting(blob)) {
+            assertThatThrownBy(in::readAllBytes).isInstanceOf(IOException.class);
+        }
+    }
+
+    @Test
+    void wrongMasterKey_cannotUnwrapDataKey() throws Exception {
+        Path blob = encrypt(random(100));
+        BlobCipher other = new BlobCipher(true, key(2), CHUNK);
+
+        assertThatThrownBy(() -> other.openDecrypting(blob))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("unwrap");
+    }
+
+    @Test
+    void enabledWithoutMasterKey_failsFast() {
+        assertThatThrownBy(() -> new BlobCipher(true, "", CHUNK))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private Path encrypt(byte[] data) throws IOException {
+        Path blob = Files.createTempFile(tempDir, "blob", BlobCipher.SUFFIX);
+        try (FileChannel channel = FileChannel.open(blob, StandardOpenOption.WRITE);
+             BlobCipher.EncryptingChannel sealed = cipher.encrypt(channel)) {
+            sealed.write(ByteBuffer.wrap(data));
+        }
+        return blob;
+    }
+
+    private static byte[] random(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private static String key(int seed) {
+        byte[] key = new byte[32];
+        new Random(seed).nextBytes(key);
+        return Base64.getEncoder().encodeToString(key);
+    }
+}
@@ -0,0 +1,45 @@
+package com.datashare.backend.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+class BufferPoolTest {
+
+    @Test
+    void acquire_allocatesDirectBuffersOfConfiguredSize() throws Exception {
+        BufferPool pool = new BufferPool(4096, 2, 100);
+
+        ByteBuffer buffer = pool.acquire();
+
+        assertThat(buffer.isDirect()).isTrue();
+        assertThat(buffer.capacity()).isEqualTo(4096);
+    }
+
+    @Test
+    void release_reusesSameBuffer() throws Exception {
+        BufferPool pool = new BufferPool(4096, 1, 100);
+        ByteBuffer first = pool.acquire();
+        first.put((byte) 1);
+        pool.release(first);
+
+        ByteBuffer second = pool.acquire();
+
+        assertThat(second).isSameAs(first);
+        assertThat(second.position()).isZero();
+    }
+
+    @Test
+    void acquire_exhaustedPool_timesOut() throws Exception {
+        BufferPool pool = new BufferPool(4096, 1, 50);
+        pool.acquire();
+
+        assertThatThrownBy(pool::acquire)
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("No I/O buffer available");
+    }
+}
@@ -0,0 +1,55 @@
+package com.datashare.backend.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class DownloadOffloadTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void xAccelRedirect_pointsAtTheInternalLocation() {
+        HttpHeaders headers = new HttpHeaders();
+
+        assertThat(offload(DownloadOffload.Mode.X_ACCEL_REDIRECT).apply("ab/ab12.bin", headers)).isTrue();
+
+        assertThat(headers.getFirst(DownloadOffload.X_ACCEL_REDIRECT)).isEqualTo("/internal/ab/ab12.bin");
+        assertThat(registry.counter("storage.download.served", "by", "offloaded").count()).isEqualTo(1);
+    }
+
+    @Test
+    void xSendfile_pointsAtTheAbsolutePath() {
+        HttpHeaders headers = new HttpHeaders();
+
+        assertThat(offload(DownloadOffload.Mode.X_SENDFILE).apply("ab/ab12.bin", headers)).isTrue();
+
+        assertThat(headers.getFirst(DownloadOffload.X_SENDFILE))
+                .isEqualTo(tempDir.toAbsolutePath().normalize().resolve("ab/ab12.bin").toString());
+    }
+
+    @Test
+    void encryptedBlobsAndDisabledMode_stayInTheJvm() {
+        HttpHeaders headers = new HttpHeaders();
+
+        assertThat(offload(DownloadOffload.Mode.X_ACCEL_REDIRECT).apply("ab/ab12" + BlobCipher.SUFFIX, headers))
+                .isFalse();
+        assertThat(offload(DownloadOffload.Mode.NONE).apply("ab/ab12.bin", headers)).isFalse();
+
+        assertThat(headers.isEmpty()).isTrue();
+        assertThat(registry.counter("storage.download.served", "by", "jvm").count()).isEqualTo(2);
+    }
+
+    private DownloadOffload offload(DownloadOffload.Mode mode) {
+        return new DownloadOffload(mode, "/internal", tempDir.toString(), registry);
+    }
+}
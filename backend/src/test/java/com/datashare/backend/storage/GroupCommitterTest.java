@@ -0,0 +1,89 @@
+package com.datashare.backend.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GroupCommitterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final GroupCommitter groupCommitter = new GroupCommitter(8, 30_000);
+
+    @AfterEach
+    void tearDown() {
+        groupCommitter.shutdown();
+    }
+
+    @Test
+    void awaitDurable_releasesEveryConcurrentWriter() throws Exception {
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+        List<Future<Path>> results = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            Path file = tempDir.resolve("blob-" + i);
+            results.add(writers.submit(() -> {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    channel.write(ByteBuffer.wrap("contenu".getBytes()));
+                    groupCommitter.awaitDurable(channel, tempDir);
+                }
+                return file;
+            }));
+        }
+
+        for (Future<Path> result : results) {
+            assertThat(result.get()).exists();
+        }
+        writers.shutdown();
+    }
+
+    @Test
+    void awaitDurable_closedChannel_fails() throws Exception {
+        FileChannel channel = FileChannel.open(tempDir.resolve("blob"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.close();
+
+        assertThatThrownBy(() -> groupCommitter.awaitDurable(channel, tempDir))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Group commit failed");
+    }
+
+    @Test
+    void awaitDurable_afterAFlushThatThrew_stillCommits() throws Exception {
+        try (FileChannel channel = FileChannel.open(tempDir.resolve("blob"), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            // A null directory makes the flush itself throw, not just this file's fsync
+            assertThatThrownBy(() -> groupCommitter.awaitDurable(channel, null))
+                    .isInstanceOf(IOException.class)
+                    .hasMessage("Group commit failed");
+
+            groupCommitter.awaitDurable(channel, tempDir);
+        }
+    }
+
+    @Test
+    void awaitDurable_afterShutdown_isRefused() throws Exception {
+        try (FileChannel channel = FileChannel.open(tempDir.resolve("blob"), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            groupCommitter.awaitDurable(channel, tempDir);
+            groupCommitter.shutdown();
+
+            assertThatThrownBy(() -> groupCommitter.awaitDurable(channel, tempDir))
+                    .isInstanceOf(IOException.class)
+                    .hasMessage("Storage is shutting down");
+        }
+    }
+}
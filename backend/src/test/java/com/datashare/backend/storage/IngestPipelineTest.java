@@ -0,0 +1,105 @@
+package com.datashare.backend.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class IngestPipelineTest {
+
+    private final IngestPipeline pipeline = IngestPipeline.withDefaultStages();
+
+    @Test
+    void run_readsSourceOnceAndFeedsEveryStage() throws Exception {
+        byte[] data = new byte[3 * 64 * 1024 + 123];
+        new Random(42).nextBytes(data);
+        CountingInputStream source = new CountingInputStream(new ByteArrayInputStream(data));
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+
+        IngestResult result = pipeline.run(source, Channels.newChannel(target));
+
+        assertThat(source.bytesRead).isEqualTo(data.length);
+        assertThat(target.toByteArray()).isEqualTo(data);
+        assertThat(result.getSize()).isEqualTo(data.length);
+        assertThat(result.getSha256())
+                .isEqualTo(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data)));
+    }
+
+    @Test
+    void run_detectsTypeFromMagicBytes() throws Exception {
+        byte[] png = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 0x0D};
+
+        IngestResult result = pipeline.run(new ByteArrayInputStream(png), Channels.newChannel(new ByteArrayOutputStream()));
+
+        assertThat(result.getDetectedType()).isEqualTo("image/png");
+    }
+
+    @Test
+    void detect_isoMediaFile_isTypedByItsMajorBrand() {
+        assertThat(ContentSniffStage.detect(ftyp("heic"), 16)).isEqualTo("image/heic");
+        assertThat(ContentSniffStage.detect(ftyp("heix"), 16)).isEqualTo("image/heic");
+        assertThat(ContentSniffStage.detect(ftyp("avif"), 16)).isEqualTo("image/avif");
+        assertThat(ContentSniffStage.detect(ftyp("M4A "), 16)).isEqualTo("audio/mp4");
+        assertThat(ContentSniffStage.detect(ftyp("qt  "), 16)).isEqualTo("video/quicktime");
+        assertThat(ContentSniffStage.detect(ftyp("isom"), 16)).isEqualTo("video/mp4");
+        assertThat(ContentSniffStage.detect(ftyp("mp42"), 16)).isEqualTo("video/mp4");
+        assertThat(ContentSniffStage.detect(ftyp("crx "), 16)).isNull();
+    }
+
+    @Test
+    void run_unknownSignature_leavesTypeUndetected() throws Exception {
+        IngestResult result = pipeline.run(
+                new ByteArrayInputStream("texte brut".getBytes()), Channels.newChannel(new ByteArrayOutputStream()));
+
+        assertThat(result.getDetectedType()).isNull();
+    }
+
+    @Test
+    void run_headerSplitAcrossReads_stillDetected() throws Exception {
+        InputStream trickle = new FilterInputStream(new ByteArrayInputStream("%PDF-1.7 ...".getBytes())) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 2));
+            }
+        };
+
+        IngestResult result = pipeline.run(trickle, Channels.newChannel(new ByteArrayOutputStream()));
+
+        assertThat(result.getDetectedType()).isEqualTo("application/pdf");
+    }
+
+    private static byte[] ftyp(String majorBrand) {
+        byte[] header = new byte[16];
+        header[3] = 0x18;
+        System.arraycopy(("ftyp" + majorBrand + "\0\0\0\0").getBytes(StandardCharsets.US_ASCII), 0, header, 4, 12);
+        return header;
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        long bytesRead;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                bytesRead += n;
+            }
+            return n;
+        }
+    }
+}
@@ -1,4 +1,9 @@
-import { useMutation, useQuery, useQueryClient } from "@tanstack/react-query";
+import {
+  useInfiniteQuery,
+  useMutation,
+  useQuery,
+  useQueryClient,
+} from "@tanstack/react-query";
 import axios from "axios";
 import api from "./axios";
 
@@ -73,14 +78,16 @@ function useDownloadFile() {
       password?: string;
       fileName: string;
     }) => {
-      const params = new URLSearchParams();
-      if (password) params.append("password", password);
-
       try {
-        const response = await api.post(`/files/download/${token}`, null, {
-          params,
-          responseType: "blob",
-        });
+        // Sans mot de passe, le GET peut être servi par le cache du navigateur ou d'un CDN
+        const response = password
+          ? await api.post(`/files/download/${token}`, null, {
+              params: new URLSearchParams({ password }),
+              responseType: "blob",
+            })
+          : await api.get(`/files/download/${token}/content`, {
+              responseType: "blob",
+            });
 
         const url = window.URL.createObjectURL(new Blob([response.data]));
         const link = document.createElement("a");
@@ -102,10 +109,32 @@ function useDownloadFile() {
   });
 }
 
-function useUserFiles() {
-  return useQuery({
-    queryKey: ["user-files"],
-    queryFn: () => api.get<UploadResponse[]>("/files").then((res) => res.data),
+type FileStatusFilter = "all" | "active" | "expired";
+
+interface UserFilesPage {
+  files: UploadResponse[];
+  nextCursor: string | null;
+}
+
+const USER_FILES_PAGE_SIZE = 50;
+
+// Filtre et pagination côté serveur : seule la page suivante est chargée, au défilement
+function useUserFiles(status: FileStatusFilter) {
+  return useInfiniteQuery({
+    queryKey: ["user-files", status],
+    queryFn: ({ pageParam }) =>
+      api
+        .get<UploadResponse[]>("/files", {
+          params: { status, cursor: pageParam, limit: USER_FILES_PAGE_SIZE },
+        })
+        .then(
+          (res): UserFilesPage => ({
+            files: res.data,
+            nextCursor: res.headers["x-next-cursor"] ?? null,
+          }),
+        ),
+    initialPageParam: undefined as string | undefined,
+    getNextPageParam: (lastPage) => lastPage.nextCursor ?? undefined,
   });
 }
 
@@ -127,4 +156,4 @@ export {
   useUploadFile,
   useUserFiles,
 };
-export type { FileInfoResponse, UploadResponse };
+export type { FileInfoResponse, FileStatusFilter, UploadResponse };
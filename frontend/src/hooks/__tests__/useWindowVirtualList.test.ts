@@ -0,0 +1,35 @@
+import { act, renderHook } from "@testing-library/react";
+import { describe, expect, it } from "vitest";
+import { useWindowVirtualList } from "../useWindowVirtualList";
+
+function attachContainer(top: number) {
+  const container = document.createElement("div");
+  container.getBoundingClientRect = () => ({ top }) as DOMRect;
+  return container;
+}
+
+describe("useWindowVirtualList", () => {
+  it("renders only the rows around the viewport", () => {
+    Object.defineProperty(window, "innerHeight", {
+      value: 800,
+      configurable: true,
+    });
+    const { result, rerender } = renderHook(
+      ({ count }) => useWindowVirtualList({ count, rowHeight: 100, overscan: 2 }),
+      { initialProps: { count: 10_000 } },
+    );
+
+    act(() => {
+      result.current.containerRef.current = attachContainer(-5_000);
+      window.dispatchEvent(new Event("scroll"));
+    });
+
+    expect(result.current.start).toBe(48);
+    expect(result.current.end).toBe(60);
+    expect(result.current.offsetTop).toBe(4_800);
+    expect(result.current.totalHeight).toBe(1_000_000);
+
+    rerender({ count: 55 });
+    expect(result.current.end).toBe(55);
+  });
+});
@@ -0,0 +1,53 @@
+import { useEffect, useRef, useState } from "react";
+
+interface VirtualListOptions {
+  count: number;
+  rowHeight: number;
+  overscan?: number;
+}
+
+interface VirtualRange {
+  start: number;
+  end: number;
+}
+
+// Ne rend que les lignes visibles dans la fenêtre (plus une marge), quelle que soit la taille de la liste
+export function useWindowVirtualList({
+  count,
+  rowHeight,
+  overscan = 8,
+}: VirtualListOptions) {
+  const containerRef = useRef<HTMLDivElement>(null);
+  const [range, setRange] = useState<VirtualRange>({ start: 0, end: 0 });
+
+  useEffect(() => {
+    const update = () => {
+      const container = containerRef.current;
+      if (!container) return;
+      const scrolledPast = Math.max(0, -container.getBoundingClientRect().top);
+      const first = Math.floor(scrolledPast / rowHeight);
+      const visible = Math.ceil(window.innerHeight / rowHeight);
+      const start = Math.max(0, first - overscan);
+      const end = Math.min(count, first + visible + overscan);
+      setRange((prev) =>
+        prev.start === start && prev.end === end ? prev : { start, end },
+      );
+    };
+
+    update();
+    window.addEventListener("scroll", update, { passive: true });
+    window.addEventListener("resize", update);
+    return () => {
+      window.removeEventListener("scroll", update);
+      window.removeEventListener("resize", update);
+    };
+  }, [count, rowHeight, overscan]);
+
+  return {
+    containerRef,
+    start: range.start,
+    end: range.end,
+    totalHeight: count * rowHeight,
+    offsetTop: range.start * rowHeight,
+  };
+}
@@ -1,10 +1,14 @@
 import { createFileRoute, redirect } from "@tanstack/react-router";
-import { useState } from "react";
-import { useUserFiles } from "../api/files";
+import { useEffect, useMemo, useState } from "react";
+import { type FileStatusFilter, useUserFiles } from "../api/files";
 import { FileRow } from "../components/file-row";
+import { useWindowVirtualList } from "../hooks/useWindowVirtualList";
 import { toUserFile, type UserFile } from "../lib/user-file";
 
-type TabFilter = "all" | "active" | "expired";
+type TabFilter = FileStatusFilter;
+
+// Hauteur d'une FileRow (72px) plus l'espace entre deux lignes
+const ROW_HEIGHT = 84;
 
 export const Route = createFileRoute("/dashboard")({
   beforeLoad: () => {
@@ -17,14 +21,23 @@ export const Route = createFileRoute("/dashboard")({
 
 function DashboardComponent() {
   const [activeTab, setActiveTab] = useState<TabFilter>("all");
-  const { data: rawFiles } = useUserFiles();
+  const { data, isPending, hasNextPage, isFetchingNextPage, fetchNextPage } =
+    useUserFiles(activeTab);
 
-  const files: UserFile[] = (rawFiles ?? []).map(toUserFile);
+  const files: UserFile[] = useMemo(
+    () => (data?.pages ?? []).flatMap((page) => page.files).map(toUserFile),
+    [data],
+  );
 
-  const filteredFiles = files.filter((file) => {
-    if (activeTab === "all") return true;
-    return file.status === activeTab;
-  });
+  const { containerRef, start, end, totalHeight, offsetTop } =
+    useWindowVirtualList({ count: files.length, rowHeight: ROW_HEIGHT });
+
+  // Charge la page suivante quand les dernières lignes chargées approchent de l'écran
+  useEffect(() => {
+    if (hasNextPage && !isFetchingNextPage && end >= files.length - 10) {
+      fetchNextPage();
+    }
+  }, [end, files.length, hasNextPage, isFetchingNextPage, fetchNextPage]);
 
   const tabs: { key: TabFilter; label: string }[] = [
     { key: "all", label: "Tous" },
@@ -64,13 +77,29 @@ function DashboardComponent() {
         })}
       </div>
 
-      <div className="space-y-3">
-        {filteredFiles.length === 0 ? (
-          <p className="text-sm text-gray-600">Aucun fichier à télécharger</p>
-        ) : (
-          filteredFiles.map((file) => <FileRow key={file.id} file={file} />)
-        )}
-      </div>
+      {files.length === 0 && !isPending ? (
+        <p className="text-sm text-gray-600">Aucun fichier à télécharger</p>
+      ) : (
+        <div
+          ref={containerRef}
+          className="relative"
+          style={{ height: totalHeight }}
+        >
+          <div
+            className="absolute inset-x-0 top-0"
+            style={{ transform: `translateY(${offsetTop}px)` }}
+          >
+            {files.slice(start, end).map((file) => (
+              <div key={file.id} className="pb-3" style={{ height: ROW_HEIGHT }}>
+                <FileRow file={file} />
+              </div>
+            ))}
+          </div>
+        </div>
+      )}
+      {isFetchingNextPage && (
+        <p className="mt-3 text-sm text-gray-600">Chargement…</p>
+      )}
     </div>
   );
 }